@@ -0,0 +1,374 @@
+/*
+ * Copyright 2020 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tensorflow.lite.examples.detection;
+
+import android.content.res.AssetManager;
+import android.graphics.Bitmap;
+import android.graphics.Bitmap.Config;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.RectF;
+import android.os.SystemClock;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Scanner;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.tensorflow.lite.examples.detection.env.ImageUtils;
+import org.tensorflow.lite.examples.detection.tflite.Detector;
+import org.tensorflow.lite.examples.detection.tflite.Detector.Recognition;
+import org.tensorflow.lite.examples.detection.tflite.LatencyHistogram;
+import org.tensorflow.lite.examples.detection.vision.DetectionMetrics;
+
+/**
+ * Offline evaluation of a detector over a labeled image set, for judging model and preprocessing
+ * changes on speed and accuracy together.
+ *
+ * <p>Every image {@code <base>.jpg} (or {@code .png}) with a {@code <base>_results.txt} next to it
+ * is evaluated against that file, in the format of {@code table_results.txt}. Images are decoded and
+ * cropped to the model input on a pool of worker threads, and detected on a pool of detectors, one
+ * per inference thread. A bounded queue between the two keeps only a few decoded images in memory,
+ * so the set can be of any size.
+ */
+public final class DetectorEvaluation {
+  private static final String RESULTS_SUFFIX = "_results.txt";
+  private static final long QUEUE_POLL_MS = 100;
+
+  /** Creates one detector for each inference thread. */
+  public interface DetectorFactory {
+    Detector create() throws IOException;
+  }
+
+  /** Where the images and their ground truth come from. */
+  public interface ImageSource {
+    /** Every file name in the set, images and ground truth alike. */
+    List<String> list() throws IOException;
+
+    InputStream open(String name) throws IOException;
+  }
+
+  /** An image decoded and cropped to the model input, waiting for a detector. */
+  private static final class Sample {
+    final Bitmap croppedBitmap;
+    final Matrix cropToFrameTransform;
+    final List<Recognition> groundTruth;
+
+    Sample(
+        final Bitmap croppedBitmap,
+        final Matrix cropToFrameTransform,
+        final List<Recognition> groundTruth) {
+      this.croppedBitmap = croppedBitmap;
+      this.cropToFrameTransform = cropToFrameTransform;
+      this.groundTruth = groundTruth;
+    }
+  }
+
+  // Tells an inference thread that there are no more samples.
+  private static final Sample END = new Sample(null, null, null);
+
+  private final ImageSource source;
+  private final DetectorFactory detectorFactory;
+  private final int inputSize;
+  private final int decodeThreads;
+  private final int detectorCount;
+  private final DetectionMetrics metrics;
+  private final LatencyHistogram decodeHistogram = new LatencyHistogram();
+  private final LatencyHistogram preprocessHistogram = new LatencyHistogram();
+  private final LatencyHistogram inferenceHistogram = new LatencyHistogram();
+  private int imageCount;
+  private long elapsedNanos;
+  // Set when an inference thread fails, so that decode threads do not wait on a full queue forever.
+  private volatile boolean detectorFailed;
+
+  /**
+   * @param inputSize side of the square model input that images are scaled to.
+   * @param iouThreshold minimum IoU for a detection to match a ground-truth box.
+   * @param scoreThreshold minimum confidence for the reported precision and recall.
+   */
+  public DetectorEvaluation(
+      final ImageSource source,
+      final DetectorFactory detectorFactory,
+      final int inputSize,
+      final int decodeThreads,
+      final int detectorCount,
+      final float iouThreshold,
+      final float scoreThreshold) {
+    this.source = source;
+    this.detectorFactory = detectorFactory;
+    this.inputSize = inputSize;
+    this.decodeThreads = decodeThreads;
+    this.detectorCount = detectorCount;
+    this.metrics = new DetectionMetrics(iouThreshold, scoreThreshold);
+  }
+
+  /** Images in {@code path} of the given assets; "" for the root. */
+  public static ImageSource assetSource(final AssetManager assets, final String path) {
+    final String prefix = path.isEmpty() ? "" : path + "/";
+    return new ImageSource() {
+      @Override
+      public List<String> list() throws IOException {
+        return Arrays.asList(assets.list(path));
+      }
+
+      @Override
+      public InputStream open(final String name) throws IOException {
+        return assets.open(prefix + name);
+      }
+    };
+  }
+
+  /** Images in a directory, for example one pushed to the device with adb. */
+  public static ImageSource directorySource(final File directory) {
+    return new ImageSource() {
+      @Override
+      public List<String> list() throws IOException {
+        final String[] names = directory.list();
+        if (names == null) {
+          throw new IOException("Cannot list " + directory);
+        }
+        return Arrays.asList(names);
+      }
+
+      @Override
+      public InputStream open(final String name) throws IOException {
+        return new FileInputStream(new File(directory, name));
+      }
+    };
+  }
+
+  /** Evaluates every labeled image of the source; returns the number of images evaluated. */
+  public int run() throws Exception {
+    final Set<String> names = new HashSet<>(source.list());
+    final List<String> images = new ArrayList<>();
+    for (final String name : names) {
+      final int dot = name.lastIndexOf('.');
+      if (dot > 0
+          && (name.endsWith(".jpg") || name.endsWith(".png"))
+          && names.contains(name.substring(0, dot) + RESULTS_SUFFIX)) {
+        images.add(name);
+      }
+    }
+    Collections.sort(images);
+
+    final BlockingQueue<Sample> samples = new ArrayBlockingQueue<>(2 * detectorCount);
+    final ExecutorService decoders = Executors.newFixedThreadPool(decodeThreads);
+    final ExecutorService detectors = Executors.newFixedThreadPool(detectorCount);
+    final long startTime = SystemClock.elapsedRealtimeNanos();
+    try {
+      final List<Future<Void>> decodeTasks = new ArrayList<>();
+      for (final String image : images) {
+        decodeTasks.add(
+            decoders.submit(
+                () -> {
+                  enqueue(samples, prepare(image));
+                  return null;
+                }));
+      }
+      final List<Future<Integer>> detectTasks = new ArrayList<>();
+      for (int i = 0; i < detectorCount; ++i) {
+        detectTasks.add(detectors.submit(() -> detect(samples)));
+      }
+
+      // Rethrows a decoding failure; the inference threads then stop at END.
+      try {
+        for (final Future<Void> task : decodeTasks) {
+          task.get();
+        }
+      } finally {
+        for (int i = 0; i < detectorCount; ++i) {
+          enqueue(samples, END);
+        }
+      }
+      imageCount = 0;
+      for (final Future<Integer> task : detectTasks) {
+        imageCount += task.get();
+      }
+    } finally {
+      decoders.shutdownNow();
+      detectors.shutdownNow();
+      decoders.awaitTermination(1, TimeUnit.SECONDS);
+      detectors.awaitTermination(1, TimeUnit.SECONDS);
+    }
+    elapsedNanos = SystemClock.elapsedRealtimeNanos() - startTime;
+    return imageCount;
+  }
+
+  private void enqueue(final BlockingQueue<Sample> samples, final Sample sample)
+      throws InterruptedException {
+    while (!samples.offer(sample, QUEUE_POLL_MS, TimeUnit.MILLISECONDS)) {
+      if (detectorFailed) {
+        throw new IllegalStateException("Inference thread failed");
+      }
+    }
+  }
+
+  // Runs on a decode thread: decodes the image, crops it to the model input and reads the truth.
+  private Sample prepare(final String name) throws IOException {
+    long startTime = SystemClock.elapsedRealtimeNanos();
+    final Bitmap image;
+    try (InputStream inputStream = source.open(name)) {
+      image = BitmapFactory.decodeStream(inputStream);
+    }
+    if (image == null) {
+      throw new IOException("Cannot decode " + name);
+    }
+    final List<Recognition> groundTruth =
+        loadRecognitions(source, name.substring(0, name.lastIndexOf('.')) + RESULTS_SUFFIX);
+    decodeHistogram.record(SystemClock.elapsedRealtimeNanos() - startTime);
+
+    startTime = SystemClock.elapsedRealtimeNanos();
+    final Matrix frameToCropTransform =
+        ImageUtils.getTransformationMatrix(
+            image.getWidth(), image.getHeight(), inputSize, inputSize, 0, false);
+    final Matrix cropToFrameTransform = new Matrix();
+    frameToCropTransform.invert(cropToFrameTransform);
+    final Bitmap croppedBitmap = Bitmap.createBitmap(inputSize, inputSize, Config.ARGB_8888);
+    new Canvas(croppedBitmap).drawBitmap(image, frameToCropTransform, null);
+    image.recycle();
+    preprocessHistogram.record(SystemClock.elapsedRealtimeNanos() - startTime);
+    return new Sample(croppedBitmap, cropToFrameTransform, groundTruth);
+  }
+
+  // Runs on an inference thread, with a detector of its own, until END; returns the images done.
+  private int detect(final BlockingQueue<Sample> samples) throws Exception {
+    Detector detector = null;
+    int done = 0;
+    try {
+      detector = detectorFactory.create();
+      for (Sample sample = samples.take(); sample != END; sample = samples.take()) {
+        final long startTime = SystemClock.elapsedRealtimeNanos();
+        final List<Recognition> results = detector.recognizeImage(sample.croppedBitmap);
+        inferenceHistogram.record(SystemClock.elapsedRealtimeNanos() - startTime);
+        sample.croppedBitmap.recycle();
+        addToMetrics(sample, results);
+        done++;
+      }
+    } catch (final Exception e) {
+      detectorFailed = true;
+      throw e;
+    } finally {
+      if (detector != null) {
+        detector.close();
+      }
+    }
+    return done;
+  }
+
+  private void addToMetrics(final Sample sample, final List<Recognition> results) {
+    final int truthCount = sample.groundTruth.size();
+    final String[] truthLabels = new String[truthCount];
+    final float[] truthBoxes = new float[4 * truthCount];
+    for (int i = 0; i < truthCount; ++i) {
+      final Recognition truth = sample.groundTruth.get(i);
+      truthLabels[i] = truth.getTitle();
+      setBox(truthBoxes, i, truth.getLocation());
+    }
+    final int count = results.size();
+    final String[] labels = new String[count];
+    final float[] boxes = new float[4 * count];
+    final float[] scores = new float[count];
+    for (int i = 0; i < count; ++i) {
+      final Recognition result = results.get(i);
+      final RectF location = result.getLocation();
+      sample.cropToFrameTransform.mapRect(location);
+      labels[i] = result.getTitle();
+      setBox(boxes, i, location);
+      scores[i] = result.getConfidence();
+    }
+    metrics.addImage(truthLabels, truthBoxes, truthCount, labels, boxes, scores, count);
+  }
+
+  private static void setBox(final float[] boxes, final int i, final RectF rect) {
+    boxes[4 * i] = rect.left;
+    boxes[4 * i + 1] = rect.top;
+    boxes[4 * i + 2] = rect.right;
+    boxes[4 * i + 3] = rect.bottom;
+  }
+
+  // The format of result:
+  // category bbox.left bbox.top bbox.right bbox.bottom confidence
+  // Underscores in the category stand for spaces, as in DetectorTest. Numbers use a decimal point
+  // whatever the device locale, as DatasetRecorder writes them.
+  private static List<Recognition> loadRecognitions(
+      final ImageSource source, final String fileName) throws IOException {
+    final List<Recognition> result = new ArrayList<>();
+    try (InputStream inputStream = source.open(fileName)) {
+      final Scanner scanner = new Scanner(inputStream).useLocale(Locale.US);
+      while (scanner.hasNext()) {
+        final String category = scanner.next().replace('_', ' ');
+        final float left = nextFloat(scanner, fileName);
+        final float top = nextFloat(scanner, fileName);
+        final float right = nextFloat(scanner, fileName);
+        final float bottom = nextFloat(scanner, fileName);
+        final float confidence = nextFloat(scanner, fileName);
+        result.add(
+            new Recognition(null, category, confidence, new RectF(left, top, right, bottom)));
+      }
+    }
+    return result;
+  }
+
+  // A malformed file fails the run instead of silently shortening the ground truth.
+  private static float nextFloat(final Scanner scanner, final String fileName) throws IOException {
+    if (!scanner.hasNextFloat()) {
+      throw new IOException(
+          "Malformed ground truth in "
+              + fileName
+              + ": expected a number, found "
+              + (scanner.hasNext() ? "'" + scanner.next() + "'" : "end of file"));
+    }
+    return scanner.nextFloat();
+  }
+
+  public DetectionMetrics getMetrics() {
+    return metrics;
+  }
+
+  /** Throughput, latency percentiles of each step and the accuracy table, as one report. */
+  public String getReport() {
+    final double seconds = elapsedNanos / 1e9;
+    return String.format(
+            "%d images in %.2fs (%.1f images/s), %d decode threads, %d detectors\n",
+            imageCount,
+            seconds,
+            seconds > 0 ? imageCount / seconds : 0.0,
+            decodeThreads,
+            detectorCount)
+        + "decode: "
+        + decodeHistogram.format()
+        + "\npreprocess: "
+        + preprocessHistogram.format()
+        + "\ninference: "
+        + inferenceHistogram.format()
+        + "\n"
+        + metrics.format();
+  }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2020 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.tensorflow.lite.examples.detection;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.util.Log;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.tensorflow.lite.examples.detection.tflite.TFLiteObjectDetectionAPIModel;
+
+/**
+ * Offline accuracy and speed evaluation of the detector over a labeled image set.
+ *
+ * <p>By default the labeled images among the test assets are evaluated. A larger set can be pushed
+ * to the device, each image next to a {@code <name>_results.txt} in the golden-test format, and
+ * evaluated with
+ *
+ * <pre>
+ * adb shell am instrument -w -e class org.tensorflow.lite.examples.detection.DetectorEvaluationTest
+ *     -e evalDir /sdcard/eval -e evalDetectors 2 -e evalDecodeThreads 4 ...
+ * </pre>
+ *
+ * The report is logged and written to {@code evaluation_report.txt} in the app's files directory.
+ */
+@RunWith(AndroidJUnit4.class)
+public class DetectorEvaluationTest {
+  private static final String TAG = "DetectorEvaluation";
+
+  private static final int MODEL_INPUT_SIZE = 300;
+  private static final boolean IS_MODEL_QUANTIZED = true;
+  private static final String MODEL_FILE = "detect.tflite";
+  private static final String LABELS_FILE = "labelmap.txt";
+  private static final float IOU_THRESHOLD = 0.5f;
+  private static final float SCORE_THRESHOLD = 0.5f;
+  private static final String REPORT_FILE = "evaluation_report.txt";
+
+  private static final String ARG_DIR = "evalDir";
+  private static final String ARG_DETECTORS = "evalDetectors";
+  private static final String ARG_DECODE_THREADS = "evalDecodeThreads";
+
+  @Test
+  public void evaluate() throws Exception {
+    final Context context = InstrumentationRegistry.getInstrumentation().getContext();
+    final Bundle arguments = InstrumentationRegistry.getArguments();
+    final String dir = arguments.getString(ARG_DIR);
+    final int cores = Runtime.getRuntime().availableProcessors();
+    final int detectors = getInt(arguments, ARG_DETECTORS, Math.max(1, cores / 2));
+    final int decodeThreads = getInt(arguments, ARG_DECODE_THREADS, Math.max(1, cores / 2));
+
+    final DetectorEvaluation evaluation =
+        new DetectorEvaluation(
+            dir != null
+                ? DetectorEvaluation.directorySource(new File(dir))
+                : DetectorEvaluation.assetSource(context.getAssets(), ""),
+            () ->
+                TFLiteObjectDetectionAPIModel.create(
+                    context.getAssets(),
+                    MODEL_FILE,
+                    LABELS_FILE,
+                    MODEL_INPUT_SIZE,
+                    IS_MODEL_QUANTIZED),
+            MODEL_INPUT_SIZE,
+            decodeThreads,
+            detectors,
+            IOU_THRESHOLD,
+            SCORE_THRESHOLD);
+    final int evaluated = evaluation.run();
+
+    final String report = evaluation.getReport();
+    Log.i(TAG, report);
+    final File reportFile =
+        new File(
+            InstrumentationRegistry.getInstrumentation().getTargetContext().getFilesDir(),
+            REPORT_FILE);
+    try (Writer writer = new OutputStreamWriter(new FileOutputStream(reportFile), "UTF-8")) {
+      writer.write(report);
+    }
+    Log.i(TAG, "Report written to " + reportFile);
+
+    assertThat(evaluated > 0).isTrue();
+    assertThat(evaluation.getMetrics().getImageCount()).isEqualTo(evaluated);
+    assertThat(Float.isNaN(evaluation.getMetrics().getMeanAveragePrecision())).isFalse();
+  }
+
+  private static int getInt(final Bundle arguments, final String key, final int defaultValue) {
+    final String value = arguments.getString(key);
+    return value != null ? Integer.parseInt(value) : defaultValue;
+  }
+}
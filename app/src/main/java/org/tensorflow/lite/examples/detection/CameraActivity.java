@@ -27,13 +27,13 @@ import android.hardware.camera2.CameraCharacteristics;
 import android.hardware.camera2.CameraManager;
 import android.hardware.camera2.params.StreamConfigurationMap;
 import android.media.Image;
-import android.media.Image.Plane;
 import android.media.ImageReader;
 import android.media.ImageReader.OnImageAvailableListener;
 import android.os.Build;
 import android.os.Bundle;
 import android.os.Handler;
-import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.os.Trace;
 import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
@@ -42,6 +42,7 @@ import androidx.appcompat.widget.Toolbar;
 import android.util.Size;
 import android.view.Surface;
 import android.view.View;
+import android.view.ViewGroup;
 import android.view.ViewTreeObserver;
 import android.view.WindowManager;
 import android.widget.CompoundButton;
@@ -50,9 +51,19 @@ import android.widget.LinearLayout;
 import android.widget.TextView;
 import android.widget.Toast;
 import com.google.android.material.bottomsheet.BottomSheetBehavior;
-import java.nio.ByteBuffer;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
 import org.tensorflow.lite.examples.detection.env.ImageUtils;
 import org.tensorflow.lite.examples.detection.env.Logger;
+import org.tensorflow.lite.examples.detection.env.PerformanceHud;
+import org.tensorflow.lite.examples.detection.env.UsageMeter;
+import org.tensorflow.lite.examples.detection.pipeline.Frame;
+import org.tensorflow.lite.examples.detection.pipeline.FramePipeline;
+import org.tensorflow.lite.examples.detection.pipeline.FrameRecorder;
+import org.tensorflow.lite.examples.detection.pipeline.ReplayFrameSource;
+import org.tensorflow.lite.examples.detection.tflite.TraceRecorder;
 
 //--------------------------------------------------------------------------------------------------------
 //Classe CameraActivity
@@ -69,22 +80,101 @@ public abstract class CameraActivity extends AppCompatActivity
   private static final Logger LOGGER = new Logger();
   private static final int PERMISSIONS_REQUEST = 1;
   private static final String PERMISSION_CAMERA = Manifest.permission.CAMERA;
+  // Extras da intent para gravar a sessão da câmera ou reproduzir uma gravação no lugar da câmera,
+  // com caminhos relativos a getFilesDir(). Por exemplo:
+  //   adb shell am start -n <pacote>/.DetectorActivity --es record sessao.yuv
+  //   adb shell am start -n <pacote>/.DetectorActivity --es replay sessao.yuv --es replay_rate max
+  // Ao fim da reprodução, o relatório fica em <gravação sem extensão>_report.txt.
+  public static final String EXTRA_RECORD = "record";
+  public static final String EXTRA_REPLAY = "replay";
+  // "recorded" (padrão) no ritmo da gravação, ou "max" na vazão máxima do pipeline.
+  public static final String EXTRA_REPLAY_RATE = "replay_rate";
+  private static final String REPLAY_RATE_MAX = "max";
+  // Limite do arquivo da gravação (cerca de 2 minutos de 640x480 a 30 fps).
+  private static final long RECORDING_MAX_BYTES = 1024L * 1024 * 1024;
+  // Índices das etapas do pipeline (a captura acontece na thread da câmera, fora do pipeline).
+  protected static final int STAGE_CONVERT = 0;
+  protected static final int STAGE_INFER = 1;
+  protected static final int STAGE_TRACK = 2;
+  // Buffers de captura da câmera. O pipeline segura no máximo três até o fim da conversão (um
+  // esperando, um em conversão e um sendo entregue), então a câmera sempre tem um livre.
+  static final int CAPTURE_BUFFER_COUNT = 4;
+  // Intervalo mínimo entre atualizações da folha inferior (2 vezes por segundo).
+  private static final long UI_UPDATE_INTERVAL_MS = 500;
   protected int previewWidth = 0;
   protected int previewHeight = 0;
+  private int previewRotation = 0;
   private boolean debug = false;
-  private Handler handler;
-  private HandlerThread handlerThread;
+  private volatile FramePipeline pipeline;
+  // Câmera legada que emprestou os buffers NV21 ao pipeline.
+  private volatile Camera legacyCamera;
+  // A Camera legada pertence à thread que a abriu (a principal, no LegacyCameraConnectionFragment):
+  // o buffer volta por uma Message, que vem de um pool, em vez de addCallbackBuffer na conversão.
+  private final Handler legacyCameraHandler =
+      new Handler(
+          Looper.getMainLooper(),
+          message -> {
+            final Camera camera = legacyCamera;
+            if (camera == null) {
+              return true;
+            }
+            try {
+              camera.addCallbackBuffer((byte[]) message.obj);
+            } catch (final RuntimeException e) {
+              // A câmera já foi liberada; o buffer é simplesmente descartado.
+            }
+            return true;
+          });
+  private final Frame.BufferOwner legacyBufferOwner =
+      new Frame.BufferOwner() {
+        @Override
+        public void returnBuffer(final byte[] buffer) {
+          legacyCameraHandler.obtainMessage(0, buffer).sendToTarget();
+        }
+      };
+  protected final PerformanceHud hud = new PerformanceHud();
+  // CPU e FPS médios desde o onResume, comparados com o modo sem tela (HeadlessDetectionService).
+  protected final UsageMeter usageMeter = new UsageMeter(hud);
+  private volatile boolean uiUpdatePending = false;
+  private volatile long lastUiUpdateMs = 0;
+  // Único Runnable usado para atualizar a folha inferior, em vez de um novo a cada quadro.
+  private final Runnable uiUpdater =
+      new Runnable() {
+        @Override
+        public void run() {
+          uiUpdatePending = false;
+          updateUi();
+        }
+      };
+  // Gravação da sessão (EXTRA_RECORD), escrita nos callbacks da câmera; null quando não há.
+  private FrameRecorder frameRecorder;
+  // Reprodução de uma gravação no lugar da câmera (EXTRA_REPLAY); null quando não há.
+  private ReplayFrameSource replaySource;
+  // A reprodução espera a subclasse poder processar quadros, para não perder os primeiros.
+  private boolean readyForFrames = false;
+  private boolean replayStarted = false;
+  private final ReplayFrameSource.Listener replayListener =
+      new ReplayFrameSource.Listener() {
+        @Override
+        public void onReplayFrame(final long timestampNs) {
+          hud.onCameraFrame(SystemClock.elapsedRealtimeNanos());
+        }
+
+        @Override
+        public void onReplayFinished(final ReplayFrameSource source) {
+          writeReplayReport(source);
+        }
+      };
   private boolean useCamera2API;
-  private boolean isProcessingFrame = false;
-  private byte[][] yuvBytes = new byte[3][];
+  // Se Image.getTimestamp() usa o mesmo relógio que SystemClock.elapsedRealtimeNanos().
+  private boolean sensorTimestampRealtime;
+  // Usado apenas pela etapa de conversão.
   private int[] rgbBytes = null;
-  private int yRowStride;
-  private Runnable postInferenceCallback;
-  private Runnable imageConverter;
   private LinearLayout bottomSheetLayout;
   private LinearLayout gestureLayout;
   private BottomSheetBehavior<LinearLayout> sheetBehavior;
-  protected TextView frameValueTextView, cropValueTextView, inferenceTimeTextView;
+  protected TextView frameValueTextView, cropValueTextView, inferenceTimeTextView, pipelineTextView;
+  protected TextView statsTextView, glassTextView, hudTextView, startupTextView, modelTextView;
   protected ImageView bottomSheetArrowImageView;
   private ImageView plusImageView, minusImageView;
   private SwitchCompat apiSwitchCompat;
@@ -103,11 +193,23 @@ public abstract class CameraActivity extends AppCompatActivity
     setSupportActionBar(toolbar);
     getSupportActionBar().setDisplayShowTitleEnabled(false);
 
-    if (hasPermission()) {
+    final String replayName = getIntent().getStringExtra(EXTRA_REPLAY);
+    if (replayName != null) {
+      openReplay(replayName);
+    } else if (hasPermission()) {
       setFragment();
     } else {
       requestPermission();
     }
+    final String recordName = getIntent().getStringExtra(EXTRA_RECORD);
+    if (recordName != null && replayName == null) {
+      try {
+        frameRecorder =
+            FrameRecorder.open(new File(getFilesDir(), recordName), RECORDING_MAX_BYTES);
+      } catch (final IOException e) {
+        LOGGER.e(e, "Exception!");
+      }
+    }
 
     threadsTextView = findViewById(R.id.threads);
     plusImageView = findViewById(R.id.plus);
@@ -168,28 +270,90 @@ public abstract class CameraActivity extends AppCompatActivity
     frameValueTextView = findViewById(R.id.frame_info);
     cropValueTextView = findViewById(R.id.crop_info);
     inferenceTimeTextView = findViewById(R.id.inference_info);
+    pipelineTextView = findViewById(R.id.pipeline_info);
+    statsTextView = findViewById(R.id.stats_info);
+    glassTextView = findViewById(R.id.glass_info);
+    hudTextView = findViewById(R.id.hud_info);
+    startupTextView = findViewById(R.id.startup_info);
+    modelTextView = findViewById(R.id.model_info);
 
     apiSwitchCompat.setOnCheckedChangeListener(this);
 
     plusImageView.setOnClickListener(this);
     minusImageView.setOnClickListener(this);
+    findViewById(R.id.model_row).setOnClickListener(this);
+
+    if (replaySource != null) {
+      // O tamanho do quadro vem da gravação, e não de uma câmera.
+      previewWidth = replaySource.getWidth();
+      previewHeight = replaySource.getHeight();
+      previewRotation = replaySource.getRotation();
+      onPreviewSizeChosen(new Size(previewWidth, previewHeight), previewRotation);
+    }
+  }
+
+  //--------------------------------------------------------------------------------------------------------
+  //Método openReplay
+  // Abre a gravação e monta a tela do fragmento da câmera (com a sobreposição), sem abrir a câmera.
+  private void openReplay(final String name) {
+    try {
+      replaySource =
+          ReplayFrameSource.open(
+              new File(getFilesDir(), name),
+              REPLAY_RATE_MAX.equals(getIntent().getStringExtra(EXTRA_REPLAY_RATE)));
+    } catch (final IOException e) {
+      LOGGER.e(e, "Exception!");
+      Toast.makeText(this, "Recording could not be opened", Toast.LENGTH_LONG).show();
+      finish();
+      return;
+    }
+    getLayoutInflater().inflate(getLayoutId(), (ViewGroup) findViewById(R.id.container), true);
   }
 
   //--------------------------------------------------------------------------------------------------------
   //Método getRgbBytes
-  protected int[] getRgbBytes() {
-    imageConverter.run();
+  /** Converte o quadro para ARGB. Deve ser chamado apenas da etapa de conversão. */
+  protected int[] getRgbBytes(final Frame frame) {
+    if (rgbBytes == null || rgbBytes.length != frame.width * frame.height) {
+      rgbBytes = new int[frame.width * frame.height];
+    }
+    if (frame.nv21) {
+      ImageUtils.convertYUV420SPToARGB8888(frame.yuvBytes[0], frame.width, frame.height, rgbBytes);
+    } else {
+      ImageUtils.convertYUV420ToARGB8888(
+          frame.yuvBytes[0],
+          frame.yuvBytes[1],
+          frame.yuvBytes[2],
+          frame.width,
+          frame.height,
+          frame.yRowStride,
+          frame.uvRowStride,
+          frame.uvPixelStride,
+          rgbBytes);
+    }
     return rgbBytes;
   }
 
+  //--------------------------------------------------------------------------------------------------------
+  //Método readCapture
+  /** Copia os planos de uma imagem Camera2 emprestada para os buffers do quadro e a devolve. */
+  private void readCapture(final Frame frame) {
+    if (frame.image == null) {
+      return;
+    }
+    TraceRecorder.beginSection(TraceRecorder.STAGE_FILL);
+    frame.readCapture();
+    TraceRecorder.endSection();
+  }
+
   //--------------------------------------------------------------------------------------------------------
   //Métodos getLuminance e getLuminanceStride
-  protected int getLuminanceStride() {
-    return yRowStride;
+  protected int getLuminanceStride(final Frame frame) {
+    return frame.yRowStride;
   }
 
-  protected byte[] getLuminance() {
-    return yuvBytes[0];
+  protected byte[] getLuminance(final Frame frame) {
+    return frame.yuvBytes[0];
   }
 
   //--------------------------------------------------------------------------------------------------------
@@ -197,46 +361,47 @@ public abstract class CameraActivity extends AppCompatActivity
   /** Callback for android.hardware.Camera API */
   @Override
   public void onPreviewFrame(final byte[] bytes, final Camera camera) {
-    if (isProcessingFrame) {
-      LOGGER.w("Dropping frame!");
-      return;
-    }
-
+    // A Camera legada não informa o instante de captura; a chegada do quadro é a melhor estimativa.
+    final long arrivalNs = SystemClock.elapsedRealtimeNanos();
+    hud.onCameraFrame(arrivalNs);
     try {
       // Inicialize os bitmaps de armazenamento uma vez quando a resolução for conhecida.
-      if (rgbBytes == null) {
+      if (previewWidth == 0 || previewHeight == 0) {
         Camera.Size previewSize = camera.getParameters().getPreviewSize();
         previewHeight = previewSize.height;
         previewWidth = previewSize.width;
-        rgbBytes = new int[previewWidth * previewHeight];
-        onPreviewSizeChosen(new Size(previewSize.width, previewSize.height), 90);
+        previewRotation = 90;
+        onPreviewSizeChosen(new Size(previewSize.width, previewSize.height), previewRotation);
       }
     } catch (final Exception e) {
       LOGGER.e(e, "Exception!");
+      camera.addCallbackBuffer(bytes);
       return;
     }
 
-    isProcessingFrame = true;
-    yuvBytes[0] = bytes;
-    yRowStride = previewWidth;
+    if (frameRecorder != null) {
+      frameRecorder.recordNv21(bytes, previewWidth, previewHeight, previewRotation, arrivalNs);
+    }
 
-    imageConverter =
-        new Runnable() {
-          @Override
-          public void run() {
-            ImageUtils.convertYUV420SPToARGB8888(bytes, previewWidth, previewHeight, rgbBytes);
-          }
-        };
+    final FramePipeline pipeline = this.pipeline;
+    final Frame frame = pipeline != null ? pipeline.obtainFrame() : null;
+    if (frame == null) {
+      // Normal com o quadro mais recente vencendo: em debug, para não inundar o logcat.
+      LOGGER.d("Dropping frame!");
+      TraceRecorder.instant(TraceRecorder.STAGE_DROP, -1);
+      camera.addCallbackBuffer(bytes);
+      return;
+    }
 
-    postInferenceCallback =
-        new Runnable() {
-          @Override
-          public void run() {
-            camera.addCallbackBuffer(bytes);
-            isProcessingFrame = false;
-          }
-        };
-    processImage();
+    TraceRecorder.setCurrentFrame(frame.id);
+    TraceRecorder.beginSection(TraceRecorder.STAGE_CAMERA_CALLBACK);
+    // O buffer da câmera é emprestado ao quadro, sem cópia, e volta para a câmera quando a conversão
+    // termina. Com CAPTURE_BUFFER_COUNT buffers, a câmera continua a produzir enquanto isso.
+    legacyCamera = camera;
+    frame.attachNv21(bytes, previewWidth, previewHeight, legacyBufferOwner);
+    frame.sensorTimestampNs = arrivalNs;
+    pipeline.submit(frame);
+    TraceRecorder.endSection();
   }
 
   //--------------------------------------------------------------------------------------------------------
@@ -244,64 +409,57 @@ public abstract class CameraActivity extends AppCompatActivity
   /** Callback para Camera2 API */
   @Override
   public void onImageAvailable(final ImageReader reader) {
+    final long arrivalNs = SystemClock.elapsedRealtimeNanos();
     //Precisamos esperar até que tenhamos algum tamanho de onPreviewSizeChosen
     if (previewWidth == 0 || previewHeight == 0) {
       return;
     }
-    if (rgbBytes == null) {
-      rgbBytes = new int[previewWidth * previewHeight];
-    }
+    final Image image;
     try {
-      final Image image = reader.acquireLatestImage();
-
-      if (image == null) {
-        return;
-      }
-
-      if (isProcessingFrame) {
-        image.close();
-        return;
-      }
-      isProcessingFrame = true;
-      Trace.beginSection("imageAvailable");
-      final Plane[] planes = image.getPlanes();
-      fillBytes(planes, yuvBytes);
-      yRowStride = planes[0].getRowStride();
-      final int uvRowStride = planes[1].getRowStride();
-      final int uvPixelStride = planes[1].getPixelStride();
-
-      imageConverter =
-          new Runnable() {
-            @Override
-            public void run() {
-              ImageUtils.convertYUV420ToARGB8888(
-                  yuvBytes[0],
-                  yuvBytes[1],
-                  yuvBytes[2],
-                  previewWidth,
-                  previewHeight,
-                  yRowStride,
-                  uvRowStride,
-                  uvPixelStride,
-                  rgbBytes);
-            }
-          };
-
-      postInferenceCallback =
-          new Runnable() {
-            @Override
-            public void run() {
-              image.close();
-              isProcessingFrame = false;
-            }
-          };
+      image = reader.acquireLatestImage();
+    } catch (final IllegalStateException e) {
+      // Todas as imagens do ImageReader estão emprestadas ao pipeline.
+      TraceRecorder.instant(TraceRecorder.STAGE_DROP, -1);
+      return;
+    }
+    if (image == null) {
+      return;
+    }
+    hud.onCameraFrame(arrivalNs);
+    // Com fonte UNKNOWN o timestamp do sensor não é comparável com o relógio do sistema.
+    final long timestampNs = sensorTimestampRealtime ? image.getTimestamp() : arrivalNs;
+    if (frameRecorder != null) {
+      // Grava todo quadro recebido, antes de um possível descarte no pipeline.
+      frameRecorder.recordImage(image, previewRotation, timestampNs);
+    }
 
-      processImage();
+    final FramePipeline pipeline = this.pipeline;
+    final Frame frame = pipeline != null ? pipeline.obtainFrame() : null;
+    if (frame == null) {
+      TraceRecorder.instant(TraceRecorder.STAGE_DROP, -1);
+      image.close();
+      return;
+    }
+    Trace.beginSection("imageAvailable");
+    TraceRecorder.setCurrentFrame(frame.id);
+    TraceRecorder.beginSection(TraceRecorder.STAGE_CAMERA_CALLBACK);
+    try {
+      // A imagem é emprestada ao quadro; os planos são copiados na etapa de conversão e só então a
+      // imagem volta para o ImageReader, que tem CAPTURE_BUFFER_COUNT imagens.
+      frame.attachImage(image, previewWidth, previewHeight);
+      frame.sensorTimestampNs = timestampNs;
+      pipeline.submit(frame);
     } catch (final Exception e) {
       LOGGER.e(e, "Exception!");
+      if (frame.image == null) {
+        image.close();
+      }
+      pipeline.recycle(frame);
+      TraceRecorder.endSection();
       Trace.endSection();
       return;
     }
+    TraceRecorder.endSection();
     Trace.endSection();
   }
 
@@ -318,22 +476,44 @@ public abstract class CameraActivity extends AppCompatActivity
     LOGGER.d("onResume " + this);
     super.onResume();
 
-    handlerThread = new HandlerThread("inference");
-    handlerThread.start();
-    handler = new Handler(handlerThread.getLooper());
+    final FramePipeline pipeline = new FramePipeline();
+    pipeline.addStage(
+        "convert",
+        frame -> {
+          readCapture(frame);
+          try {
+            return convertFrame(frame);
+          } finally {
+            // A conversão terminou de ler o quadro da câmera; o buffer volta para ela.
+            frame.releaseCapture();
+          }
+        });
+    pipeline.addStage("inference", frame -> inferFrame(frame));
+    pipeline.addStage("track", frame -> trackFrame(frame));
+    pipeline.start();
+    this.pipeline = pipeline;
+    usageMeter.start();
+    startReplayIfReady();
   }
 
   @Override
   public synchronized void onPause() {
     LOGGER.d("onPause " + this);
 
-    handlerThread.quitSafely();
-    try {
-      handlerThread.join();
-      handlerThread = null;
-      handler = null;
-    } catch (final InterruptedException e) {
-      LOGGER.e(e, "Exception!");
+    if (replaySource != null) {
+      replaySource.stop();
+      replayStarted = false;
+    }
+    final FramePipeline pipeline = this.pipeline;
+    this.pipeline = null;
+    if (pipeline != null) {
+      pipeline.stop();
+    }
+    // Reproduções não usam a câmera e não servem de base para o modo sem tela.
+    if (replaySource == null && usageMeter.getElapsedMs() >= UsageMeter.MIN_SESSION_MS) {
+      usageMeter.save(
+          getSharedPreferences(UsageMeter.PREFERENCES_NAME, MODE_PRIVATE),
+          UsageMeter.PREFIX_ACTIVITY);
     }
 
     super.onPause();
@@ -348,15 +528,152 @@ public abstract class CameraActivity extends AppCompatActivity
   @Override
   public synchronized void onDestroy() {
     LOGGER.d("onDestroy " + this);
+    if (frameRecorder != null) {
+      try {
+        frameRecorder.close();
+      } catch (final IOException e) {
+        LOGGER.e(e, "Exception!");
+      }
+    }
     super.onDestroy();
   }
 
+  //--------------------------------------------------------------------------------------------------------
+  //Método onReadyForFrames
+  /**
+   * Chamado pela subclasse, na thread de UI, quando os quadros passam a ser processados (e não mais
+   * descartados na partida).
+   */
+  protected void onReadyForFrames() {
+    readyForFrames = true;
+    startReplayIfReady();
+  }
+
+  //--------------------------------------------------------------------------------------------------------
+  //Método startReplayIfReady
+  // Cada retomada reproduz a gravação desde o início, assim que a subclasse estiver pronta.
+  private synchronized void startReplayIfReady() {
+    final FramePipeline pipeline = this.pipeline;
+    if (replaySource == null || replayStarted || !readyForFrames || pipeline == null) {
+      return;
+    }
+    replayStarted = true;
+    replaySource.start(pipeline, replayListener);
+  }
+
+  /** Executa a tarefa na thread de inferência, entre dois quadros. */
   protected synchronized void runInBackground(final Runnable r) {
-    if (handler != null) {
-      handler.post(r);
+    final FramePipeline pipeline = this.pipeline;
+    if (pipeline != null) {
+      pipeline.post(STAGE_INFER, r);
     }
   }
 
+  //--------------------------------------------------------------------------------------------------------
+  //Método getPipelineStatString
+  /** Profundidade e descartes por etapa do pipeline, para exibição. */
+  protected String getPipelineStatString() {
+    final FramePipeline pipeline = this.pipeline;
+    return pipeline != null ? pipeline.getStatString() : "";
+  }
+
+  //--------------------------------------------------------------------------------------------------------
+  //Método getPipelineCapacityFps
+  /** Vazão sustentável do pipeline atual, usada para ajustar o FPS pedido à câmera. */
+  protected double getPipelineCapacityFps() {
+    final FramePipeline pipeline = this.pipeline;
+    return pipeline != null ? pipeline.getCapacityFps() : 0;
+  }
+
+  //--------------------------------------------------------------------------------------------------------
+  //Método getPipelineDrops
+  /** Quadros descartados na captura e entre as etapas desde o início do pipeline atual. */
+  protected long getPipelineDrops() {
+    final FramePipeline pipeline = this.pipeline;
+    if (pipeline == null) {
+      return 0;
+    }
+    long drops = pipeline.getCaptureDrops();
+    for (int i = STAGE_CONVERT; i <= STAGE_TRACK; ++i) {
+      drops += pipeline.getDrops(i);
+    }
+    return drops;
+  }
+
+  //--------------------------------------------------------------------------------------------------------
+  //Método writeReplayReport
+  // Chamado na thread da reprodução, com o pipeline já vazio: grava e mostra o relatório.
+  private void writeReplayReport(final ReplayFrameSource source) {
+    final String report = getReplayReport(source);
+    LOGGER.i("Replay report:\n%s", report);
+    final String name = source.getFile().getName();
+    final int dot = name.lastIndexOf('.');
+    final File file =
+        new File(
+            source.getFile().getParentFile(),
+            (dot > 0 ? name.substring(0, dot) : name) + "_report.txt");
+    try (OutputStreamWriter writer = new OutputStreamWriter(new FileOutputStream(file, false))) {
+      writer.write(report);
+      LOGGER.i("Replay report written to %s", file.getAbsolutePath());
+    } catch (final IOException e) {
+      LOGGER.e(e, "Exception!");
+    }
+    runOnUiThread(
+        () -> Toast.makeText(this, "Replay finished: " + file.getName(), Toast.LENGTH_LONG).show());
+  }
+
+  //--------------------------------------------------------------------------------------------------------
+  //Método getReplayReport
+  /**
+   * Relatório de uma reprodução: vazão até o fim do rastreamento, tempo de cada etapa e descartes.
+   * As subclasses acrescentam as suas linhas.
+   */
+  protected String getReplayReport(final ReplayFrameSource source) {
+    final FramePipeline pipeline = this.pipeline;
+    if (pipeline == null) {
+      return "";
+    }
+    final double seconds = source.getElapsedNanos() / 1e9;
+    final long tracked = pipeline.getProcessed(STAGE_TRACK);
+    return String.format(
+            "replay %s at %s rate: %d frames recorded at %.1f fps, %d submitted\n"
+                + "%d tracked in %.2fs: %.1f fps\n",
+            source.getFile().getName(),
+            source.isMaxRate() ? "max" : "recorded",
+            source.getFrameCount(),
+            source.getRecordedFps(),
+            source.getSubmitted(),
+            tracked,
+            seconds,
+            seconds > 0 ? tracked / seconds : 0.0)
+        + pipeline.getLatencyStatString()
+        + "\n"
+        + pipeline.getStatString();
+  }
+
+  //--------------------------------------------------------------------------------------------------------
+  //Método requestUiUpdate
+  /**
+   * Agenda uma atualização da folha inferior, no máximo uma a cada UI_UPDATE_INTERVAL_MS. Pode ser
+   * chamado de qualquer thread a cada quadro; não aloca.
+   */
+  protected void requestUiUpdate() {
+    final long now = SystemClock.uptimeMillis();
+    if (uiUpdatePending || now - lastUiUpdateMs < UI_UPDATE_INTERVAL_MS) {
+      return;
+    }
+    uiUpdatePending = true;
+    lastUiUpdateMs = now;
+    runOnUiThread(uiUpdater);
+  }
+
+  //--------------------------------------------------------------------------------------------------------
+  //Método updateUi
+  /** Atualiza a folha inferior na thread de UI; as subclasses acrescentam as suas linhas. */
+  protected void updateUi() {
+    hudTextView.setText(hud.format(getPipelineDrops()) + "\n" + usageMeter.format());
+  }
+
   //--------------------------------------------------------------------------------------------------------
   //Método onRequestPermissionsResult
   @Override
@@ -450,6 +767,11 @@ public abstract class CameraActivity extends AppCompatActivity
                 || isHardwareLevelSupported(
                     characteristics, CameraCharacteristics.INFO_SUPPORTED_HARDWARE_LEVEL_FULL);
         LOGGER.i("Camera API lv2?: %s", useCamera2API);
+        final Integer timestampSource =
+            characteristics.get(CameraCharacteristics.SENSOR_INFO_TIMESTAMP_SOURCE);
+        sensorTimestampRealtime =
+            timestampSource != null
+                && timestampSource == CameraCharacteristics.SENSOR_INFO_TIMESTAMP_SOURCE_REALTIME;
         return cameraId;
       }
     } catch (CameraAccessException e) {
@@ -473,50 +795,35 @@ public abstract class CameraActivity extends AppCompatActivity
                 public void onPreviewSizeChosen(final Size size, final int rotation) {
                   previewHeight = size.getHeight();
                   previewWidth = size.getWidth();
+                  previewRotation = rotation;
                   CameraActivity.this.onPreviewSizeChosen(size, rotation);
                 }
               },
               this,
               getLayoutId(),
-              getDesiredPreviewFrameSize());
+              getDesiredPreviewFrameSize(),
+              getAnalysisMinSide());
 
       camera2Fragment.setCamera(cameraId);
+      camera2Fragment.setMaxImages(CAPTURE_BUFFER_COUNT);
+      camera2Fragment.setThroughputSource(this::getPipelineCapacityFps);
       fragment = camera2Fragment;
     } else {
-      fragment =
-          new LegacyCameraConnectionFragment(this, getLayoutId(), getDesiredPreviewFrameSize());
+      // A Camera legada entrega os quadros do próprio fluxo de visualização; não há segundo fluxo.
+      final LegacyCameraConnectionFragment legacyFragment =
+          new LegacyCameraConnectionFragment(
+              this, getLayoutId(), getDesiredPreviewFrameSize(), CAPTURE_BUFFER_COUNT);
+      legacyFragment.setThroughputSource(this::getPipelineCapacityFps);
+      fragment = legacyFragment;
     }
 
     getFragmentManager().beginTransaction().replace(R.id.container, fragment).commit();
   }
 
-  //--------------------------------------------------------------------------------------------------------
-  //Método fillBytes
-  protected void fillBytes(final Plane[] planes, final byte[][] yuvBytes) {
-    // Por causa do intervalo variável da linha, não é possível saber em
-    // avança as dimensões reais necessárias dos planos yuv.
-    for (int i = 0; i < planes.length; ++i) {
-      final ByteBuffer buffer = planes[i].getBuffer();
-      if (yuvBytes[i] == null) {
-        LOGGER.d("Initializing buffer %d at size %d", i, buffer.capacity());
-        yuvBytes[i] = new byte[buffer.capacity()];
-      }
-      buffer.get(yuvBytes[i]);
-    }
-  }
-
   public boolean isDebug() {
     return debug;
   }
 
-  //--------------------------------------------------------------------------------------------------------
-  //Método readyForNext
-  protected void readyForNextImage() {
-    if (postInferenceCallback != null) {
-      postInferenceCallback.run();
-    }
-  }
-
   //--------------------------------------------------------------------------------------------------------
   //Método getScreenOrientation
   protected int getScreenOrientation() {
@@ -561,6 +868,8 @@ public abstract class CameraActivity extends AppCompatActivity
       numThreads--;
       threadsTextView.setText(String.valueOf(numThreads));
       setNumThreads(numThreads);
+    } else if (v.getId() == R.id.model_row) {
+      onModelClicked();
     }
   }
 
@@ -578,9 +887,40 @@ public abstract class CameraActivity extends AppCompatActivity
     inferenceTimeTextView.setText(inferenceTime);
   }
 
+  protected void showPipelineInfo(String pipelineInfo) {
+    pipelineTextView.setText(pipelineInfo);
+  }
+
+  protected void showStatsInfo(String statsInfo) {
+    statsTextView.setText(statsInfo);
+  }
+
+  protected void showGlassInfo(String glassInfo) {
+    glassTextView.setText(glassInfo);
+  }
+
+  protected void showStartupInfo(String startupInfo) {
+    startupTextView.setText(startupInfo);
+  }
+
+  protected void showModelInfo(String modelInfo) {
+    modelTextView.setText(modelInfo);
+  }
+
+  /** Toque na linha do modelo; as subclasses que têm mais de um modelo trocam para o próximo. */
+  protected void onModelClicked() {}
+
   //--------------------------------------------------------------------------------------------------------
   //Métodos sem instância
-  protected abstract void processImage();
+  /**
+   * Etapas do pipeline, cada uma em sua própria thread. Retornar falso encerra o quadro na etapa
+   * atual, sem passar para a seguinte.
+   */
+  protected abstract boolean convertFrame(final Frame frame);
+
+  protected abstract boolean inferFrame(final Frame frame);
+
+  protected abstract boolean trackFrame(final Frame frame);
 
   protected abstract void onPreviewSizeChosen(final Size size, final int rotation);
 
@@ -588,6 +928,14 @@ public abstract class CameraActivity extends AppCompatActivity
 
   protected abstract Size getDesiredPreviewFrameSize();
 
+  /**
+   * Lado mínimo do fluxo YUV de análise na Camera2, separado da visualização em tela. O padrão 0
+   * mantém um único fluxo de {@link #getDesiredPreviewFrameSize()} para as duas coisas.
+   */
+  protected int getAnalysisMinSide() {
+    return 0;
+  }
+
   protected abstract void setNumThreads(int numThreads);
 
   protected abstract void setUseNNAPI(boolean isChecked);
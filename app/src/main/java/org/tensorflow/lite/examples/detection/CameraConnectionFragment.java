@@ -45,6 +45,7 @@ import android.os.Bundle;
 import android.os.Handler;
 import android.os.HandlerThread;
 import android.text.TextUtils;
+import android.util.Range;
 import android.util.Size;
 import android.util.SparseIntArray;
 import android.view.LayoutInflater;
@@ -76,6 +77,14 @@ public class CameraConnectionFragment extends Fragment {
    * contendo um quadrado DESIRED_SIZE x DESIRED_SIZE.
    */
   private static final int MINIMUM_PREVIEW_SIZE = 320;
+  /**
+   * Limite da visualização em tela no modo de dois fluxos. 1080p é o maior tamanho que toda câmera
+   * Camera2 garante para a visualização junto com um segundo fluxo YUV.
+   */
+  private static final int MAXIMUM_DISPLAY_WIDTH = 1920;
+  private static final int MAXIMUM_DISPLAY_HEIGHT = 1080;
+  // Diferença máxima entre as proporções da visualização e do fluxo de análise.
+  private static final float ASPECT_TOLERANCE = 0.01f;
   /** Conversão da rotação da tela para orientação JPEG. */
   private static final SparseIntArray ORIENTATIONS = new SparseIntArray();
   private static final String FRAGMENT_DIALOG = "dialog";
@@ -93,6 +102,11 @@ public class CameraConnectionFragment extends Fragment {
   private final OnImageAvailableListener imageListener;
   /** O tamanho de entrada em pixels desejado pelo TensorFlow (largura e altura de um bitmap quadrado). */
   private final Size inputSize;
+  /**
+   * Lado mínimo do fluxo de análise (normalmente a entrada do modelo), ou 0 para usar um único fluxo
+   * do tamanho de {@link #inputSize} para a tela e para a análise.
+   */
+  private final int analysisMinSide;
   /** O identificador de layout a ser inflado para este fragmento. */
   private final int layout;
   private final ConnectionCallback cameraConnectionCallback;
@@ -122,6 +136,25 @@ public class CameraConnectionFragment extends Fragment {
   private Integer sensorOrientation;
   /** O {@link Size} da visualização da câmera */
   private Size previewSize;
+  /** O {@link Size} dos quadros YUV entregues ao {@link #imageListener}. */
+  private Size analysisSize;
+  /**
+   * Imagens do {@link #previewReader}. O ouvinte pode segurar até maxImages - 2 delas, já que
+   * acquireLatestImage precisa de duas livres.
+   */
+  private int maxImages = 2;
+  /** Faixas de FPS suportadas pela câmera, na mesma ordem que as de {@link #frameRateController}. */
+  private Range<Integer>[] fpsRanges;
+  private FrameRateController frameRateController;
+  private FrameRateController.ThroughputSource throughputSource;
+  /** Reavalia periodicamente a faixa de FPS e reemite a requisição repetida quando ela muda. */
+  private final Runnable frameRateUpdater =
+      new Runnable() {
+        @Override
+        public void run() {
+          updateFrameRate();
+        }
+      };
   /** Um thread adicional para executar tarefas que não devem bloquear a IU. */
   private HandlerThread backgroundThread;
   /** Um {@link Handler} para executar tarefas em segundo plano. */
@@ -202,11 +235,13 @@ public class CameraConnectionFragment extends Fragment {
       final ConnectionCallback connectionCallback,
       final OnImageAvailableListener imageListener,
       final int layout,
-      final Size inputSize) {
+      final Size inputSize,
+      final int analysisMinSide) {
     this.cameraConnectionCallback = connectionCallback;
     this.imageListener = imageListener;
     this.layout = layout;
     this.inputSize = inputSize;
+    this.analysisMinSide = analysisMinSide;
   }
 
   //--------------------------------------------------------------------------------------------------------
@@ -260,6 +295,60 @@ public class CameraConnectionFragment extends Fragment {
     }
   }
 
+  //--------------------------------------------------------------------------------------------------------
+  /**Método chooseDisplaySize
+   * Escolhe o maior tamanho com a proporção de {@code aspect} que não passa de
+   * MAXIMUM_DISPLAY_WIDTH x MAXIMUM_DISPLAY_HEIGHT, ou null se nenhum servir.
+   */
+  protected static Size chooseDisplaySize(final Size[] choices, final Size aspect) {
+    final CompareSizesByArea compareSizes = new CompareSizesByArea();
+    Size chosen = null;
+    for (final Size option : choices) {
+      if (option.getWidth() <= MAXIMUM_DISPLAY_WIDTH
+          && option.getHeight() <= MAXIMUM_DISPLAY_HEIGHT
+          && hasSameAspect(option, aspect)
+          && (chosen == null || compareSizes.compare(option, chosen) > 0)) {
+        chosen = option;
+      }
+    }
+    return chosen;
+  }
+
+  //--------------------------------------------------------------------------------------------------------
+  /**Método chooseAnalysisSize
+   * Escolhe o menor tamanho com a proporção de {@code aspect} cujos dois lados são pelo menos
+   * {@code minSide}; sem nenhum com a mesma proporção, recorre a {@link #chooseOptimalSize}.
+   *
+   * @param choices tamanhos YUV_420_888 suportados pela câmera
+   * @param minSide lado mínimo, normalmente o lado da entrada do modelo (ou um múltiplo dele,
+   *     quando a ROI precisa de quadro em volta dos rastros)
+   * @param aspect tamanho da visualização, cuja proporção deve ser mantida
+   */
+  protected static Size chooseAnalysisSize(
+      final Size[] choices, final int minSide, final Size aspect) {
+    final CompareSizesByArea compareSizes = new CompareSizesByArea();
+    Size chosen = null;
+    for (final Size option : choices) {
+      if (option.getWidth() >= minSide
+          && option.getHeight() >= minSide
+          && hasSameAspect(option, aspect)
+          && (chosen == null || compareSizes.compare(option, chosen) < 0)) {
+        chosen = option;
+      }
+    }
+    if (chosen == null) {
+      LOGGER.w("No analysis size with the preview aspect ratio; ignoring aspect.");
+      return chooseOptimalSize(choices, minSide, minSide);
+    }
+    LOGGER.i("Chosen analysis size: %s", chosen);
+    return chosen;
+  }
+
+  private static boolean hasSameAspect(final Size a, final Size b) {
+    return Math.abs((float) a.getWidth() / a.getHeight() - (float) b.getWidth() / b.getHeight())
+        < ASPECT_TOLERANCE;
+  }
+
   //--------------------------------------------------------------------------------------------------------
   //Método construtor
   public static CameraConnectionFragment newInstance(
@@ -267,7 +356,20 @@ public class CameraConnectionFragment extends Fragment {
       final OnImageAvailableListener imageListener,
       final int layout,
       final Size inputSize) {
-    return new CameraConnectionFragment(callback, imageListener, layout, inputSize);
+    return newInstance(callback, imageListener, layout, inputSize, 0);
+  }
+
+  /**
+   * @param analysisMinSide lado mínimo do fluxo YUV de análise; com um valor positivo, a tela recebe
+   *     uma visualização em resolução cheia e o {@code imageListener} um segundo fluxo, pequeno.
+   */
+  public static CameraConnectionFragment newInstance(
+      final ConnectionCallback callback,
+      final OnImageAvailableListener imageListener,
+      final int layout,
+      final Size inputSize,
+      final int analysisMinSide) {
+    return new CameraConnectionFragment(callback, imageListener, layout, inputSize, analysisMinSide);
   }
 
   //--------------------------------------------------------------------------------------------------------
@@ -344,6 +446,19 @@ public class CameraConnectionFragment extends Fragment {
     this.cameraId = cameraId;
   }
 
+  //--------------------------------------------------------------------------------------------------------
+  //Método setThroughputSource
+  /** Liga o controle adaptativo de FPS à vazão medida pelo pipeline. */
+  public void setThroughputSource(final FrameRateController.ThroughputSource throughputSource) {
+    this.throughputSource = throughputSource;
+  }
+
+  //--------------------------------------------------------------------------------------------------------
+  //Método setMaxImages
+  public void setMaxImages(final int maxImages) {
+    this.maxImages = Math.max(2, maxImages);
+  }
+
   //--------------------------------------------------------------------------------------------------------
   //Método setUpCameraOutputs
   /** Configura variáveis de membro relacionadas à câmera. */
@@ -358,6 +473,17 @@ public class CameraConnectionFragment extends Fragment {
 
       sensorOrientation = characteristics.get(CameraCharacteristics.SENSOR_ORIENTATION);
 
+      fpsRanges = characteristics.get(CameraCharacteristics.CONTROL_AE_AVAILABLE_TARGET_FPS_RANGES);
+      frameRateController = null;
+      if (fpsRanges != null && fpsRanges.length > 0) {
+        final int[][] ranges = new int[fpsRanges.length][];
+        for (int i = 0; i < fpsRanges.length; ++i) {
+          ranges[i] = new int[] {fpsRanges[i].getLower(), fpsRanges[i].getUpper()};
+        }
+        frameRateController =
+            new FrameRateController(ranges, FrameRateController.DEFAULT_HEADROOM);
+      }
+
       // Perigo, W.R.! A tentativa de usar um tamanho de visualização muito grande pode exceder a câmera
       // limitação de largura de banda do barramento, resultando em belas visualizações, mas o armazenamento de
       // dados de captura de lixo.
@@ -366,6 +492,20 @@ public class CameraConnectionFragment extends Fragment {
               map.getOutputSizes(SurfaceTexture.class),
               inputSize.getWidth(),
               inputSize.getHeight());
+      analysisSize = previewSize;
+
+      // Dois fluxos: a tela recebe a maior visualização com a mesma proporção, e a análise o menor
+      // quadro YUV que ainda cobre a entrada do modelo, o que barateia a cópia e a conversão.
+      if (analysisMinSide > 0) {
+        final Size displaySize =
+            chooseDisplaySize(map.getOutputSizes(SurfaceTexture.class), previewSize);
+        if (displaySize != null) {
+          previewSize = displaySize;
+        }
+        analysisSize =
+            chooseAnalysisSize(
+                map.getOutputSizes(ImageFormat.YUV_420_888), analysisMinSide, previewSize);
+      }
 
       // Ajustamos a proporção de aspecto de TextureView ao tamanho da visualização que escolhemos.
       final int orientation = getResources().getConfiguration().orientation;
@@ -384,7 +524,7 @@ public class CameraConnectionFragment extends Fragment {
       throw new IllegalStateException(getString(R.string.tfe_od_camera_error));
     }
 
-    cameraConnectionCallback.onPreviewSizeChosen(previewSize, sensorOrientation);
+    cameraConnectionCallback.onPreviewSizeChosen(analysisSize, sensorOrientation);
   }
 
   //--------------------------------------------------------------------------------------------------------
@@ -411,6 +551,9 @@ public class CameraConnectionFragment extends Fragment {
   //Método closeCamera
   /** Fecha a atual {@link CameraDevice}. */
   private void closeCamera() {
+    if (backgroundHandler != null) {
+      backgroundHandler.removeCallbacks(frameRateUpdater);
+    }
     try {
       cameraOpenCloseLock.acquire();
       if (null != captureSession) {
@@ -432,6 +575,32 @@ public class CameraConnectionFragment extends Fragment {
     }
   }
 
+  //--------------------------------------------------------------------------------------------------------
+  //Método updateFrameRate
+  /**
+   * Roda na thread de fundo: pede à câmera a menor faixa de FPS que cobre a vazão do pipeline com
+   * folga, reemitindo a requisição repetida só quando a faixa muda.
+   */
+  private void updateFrameRate() {
+    if (null == captureSession || null == previewRequestBuilder) {
+      return;
+    }
+    final int index = frameRateController.update(throughputSource.getThroughputFps());
+    if (index >= 0) {
+      LOGGER.i("Camera FPS range: %s", fpsRanges[index]);
+      previewRequestBuilder.set(CaptureRequest.CONTROL_AE_TARGET_FPS_RANGE, fpsRanges[index]);
+      previewRequest = previewRequestBuilder.build();
+      try {
+        captureSession.setRepeatingRequest(previewRequest, captureCallback, backgroundHandler);
+      } catch (final CameraAccessException | IllegalStateException e) {
+        // A sessão foi fechada entre a verificação e a chamada.
+        LOGGER.e(e, "Exception!");
+        return;
+      }
+    }
+    backgroundHandler.postDelayed(frameRateUpdater, FrameRateController.UPDATE_INTERVAL_MS);
+  }
+
   //--------------------------------------------------------------------------------------------------------
   //Método startBackgroundThread
   /** Inicia uma tread de fundo e um {@link Handler}. */
@@ -474,10 +643,14 @@ public class CameraConnectionFragment extends Fragment {
 
       LOGGER.i("Opening camera preview: " + previewSize.getWidth() + "x" + previewSize.getHeight());
 
-      // Crie o leitor para os quadros de visualização.
+      // Crie o leitor para os quadros de análise.
+      LOGGER.i("Opening analysis stream: %s", analysisSize);
       previewReader =
           ImageReader.newInstance(
-              previewSize.getWidth(), previewSize.getHeight(), ImageFormat.YUV_420_888, 2);
+              analysisSize.getWidth(),
+              analysisSize.getHeight(),
+              ImageFormat.YUV_420_888,
+              maxImages);
 
       previewReader.setOnImageAvailableListener(imageListener, backgroundHandler);
       previewRequestBuilder.addTarget(previewReader.getSurface());
@@ -509,6 +682,10 @@ public class CameraConnectionFragment extends Fragment {
                 previewRequest = previewRequestBuilder.build();
                 captureSession.setRepeatingRequest(
                     previewRequest, captureCallback, backgroundHandler);
+                if (frameRateController != null && throughputSource != null) {
+                  backgroundHandler.postDelayed(
+                      frameRateUpdater, FrameRateController.UPDATE_INTERVAL_MS);
+                }
               } catch (final CameraAccessException e) {
                 LOGGER.e(e, "Exception!");
               }
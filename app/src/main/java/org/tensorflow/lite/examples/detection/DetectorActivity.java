@@ -18,38 +18,54 @@ package org.tensorflow.lite.examples.detection;
 
 //Importações
 import android.content.Context;
+import android.content.Intent;
 import android.graphics.Bitmap;
 import android.graphics.Bitmap.Config;
 import android.graphics.Canvas;
-import android.graphics.Color;
 import android.graphics.Matrix;
-import android.graphics.Paint;
-import android.graphics.Paint.Style;
-import android.graphics.RectF;
 import android.graphics.Typeface;
 import android.media.ImageReader.OnImageAvailableListener;
 import android.os.Build;
+import android.os.Bundle;
 import android.os.SystemClock;
 import android.util.Size;
+import android.util.SparseArray;
 import android.util.TypedValue;
+import android.view.View;
 import android.widget.Toast;
 import androidx.annotation.RequiresApi;
+import androidx.appcompat.widget.SwitchCompat;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import org.tensorflow.lite.examples.detection.customview.OverlayView;
 import org.tensorflow.lite.examples.detection.customview.OverlayView.DrawCallback;
 import org.tensorflow.lite.examples.detection.env.BorderedText;
 import org.tensorflow.lite.examples.detection.env.ImageUtils;
 import org.tensorflow.lite.examples.detection.env.Logger;
+import org.tensorflow.lite.examples.detection.env.MotionGate;
+import org.tensorflow.lite.examples.detection.env.SpeechLatencyTracker;
+import org.tensorflow.lite.examples.detection.pipeline.DatasetRecorder;
+import org.tensorflow.lite.examples.detection.pipeline.Frame;
+import org.tensorflow.lite.examples.detection.pipeline.ReplayFrameSource;
+import org.tensorflow.lite.examples.detection.tflite.CascadeDetector;
 import org.tensorflow.lite.examples.detection.tflite.Detector;
+import org.tensorflow.lite.examples.detection.tflite.InputSizeController;
+import org.tensorflow.lite.examples.detection.tflite.ModelRegistry;
+import org.tensorflow.lite.examples.detection.tflite.StandInDetector;
 import org.tensorflow.lite.examples.detection.tflite.TFLiteObjectDetectionAPIModel;
+import org.tensorflow.lite.examples.detection.tflite.TiledDetector;
+import org.tensorflow.lite.examples.detection.tflite.TraceRecorder;
 import org.tensorflow.lite.examples.detection.tracking.MultiBoxTracker;
+import org.tensorflow.lite.examples.detection.tracking.RoiScheduler;
+import org.tensorflow.lite.examples.detection.vision.AffineTransform;
 
 //--------------------------------------------------------------------------------------------------------
 /**Classe DetectorActivity
@@ -62,32 +78,180 @@ public class DetectorActivity extends CameraActivity implements OnImageAvailable
   //Atributos
   private static final Logger LOGGER = new Logger();
   // Valores de configuração para o modelo SSD pré-empacotado.
-  private static final int TF_OD_API_INPUT_SIZE = 300;
-  private static final boolean TF_OD_API_IS_QUANTIZED = true;
-  private static final String TF_OD_API_MODEL_FILE = "detect.tflite";
-  private static final String TF_OD_API_LABELS_FILE = "labelmap.txt";
+  static final int TF_OD_API_INPUT_SIZE = 300;
+  static final boolean TF_OD_API_IS_QUANTIZED = true;
+  static final String TF_OD_API_MODEL_FILE = "detect.tflite";
+  static final String TF_OD_API_LABELS_FILE = "labelmap.txt";
+  // Modelos selecionáveis no modo TF_OD_API: o SSD dos assets e os arquivos .tflite em
+  // getFilesDir()/MODELS_DIR, que podem ser substituídos com o app aberto. Os arquivos precisam
+  // trazer TF_OD_API_LABELS_FILE nos metadados, como o modelo dos assets.
+  private static final String TF_OD_API_MODEL_NAME = "ssd_mobilenet";
+  private static final String MODELS_DIR = "models";
+  // Memória nativa estimada que os interpretadores residentes podem ocupar.
+  private static final long MODEL_MEMORY_BUDGET_BYTES = 64L * 1024 * 1024;
+  // Intervalo entre as verificações de arquivos de modelo alterados.
+  private static final long MODEL_RELOAD_CHECK_MS = 5000;
+  // Resoluções de entrada testadas, da maior para a menor, quando o modelo aceita redimensionamento.
+  private static final int[] TF_OD_API_INPUT_SIZES = {300, 256, 224, 192, 160};
+  // Meta para o p90 do tempo de inferência; acima dela a resolução de entrada é reduzida.
+  private static final long INFERENCE_BUDGET_MS = 80;
+  // Interpretadores (e blocos processados ao mesmo tempo) no modo TF_OD_API_TILED.
+  private static final int TILED_NUM_INTERPRETERS = 2;
+  // Inferências sobre uma imagem sintética antes de liberar o detector (e a cada troca de threads ou
+  // NNAPI), para que o primeiro quadro real não pague a alocação dos tensores e os caches frios.
+  static final int WARM_UP_RUNS = 2;
+  // Modo TF_OD_API_CASCADE: modelo pequeno de "objetividade" em todo quadro; o modelo completo só
+  // roda quando ele acha candidatos ou a cada CASCADE_REFRESH_INTERVAL quadros.
+  private static final String CASCADE_PRIMARY_MODEL_FILE = "objectness.tflite";
+  private static final String CASCADE_PRIMARY_LABELS_FILE = "labelmap.txt";
+  private static final int CASCADE_PRIMARY_INPUT_SIZE = 128;
+  private static final boolean CASCADE_PRIMARY_IS_QUANTIZED = true;
+  private static final float CASCADE_CANDIDATE_THRESHOLD = 0.3f;
+  private static final int CASCADE_REFRESH_INTERVAL = 10;
+  // Zoom em volta dos rastros: quadro inteiro a cada ROI_FULL_FRAME_INTERVAL detecções (2 alterna),
+  // ROI cobrindo até ROI_MAX_TRACKS rastros, com ROI_PADDING de margem.
+  private static final boolean USE_ROI = true;
+  private static final int ROI_FULL_FRAME_INTERVAL = 2;
+  private static final int ROI_MAX_TRACKS = 3;
+  private static final float ROI_PADDING = 0.25f;
+  // Com a ROI, o fluxo de análise tem o lado menor ROI_ANALYSIS_SCALE vezes a entrada do modelo.
+  // Num fluxo do tamanho da entrada a ROI mínima já passa de 90% do quadro e o RoiScheduler sempre
+  // volta ao quadro inteiro; o preço é uma conversão YUV maior por quadro.
+  private static final int ROI_ANALYSIS_SCALE = 2;
   private static final DetectorMode MODE = DetectorMode.TF_OD_API;
+  // Extras da intent que trocam o modelo por um StandInDetector determinístico, com o tempo de
+  // inferência simulado em milissegundos (útil com EXTRA_REPLAY para medir só o pipeline).
+  public static final String EXTRA_STAND_IN_DETECTOR = "stand_in_detector";
+  public static final String EXTRA_STAND_IN_LATENCY_MS = "stand_in_latency_ms";
+  private static final int STAND_IN_DEFAULT_LATENCY_MS = 30;
+  // Extras da intent que gravam as entradas do detector e as detecções numa pasta (relativa a
+  // getFilesDir), em "jpeg" (padrão) ou "png", para montar conjuntos de dados em campo. Exemplo:
+  //   adb shell am start -n <pacote>/.DetectorActivity \
+  //       --es record_dataset campo --es dataset_format png
+  public static final String EXTRA_RECORD_DATASET = "record_dataset";
+  public static final String EXTRA_DATASET_FORMAT = "dataset_format";
+  private static final String DATASET_FORMAT_PNG = "png";
+  // Threads de compressão e amostras que podem esperar por elas antes de haver descarte.
+  private static final int DATASET_WORKERS = 2;
+  private static final int DATASET_QUEUE_CAPACITY = 4;
   // Confiança mínima de detecção para rastrear uma detecção.
-  private static final float MINIMUM_CONFIDENCE_TF_OD_API = 0.5f;
-  private static final boolean MAINTAIN_ASPECT = false;
-  private static final Size DESIRED_PREVIEW_SIZE = new Size(640, 480);
-  private static final boolean SAVE_PREVIEW_BITMAP = false;
+  static final float MINIMUM_CONFIDENCE_TF_OD_API = 0.5f;
+  static final boolean MAINTAIN_ASPECT = false;
+  static final Size DESIRED_PREVIEW_SIZE = new Size(640, 480);
   private static final float TEXT_SIZE_DIP = 10;
+  // Arquivo (em getFilesDir) com os percentis da latência entre o quadro e o início da fala.
+  private static final String SPEECH_LATENCY_FILE = "latencia_fala.txt";
+  // Arquivo (em getFilesDir) com a linha do tempo dos quadros, no formato JSON do Chrome/Perfetto.
+  private static final String TRACE_FILE = "trace.json";
   OverlayView trackingOverlay;
   private Integer sensorOrientation;
-  private Detector detector;
+  // Trocado pela thread de inferência quando o modelo muda.
+  private volatile Detector detector;
+  // Só no modo TF_OD_API; null nos demais.
+  private ModelRegistry modelRegistry;
+  private String modelName = TF_OD_API_MODEL_NAME;
+  private volatile long lastSwitchNanos = -1;
+  private long lastReloadCheckMs;
+  // Carrega o modelo em paralelo com a abertura da câmera. As duas partes se encontram em
+  // onStartupReady, sempre na thread de UI; até lá os quadros são descartados na conversão.
+  private final ExecutorService detectorLoader = Executors.newSingleThreadExecutor();
+  // Leitura dos arquivos de vetores e criação da fala do tracker.teste, fora da thread de UI.
+  private final ExecutorService announcer = Executors.newSingleThreadExecutor();
+  // Gravação do conjunto de dados (EXTRA_RECORD_DATASET); null quando não há.
+  private DatasetRecorder datasetRecorder;
+  private boolean cameraConfigured = false;
+  private volatile boolean detectionReady = false;
+  // Instantes da partida (SystemClock.elapsedRealtime), medidos a partir de onCreate; 0 = ainda não.
+  private long startupStartMs;
+  private long modelReadyMs;
+  private long warmUpMs;
+  private long cameraReadyMs;
+  private volatile long firstDetectionMs;
   private long lastProcessingTimeMs;
+  // Usado apenas pela etapa de conversão; o recorte de cada quadro fica no próprio Frame.
   private Bitmap rgbFrameBitmap = null;
-  private Bitmap croppedBitmap = null;
-  private Bitmap cropCopyBitmap = null;
-  private boolean computingDetection = false;
-  private long timestamp = 0;
-  private Matrix frameToCropTransform;
-  private Matrix cropToFrameTransform;
+  // Rascunho da transformação da ROI, recalculada a cada quadro sem alocação.
+  private final AffineTransform roiTransform = new AffineTransform();
+  private final AffineTransform roiToCropTransform = new AffineTransform();
+  private final float[] matrixValues = new float[9];
+  // Recorte do quadro para o detector atual. Montado inteiro na thread de UI e publicado de uma
+  // vez, para que a conversão nunca veja um conjunto de transformações pela metade.
+  private volatile CropGeometry cropGeometry;
   private MultiBoxTracker tracker;
   private BorderedText borderedText;
+  private final SpeechLatencyTracker speechLatencyTracker = new SpeechLatencyTracker();
+  // Pula a inferência quando a cena não mudou desde o último quadro inferido.
+  private final MotionGate motionGate = new MotionGate();
+  private final RoiScheduler roiScheduler =
+      new RoiScheduler(ROI_FULL_FRAME_INTERVAL, ROI_MAX_TRACKS, ROI_PADDING);
   private String t;
 
+  //--------------------------------------------------------------------------------------------------------
+  //Método onCreate
+  @Override
+  protected void onCreate(final Bundle savedInstanceState) {
+    startupStartMs = SystemClock.elapsedRealtime();
+    super.onCreate(savedInstanceState);
+    setUpHeadlessSwitch();
+    detectorLoader.execute(this::loadDetector);
+    final String datasetName = getIntent().getStringExtra(EXTRA_RECORD_DATASET);
+    if (datasetName != null) {
+      try {
+        datasetRecorder =
+            new DatasetRecorder(
+                new File(getFilesDir(), datasetName),
+                DATASET_FORMAT_PNG.equals(getIntent().getStringExtra(EXTRA_DATASET_FORMAT))
+                    ? DatasetRecorder.Format.PNG
+                    : DatasetRecorder.Format.JPEG,
+                DATASET_WORKERS,
+                DATASET_QUEUE_CAPACITY);
+      } catch (final IOException e) {
+        LOGGER.e(e, "Exception!");
+      }
+    }
+  }
+
+  //--------------------------------------------------------------------------------------------------------
+  //Método setUpHeadlessSwitch
+  // Modo sem tela (HeadlessDetectionService): a activity para o serviço ao abrir, para liberar a
+  // câmera, e o inicia no lugar dela quando a chave é ligada. A câmera só é solta no onPause,
+  // depois do finish(); o serviço repete a abertura enquanto ela estiver em uso.
+  private void setUpHeadlessSwitch() {
+    if (Build.VERSION.SDK_INT < Build.VERSION_CODES.O) {
+      findViewById(R.id.headless_row).setVisibility(View.GONE);
+      return;
+    }
+    stopService(new Intent(this, HeadlessDetectionService.class));
+    final SwitchCompat headlessSwitch = findViewById(R.id.headless_switch);
+    headlessSwitch.setOnCheckedChangeListener(
+        (buttonView, isChecked) -> {
+          if (isChecked) {
+            startForegroundService(new Intent(this, HeadlessDetectionService.class));
+            finish();
+          }
+        });
+  }
+
+  //--------------------------------------------------------------------------------------------------------
+  //Método onDestroy
+  @Override
+  public synchronized void onDestroy() {
+    detectorLoader.shutdownNow();
+    announcer.shutdownNow();
+    if (modelRegistry != null) {
+      modelRegistry.close();
+    }
+    super.onDestroy();
+    // Depois do super.onDestroy(), que para o pipeline: nenhuma amostra nova chega ao gravador.
+    if (datasetRecorder != null) {
+      try {
+        datasetRecorder.close();
+      } catch (final IOException e) {
+        LOGGER.e(e, "Exception!");
+      }
+    }
+  }
+
   //--------------------------------------------------------------------------------------------------------
   //Método onBackPressed
   @Override
@@ -98,6 +262,19 @@ public class DetectorActivity extends CameraActivity implements OnImageAvailable
     finish();
   }
 
+  //--------------------------------------------------------------------------------------------------------
+  //Método onPause
+  @Override
+  public synchronized void onPause() {
+    speechLatencyTracker.dumpTo(new File(getFilesDir(), SPEECH_LATENCY_FILE));
+    try {
+      TraceRecorder.exportTo(new File(getFilesDir(), TRACE_FILE));
+    } catch (final IOException e) {
+      LOGGER.e(e, "Exception!");
+    }
+    super.onPause();
+  }
+
   //--------------------------------------------------------------------------------------------------------
   //Método gravar2
   public void gravar2(Context context){
@@ -125,6 +302,7 @@ public class DetectorActivity extends CameraActivity implements OnImageAvailable
   //Método onPreviewSizeChosen
   @Override
   public void onPreviewSizeChosen(final Size size, final int rotation) {
+    detectionReady = false;
     final float textSizePx =
         TypedValue.applyDimension(
             TypedValue.COMPLEX_UNIT_DIP, TEXT_SIZE_DIP, getResources().getDisplayMetrics());
@@ -132,46 +310,18 @@ public class DetectorActivity extends CameraActivity implements OnImageAvailable
     borderedText.setTypeface(Typeface.MONOSPACE);
 
     tracker = new MultiBoxTracker(this);
-
-    int cropSize = TF_OD_API_INPUT_SIZE;
-
-    try {
-      detector =
-          TFLiteObjectDetectionAPIModel.create(
-              getAssets(),
-              TF_OD_API_MODEL_FILE,
-              TF_OD_API_LABELS_FILE,
-              TF_OD_API_INPUT_SIZE,
-              TF_OD_API_IS_QUANTIZED);
-      cropSize = TF_OD_API_INPUT_SIZE;
-    } catch (final IOException e) {
-      e.printStackTrace();
-      LOGGER.e(e, "Exception initializing Detector!");
-      Toast toast =
-          Toast.makeText(
-              getApplicationContext(), "Detector could not be initialized", Toast.LENGTH_SHORT);
-      toast.show();
-      finish();
-    }
+    tracker.setSpeechLatencyTracker(speechLatencyTracker);
+    tracker.setAnnouncementExecutor(announcer);
 
     previewWidth = size.getWidth();
     previewHeight = size.getHeight();
+    motionGate.reset();
 
     sensorOrientation = rotation - getScreenOrientation();
     LOGGER.i("Camera orientation relative to screen canvas: %d", sensorOrientation);
 
     LOGGER.i("Initializing at size %dx%d", previewWidth, previewHeight);
     rgbFrameBitmap = Bitmap.createBitmap(previewWidth, previewHeight, Config.ARGB_8888);
-    croppedBitmap = Bitmap.createBitmap(cropSize, cropSize, Config.ARGB_8888);
-
-    frameToCropTransform =
-        ImageUtils.getTransformationMatrix(
-            previewWidth, previewHeight,
-            cropSize, cropSize,
-            sensorOrientation, MAINTAIN_ASPECT);
-
-    cropToFrameTransform = new Matrix();
-    frameToCropTransform.invert(cropToFrameTransform);
 
     trackingOverlay = (OverlayView) findViewById(R.id.tracking_overlay);
     trackingOverlay.addCallback(
@@ -182,7 +332,9 @@ public class DetectorActivity extends CameraActivity implements OnImageAvailable
 
             //Parte que desenha o conteúdo na tela e emite a resposta auditiva
             tracker.teste(trackingOverlay.getContext());
+            final long drawStart = SystemClock.elapsedRealtimeNanos();
             tracker.draw(canvas);
+            hud.recordDraw(SystemClock.elapsedRealtimeNanos() - drawStart);
 
             if (isDebug()) {
               tracker.teste(trackingOverlay.getContext());
@@ -192,89 +344,534 @@ public class DetectorActivity extends CameraActivity implements OnImageAvailable
         });
 
     tracker.setFrameConfiguration(previewWidth, previewHeight, sensorOrientation);
+
+    if (cameraReadyMs == 0) {
+      cameraReadyMs = SystemClock.elapsedRealtime();
+      LOGGER.i("Camera configured %dms after onCreate", cameraReadyMs - startupStartMs);
+    }
+    cameraConfigured = true;
+    onStartupReady();
   }
 
   //--------------------------------------------------------------------------------------------------------
-  //Método processImage
+  //Método loadDetector
+  // Roda em detectorLoader: mapeia o modelo, lê os rótulos e cria o interpretador.
+  private void loadDetector() {
+    final Detector loaded;
+    try {
+      loaded = createDetector();
+      loaded.enableStatLogging(true);
+    } catch (final IOException e) {
+      LOGGER.e(e, "Exception initializing Detector!");
+      runOnUiThread(
+          () -> {
+            Toast toast =
+                Toast.makeText(
+                    getApplicationContext(),
+                    "Detector could not be initialized",
+                    Toast.LENGTH_SHORT);
+            toast.show();
+            finish();
+          });
+      return;
+    }
+    final long loadedMs = SystemClock.elapsedRealtime();
+    LOGGER.i("Detector loaded %dms after onCreate", loadedMs - startupStartMs);
+    // O registro já aquece os detectores que monta.
+    final long warmUpNanos =
+        modelRegistry != null
+            ? modelRegistry.getWarmUpNanos(modelName)
+            : loaded.warmUp(WARM_UP_RUNS);
+    LOGGER.i("Detector warm-up: %dms for %d runs", warmUpNanos / 1000000, WARM_UP_RUNS);
+    final long readyMs = SystemClock.elapsedRealtime();
+    runOnUiThread(
+        () -> {
+          if (isDestroyed()) {
+            // O onDestroy pode ter rodado antes de o registro existir; ele guarda o detector
+            // carregado e os que a pré-carga montar.
+            if (modelRegistry != null) {
+              modelRegistry.close();
+            } else {
+              loaded.close();
+            }
+            return;
+          }
+          modelReadyMs = readyMs;
+          warmUpMs = warmUpNanos / 1000000;
+          detector = loaded;
+          onStartupReady();
+        });
+  }
+
+  //--------------------------------------------------------------------------------------------------------
+  //Método createDetector
+  private Detector createDetector() throws IOException {
+    if (getIntent().getBooleanExtra(EXTRA_STAND_IN_DETECTOR, false)) {
+      return new StandInDetector(
+          getIntent().getIntExtra(EXTRA_STAND_IN_LATENCY_MS, STAND_IN_DEFAULT_LATENCY_MS));
+    }
+    switch (MODE) {
+      case TF_OD_API_TILED:
+        return TiledDetector.create(
+            getAssets(),
+            TF_OD_API_MODEL_FILE,
+            TF_OD_API_LABELS_FILE,
+            TF_OD_API_INPUT_SIZE,
+            TF_OD_API_IS_QUANTIZED,
+            TILED_NUM_INTERPRETERS);
+      case TF_OD_API_CASCADE:
+        return createCascade(
+            TFLiteObjectDetectionAPIModel.create(
+                getAssets(),
+                TF_OD_API_MODEL_FILE,
+                TF_OD_API_LABELS_FILE,
+                TF_OD_API_INPUT_SIZE,
+                TF_OD_API_IS_QUANTIZED));
+      default:
+        modelRegistry = createModelRegistry();
+        return modelRegistry.acquire(modelName);
+    }
+  }
+
+  //--------------------------------------------------------------------------------------------------------
+  //Método createModelRegistry
+  private ModelRegistry createModelRegistry() {
+    final ModelRegistry registry =
+        new ModelRegistry(getAssets(), MODEL_MEMORY_BUDGET_BYTES, WARM_UP_RUNS);
+    registry.register(
+        ModelRegistry.ModelSpec.fromAsset(
+            TF_OD_API_MODEL_NAME,
+            TF_OD_API_MODEL_FILE,
+            TF_OD_API_LABELS_FILE,
+            TF_OD_API_INPUT_SIZE,
+            TF_OD_API_IS_QUANTIZED));
+    final File[] files = new File(getFilesDir(), MODELS_DIR).listFiles();
+    if (files != null) {
+      Arrays.sort(files);
+      for (final File file : files) {
+        if (file.getName().endsWith(".tflite")) {
+          registry.register(
+              ModelRegistry.ModelSpec.fromFile(file.getName(), file, TF_OD_API_LABELS_FILE));
+        }
+      }
+    }
+    LOGGER.i("Registered models: %s", registry.getModelNames());
+    return registry;
+  }
+
+  //--------------------------------------------------------------------------------------------------------
+  //Método onModelClicked
+  // Troca para o próximo modelo registrado; a troca roda na thread de inferência, entre dois quadros.
   @Override
-  protected void processImage() {
-    ++timestamp;
-    final long currTimestamp = timestamp;
-    trackingOverlay.postInvalidate();
+  protected void onModelClicked() {
+    if (modelRegistry == null || !detectionReady) {
+      return;
+    }
+    final String name = getNextModelName();
+    if (!name.equals(modelName)) {
+      runInBackground(() -> switchModel(name));
+    }
+  }
 
-    // Nenhum mutex necessário, pois este método não é reentrante.
-    if (computingDetection) {
-      readyForNextImage();
+  private String getNextModelName() {
+    final List<String> names = modelRegistry.getModelNames();
+    return names.get((names.indexOf(modelName) + 1) % names.size());
+  }
+
+  //--------------------------------------------------------------------------------------------------------
+  //Método switchModel
+  // Roda na thread de inferência. Com o modelo já residente, é só uma consulta ao registro.
+  private void switchModel(final String name) {
+    final long startTime = SystemClock.elapsedRealtimeNanos();
+    final Detector next;
+    try {
+      next = modelRegistry.acquire(name);
+    } catch (final IOException e) {
+      LOGGER.e(e, "Exception!");
       return;
     }
-    computingDetection = true;
-    LOGGER.i("Preparing image " + currTimestamp + " for detection in bg thread.");
+    onDetectorSwapped(name, next, startTime);
+  }
 
-    rgbFrameBitmap.setPixels(getRgbBytes(), 0, previewWidth, 0, 0, previewWidth, previewHeight);
+  //--------------------------------------------------------------------------------------------------------
+  //Método reloadModelIfChanged
+  // Roda na thread de inferência: recarrega o modelo atual se o arquivo dele foi substituído.
+  private void reloadModelIfChanged() {
+    final long startTime = SystemClock.elapsedRealtimeNanos();
+    // Uma falha ao recarregar mantém o modelo atual; o registro tenta de novo na próxima checagem.
+    final Detector reloaded = modelRegistry.reloadIfChanged();
+    if (reloaded != null) {
+      onDetectorSwapped(modelRegistry.getCurrent(), reloaded, startTime);
+    }
+  }
 
-    readyForNextImage();
+  //--------------------------------------------------------------------------------------------------------
+  //Método onDetectorSwapped
+  // Quadros já recortados para o modelo anterior são descartados em inferFrame; a UI refaz as
+  // transformações para a entrada do novo modelo e busca o seguinte em segundo plano.
+  private void onDetectorSwapped(final String name, final Detector next, final long startTime) {
+    next.enableStatLogging(true);
+    detector = next;
+    lastSwitchNanos = SystemClock.elapsedRealtimeNanos() - startTime;
+    LOGGER.i("Switched to model %s in %dus", name, lastSwitchNanos / 1000);
+    runOnUiThread(
+        () -> {
+          modelName = name;
+          onStartupReady();
+        });
+  }
 
-    final Canvas canvas = new Canvas(croppedBitmap);
-    canvas.drawBitmap(rgbFrameBitmap, frameToCropTransform, null);
-    // Para examinar a entrada TF real.
-    if (SAVE_PREVIEW_BITMAP) {
-      ImageUtils.saveBitmap(croppedBitmap);
+  //--------------------------------------------------------------------------------------------------------
+  //Método onStartupReady
+  /**
+   * Barreira da partida: chamado na thread de UI quando o detector termina de carregar e a cada vez
+   * que a câmera informa o tamanho do quadro. Só com as duas partes prontas monta o que depende de
+   * ambas e libera os quadros para o detector.
+   */
+  private void onStartupReady() {
+    if (detector == null || !cameraConfigured) {
+      return;
     }
 
-    runInBackground(
-        new Runnable() {
-          @Override
-          public void run() {
-            LOGGER.i("Running detection on image " + currTimestamp);
-            final long startTime = SystemClock.uptimeMillis();
-            final List<Detector.Recognition> results = detector.recognizeImage(croppedBitmap);
-            lastProcessingTimeMs = SystemClock.uptimeMillis() - startTime;
-
-            cropCopyBitmap = Bitmap.createBitmap(croppedBitmap);
-            final Canvas canvas = new Canvas(cropCopyBitmap);
-            final Paint paint = new Paint();
-            paint.setColor(Color.RED);
-            paint.setStyle(Style.STROKE);
-            paint.setStrokeWidth(2.0f);
-
-            float minimumConfidence = MINIMUM_CONFIDENCE_TF_OD_API;
-            switch (MODE) {
-              case TF_OD_API:
-                minimumConfidence = MINIMUM_CONFIDENCE_TF_OD_API;
-                break;
-            }
+    // Sem suporte a entradas dinâmicas no modelo, a resolução fica fixa em TF_OD_API_INPUT_SIZE.
+    final boolean resizable =
+        detector instanceof TFLiteObjectDetectionAPIModel
+            && ((TFLiteObjectDetectionAPIModel) detector).isInputResizable();
+    final int inputSize =
+        detector instanceof TFLiteObjectDetectionAPIModel
+            ? ((TFLiteObjectDetectionAPIModel) detector).getInputSize()
+            : TF_OD_API_INPUT_SIZE;
+    LOGGER.i("Detector input resizable: %s", resizable);
+    // Com a mesma escada de tamanhos, o controlador anterior é mantido: a resolução a que ele já
+    // chegou continua valendo, em vez de a busca recomeçar do maior tamanho.
+    final int[] inputSizes = resizable ? TF_OD_API_INPUT_SIZES : new int[] {inputSize};
+    final CropGeometry previous = cropGeometry;
+    final InputSizeController inputSizeController =
+        previous != null && previous.inputSizeController.hasSizes(inputSizes)
+            ? previous.inputSizeController
+            : new InputSizeController(inputSizes, INFERENCE_BUDGET_MS);
+    // Numa troca de modelo a conversão continua rodando com a geometria anterior até esta
+    // atribuição; os quadros preparados com ela são descartados em inferFrame.
+    cropGeometry =
+        new CropGeometry(inputSizeController, previewWidth, previewHeight, sensorOrientation);
+
+    detectionReady = true;
+    onReadyForFrames();
+    if (modelRegistry != null) {
+      modelRegistry.prefetch(getNextModelName());
+    }
+  }
 
-            final List<Detector.Recognition> mappedRecognitions =
-                new ArrayList<Detector.Recognition>();
+  //--------------------------------------------------------------------------------------------------------
+  //Classe CropGeometry
+  /** Resolução de entrada e transformações do quadro para o recorte; imutável depois de pronta. */
+  private static final class CropGeometry {
+    final InputSizeController inputSizeController;
+    // Transformações por resolução de entrada, calculadas uma vez por tamanho.
+    final SparseArray<Matrix> frameToCropTransforms = new SparseArray<Matrix>();
+    final SparseArray<Matrix> cropToFrameTransforms = new SparseArray<Matrix>();
+    // Modo em blocos: o quadro inteiro, apenas rotacionado para a posição vertical.
+    final int uprightWidth;
+    final int uprightHeight;
+    final Matrix frameToUprightTransform;
+    final Matrix uprightToFrameTransform = new Matrix();
+
+    CropGeometry(
+        final InputSizeController inputSizeController,
+        final int frameWidth,
+        final int frameHeight,
+        final int sensorOrientation) {
+      this.inputSizeController = inputSizeController;
+      for (int i = 0; i < inputSizeController.getSizeCount(); ++i) {
+        final int cropSize = inputSizeController.getSize(i);
+        final Matrix frameToCropTransform =
+            ImageUtils.getTransformationMatrix(
+                frameWidth, frameHeight,
+                cropSize, cropSize,
+                sensorOrientation, MAINTAIN_ASPECT);
+
+        final Matrix cropToFrameTransform = new Matrix();
+        frameToCropTransform.invert(cropToFrameTransform);
+        frameToCropTransforms.put(cropSize, frameToCropTransform);
+        cropToFrameTransforms.put(cropSize, cropToFrameTransform);
+      }
+
+      final boolean sideways = sensorOrientation % 180 != 0;
+      uprightWidth = sideways ? frameHeight : frameWidth;
+      uprightHeight = sideways ? frameWidth : frameHeight;
+      frameToUprightTransform =
+          ImageUtils.getTransformationMatrix(
+              frameWidth, frameHeight,
+              uprightWidth, uprightHeight,
+              sensorOrientation, true);
+      frameToUprightTransform.invert(uprightToFrameTransform);
+    }
+  }
 
-            for (final Detector.Recognition result : results) {
-              final RectF location = result.getLocation();
-              if (location != null && result.getConfidence() >= minimumConfidence) {
-                canvas.drawRect(location, paint);
+  //--------------------------------------------------------------------------------------------------------
+  //Método createCascade
+  // Monta a cascata sobre o detector completo. Sem o modelo primário nos assets, usa só o completo.
+  private Detector createCascade(final Detector secondary) {
+    try {
+      final Detector primary =
+          TFLiteObjectDetectionAPIModel.create(
+              getAssets(),
+              CASCADE_PRIMARY_MODEL_FILE,
+              CASCADE_PRIMARY_LABELS_FILE,
+              CASCADE_PRIMARY_INPUT_SIZE,
+              CASCADE_PRIMARY_IS_QUANTIZED);
+      return new CascadeDetector(
+          primary,
+          CASCADE_PRIMARY_INPUT_SIZE,
+          secondary,
+          CASCADE_CANDIDATE_THRESHOLD,
+          CASCADE_REFRESH_INTERVAL);
+    } catch (final IOException e) {
+      LOGGER.e(
+          e, "Primary model %s not available, running without cascade", CASCADE_PRIMARY_MODEL_FILE);
+      return secondary;
+    }
+  }
 
-                cropToFrameTransform.mapRect(location);
+  //--------------------------------------------------------------------------------------------------------
+  //Método convertFrame
+  // Etapa de conversão: YUV -> ARGB e recorte para a entrada do detector.
+  @Override
+  protected boolean convertFrame(final Frame frame) {
+    final long currTimestamp = frame.id;
+    // Detector ainda carregando: o quadro é descartado aqui, antes de qualquer conversão.
+    final CropGeometry geometry = cropGeometry;
+    if (!detectionReady || geometry == null) {
+      return false;
+    }
+    final long startTime = SystemClock.elapsedRealtimeNanos();
+    trackingOverlay.postInvalidate();
 
-                result.setLocation(location);
-                mappedRecognitions.add(result);
-              }
-            }
+    // Cena parada: os rastros atuais continuam valendo e o detector não é chamado.
+    if (!motionGate.shouldInfer(
+        getLuminance(frame), frame.width, frame.height, getLuminanceStride(frame))) {
+      requestUiUpdate();
+      return false;
+    }
 
-            tracker.trackResults(mappedRecognitions, currTimestamp);
-            trackingOverlay.postInvalidate();
+    speechLatencyTracker.mark(currTimestamp, SpeechLatencyTracker.STAGE_CAPTURE);
+    LOGGER.v("Preparing image %d for detection in bg thread.", currTimestamp);
+
+    TraceRecorder.beginSection(TraceRecorder.STAGE_CONVERT);
+    rgbFrameBitmap.setPixels(
+        getRgbBytes(frame), 0, previewWidth, 0, 0, previewWidth, previewHeight);
+    TraceRecorder.endSection();
+
+    // O bitmap de recorte é do quadro, para que a conversão do próximo quadro não sobrescreva a
+    // entrada que ainda está na inferência.
+    // A resolução pode mudar entre quadros; o bitmap só é recriado quando isso acontece.
+    frame.hasRoi = false;
+    if (MODE == DetectorMode.TF_OD_API_TILED) {
+      // O TiledDetector recorta os blocos a partir do quadro em resolução cheia.
+      prepareCropBitmap(frame, geometry.uprightWidth, geometry.uprightHeight);
+      frame.cropSize = 0;
+      frame.frameToCropTransform.set(geometry.frameToUprightTransform);
+      frame.cropToFrameTransform.set(geometry.uprightToFrameTransform);
+    } else {
+      final int cropSize = geometry.inputSizeController.getInputSize();
+      prepareCropBitmap(frame, cropSize, cropSize);
+      frame.cropSize = cropSize;
+      frame.hasRoi =
+          USE_ROI
+              && roiScheduler.nextRoi(tracker, previewWidth, previewHeight, cropSize, frame.roi);
+      if (frame.hasRoi) {
+        // Recorte da ROI: desloca a região para a origem e então rotaciona e escala como o quadro.
+        final int roiSide = (int) frame.roi.width();
+        roiTransform.setTranslate(-frame.roi.left, -frame.roi.top);
+        roiToCropTransform.setTransformation(
+            roiSide, roiSide, cropSize, cropSize, sensorOrientation, MAINTAIN_ASPECT);
+        roiTransform.postConcat(roiToCropTransform);
+        ImageUtils.toMatrix(roiTransform, matrixValues, frame.frameToCropTransform);
+        frame.frameToCropTransform.invert(frame.cropToFrameTransform);
+      } else {
+        frame.frameToCropTransform.set(geometry.frameToCropTransforms.get(cropSize));
+        frame.cropToFrameTransform.set(geometry.cropToFrameTransforms.get(cropSize));
+      }
+    }
+    TraceRecorder.beginSection(TraceRecorder.STAGE_CROP);
+    frame.cropCanvas.drawBitmap(rgbFrameBitmap, frame.frameToCropTransform, null);
+    TraceRecorder.endSection();
+    hud.recordConversion(SystemClock.elapsedRealtimeNanos() - startTime);
+    return true;
+  }
 
-            computingDetection = false;
+  //--------------------------------------------------------------------------------------------------------
+  //Método prepareCropBitmap
+  private static void prepareCropBitmap(final Frame frame, final int width, final int height) {
+    if (frame.croppedBitmap == null
+        || frame.croppedBitmap.getWidth() != width
+        || frame.croppedBitmap.getHeight() != height) {
+      frame.croppedBitmap = Bitmap.createBitmap(width, height, Config.ARGB_8888);
+      frame.cropCanvas = new Canvas(frame.croppedBitmap);
+    }
+  }
 
-            runOnUiThread(
-                new Runnable() {
-                  @Override
-                  public void run() {
-                    showFrameInfo(previewWidth + "x" + previewHeight);
-                    showCropInfo(cropCopyBitmap.getWidth() + "x" + cropCopyBitmap.getHeight());
-                    showInference(lastProcessingTimeMs + "ms");
-                  }
-                });
-          }
-        });
+  //--------------------------------------------------------------------------------------------------------
+  //Método inferFrame
+  // Etapa de inferência: roda o detector e mapeia os resultados para as coordenadas do quadro.
+  @Override
+  protected boolean inferFrame(final Frame frame) {
+    final long currTimestamp = frame.id;
+    final Detector detector = this.detector;
+    // Quadro recortado para o modelo anterior a uma troca, numa resolução que o atual não aceita.
+    if (detector instanceof TFLiteObjectDetectionAPIModel
+        && !((TFLiteObjectDetectionAPIModel) detector).isInputResizable()
+        && frame.cropSize != ((TFLiteObjectDetectionAPIModel) detector).getInputSize()) {
+      return false;
+    }
+    speechLatencyTracker.mark(currTimestamp, SpeechLatencyTracker.STAGE_INFERENCE_START);
+    LOGGER.v("Running detection on image %d", currTimestamp);
+    final long startTime = SystemClock.elapsedRealtimeNanos();
+    final List<Detector.Recognition> results = frame.detections;
+    final boolean ran = detector.recognizeImage(frame.croppedBitmap, frame.detections);
+    final long inferenceNanos = SystemClock.elapsedRealtimeNanos() - startTime;
+    lastProcessingTimeMs = inferenceNanos / 1000000;
+    hud.recordInference(inferenceNanos);
+    // A cascata não olhou o quadro: como no MotionGate, os rastros atuais continuam valendo. O
+    // tempo só do modelo primário também não entra no controle da resolução.
+    if (!ran) {
+      requestUiUpdate();
+      return false;
+    }
+    if (MODE != DetectorMode.TF_OD_API_TILED) {
+      cropGeometry.inputSizeController.record(frame.cropSize, inferenceNanos);
+    }
+    speechLatencyTracker.mark(currTimestamp, SpeechLatencyTracker.STAGE_INFERENCE_END);
+
+    float minimumConfidence = MINIMUM_CONFIDENCE_TF_OD_API;
+    switch (MODE) {
+      case TF_OD_API:
+      case TF_OD_API_TILED:
+      case TF_OD_API_CASCADE:
+        minimumConfidence = MINIMUM_CONFIDENCE_TF_OD_API;
+        break;
+    }
+
+    // A entrada TF real e as detecções, ainda nas coordenadas do recorte.
+    if (datasetRecorder != null) {
+      datasetRecorder.record(currTimestamp, frame.croppedBitmap, results, minimumConfidence);
+    }
+
+    // Por índice e no próprio resultado: nada é alocado por detecção.
+    for (int i = 0; i < results.size(); ++i) {
+      final Detector.Recognition result = results.get(i);
+      if (result.getConfidence() >= minimumConfidence) {
+        result.mapLocation(frame.cropToFrameTransform);
+        frame.results.add(result);
+      }
+    }
+    return true;
+  }
+
+  //--------------------------------------------------------------------------------------------------------
+  //Método trackFrame
+  // Etapa de rastreamento: atualiza o tracker e a tela.
+  @Override
+  protected boolean trackFrame(final Frame frame) {
+    TraceRecorder.beginSection(TraceRecorder.STAGE_TRACK);
+    tracker.trackResults(
+        frame.results, frame.id, frame.sensorTimestampNs, frame.hasRoi ? frame.roi : null);
+    TraceRecorder.endSection();
+    trackingOverlay.postInvalidate();
+    hud.onProcessedFrame(SystemClock.elapsedRealtimeNanos());
+    if (firstDetectionMs == 0) {
+      firstDetectionMs = SystemClock.elapsedRealtime();
+      LOGGER.i("Time to first detection: %dms", firstDetectionMs - startupStartMs);
+    }
+    requestUiUpdate();
+    return true;
+  }
+
+  //--------------------------------------------------------------------------------------------------------
+  //Método updateUi
+  @Override
+  protected void updateUi() {
+    super.updateUi();
+    showStartupInfo(getStartupStatString());
+    if (!detectionReady) {
+      return;
+    }
+    showModelInfo(getModelStatString());
+    if (modelRegistry != null
+        && SystemClock.uptimeMillis() - lastReloadCheckMs >= MODEL_RELOAD_CHECK_MS) {
+      lastReloadCheckMs = SystemClock.uptimeMillis();
+      runInBackground(this::reloadModelIfChanged);
+    }
+    showFrameInfo(previewWidth + "x" + previewHeight);
+    showCropInfo(cropGeometry.inputSizeController.getStatString());
+    showInference(lastProcessingTimeMs + "ms");
+    showPipelineInfo(getStatString());
+    showStatsInfo(detector.getStatString());
+    showGlassInfo(tracker.getGlassToGlassStatString());
+  }
+
+  //--------------------------------------------------------------------------------------------------------
+  //Método getStartupStatString
+  // Tempos desde onCreate até o detector pronto (já aquecido), a câmera configurada e a primeira
+  // detecção.
+  private String getStartupStatString() {
+    return "model "
+        + formatStartupTime(modelReadyMs)
+        + (modelReadyMs > 0 ? " (warm-up " + warmUpMs + "ms)" : "")
+        + ", camera "
+        + formatStartupTime(cameraReadyMs)
+        + "\nfirst detection "
+        + formatStartupTime(firstDetectionMs);
+  }
+
+  private String formatStartupTime(final long timeMs) {
+    return timeMs > 0 ? (timeMs - startupStartMs) + "ms" : "-";
+  }
+
+  //--------------------------------------------------------------------------------------------------------
+  //Método getModelStatString
+  // Modelo atual, tempo da última troca e o que está residente no registro.
+  private String getModelStatString() {
+    if (detector instanceof StandInDetector) {
+      return "stand-in detector";
+    }
+    if (modelRegistry == null) {
+      return TF_OD_API_MODEL_FILE + " (" + MODE.name() + ")";
+    }
+    final long switchNanos = lastSwitchNanos;
+    return modelName
+        + (switchNanos >= 0 ? String.format(", switch %.1fms", switchNanos / 1e6) : "")
+        + "\n"
+        + modelRegistry.getStatString();
+  }
+
+  //--------------------------------------------------------------------------------------------------------
+  //Método getReplayReport
+  // Acrescenta ao relatório da reprodução o detector, a latência até a tela e o que foi pulado.
+  @Override
+  protected String getReplayReport(final ReplayFrameSource source) {
+    return super.getReplayReport(source)
+        + "\n"
+        + getModelStatString()
+        + "\n"
+        + detector.getStatString()
+        + "\n"
+        + tracker.getGlassToGlassStatString()
+        + "\n"
+        + motionGate.getStatString()
+        + "\n"
+        + roiScheduler.getStatString();
+  }
+
+  //--------------------------------------------------------------------------------------------------------
+  //Método getStatString
+  private String getStatString() {
+    return getPipelineStatString()
+        + "\n"
+        + motionGate.getStatString()
+        + "\n"
+        + roiScheduler.getStatString()
+        + (datasetRecorder != null ? "\n" + datasetRecorder.getStatString() : "");
   }
 
   //--------------------------------------------------------------------------------------------------------
@@ -291,24 +888,62 @@ public class DetectorActivity extends CameraActivity implements OnImageAvailable
     return DESIRED_PREVIEW_SIZE;
   }
 
+  //--------------------------------------------------------------------------------------------------------
+  //Método getAnalysisMinSide
+  // O modo em blocos precisa do quadro em resolução cheia; os demais só da entrada do modelo, ou de
+  // uma margem em volta dela para que a ROI tenha onde recortar.
+  @Override
+  protected int getAnalysisMinSide() {
+    if (MODE == DetectorMode.TF_OD_API_TILED) {
+      return 0;
+    }
+    return USE_ROI ? ROI_ANALYSIS_SCALE * TF_OD_API_INPUT_SIZE : TF_OD_API_INPUT_SIZE;
+  }
+
   // Qual modelo de detecção usar: por padrão, usa a Tensorflow Object Detection API congelada
-  // pontos de verificação.
+  // pontos de verificação. TF_OD_API_TILED roda o mesmo modelo em blocos sobrepostos do quadro em
+  // resolução cheia, para objetos pequenos. TF_OD_API_CASCADE só chama o modelo completo quando um
+  // modelo pequeno indica que há algo no quadro.
   private enum DetectorMode {
-    TF_OD_API;
+    TF_OD_API,
+    TF_OD_API_TILED,
+    TF_OD_API_CASCADE;
   }
 
   //--------------------------------------------------------------------------------------------------------
   //Método setUseNNAPI
+  // Com o registro, a opção vale também para os modelos residentes e para os que ainda serão
+  // criados.
   @Override
   protected void setUseNNAPI(final boolean isChecked) {
-    runInBackground(() -> detector.setUseNNAPI(isChecked));
+    runInBackground(
+        () -> {
+          if (!detectionReady) {
+            return;
+          }
+          if (modelRegistry != null) {
+            modelRegistry.setUseNNAPI(isChecked);
+          } else {
+            detector.setUseNNAPI(isChecked);
+          }
+        });
   }
 
   //--------------------------------------------------------------------------------------------------------
   //Método setNumTreads
   @Override
   protected void setNumThreads(final int numThreads) {
-    runInBackground(() -> detector.setNumThreads(numThreads));
+    runInBackground(
+        () -> {
+          if (!detectionReady) {
+            return;
+          }
+          if (modelRegistry != null) {
+            modelRegistry.setNumThreads(numThreads);
+          } else {
+            detector.setNumThreads(numThreads);
+          }
+        });
   }
 
 }//Fim da classe
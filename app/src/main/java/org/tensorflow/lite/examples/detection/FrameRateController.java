@@ -0,0 +1,116 @@
+package org.tensorflow.lite.examples.detection;
+
+//---------------------------------------------------------------------------------------------------
+//Classe FrameRateController
+/**
+ * Escolhe a faixa de FPS pedida à câmera a partir da vazão medida do pipeline. Quadros que a câmera
+ * entrega acima do que o pipeline consegue processar são descartados na captura, gastando ISP,
+ * callbacks e bateria à toa.
+ *
+ * <p>A faixa escolhida é a de menor limite superior que ainda cobre a vazão medida mais uma folga
+ * ({@code headroom}), para que o pipeline nunca fique esperando pela câmera. Para não reconfigurar a
+ * câmera a cada oscilação, a faixa atual é mantida enquanto cobrir a vazão e não passar dela por
+ * mais de {@link #HYSTERESIS} vezes.
+ *
+ * <p>As faixas são pares {mínimo, máximo} em quadros por segundo. Não depende do Android, para poder
+ * ser testada na JVM.
+ */
+public final class FrameRateController {
+
+  //---------------------------------------------------------------------------------------------------
+  //Atributos
+  static final double HYSTERESIS = 1.5;
+  /** Folga padrão sobre a vazão medida. */
+  public static final double DEFAULT_HEADROOM = 0.2;
+  /** Intervalo entre reavaliações; a câmera leva alguns quadros para aplicar uma nova faixa. */
+  public static final long UPDATE_INTERVAL_MS = 2000;
+  private final int[][] ranges;
+  private final double headroom;
+  private int currentIndex = -1;
+
+  //---------------------------------------------------------------------------------------------------
+  //Interface ThroughputSource
+  /** Vazão que o pipeline consegue sustentar, em quadros por segundo; 0 se ainda desconhecida. */
+  public interface ThroughputSource {
+    double getThroughputFps();
+  }
+
+  //---------------------------------------------------------------------------------------------------
+  //Método Construtor
+  /**
+   * @param ranges faixas suportadas pela câmera, em FPS
+   * @param headroom folga sobre a vazão medida, como fração (0.2 pede 20% a mais)
+   */
+  public FrameRateController(final int[][] ranges, final double headroom) {
+    this.ranges = ranges;
+    this.headroom = headroom;
+  }
+
+  //---------------------------------------------------------------------------------------------------
+  //Método update
+  /**
+   * Reavalia a faixa para a vazão medida. Retorna o índice da nova faixa quando ela muda, ou -1 se a
+   * câmera deve continuar como está.
+   */
+  public int update(final double measuredFps) {
+    final int chosen = chooseFpsRange(ranges, measuredFps, headroom, currentIndex);
+    if (chosen == currentIndex) {
+      return -1;
+    }
+    currentIndex = chosen;
+    return chosen;
+  }
+
+  public int[] getRange(final int index) {
+    return ranges[index];
+  }
+
+  //---------------------------------------------------------------------------------------------------
+  //Método chooseFpsRange
+  /**
+   * Função pura de seleção da faixa.
+   *
+   * @param ranges faixas {mínimo, máximo} suportadas, em FPS
+   * @param measuredFps vazão medida do pipeline; zero ou negativa quando ainda não há medida
+   * @param headroom folga sobre a vazão, como fração
+   * @param currentIndex faixa em uso, ou -1
+   * @return o índice da faixa escolhida, ou -1 se {@code ranges} estiver vazio
+   */
+  static int chooseFpsRange(
+      final int[][] ranges, final double measuredFps, final double headroom, final int currentIndex) {
+    if (ranges.length == 0) {
+      return -1;
+    }
+    // Sem medida ainda, a câmera roda na faixa mais rápida.
+    final double target = measuredFps > 0 ? measuredFps * (1 + headroom) : Double.MAX_VALUE;
+
+    if (currentIndex >= 0 && currentIndex < ranges.length) {
+      final int upper = ranges[currentIndex][1];
+      if (upper >= target && upper <= target * HYSTERESIS) {
+        return currentIndex;
+      }
+    }
+
+    int best = -1;
+    int fastest = 0;
+    for (int i = 0; i < ranges.length; ++i) {
+      final int[] range = ranges[i];
+      if (range[1] > ranges[fastest][1]
+          || (range[1] == ranges[fastest][1] && range[0] > ranges[fastest][0])) {
+        fastest = i;
+      }
+      if (range[1] < target) {
+        continue;
+      }
+      // Menor limite superior que cobre a vazão; no empate, o maior mínimo dá uma cadência mais
+      // estável.
+      if (best < 0
+          || range[1] < ranges[best][1]
+          || (range[1] == ranges[best][1] && range[0] > ranges[best][0])) {
+        best = i;
+      }
+    }
+    return best >= 0 ? best : fastest;
+  }
+
+}//Fim da classe
@@ -0,0 +1,612 @@
+package org.tensorflow.lite.examples.detection;
+
+//Importações
+import android.Manifest;
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.app.Service;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.content.pm.PackageManager;
+import android.graphics.Bitmap;
+import android.graphics.Bitmap.Config;
+import android.graphics.Canvas;
+import android.graphics.ImageFormat;
+import android.graphics.Matrix;
+import android.graphics.drawable.Icon;
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraCaptureSession;
+import android.hardware.camera2.CameraCharacteristics;
+import android.hardware.camera2.CameraDevice;
+import android.hardware.camera2.CameraManager;
+import android.hardware.camera2.CaptureRequest;
+import android.hardware.camera2.params.StreamConfigurationMap;
+import android.media.Image;
+import android.media.ImageReader;
+import android.media.ImageReader.OnImageAvailableListener;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.IBinder;
+import android.os.Looper;
+import android.os.PowerManager;
+import android.os.SystemClock;
+import android.util.Range;
+import android.util.Size;
+import androidx.annotation.RequiresApi;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.util.Collections;
+import org.tensorflow.lite.examples.detection.env.ImageUtils;
+import org.tensorflow.lite.examples.detection.env.Logger;
+import org.tensorflow.lite.examples.detection.env.MotionGate;
+import org.tensorflow.lite.examples.detection.env.PerformanceHud;
+import org.tensorflow.lite.examples.detection.env.UsageMeter;
+import org.tensorflow.lite.examples.detection.pipeline.Frame;
+import org.tensorflow.lite.examples.detection.pipeline.FramePipeline;
+import org.tensorflow.lite.examples.detection.tflite.Detector;
+import org.tensorflow.lite.examples.detection.tflite.TFLiteObjectDetectionAPIModel;
+import org.tensorflow.lite.examples.detection.tracking.MultiBoxTracker;
+
+//---------------------------------------------------------------------------------------------------
+//Classe HeadlessDetectionService
+/**
+ * Modo sem tela: câmera -> detector -> tracker -> anúncio falado num serviço em primeiro plano,
+ * para quem usa o celular preso ao peito com a tela desligada.
+ *
+ * <p>Em relação à DetectorActivity, não há visualização nem sobreposição: a Camera2 abre um único
+ * fluxo YUV, o menor que ainda cobre a entrada do modelo, sem TextureView, e nada é desenhado. O
+ * anúncio ({@link MultiBoxTracker#teste}) é feito na etapa de rastreamento, e não mais no desenho
+ * da sobreposição. Um wake lock parcial mantém a CPU acordada com a tela apagada.
+ *
+ * <p>A notificação mostra o CPU e o FPS médios da sessão. Ao parar, o serviço grava em {@code
+ * REPORT_FILE} a comparação com a última sessão da activity (ver {@link UsageMeter}).
+ */
+@RequiresApi(api = Build.VERSION_CODES.O)
+public class HeadlessDetectionService extends Service implements OnImageAvailableListener {
+
+  //---------------------------------------------------------------------------------------------------
+  //Atributos
+  private static final Logger LOGGER = new Logger();
+  /** Ação da notificação que encerra o serviço. */
+  public static final String ACTION_STOP =
+      "org.tensorflow.lite.examples.detection.action.STOP_HEADLESS";
+  private static final String CHANNEL_ID = "headless_detection";
+  private static final int NOTIFICATION_ID = 1;
+  private static final String WAKE_LOCK_TAG = "tfl_detect:headless";
+  // Intervalo entre atualizações da notificação com o uso da sessão.
+  private static final long NOTIFICATION_UPDATE_MS = 10000;
+  // Arquivo (em getFilesDir) com a comparação de CPU e FPS com o modo com tela.
+  private static final String REPORT_FILE = "headless_report.txt";
+  // A activity que iniciou o serviço só solta a câmera no onPause, depois do finish(); enquanto
+  // isso a abertura falha com a câmera em uso e é repetida, no máximo OPEN_RETRIES vezes.
+  private static final long OPEN_RETRY_DELAY_MS = 250;
+  private static final int OPEN_RETRIES = 12;
+  private final PerformanceHud hud = new PerformanceHud();
+  private final UsageMeter usageMeter = new UsageMeter(hud);
+  private final MotionGate motionGate = new MotionGate();
+  private final Handler mainHandler = new Handler(Looper.getMainLooper());
+  private final Runnable notificationUpdater =
+      new Runnable() {
+        @Override
+        public void run() {
+          updateNotification(usageMeter.format());
+          mainHandler.postDelayed(this, NOTIFICATION_UPDATE_MS);
+        }
+      };
+  private final Runnable frameRateUpdater = this::updateFrameRate;
+  private final Runnable cameraOpener = this::openCamera;
+  private NotificationManager notificationManager;
+  private PowerManager.WakeLock wakeLock;
+  // Thread da câmera: carrega o detector, abre a câmera e recebe as imagens.
+  private HandlerThread cameraThread;
+  private Handler cameraHandler;
+  private String cameraId;
+  private int openRetries;
+  private CameraDevice cameraDevice;
+  private CameraCaptureSession captureSession;
+  private CaptureRequest.Builder requestBuilder;
+  private ImageReader imageReader;
+  private Range<Integer>[] fpsRanges;
+  private FrameRateController frameRateController;
+  private volatile FramePipeline pipeline;
+  private Detector detector;
+  private MultiBoxTracker tracker;
+  private int frameWidth;
+  private int frameHeight;
+  // Se Image.getTimestamp() usa o mesmo relógio que SystemClock.elapsedRealtimeNanos().
+  private boolean sensorTimestampRealtime;
+  // Usados apenas pela etapa de conversão.
+  private int[] rgbBytes;
+  private Bitmap rgbFrameBitmap;
+  private Matrix frameToCropTransform;
+  private Matrix cropToFrameTransform;
+
+  //---------------------------------------------------------------------------------------------------
+  //Método onCreate
+  @Override
+  public void onCreate() {
+    super.onCreate();
+    notificationManager = (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
+    notificationManager.createNotificationChannel(
+        new NotificationChannel(
+            CHANNEL_ID,
+            getString(R.string.tfe_od_headless_channel),
+            NotificationManager.IMPORTANCE_LOW));
+    startForeground(NOTIFICATION_ID, buildNotification(null));
+
+    final PowerManager powerManager = (PowerManager) getSystemService(Context.POWER_SERVICE);
+    wakeLock = powerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, WAKE_LOCK_TAG);
+    wakeLock.acquire();
+
+    cameraThread = new HandlerThread("HeadlessCamera");
+    cameraThread.start();
+    cameraHandler = new Handler(cameraThread.getLooper());
+    cameraHandler.post(this::start);
+  }
+
+  //---------------------------------------------------------------------------------------------------
+  //Método onStartCommand
+  @Override
+  public int onStartCommand(final Intent intent, final int flags, final int startId) {
+    if (intent != null && ACTION_STOP.equals(intent.getAction())) {
+      stopSelf();
+    }
+    // Sem a activity para pedir a permissão e mostrar o estado, não há recriação automática.
+    return START_NOT_STICKY;
+  }
+
+  //---------------------------------------------------------------------------------------------------
+  //Método onBind
+  @Override
+  public IBinder onBind(final Intent intent) {
+    return null;
+  }
+
+  //---------------------------------------------------------------------------------------------------
+  //Método onDestroy
+  @Override
+  public void onDestroy() {
+    mainHandler.removeCallbacks(notificationUpdater);
+    // Fecha a câmera na própria thread, depois de qualquer tarefa pendente, e espera o fim.
+    cameraHandler.removeCallbacks(cameraOpener);
+    cameraHandler.post(this::closeCamera);
+    cameraThread.quitSafely();
+    try {
+      cameraThread.join();
+    } catch (final InterruptedException e) {
+      LOGGER.e(e, "Exception!");
+    }
+    final FramePipeline pipeline = this.pipeline;
+    this.pipeline = null;
+    if (pipeline != null) {
+      pipeline.stop();
+    }
+    if (detector != null) {
+      detector.close();
+    }
+    if (usageMeter.getElapsedMs() >= UsageMeter.MIN_SESSION_MS) {
+      writeReport();
+    }
+    wakeLock.release();
+    stopForeground(true);
+    super.onDestroy();
+  }
+
+  //---------------------------------------------------------------------------------------------------
+  //Método start
+  // Roda na thread da câmera: carrega o detector, monta o pipeline e abre a câmera.
+  private void start() {
+    if (checkSelfPermission(Manifest.permission.CAMERA) != PackageManager.PERMISSION_GRANTED) {
+      LOGGER.w("Camera permission missing; stopping headless mode.");
+      stopSelf();
+      return;
+    }
+    final CameraManager manager = (CameraManager) getSystemService(Context.CAMERA_SERVICE);
+    try {
+      detector =
+          TFLiteObjectDetectionAPIModel.create(
+              getAssets(),
+              DetectorActivity.TF_OD_API_MODEL_FILE,
+              DetectorActivity.TF_OD_API_LABELS_FILE,
+              DetectorActivity.TF_OD_API_INPUT_SIZE,
+              DetectorActivity.TF_OD_API_IS_QUANTIZED);
+      detector.warmUp(DetectorActivity.WARM_UP_RUNS);
+      cameraId = chooseCamera(manager);
+      if (cameraId == null) {
+        LOGGER.w("No back camera; stopping headless mode.");
+        stopSelf();
+        return;
+      }
+    } catch (final IOException | CameraAccessException e) {
+      LOGGER.e(e, "Exception!");
+      stopSelf();
+      return;
+    }
+    openRetries = 0;
+    openCamera();
+  }
+
+  //---------------------------------------------------------------------------------------------------
+  //Método openCamera
+  // Roda na thread da câmera; chamado de novo pelo stateCallback enquanto a câmera estiver em uso.
+  private void openCamera() {
+    final CameraManager manager = (CameraManager) getSystemService(Context.CAMERA_SERVICE);
+    try {
+      manager.openCamera(cameraId, stateCallback, cameraHandler);
+    } catch (final CameraAccessException e) {
+      LOGGER.e(e, "Exception!");
+      stopSelf();
+    }
+  }
+
+  //---------------------------------------------------------------------------------------------------
+  //Método chooseCamera
+  /**
+   * Escolhe a primeira câmera que não é frontal e prepara o que depende dela: o tamanho do fluxo de
+   * análise, as transformações para a entrada do modelo, o tracker e as faixas de FPS.
+   */
+  private String chooseCamera(final CameraManager manager) throws CameraAccessException {
+    for (final String cameraId : manager.getCameraIdList()) {
+      final CameraCharacteristics characteristics = manager.getCameraCharacteristics(cameraId);
+      final Integer facing = characteristics.get(CameraCharacteristics.LENS_FACING);
+      if (facing != null && facing == CameraCharacteristics.LENS_FACING_FRONT) {
+        continue;
+      }
+      final StreamConfigurationMap map =
+          characteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
+      if (map == null) {
+        continue;
+      }
+
+      // O menor quadro YUV, na proporção da activity, que ainda cobre a entrada do modelo.
+      final Size analysisSize =
+          CameraConnectionFragment.chooseAnalysisSize(
+              map.getOutputSizes(ImageFormat.YUV_420_888),
+              DetectorActivity.TF_OD_API_INPUT_SIZE,
+              DetectorActivity.DESIRED_PREVIEW_SIZE);
+      frameWidth = analysisSize.getWidth();
+      frameHeight = analysisSize.getHeight();
+      // O celular fica em pé no suporte, como a activity, que é travada em retrato.
+      final int sensorOrientation = characteristics.get(CameraCharacteristics.SENSOR_ORIENTATION);
+      LOGGER.i("Headless analysis stream %dx%d, orientation %d", frameWidth, frameHeight,
+          sensorOrientation);
+
+      final int cropSize = DetectorActivity.TF_OD_API_INPUT_SIZE;
+      frameToCropTransform =
+          ImageUtils.getTransformationMatrix(
+              frameWidth, frameHeight,
+              cropSize, cropSize,
+              sensorOrientation, DetectorActivity.MAINTAIN_ASPECT);
+      cropToFrameTransform = new Matrix();
+      frameToCropTransform.invert(cropToFrameTransform);
+      rgbFrameBitmap = Bitmap.createBitmap(frameWidth, frameHeight, Config.ARGB_8888);
+      rgbBytes = new int[frameWidth * frameHeight];
+
+      tracker = new MultiBoxTracker(this);
+      tracker.setFrameConfiguration(frameWidth, frameHeight, sensorOrientation);
+      motionGate.reset();
+
+      fpsRanges = characteristics.get(CameraCharacteristics.CONTROL_AE_AVAILABLE_TARGET_FPS_RANGES);
+      frameRateController = null;
+      if (fpsRanges != null && fpsRanges.length > 0) {
+        final int[][] ranges = new int[fpsRanges.length][];
+        for (int i = 0; i < fpsRanges.length; ++i) {
+          ranges[i] = new int[] {fpsRanges[i].getLower(), fpsRanges[i].getUpper()};
+        }
+        frameRateController =
+            new FrameRateController(ranges, FrameRateController.DEFAULT_HEADROOM);
+      }
+      final Integer timestampSource =
+          characteristics.get(CameraCharacteristics.SENSOR_INFO_TIMESTAMP_SOURCE);
+      sensorTimestampRealtime =
+          timestampSource != null
+              && timestampSource == CameraCharacteristics.SENSOR_INFO_TIMESTAMP_SOURCE_REALTIME;
+      return cameraId;
+    }
+    return null;
+  }
+
+  //---------------------------------------------------------------------------------------------------
+  //Atributo stateCallback
+  private final CameraDevice.StateCallback stateCallback =
+      new CameraDevice.StateCallback() {
+        @Override
+        public void onOpened(final CameraDevice camera) {
+          cameraDevice = camera;
+          startPipeline();
+          createCaptureSession();
+        }
+
+        @Override
+        public void onDisconnected(final CameraDevice camera) {
+          // Outro app (ou a própria activity) tomou a câmera.
+          LOGGER.w("Camera disconnected; stopping headless mode.");
+          camera.close();
+          cameraDevice = null;
+          stopSelf();
+        }
+
+        @Override
+        public void onError(final CameraDevice camera, final int error) {
+          // Na abertura: a activity ainda não soltou a câmera; tenta de novo em seguida.
+          final boolean inUse =
+              error == ERROR_CAMERA_IN_USE || error == ERROR_MAX_CAMERAS_IN_USE;
+          if (cameraDevice == null && inUse && openRetries < OPEN_RETRIES) {
+            openRetries++;
+            LOGGER.i("Camera in use; retry %d in %d ms", openRetries, OPEN_RETRY_DELAY_MS);
+            camera.close();
+            cameraHandler.postDelayed(cameraOpener, OPEN_RETRY_DELAY_MS);
+            return;
+          }
+          LOGGER.w("Camera error %d; stopping headless mode.", error);
+          camera.close();
+          cameraDevice = null;
+          stopSelf();
+        }
+      };
+
+  //---------------------------------------------------------------------------------------------------
+  //Método startPipeline
+  // As mesmas três etapas da activity, sem nenhuma chamada de desenho.
+  private void startPipeline() {
+    final FramePipeline pipeline = new FramePipeline();
+    pipeline.addStage(
+        "convert",
+        frame -> {
+          frame.readCapture();
+          try {
+            return convertFrame(frame);
+          } finally {
+            frame.releaseCapture();
+          }
+        });
+    pipeline.addStage("inference", this::inferFrame);
+    pipeline.addStage("track", this::trackFrame);
+    pipeline.start();
+    this.pipeline = pipeline;
+  }
+
+  //---------------------------------------------------------------------------------------------------
+  //Método createCaptureSession
+  // Uma única saída: o ImageReader de análise. Sem superfície de visualização.
+  private void createCaptureSession() {
+    try {
+      imageReader =
+          ImageReader.newInstance(
+              frameWidth,
+              frameHeight,
+              ImageFormat.YUV_420_888,
+              CameraActivity.CAPTURE_BUFFER_COUNT);
+      imageReader.setOnImageAvailableListener(this, cameraHandler);
+      requestBuilder = cameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_PREVIEW);
+      requestBuilder.addTarget(imageReader.getSurface());
+      cameraDevice.createCaptureSession(
+          Collections.singletonList(imageReader.getSurface()),
+          new CameraCaptureSession.StateCallback() {
+            @Override
+            public void onConfigured(final CameraCaptureSession session) {
+              if (cameraDevice == null) {
+                return;
+              }
+              captureSession = session;
+              requestBuilder.set(
+                  CaptureRequest.CONTROL_AF_MODE,
+                  CaptureRequest.CONTROL_AF_MODE_CONTINUOUS_PICTURE);
+              requestBuilder.set(CaptureRequest.CONTROL_AE_MODE, CaptureRequest.CONTROL_AE_MODE_ON);
+              try {
+                captureSession.setRepeatingRequest(requestBuilder.build(), null, cameraHandler);
+              } catch (final CameraAccessException e) {
+                LOGGER.e(e, "Exception!");
+                stopSelf();
+                return;
+              }
+              if (frameRateController != null) {
+                cameraHandler.postDelayed(frameRateUpdater, FrameRateController.UPDATE_INTERVAL_MS);
+              }
+              usageMeter.start();
+              mainHandler.post(notificationUpdater);
+            }
+
+            @Override
+            public void onConfigureFailed(final CameraCaptureSession session) {
+              LOGGER.w("Capture session failed; stopping headless mode.");
+              stopSelf();
+            }
+          },
+          cameraHandler);
+    } catch (final CameraAccessException e) {
+      LOGGER.e(e, "Exception!");
+      stopSelf();
+    }
+  }
+
+  //---------------------------------------------------------------------------------------------------
+  //Método updateFrameRate
+  // Como na CameraConnectionFragment: pede a menor faixa de FPS que cobre a vazão do pipeline.
+  private void updateFrameRate() {
+    final FramePipeline pipeline = this.pipeline;
+    if (captureSession == null || pipeline == null) {
+      return;
+    }
+    final int index = frameRateController.update(pipeline.getCapacityFps());
+    if (index >= 0) {
+      LOGGER.i("Headless camera FPS range: %s", fpsRanges[index]);
+      requestBuilder.set(CaptureRequest.CONTROL_AE_TARGET_FPS_RANGE, fpsRanges[index]);
+      try {
+        captureSession.setRepeatingRequest(requestBuilder.build(), null, cameraHandler);
+      } catch (final CameraAccessException | IllegalStateException e) {
+        LOGGER.e(e, "Exception!");
+        return;
+      }
+    }
+    cameraHandler.postDelayed(frameRateUpdater, FrameRateController.UPDATE_INTERVAL_MS);
+  }
+
+  //---------------------------------------------------------------------------------------------------
+  //Método closeCamera
+  // Roda na thread da câmera.
+  private void closeCamera() {
+    cameraHandler.removeCallbacks(frameRateUpdater);
+    if (captureSession != null) {
+      captureSession.close();
+      captureSession = null;
+    }
+    if (cameraDevice != null) {
+      cameraDevice.close();
+      cameraDevice = null;
+    }
+    if (imageReader != null) {
+      imageReader.close();
+      imageReader = null;
+    }
+  }
+
+  //---------------------------------------------------------------------------------------------------
+  //Método onImageAvailable
+  @Override
+  public void onImageAvailable(final ImageReader reader) {
+    final long arrivalNs = SystemClock.elapsedRealtimeNanos();
+    final Image image;
+    try {
+      image = reader.acquireLatestImage();
+    } catch (final IllegalStateException e) {
+      // Todas as imagens do ImageReader estão emprestadas ao pipeline.
+      return;
+    }
+    if (image == null) {
+      return;
+    }
+    hud.onCameraFrame(arrivalNs);
+    final FramePipeline pipeline = this.pipeline;
+    final Frame frame = pipeline != null ? pipeline.obtainFrame() : null;
+    if (frame == null) {
+      image.close();
+      return;
+    }
+    frame.attachImage(image, frameWidth, frameHeight);
+    // Como na activity: o instante da exposição, se o relógio do sensor for o mesmo do sistema.
+    frame.sensorTimestampNs = sensorTimestampRealtime ? image.getTimestamp() : arrivalNs;
+    pipeline.submit(frame);
+  }
+
+  //---------------------------------------------------------------------------------------------------
+  //Método convertFrame
+  // Etapa de conversão: YUV -> ARGB e recorte para a entrada do detector.
+  private boolean convertFrame(final Frame frame) {
+    // Cena parada: os rastros atuais continuam valendo e o detector não é chamado.
+    if (!motionGate.shouldInfer(frame.yuvBytes[0], frame.width, frame.height, frame.yRowStride)) {
+      return false;
+    }
+    final long startTime = SystemClock.elapsedRealtimeNanos();
+    ImageUtils.convertYUV420ToARGB8888(
+        frame.yuvBytes[0],
+        frame.yuvBytes[1],
+        frame.yuvBytes[2],
+        frame.width,
+        frame.height,
+        frame.yRowStride,
+        frame.uvRowStride,
+        frame.uvPixelStride,
+        rgbBytes);
+    rgbFrameBitmap.setPixels(rgbBytes, 0, frameWidth, 0, 0, frameWidth, frameHeight);
+
+    final int cropSize = DetectorActivity.TF_OD_API_INPUT_SIZE;
+    if (frame.croppedBitmap == null) {
+      frame.croppedBitmap = Bitmap.createBitmap(cropSize, cropSize, Config.ARGB_8888);
+      frame.cropCanvas = new Canvas(frame.croppedBitmap);
+    }
+    frame.cropSize = cropSize;
+    frame.cropToFrameTransform.set(cropToFrameTransform);
+    frame.cropCanvas.drawBitmap(rgbFrameBitmap, frameToCropTransform, null);
+    hud.recordConversion(SystemClock.elapsedRealtimeNanos() - startTime);
+    return true;
+  }
+
+  //---------------------------------------------------------------------------------------------------
+  //Método inferFrame
+  // Etapa de inferência: roda o detector e mapeia os resultados para as coordenadas do quadro.
+  private boolean inferFrame(final Frame frame) {
+    final long startTime = SystemClock.elapsedRealtimeNanos();
+    final boolean ran = detector.recognizeImage(frame.croppedBitmap, frame.detections);
+    hud.recordInference(SystemClock.elapsedRealtimeNanos() - startTime);
+    // Quadro pulado pelo detector: os rastros atuais continuam valendo.
+    if (!ran) {
+      return false;
+    }
+    for (int i = 0; i < frame.detections.size(); ++i) {
+      final Detector.Recognition result = frame.detections.get(i);
+      if (result.getConfidence() >= DetectorActivity.MINIMUM_CONFIDENCE_TF_OD_API) {
+        result.mapLocation(frame.cropToFrameTransform);
+        frame.results.add(result);
+      }
+    }
+    return true;
+  }
+
+  //---------------------------------------------------------------------------------------------------
+  //Método trackFrame
+  // Etapa de rastreamento: atualiza o tracker e faz o anúncio, que na activity sai do desenho.
+  private boolean trackFrame(final Frame frame) {
+    tracker.trackResults(frame.results, frame.id, frame.sensorTimestampNs, null);
+    tracker.teste(this);
+    hud.onProcessedFrame(SystemClock.elapsedRealtimeNanos());
+    return true;
+  }
+
+  //---------------------------------------------------------------------------------------------------
+  //Métodos da notificação
+  private Notification buildNotification(final String usage) {
+    final PendingIntent openActivity =
+        PendingIntent.getActivity(this, 0, new Intent(this, DetectorActivity.class), 0);
+    final PendingIntent stop =
+        PendingIntent.getService(
+            this, 0, new Intent(this, HeadlessDetectionService.class).setAction(ACTION_STOP), 0);
+    return new Notification.Builder(this, CHANNEL_ID)
+        .setSmallIcon(R.mipmap.ic_launcher)
+        .setContentTitle(getString(R.string.tfe_od_headless_running))
+        .setContentText(usage)
+        .setOngoing(true)
+        .setContentIntent(openActivity)
+        .addAction(
+            new Notification.Action.Builder(
+                    Icon.createWithResource(this, R.drawable.ic_baseline_remove),
+                    getString(R.string.tfe_od_headless_stop),
+                    stop)
+                .build())
+        .build();
+  }
+
+  private void updateNotification(final String usage) {
+    notificationManager.notify(NOTIFICATION_ID, buildNotification(usage));
+  }
+
+  //---------------------------------------------------------------------------------------------------
+  //Método writeReport
+  // Guarda a sessão e grava a comparação com a última sessão da activity.
+  private void writeReport() {
+    final SharedPreferences preferences =
+        getSharedPreferences(UsageMeter.PREFERENCES_NAME, MODE_PRIVATE);
+    final String report =
+        usageMeter.formatComparison(
+                "headless", preferences, UsageMeter.PREFIX_ACTIVITY, "activity")
+            + "\n"
+            + hud.format(0)
+            + "\n"
+            + motionGate.getStatString();
+    usageMeter.save(preferences, UsageMeter.PREFIX_HEADLESS);
+    LOGGER.i("Headless report:\n%s", report);
+    final File file = new File(getFilesDir(), REPORT_FILE);
+    try (OutputStreamWriter writer = new OutputStreamWriter(new FileOutputStream(file, false))) {
+      writer.write(report);
+    } catch (final IOException e) {
+      LOGGER.e(e, "Exception!");
+    }
+  }
+
+}//Fim da classe
@@ -22,7 +22,9 @@ import android.graphics.SurfaceTexture;
 import android.hardware.Camera;
 import android.hardware.Camera.CameraInfo;
 import android.os.Bundle;
+import android.os.Handler;
 import android.os.HandlerThread;
+import android.os.Looper;
 import android.util.Size;
 import android.util.SparseIntArray;
 import android.view.LayoutInflater;
@@ -56,6 +58,20 @@ public class LegacyCameraConnectionFragment extends Fragment {
   private Camera camera;
   private Camera.PreviewCallback imageListener;
   private Size desiredSize;
+  private int numBuffers;
+  // Faixas de FPS da câmera como a API legada as informa (FPS x 1000).
+  private List<int[]> fpsRanges;
+  private FrameRateController frameRateController;
+  private FrameRateController.ThroughputSource throughputSource;
+  // A câmera legada é usada na thread principal, onde foi aberta.
+  private final Handler mainHandler = new Handler(Looper.getMainLooper());
+  private final Runnable frameRateUpdater =
+      new Runnable() {
+        @Override
+        public void run() {
+          updateFrameRate();
+        }
+      };
   /** O identificador de layout a ser inflado para este fragmento. */
   private int layout;
   /** Um {@link AutoFitTextureView} para visualização da câmera. */
@@ -94,9 +110,29 @@ public class LegacyCameraConnectionFragment extends Fragment {
   //Método construtor
   public LegacyCameraConnectionFragment(
       final Camera.PreviewCallback imageListener, final int layout, final Size desiredSize) {
+    this(imageListener, layout, desiredSize, 1);
+  }
+
+  /**
+   * @param numBuffers buffers de visualização registrados na câmera. Com mais de um, o ouvinte pode
+   *     ficar com um buffer enquanto a câmera preenche os outros.
+   */
+  public LegacyCameraConnectionFragment(
+      final Camera.PreviewCallback imageListener,
+      final int layout,
+      final Size desiredSize,
+      final int numBuffers) {
     this.imageListener = imageListener;
     this.layout = layout;
     this.desiredSize = desiredSize;
+    this.numBuffers = Math.max(1, numBuffers);
+  }
+
+  //--------------------------------------------------------------------------------------------------------
+  //Método setThroughputSource
+  /** Liga o controle adaptativo de FPS à vazão medida pelo pipeline. */
+  public void setThroughputSource(final FrameRateController.ThroughputSource throughputSource) {
+    this.throughputSource = throughputSource;
   }
 
   //--------------------------------------------------------------------------------------------------------
@@ -192,6 +228,21 @@ public class LegacyCameraConnectionFragment extends Fragment {
               CameraConnectionFragment.chooseOptimalSize(
                       sizes, desiredSize.getWidth(), desiredSize.getHeight());
       parameters.setPreviewSize(previewSize.getWidth(), previewSize.getHeight());
+      fpsRanges = parameters.getSupportedPreviewFpsRange();
+      frameRateController = null;
+      if (fpsRanges != null && !fpsRanges.isEmpty()) {
+        final int[][] ranges = new int[fpsRanges.size()][];
+        for (int j = 0; j < ranges.length; ++j) {
+          final int[] range = fpsRanges.get(j);
+          ranges[j] =
+              new int[] {
+                range[Camera.Parameters.PREVIEW_FPS_MIN_INDEX] / 1000,
+                range[Camera.Parameters.PREVIEW_FPS_MAX_INDEX] / 1000
+              };
+        }
+        frameRateController =
+            new FrameRateController(ranges, FrameRateController.DEFAULT_HEADROOM);
+      }
       camera.setDisplayOrientation(90);
       camera.setParameters(parameters);
       camera.setPreviewTexture(availableSurfaceTexture);
@@ -201,16 +252,51 @@ public class LegacyCameraConnectionFragment extends Fragment {
 
     camera.setPreviewCallbackWithBuffer(imageListener);
     Camera.Size s = camera.getParameters().getPreviewSize();
-    camera.addCallbackBuffer(new byte[ImageUtils.getYUVByteSize(s.height, s.width)]);
+    for (int i = 0; i < numBuffers; ++i) {
+      camera.addCallbackBuffer(new byte[ImageUtils.getYUVByteSize(s.height, s.width)]);
+    }
 
     textureView.setAspectRatio(s.height, s.width);
 
     camera.startPreview();
+    if (frameRateController != null && throughputSource != null) {
+      mainHandler.postDelayed(frameRateUpdater, FrameRateController.UPDATE_INTERVAL_MS);
+    }
+  }
+
+  //--------------------------------------------------------------------------------------------------------
+  //Método updateFrameRate
+  // Mesma política da Camera2: a menor faixa que cobre a vazão do pipeline com folga.
+  private void updateFrameRate() {
+    if (camera == null) {
+      return;
+    }
+    final int index = frameRateController.update(throughputSource.getThroughputFps());
+    if (index >= 0) {
+      final int[] range = fpsRanges.get(index);
+      LOGGER.i(
+          "Camera FPS range: %d-%d",
+          range[Camera.Parameters.PREVIEW_FPS_MIN_INDEX] / 1000,
+          range[Camera.Parameters.PREVIEW_FPS_MAX_INDEX] / 1000);
+      try {
+        final Camera.Parameters parameters = camera.getParameters();
+        parameters.setPreviewFpsRange(
+            range[Camera.Parameters.PREVIEW_FPS_MIN_INDEX],
+            range[Camera.Parameters.PREVIEW_FPS_MAX_INDEX]);
+        camera.setParameters(parameters);
+      } catch (final RuntimeException e) {
+        // Alguns dispositivos recusam a troca com a visualização em andamento.
+        LOGGER.e(e, "Exception!");
+        return;
+      }
+    }
+    mainHandler.postDelayed(frameRateUpdater, FrameRateController.UPDATE_INTERVAL_MS);
   }
 
   //--------------------------------------------------------------------------------------------------------
   //Método stopCamera
   protected void stopCamera() {
+    mainHandler.removeCallbacks(frameRateUpdater);
     if (camera != null) {
       camera.stopPreview();
       camera.setPreviewCallback(null);
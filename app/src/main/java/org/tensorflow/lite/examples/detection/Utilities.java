@@ -4,7 +4,9 @@ package org.tensorflow.lite.examples.detection;
 import android.content.Context;
 import android.graphics.RectF;
 import android.speech.tts.TextToSpeech;
+import android.speech.tts.UtteranceProgressListener;
 import androidx.appcompat.app.AppCompatActivity;
+import org.tensorflow.lite.examples.detection.env.SpeechLatencyTracker;
 
 //--------------------------------------------------------------------------------------------------------------------------------
 //Classe Utilities
@@ -19,6 +21,8 @@ public class Utilities extends AppCompatActivity{
     private Context context;
     private TextToSpeech tts;
     private String txt;
+    private long frameId = -1;
+    private SpeechLatencyTracker latencyTracker;
     private String TAG = Utilities.class.getSimpleName();
 
 //----------------------------------------------------------------------------------------------------------
@@ -40,6 +44,15 @@ public class Utilities extends AppCompatActivity{
         handleSpeech();
     }
 
+    //Construtor que carrega o quadro de origem até o início do áudio, para medir a latência do anúncio
+    public Utilities(Context context, String txt, long frameId, SpeechLatencyTracker latencyTracker) {
+        this.context = context;
+        this.txt = txt;
+        this.frameId = frameId;
+        this.latencyTracker = latencyTracker;
+        handleSpeech();
+    }
+
     public Utilities(){}
 
     private void handleSpeech() {
@@ -50,6 +63,10 @@ public class Utilities extends AppCompatActivity{
             public void onInit(int status) {
 
                 if (status == TextToSpeech.SUCCESS) {
+                    if (latencyTracker != null) {
+                        latencyTracker.mark(frameId, SpeechLatencyTracker.STAGE_TTS_INIT);
+                        tts.setOnUtteranceProgressListener(new SpeechProgressListener());
+                    }
                     saySomeThing();
                 }
             }
@@ -62,10 +79,29 @@ public class Utilities extends AppCompatActivity{
     private void saySomeThing() {
 
         if ((txt != null) && (txt.length() > 0)) {
-            tts.speak(txt, TextToSpeech.QUEUE_FLUSH, null);
+            tts.speak(txt, TextToSpeech.QUEUE_FLUSH, null, SpeechLatencyTracker.utteranceId(frameId));
         } else {
             tts.shutdown();
         }
     }
 
+//---------------------------------------------------------------------------------------------------
+    //Classe SpeechProgressListener
+    //Marca o início efetivo do áudio; o quadro de origem vem codificado no identificador da fala
+    private class SpeechProgressListener extends UtteranceProgressListener {
+
+        @Override
+        public void onStart(String utteranceId) {
+            latencyTracker.mark(
+                    SpeechLatencyTracker.frameIdFromUtterance(utteranceId),
+                    SpeechLatencyTracker.STAGE_SPEECH_START);
+        }
+
+        @Override
+        public void onDone(String utteranceId) {}
+
+        @Override
+        public void onError(String utteranceId) {}
+    }
+
 }//Fim da classe
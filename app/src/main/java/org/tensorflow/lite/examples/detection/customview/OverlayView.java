@@ -20,7 +20,7 @@ import android.content.Context;
 import android.graphics.Canvas;
 import android.util.AttributeSet;
 import android.view.View;
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
 
 //---------------------------------------------------------------------------------------------------
@@ -30,7 +30,8 @@ public class OverlayView extends View {
 
 //---------------------------------------------------------------------------------------------------
 //Atributos
-  private final List<DrawCallback> callbacks = new LinkedList<DrawCallback>();
+  // Percorrida por índice a cada desenho, sem criar um Iterator.
+  private final List<DrawCallback> callbacks = new ArrayList<DrawCallback>();
 
 //---------------------------------------------------------------------------------------------------
   //Método construtor
@@ -48,8 +49,8 @@ public class OverlayView extends View {
   //Método draw
   @Override
   public synchronized void draw(final Canvas canvas) {
-    for (final DrawCallback callback : callbacks) {
-      callback.drawCallback(canvas);
+    for (int i = 0; i < callbacks.size(); ++i) {
+      callbacks.get(i).drawCallback(canvas);
     }
   }
 
@@ -35,6 +35,8 @@ public class BorderedText {
   private final Paint interiorPaint;
   private final Paint exteriorPaint;
   private final float textSize;
+  // Fundo do rótulo, reaproveitado a cada desenho em vez de um Paint novo por chamada.
+  private final Paint backgroundPaint = new Paint();
 
   //---------------------------------------------------------------------------------------------------
   /**Métodos Construtores
@@ -90,17 +92,24 @@ public class BorderedText {
 
   //---------------------------------------------------------------------------------------------------
   //Método drawText
+  // Aceita CharSequence para que o rótulo possa vir de um StringBuilder reaproveitado.
   public void drawText(
-      final Canvas canvas, final float posX, final float posY, final String text, Paint bgPaint) {
-
-    float width = exteriorPaint.measureText(text);
+      final Canvas canvas,
+      final float posX,
+      final float posY,
+      final CharSequence text,
+      Paint bgPaint) {
+
+    final int length = text.length();
+    float width = exteriorPaint.measureText(text, 0, length);
     float textSize = exteriorPaint.getTextSize();
-    Paint paint = new Paint(bgPaint);
-    paint.setStyle(Paint.Style.FILL);
-    paint.setAlpha(160);
-    canvas.drawRect(posX, (posY + (int) (textSize)), (posX + (int) (width)), posY, paint);
+    backgroundPaint.set(bgPaint);
+    backgroundPaint.setStyle(Paint.Style.FILL);
+    backgroundPaint.setAlpha(160);
+    canvas.drawRect(
+        posX, (posY + (int) (textSize)), (posX + (int) (width)), posY, backgroundPaint);
 
-    canvas.drawText(text, posX, (posY + textSize), interiorPaint);
+    canvas.drawText(text, 0, length, posX, (posY + textSize), interiorPaint);
   }
 
   //---------------------------------------------------------------------------------------------------
@@ -20,16 +20,14 @@ import android.graphics.Matrix;
 import android.os.Environment;
 import java.io.File;
 import java.io.FileOutputStream;
+import org.tensorflow.lite.examples.detection.vision.AffineTransform;
+import org.tensorflow.lite.examples.detection.vision.YuvConverter;
 
 //---------------------------------------------------------------------------------------------------
 /** Classe utilitária para manipulação de imagens. */
 public class ImageUtils {
 
   //Atributos
-  // Este valor é 2 ^ 18 - 1 e é usado para fixar os valores RGB antes de seus intervalos
-  // são normalizados para oito bits.
-  static final int kMaxChannelValue = 262143;
-
   @SuppressWarnings("unused")
   private static final Logger LOGGER = new Logger();
 
@@ -39,14 +37,7 @@ public class ImageUtils {
    * dimensões.
    */
   public static int getYUVByteSize(final int width, final int height) {
-    // O plano de luminância requer 1 byte por pixel.
-    final int ySize = width * height;
-
-    // O plano UV funciona em blocos 2x2, então dimensões com tamanhos ímpares devem ser arredondadas para cima.
-    // Cada bloco 2x2 leva 2 bytes para codificar, um para cada U e V.
-    final int uvSize = ((width + 1) / 2) * ((height + 1) / 2) * 2;
-
-    return ySize + uvSize;
+    return YuvConverter.getYUVByteSize(width, height);
   }
 
   //---------------------------------------------------------------------------------------------------
@@ -93,49 +84,9 @@ public class ImageUtils {
 
   //---------------------------------------------------------------------------------------------------
   //Método convertYUV420SPToARGB8888
+  // Os kernels de conversão ficam em lib_vision_core, sem dependências do Android.
   public static void convertYUV420SPToARGB8888(byte[] input, int width, int height, int[] output) {
-    final int frameSize = width * height;
-    for (int j = 0, yp = 0; j < height; j++) {
-      int uvp = frameSize + (j >> 1) * width;
-      int u = 0;
-      int v = 0;
-
-      for (int i = 0; i < width; i++, yp++) {
-        int y = 0xff & input[yp];
-        if ((i & 1) == 0) {
-          v = 0xff & input[uvp++];
-          u = 0xff & input[uvp++];
-        }
-
-        output[yp] = YUV2RGB(y, u, v);
-      }
-    }
-  }
-
-  //---------------------------------------------------------------------------------------------------
-  //Método YUV2RGB
-  private static int YUV2RGB(int y, int u, int v) {
-    // Ajusta e checa os valores YUV
-    y = (y - 16) < 0 ? 0 : (y - 16);
-    u -= 128;
-    v -= 128;
-
-    // Este é o equivalente em ponto flutuante. Fazemos a conversão em inteiro
-    // porque alguns dispositivos Android não possuem ponto flutuante no hardware.
-    // nR = (int) (1,164 * nY + 2,018 * nU);
-    // nG = (int) (1,164 * nY - 0,813 * nV - 0,391 * nU);
-    // nB = (int) (1,164 * nY + 1,596 * nV);
-    int y1192 = 1192 * y;
-    int r = (y1192 + 1634 * v);
-    int g = (y1192 - 833 * v - 400 * u);
-    int b = (y1192 + 2066 * u);
-
-    // Recorte dos valores RGB para dentro dos limites [0, kMaxChannelValue]
-    r = r > kMaxChannelValue ? kMaxChannelValue : (r < 0 ? 0 : r);
-    g = g > kMaxChannelValue ? kMaxChannelValue : (g < 0 ? 0 : g);
-    b = b > kMaxChannelValue ? kMaxChannelValue : (b < 0 ? 0 : b);
-
-    return 0xff000000 | ((r << 6) & 0xff0000) | ((g >> 2) & 0xff00) | ((b >> 10) & 0xff);
+    YuvConverter.convertYUV420SPToARGB8888(input, width, height, output);
   }
 
   //---------------------------------------------------------------------------------------------------
@@ -150,17 +101,8 @@ public class ImageUtils {
       int uvRowStride,
       int uvPixelStride,
       int[] out) {
-    int yp = 0;
-    for (int j = 0; j < height; j++) {
-      int pY = yRowStride * j;
-      int pUV = uvRowStride * (j >> 1);
-
-      for (int i = 0; i < width; i++) {
-        int uv_offset = pUV + (i >> 1) * uvPixelStride;
-
-        out[yp++] = YUV2RGB(0xff & yData[pY + i], 0xff & uData[uv_offset], 0xff & vData[uv_offset]);
-      }
-    }
+    YuvConverter.convertYUV420ToARGB8888(
+        yData, uData, vData, width, height, yRowStride, uvRowStride, uvPixelStride, out);
   }
 
   //---------------------------------------------------------------------------------------------------
@@ -185,49 +127,32 @@ public class ImageUtils {
       final int dstHeight,
       final int applyRotation,
       final boolean maintainAspectRatio) {
-    final Matrix matrix = new Matrix();
-
-    if (applyRotation != 0) {
-      if (applyRotation % 90 != 0) {
-        LOGGER.w("Rotation of %d % 90 != 0", applyRotation);
-      }
-
-      // Traduzir para que o centro da imagem esteja na origem.
-      matrix.postTranslate(-srcWidth / 2.0f, -srcHeight / 2.0f);
-
-      // Roda ao redor da origem
-      matrix.postRotate(applyRotation);
-    }
-
-    // Considere a rotação já aplicada, se houver, e determine como
-    // muita escala é necessária para cada eixo.
-    final boolean transpose = (Math.abs(applyRotation) + 90) % 180 == 0;
-
-    final int inWidth = transpose ? srcHeight : srcWidth;
-    final int inHeight = transpose ? srcWidth : srcHeight;
-
-    // Aplique escala, se necessário.
-    if (inWidth != dstWidth || inHeight != dstHeight) {
-      final float scaleFactorX = dstWidth / (float) inWidth;
-      final float scaleFactorY = dstHeight / (float) inHeight;
-
-      if (maintainAspectRatio) {
-        // Escala pelo fator mínimo para que dst seja preenchido completamente enquanto
-        // mantendo a proporção do aspecto. Algumas imagens podem cair da borda.
-        final float scaleFactor = Math.max(scaleFactorX, scaleFactorY);
-        matrix.postScale(scaleFactor, scaleFactor);
-      } else {
-        // Escale exatamente para preencher dst de src.
-        matrix.postScale(scaleFactorX, scaleFactorY);
-      }
-    }
-
-    if (applyRotation != 0) {
-      // Traduzir de volta da referência centrada na origem para o quadro de destino.
-      matrix.postTranslate(dstWidth / 2.0f, dstHeight / 2.0f);
+    if (applyRotation % 90 != 0) {
+      LOGGER.w("Rotation of %d % 90 != 0", applyRotation);
     }
+    final AffineTransform transform = new AffineTransform();
+    transform.setTransformation(
+        srcWidth, srcHeight, dstWidth, dstHeight, applyRotation, maintainAspectRatio);
+    return toMatrix(transform);
+  }
 
+  //---------------------------------------------------------------------------------------------------
+  //Método toMatrix
+  /** Converte uma transformação de lib_vision_core em uma Matrix do Android. */
+  public static Matrix toMatrix(final AffineTransform transform) {
+    final Matrix matrix = new Matrix();
+    toMatrix(transform, new float[9], matrix);
     return matrix;
   }
 
+  /**
+   * Como {@link #toMatrix(AffineTransform)}, mas escreve em uma Matrix existente, usando {@code
+   * values} (9 floats) como rascunho, para uso a cada quadro sem alocação.
+   */
+  public static void toMatrix(
+      final AffineTransform transform, final float[] values, final Matrix matrix) {
+    transform.getValues(values);
+    matrix.setValues(values);
+  }
+
 }//Fim da classe
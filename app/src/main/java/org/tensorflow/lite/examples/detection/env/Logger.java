@@ -193,4 +193,171 @@ public final class Logger {
     }
   }
 
+  //---------------------------------------------------------------------------------------------------
+  //Métodos sem alocação
+  // Variantes para o caminho quente (código executado a cada quadro). O nível é testado antes de
+  // qualquer formatação, concatenação ou boxing, de modo que uma mensagem filtrada não aloca nada.
+  // Argumentos primitivos não passam por Object... e, portanto, não são convertidos em objetos.
+
+  /** Mensagem calculada só quando o nível está habilitado. */
+  public interface MessageSupplier {
+    String get();
+  }
+
+  private void log(final int logLevel, final String message) {
+    Log.println(logLevel, tag, messagePrefix + message);
+  }
+
+  private void log(final int logLevel, final String format, final Object arg) {
+    Log.println(logLevel, tag, messagePrefix + String.format(format, arg));
+  }
+
+  private void log(final int logLevel, final String format, final Object arg1, final Object arg2) {
+    Log.println(logLevel, tag, messagePrefix + String.format(format, arg1, arg2));
+  }
+
+  public void v(final String message) {
+    if (isLoggable(Log.VERBOSE)) {
+      log(Log.VERBOSE, message);
+    }
+  }
+
+  public void v(final String format, final long arg) {
+    if (isLoggable(Log.VERBOSE)) {
+      log(Log.VERBOSE, format, arg);
+    }
+  }
+
+  public void v(final String format, final long arg1, final long arg2) {
+    if (isLoggable(Log.VERBOSE)) {
+      log(Log.VERBOSE, format, arg1, arg2);
+    }
+  }
+
+  public void v(final String format, final Object arg) {
+    if (isLoggable(Log.VERBOSE)) {
+      log(Log.VERBOSE, format, arg);
+    }
+  }
+
+  public void v(final String format, final Object arg1, final Object arg2) {
+    if (isLoggable(Log.VERBOSE)) {
+      log(Log.VERBOSE, format, arg1, arg2);
+    }
+  }
+
+  public void v(final MessageSupplier supplier) {
+    if (isLoggable(Log.VERBOSE)) {
+      log(Log.VERBOSE, supplier.get());
+    }
+  }
+
+  public void d(final String message) {
+    if (isLoggable(Log.DEBUG)) {
+      log(Log.DEBUG, message);
+    }
+  }
+
+  public void d(final String format, final long arg) {
+    if (isLoggable(Log.DEBUG)) {
+      log(Log.DEBUG, format, arg);
+    }
+  }
+
+  public void d(final String format, final long arg1, final long arg2) {
+    if (isLoggable(Log.DEBUG)) {
+      log(Log.DEBUG, format, arg1, arg2);
+    }
+  }
+
+  public void d(final String format, final Object arg) {
+    if (isLoggable(Log.DEBUG)) {
+      log(Log.DEBUG, format, arg);
+    }
+  }
+
+  public void d(final String format, final Object arg1, final Object arg2) {
+    if (isLoggable(Log.DEBUG)) {
+      log(Log.DEBUG, format, arg1, arg2);
+    }
+  }
+
+  public void d(final MessageSupplier supplier) {
+    if (isLoggable(Log.DEBUG)) {
+      log(Log.DEBUG, supplier.get());
+    }
+  }
+
+  public void i(final String message) {
+    if (isLoggable(Log.INFO)) {
+      log(Log.INFO, message);
+    }
+  }
+
+  public void i(final String format, final long arg) {
+    if (isLoggable(Log.INFO)) {
+      log(Log.INFO, format, arg);
+    }
+  }
+
+  public void i(final String format, final long arg1, final long arg2) {
+    if (isLoggable(Log.INFO)) {
+      log(Log.INFO, format, arg1, arg2);
+    }
+  }
+
+  public void i(final String format, final Object arg) {
+    if (isLoggable(Log.INFO)) {
+      log(Log.INFO, format, arg);
+    }
+  }
+
+  public void i(final String format, final Object arg1, final Object arg2) {
+    if (isLoggable(Log.INFO)) {
+      log(Log.INFO, format, arg1, arg2);
+    }
+  }
+
+  public void i(final MessageSupplier supplier) {
+    if (isLoggable(Log.INFO)) {
+      log(Log.INFO, supplier.get());
+    }
+  }
+
+  public void w(final String message) {
+    if (isLoggable(Log.WARN)) {
+      log(Log.WARN, message);
+    }
+  }
+
+  public void w(final String format, final long arg) {
+    if (isLoggable(Log.WARN)) {
+      log(Log.WARN, format, arg);
+    }
+  }
+
+  public void w(final String format, final long arg1, final long arg2) {
+    if (isLoggable(Log.WARN)) {
+      log(Log.WARN, format, arg1, arg2);
+    }
+  }
+
+  public void w(final String format, final Object arg) {
+    if (isLoggable(Log.WARN)) {
+      log(Log.WARN, format, arg);
+    }
+  }
+
+  public void w(final String format, final Object arg1, final Object arg2) {
+    if (isLoggable(Log.WARN)) {
+      log(Log.WARN, format, arg1, arg2);
+    }
+  }
+
+  public void w(final MessageSupplier supplier) {
+    if (isLoggable(Log.WARN)) {
+      log(Log.WARN, supplier.get());
+    }
+  }
+
 }//Fim da classe
@@ -0,0 +1,167 @@
+package org.tensorflow.lite.examples.detection.env;
+
+//---------------------------------------------------------------------------------------------------
+//Classe MotionGate
+/**
+ * Detector de mudança barato, usado para pular a inferência quando a cena está parada. Cada quadro é
+ * reduzido a uma miniatura do plano de luminância (média de blocos) e comparado, pela soma das
+ * diferenças absolutas (SAD), com a miniatura do último quadro que foi para o detector. Como a
+ * comparação é sempre contra o último quadro inferido, mudanças lentas se acumulam e acabam
+ * disparando a inferência.
+ *
+ * <p>O limiar se adapta ao ruído do sensor: é um múltiplo da média móvel do SAD dos quadros parados,
+ * nunca abaixo de {@link #MIN_THRESHOLD}. Mesmo em cena parada, um quadro é forçado a cada {@link
+ * #MAX_SKIPPED_FRAMES} quadros pulados.
+ *
+ * <p>{@link #shouldInfer} deve ser chamado por uma única thread (a etapa de conversão). {@link
+ * #reset} pode ser chamado de qualquer thread: ele só marca um pedido, que a etapa de conversão
+ * aplica no começo do próximo quadro.
+ */
+public final class MotionGate {
+
+  //---------------------------------------------------------------------------------------------------
+  //Atributos
+  private static final int THUMB_WIDTH = 32;
+  private static final int THUMB_HEIGHT = 24;
+  // Diferença média mínima por pixel da miniatura (em níveis de luminância, 0-255).
+  private static final float MIN_THRESHOLD = 4.0f;
+  // Quantas vezes acima do ruído a diferença precisa estar para contar como movimento.
+  private static final float NOISE_MULTIPLIER = 3.0f;
+  // Peso de cada amostra nova na média móvel do ruído.
+  private static final float NOISE_ALPHA = 0.05f;
+  private static final int MAX_SKIPPED_FRAMES = 15;
+  // Dentro de cada bloco, apenas um pixel a cada SAMPLE_STEP (nas duas direções) é somado.
+  private static final int SAMPLE_STEP = 2;
+
+  private final int[] current = new int[THUMB_WIDTH * THUMB_HEIGHT];
+  private final int[] reference = new int[THUMB_WIDTH * THUMB_HEIGHT];
+  private boolean hasReference = false;
+  private float noise = MIN_THRESHOLD / NOISE_MULTIPLIER;
+  private int skippedInARow = 0;
+  private volatile boolean resetRequested = false;
+  private volatile float lastScore = 0;
+  private volatile long inferredFrames = 0;
+  private volatile long skippedFrames = 0;
+  private volatile long forcedFrames = 0;
+
+  //---------------------------------------------------------------------------------------------------
+  //Método shouldInfer
+  /**
+   * Decide se o quadro deve ir para o detector.
+   *
+   * @param luma plano Y (ou o buffer NV21 inteiro, cujo início é o plano Y)
+   * @param rowStride bytes por linha do plano Y
+   */
+  public boolean shouldInfer(
+      final byte[] luma, final int width, final int height, final int rowStride) {
+    if (resetRequested) {
+      resetRequested = false;
+      hasReference = false;
+      skippedInARow = 0;
+    }
+    computeThumbnail(luma, width, height, rowStride);
+
+    if (!hasReference) {
+      acceptCurrent();
+      return true;
+    }
+
+    final float score = meanAbsoluteDifference();
+    lastScore = score;
+    final float threshold = Math.max(MIN_THRESHOLD, noise * NOISE_MULTIPLIER);
+
+    if (score >= threshold) {
+      acceptCurrent();
+      return true;
+    }
+
+    // Cena parada: a diferença é ruído, e alimenta a estimativa do limiar.
+    noise += NOISE_ALPHA * (score - noise);
+
+    if (skippedInARow >= MAX_SKIPPED_FRAMES) {
+      forcedFrames++;
+      acceptCurrent();
+      return true;
+    }
+    skippedInARow++;
+    skippedFrames++;
+    return false;
+  }
+
+  //---------------------------------------------------------------------------------------------------
+  //Método reset
+  /**
+   * Pede o descarte da referência, forçando a inferência do próximo quadro (por exemplo ao trocar
+   * de câmera). Pode ser chamado de qualquer thread.
+   */
+  public void reset() {
+    resetRequested = true;
+  }
+
+  //---------------------------------------------------------------------------------------------------
+  //Métodos de estatística
+  public long getSkippedFrames() {
+    return skippedFrames;
+  }
+
+  public long getForcedFrames() {
+    return forcedFrames;
+  }
+
+  public long getInferredFrames() {
+    return inferredFrames;
+  }
+
+  public String getStatString() {
+    return String.format(
+        "motion: inferred %d skipped %d forced %d score %.1f",
+        inferredFrames, skippedFrames, forcedFrames, lastScore);
+  }
+
+  //---------------------------------------------------------------------------------------------------
+  //Método acceptCurrent
+  private void acceptCurrent() {
+    System.arraycopy(current, 0, reference, 0, current.length);
+    hasReference = true;
+    skippedInARow = 0;
+    inferredFrames++;
+  }
+
+  //---------------------------------------------------------------------------------------------------
+  //Método computeThumbnail
+  // Média (amostrada) de cada bloco do plano Y, gravada em current.
+  private void computeThumbnail(
+      final byte[] luma, final int width, final int height, final int rowStride) {
+    final int blockWidth = Math.max(1, width / THUMB_WIDTH);
+    final int blockHeight = Math.max(1, height / THUMB_HEIGHT);
+    for (int ty = 0; ty < THUMB_HEIGHT; ++ty) {
+      final int y0 = Math.min(ty * blockHeight, height - 1);
+      final int y1 = Math.min(y0 + blockHeight, height);
+      for (int tx = 0; tx < THUMB_WIDTH; ++tx) {
+        final int x0 = Math.min(tx * blockWidth, width - 1);
+        final int x1 = Math.min(x0 + blockWidth, width);
+        int sum = 0;
+        int count = 0;
+        for (int y = y0; y < y1; y += SAMPLE_STEP) {
+          final int row = y * rowStride;
+          for (int x = x0; x < x1; x += SAMPLE_STEP) {
+            sum += luma[row + x] & 0xff;
+            count++;
+          }
+        }
+        current[ty * THUMB_WIDTH + tx] = sum / count;
+      }
+    }
+  }
+
+  //---------------------------------------------------------------------------------------------------
+  //Método meanAbsoluteDifference
+  private float meanAbsoluteDifference() {
+    int sad = 0;
+    for (int i = 0; i < current.length; ++i) {
+      sad += Math.abs(current[i] - reference[i]);
+    }
+    return (float) sad / current.length;
+  }
+
+}//Fim da classe
@@ -0,0 +1,203 @@
+package org.tensorflow.lite.examples.detection.env;
+
+//Importações
+import android.os.Build;
+import android.os.Debug;
+import org.tensorflow.lite.examples.detection.tflite.LatencyHistogram;
+
+//---------------------------------------------------------------------------------------------------
+//Classe PerformanceHud
+/**
+ * Indicadores de desempenho para a folha inferior, todos sobre janelas recentes: FPS da câmera e
+ * dos quadros processados, taxa de descarte, percentis das etapas de conversão, inferência e
+ * desenho, e uso do heap Java e contagem de GCs.
+ *
+ * <p>Os métodos de registro não alocam e podem ser chamados de qualquer thread; {@link
+ * #format(long)} deve ser chamado poucas vezes por segundo, pela thread de UI.
+ */
+public final class PerformanceHud {
+
+  //---------------------------------------------------------------------------------------------------
+  //Atributos
+  private static final int WINDOW = 60;
+  private static final double NANOS_PER_MILLI = 1000000.0;
+  private static final long BYTES_PER_MB = 1024 * 1024;
+  private final RateMeter cameraRate = new RateMeter(WINDOW);
+  private final RateMeter processedRate = new RateMeter(WINDOW);
+  private final WindowedLatency conversionLatency = new WindowedLatency(WINDOW);
+  private final WindowedLatency inferenceLatency = new WindowedLatency(WINDOW);
+  private final WindowedLatency drawLatency = new WindowedLatency(WINDOW);
+  // Contadores na última chamada de format, para a taxa de descarte desde então.
+  private long lastCameraFrames = 0;
+  private long lastDrops = 0;
+  private long lastGcCount = -1;
+
+  //---------------------------------------------------------------------------------------------------
+  //Métodos de registro
+  public void onCameraFrame(final long nowNs) {
+    cameraRate.record(nowNs);
+  }
+
+  public void onProcessedFrame(final long nowNs) {
+    processedRate.record(nowNs);
+  }
+
+  public void recordConversion(final long nanos) {
+    conversionLatency.record(nanos);
+  }
+
+  public void recordInference(final long nanos) {
+    inferenceLatency.record(nanos);
+  }
+
+  public void recordDraw(final long nanos) {
+    drawLatency.record(nanos);
+  }
+
+  //---------------------------------------------------------------------------------------------------
+  //Métodos de contagem
+  /** Quadros da câmera desde a criação, para medir taxas sobre uma sessão inteira. */
+  public long getCameraFrameCount() {
+    return cameraRate.getCount();
+  }
+
+  public long getProcessedFrameCount() {
+    return processedRate.getCount();
+  }
+
+  //---------------------------------------------------------------------------------------------------
+  //Método format
+  /**
+   * @param totalDrops quadros descartados desde o início (na captura e entre as etapas); a taxa
+   *     mostrada é relativa aos quadros da câmera desde a chamada anterior.
+   */
+  public synchronized String format(final long totalDrops) {
+    final long cameraFrames = cameraRate.getCount();
+    final long newFrames = cameraFrames - lastCameraFrames;
+    // O pipeline é recriado a cada onResume e seus contadores recomeçam do zero.
+    final long newDrops = totalDrops >= lastDrops ? totalDrops - lastDrops : totalDrops;
+    lastCameraFrames = cameraFrames;
+    lastDrops = totalDrops;
+
+    final Runtime runtime = Runtime.getRuntime();
+    final long usedHeap = runtime.totalMemory() - runtime.freeMemory();
+    final long gcCount = getGcCount();
+    final String gc;
+    if (gcCount < 0) {
+      gc = "n/a";
+    } else {
+      gc = gcCount + (lastGcCount >= 0 ? " (+" + (gcCount - lastGcCount) + ")" : "");
+      lastGcCount = gcCount;
+    }
+
+    return String.format(
+        "camera %.1ffps, processed %.1ffps, drops %.0f%%\n"
+            + "inference p50 %.1fms p95 %.1fms\n"
+            + "conversion p50 %.1fms p95 %.1fms\n"
+            + "draw p50 %.1fms p95 %.1fms\n"
+            + "heap %d/%dMB, gc %s",
+        cameraRate.getRate(),
+        processedRate.getRate(),
+        newFrames > 0 ? Math.min(100.0, 100.0 * newDrops / newFrames) : 0.0,
+        inferenceLatency.getP50Nanos() / NANOS_PER_MILLI,
+        inferenceLatency.getP95Nanos() / NANOS_PER_MILLI,
+        conversionLatency.getP50Nanos() / NANOS_PER_MILLI,
+        conversionLatency.getP95Nanos() / NANOS_PER_MILLI,
+        drawLatency.getP50Nanos() / NANOS_PER_MILLI,
+        drawLatency.getP95Nanos() / NANOS_PER_MILLI,
+        usedHeap / BYTES_PER_MB,
+        runtime.maxMemory() / BYTES_PER_MB,
+        gc);
+  }
+
+  //---------------------------------------------------------------------------------------------------
+  //Método getGcCount
+  // Número de coletas desde o início do processo, ou -1 onde o ART não expõe a estatística.
+  private static long getGcCount() {
+    if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
+      return -1;
+    }
+    final String value = Debug.getRuntimeStat("art.gc.gc-count");
+    if (value == null) {
+      return -1;
+    }
+    try {
+      return Long.parseLong(value);
+    } catch (final NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  //---------------------------------------------------------------------------------------------------
+  //Classe WindowedLatency
+  /**
+   * Percentis de latência por janelas de {@code capacity} amostras: mostra a última janela completa
+   * (ou a atual, antes da primeira), e recomeça o {@link LatencyHistogram} a cada janela.
+   */
+  private static final class WindowedLatency {
+    private final int capacity;
+    private final LatencyHistogram histogram = new LatencyHistogram();
+    private long p50Nanos = 0;
+    private long p95Nanos = 0;
+    private boolean hasWindow = false;
+
+    WindowedLatency(final int capacity) {
+      this.capacity = capacity;
+    }
+
+    synchronized void record(final long nanos) {
+      histogram.record(nanos);
+      if (histogram.getCount() >= capacity) {
+        p50Nanos = histogram.getPercentileNanos(50);
+        p95Nanos = histogram.getPercentileNanos(95);
+        hasWindow = true;
+        histogram.reset();
+      }
+    }
+
+    synchronized long getP50Nanos() {
+      return hasWindow ? p50Nanos : histogram.getPercentileNanos(50);
+    }
+
+    synchronized long getP95Nanos() {
+      return hasWindow ? p95Nanos : histogram.getPercentileNanos(95);
+    }
+  }
+
+  //---------------------------------------------------------------------------------------------------
+  //Classe RateMeter
+  /** Taxa de eventos por segundo sobre os últimos {@code capacity} instantes registrados. */
+  private static final class RateMeter {
+    private final long[] timestamps;
+    private int next = 0;
+    private int size = 0;
+    private long count = 0;
+
+    RateMeter(final int capacity) {
+      timestamps = new long[capacity];
+    }
+
+    synchronized void record(final long nowNs) {
+      timestamps[next] = nowNs;
+      next = (next + 1) % timestamps.length;
+      if (size < timestamps.length) {
+        size++;
+      }
+      count++;
+    }
+
+    synchronized long getCount() {
+      return count;
+    }
+
+    synchronized double getRate() {
+      if (size < 2) {
+        return 0;
+      }
+      final long newest = timestamps[(next - 1 + timestamps.length) % timestamps.length];
+      final long oldest = timestamps[(next - size + timestamps.length) % timestamps.length];
+      return newest > oldest ? (size - 1) * 1e9 / (newest - oldest) : 0;
+    }
+  }
+
+}//Fim da classe
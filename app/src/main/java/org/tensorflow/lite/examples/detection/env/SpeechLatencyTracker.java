@@ -0,0 +1,202 @@
+package org.tensorflow.lite.examples.detection.env;
+
+//Importações
+import android.os.SystemClock;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import org.tensorflow.lite.examples.detection.tflite.LatencyHistogram;
+
+//---------------------------------------------------------------------------------------------------
+//Classe SpeechLatencyTracker
+/**
+ * Mede o tempo entre o quadro que contém um objeto e o início do áudio que o anuncia. Cada quadro
+ * recebe marcações de tempo ao passar pelas etapas do caminho (processImage, thread de inferência,
+ * trackResults, desenho do OverlayView, onInit do TTS e UtteranceProgressListener.onStart). Quando o
+ * áudio começa, a diferença entre etapas consecutivas é registrada em um {@link LatencyHistogram}
+ * por etapa, além do total.
+ *
+ * <p>Os quadros ficam num anel de {@code SLOT_COUNT} posições, indexado pelo número do quadro. Um
+ * quadro que vai ser falado sai do anel em {@link #markAnnounced(long)}, para que uma fala lenta
+ * não seja sobrescrita pelos quadros seguintes; as falas que se perdem antes do áudio são contadas
+ * como descartadas em vez de sumirem dos percentis sem registro.
+ */
+public final class SpeechLatencyTracker {
+
+  //---------------------------------------------------------------------------------------------------
+  //Atributos
+  public static final int STAGE_CAPTURE = 0;
+  public static final int STAGE_INFERENCE_START = 1;
+  public static final int STAGE_INFERENCE_END = 2;
+  public static final int STAGE_TRACKED = 3;
+  public static final int STAGE_DRAWN = 4;
+  public static final int STAGE_TTS_INIT = 5;
+  public static final int STAGE_SPEECH_START = 6;
+  private static final String[] STAGE_NAMES = {
+    "capture", "bg_start", "inference", "track", "draw", "tts_init", "audio_start"
+  };
+  private static final String UTTERANCE_PREFIX = "frame-";
+  // Quantos quadros podem estar entre a captura e o desenho ao mesmo tempo.
+  private static final int SLOT_COUNT = 64;
+  // Quantas falas podem estar esperando o áudio ao mesmo tempo (o TTS pode demorar segundos).
+  private static final int MAX_ANNOUNCED = 16;
+  private static final Logger LOGGER = new Logger();
+
+  private final long[] slotFrames = new long[SLOT_COUNT];
+  private final long[][] slotMarks = new long[SLOT_COUNT][STAGE_NAMES.length];
+  // Marcações dos quadros sendo falados, por quadro (o mesmo número do identificador de fala).
+  private final LinkedHashMap<Long, long[]> announced = new LinkedHashMap<Long, long[]>();
+  private long lastAnnouncedFrame = -1;
+  // Falas perdidas antes do início do áudio.
+  private long evicted = 0;
+  // Um histograma por transição (etapa i-1 -> i) e um para o total.
+  private final LatencyHistogram[] stageHistograms = new LatencyHistogram[STAGE_NAMES.length];
+  private final LatencyHistogram totalHistogram = new LatencyHistogram();
+
+  //---------------------------------------------------------------------------------------------------
+  //Método Construtor
+  public SpeechLatencyTracker() {
+    for (int i = 1; i < STAGE_NAMES.length; ++i) {
+      stageHistograms[i] = new LatencyHistogram();
+    }
+    for (int i = 0; i < SLOT_COUNT; ++i) {
+      slotFrames[i] = -1;
+    }
+  }
+
+  //---------------------------------------------------------------------------------------------------
+  //Métodos utteranceId e frameIdFromUtterance
+  /** Identificador de fala que carrega o número do quadro até o UtteranceProgressListener. */
+  public static String utteranceId(final long frameId) {
+    return UTTERANCE_PREFIX + frameId;
+  }
+
+  /** Retorna o quadro codificado no identificador de fala, ou -1 se não houver. */
+  public static long frameIdFromUtterance(final String utteranceId) {
+    if (utteranceId == null || !utteranceId.startsWith(UTTERANCE_PREFIX)) {
+      return -1;
+    }
+    try {
+      return Long.parseLong(utteranceId.substring(UTTERANCE_PREFIX.length()));
+    } catch (final NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  //---------------------------------------------------------------------------------------------------
+  //Método mark
+  /**
+   * Registra que o quadro {@code frameId} chegou à etapa {@code stage}. Apenas a primeira marcação
+   * de cada etapa é mantida, já que o mesmo quadro pode ser desenhado várias vezes.
+   */
+  public synchronized void mark(final long frameId, final int stage) {
+    if (frameId < 0) {
+      return;
+    }
+    final long now = SystemClock.elapsedRealtimeNanos();
+    if (stage > STAGE_DRAWN) {
+      markAnnouncedStage(frameId, stage, now);
+      return;
+    }
+    final int slot = (int) (frameId % SLOT_COUNT);
+    final long[] marks = slotMarks[slot];
+
+    if (stage == STAGE_CAPTURE) {
+      slotFrames[slot] = frameId;
+      for (int i = 0; i < marks.length; ++i) {
+        marks[i] = 0;
+      }
+      marks[STAGE_CAPTURE] = now;
+      return;
+    }
+
+    // O quadro já foi sobrescrito por um mais novo; descartamos a marcação.
+    if (slotFrames[slot] != frameId || marks[stage] != 0) {
+      return;
+    }
+    marks[stage] = now;
+  }
+
+  //---------------------------------------------------------------------------------------------------
+  //Método markAnnounced
+  /**
+   * Registra que a fala do quadro {@code frameId} foi pedida ao TTS: as marcações do quadro saem do
+   * anel e esperam o início do áudio. Um quadro anunciado de novo é ignorado.
+   */
+  public synchronized void markAnnounced(final long frameId) {
+    if (frameId < 0 || frameId <= lastAnnouncedFrame) {
+      return;
+    }
+    lastAnnouncedFrame = frameId;
+    final int slot = (int) (frameId % SLOT_COUNT);
+    if (slotFrames[slot] != frameId) {
+      evicted++;
+      return;
+    }
+    if (announced.size() >= MAX_ANNOUNCED) {
+      final Iterator<Long> oldest = announced.keySet().iterator();
+      oldest.next();
+      oldest.remove();
+      evicted++;
+    }
+    announced.put(frameId, slotMarks[slot].clone());
+    slotFrames[slot] = -1;
+  }
+
+  //---------------------------------------------------------------------------------------------------
+  //Método markAnnouncedStage
+  // Etapas do TTS, depois de markAnnounced. O início do áudio fecha a medição do quadro.
+  private void markAnnouncedStage(final long frameId, final int stage, final long now) {
+    final long[] marks = announced.get(frameId);
+    if (marks == null || marks[stage] != 0) {
+      return;
+    }
+    marks[stage] = now;
+
+    if (stage == STAGE_SPEECH_START) {
+      long previous = marks[STAGE_CAPTURE];
+      for (int i = 1; i < marks.length; ++i) {
+        if (marks[i] != 0) {
+          stageHistograms[i].record(marks[i] - previous);
+          previous = marks[i];
+        }
+      }
+      totalHistogram.record(now - marks[STAGE_CAPTURE]);
+      announced.remove(frameId);
+    }
+  }
+
+  //---------------------------------------------------------------------------------------------------
+  //Método getStatString
+  public synchronized String getStatString() {
+    final StringBuilder builder = new StringBuilder();
+    for (int i = 1; i < STAGE_NAMES.length; ++i) {
+      builder
+          .append(STAGE_NAMES[i - 1])
+          .append(" -> ")
+          .append(STAGE_NAMES[i])
+          .append(": ")
+          .append(stageHistograms[i].format())
+          .append('\n');
+    }
+    builder.append("total: ").append(totalHistogram.format()).append('\n');
+    builder.append("evicted: ").append(evicted).append('\n');
+    return builder.toString();
+  }
+
+  //---------------------------------------------------------------------------------------------------
+  //Método dumpTo
+  /** Grava o resumo atual dos percentis em um arquivo, para comparação entre versões. */
+  public void dumpTo(final File file) {
+    try (OutputStreamWriter writer = new OutputStreamWriter(new FileOutputStream(file, false))) {
+      writer.write(getStatString());
+      LOGGER.i("Speech latency written to %s", file.getAbsolutePath());
+    } catch (final IOException e) {
+      LOGGER.e(e, "Exception!");
+    }
+  }
+
+}//Fim da classe
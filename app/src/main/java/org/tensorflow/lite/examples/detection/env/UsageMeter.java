@@ -0,0 +1,151 @@
+package org.tensorflow.lite.examples.detection.env;
+
+//Importações
+import android.content.SharedPreferences;
+import android.os.Process;
+import android.os.SystemClock;
+import java.util.Locale;
+
+//---------------------------------------------------------------------------------------------------
+//Classe UsageMeter
+/**
+ * Uso médio de CPU do processo e taxas de quadros ao longo de uma sessão, para comparar o modo com
+ * tela (DetectorActivity) com o modo sem tela (HeadlessDetectionService). Ao contrário do {@link
+ * PerformanceHud}, que mostra janelas recentes, aqui vale a média desde {@link #start()}.
+ *
+ * <p>A CPU é o tempo de CPU de todas as threads do processo ({@link Process#getElapsedCpuTime()})
+ * dividido pelo tempo decorrido: 100% é um núcleo inteiro ocupado, e o valor pode passar disso.
+ */
+public final class UsageMeter {
+
+  //---------------------------------------------------------------------------------------------------
+  //Atributos
+  /** SharedPreferences onde cada modo guarda a sua última sessão, com um dos prefixos abaixo. */
+  public static final String PREFERENCES_NAME = "usage";
+  public static final String PREFIX_ACTIVITY = "activity_";
+  public static final String PREFIX_HEADLESS = "headless_";
+  // Sessões mais curtas que isso são dominadas pela partida e não são guardadas.
+  public static final long MIN_SESSION_MS = 10000;
+  private static final String KEY_CPU = "cpu_percent";
+  private static final String KEY_CAMERA_FPS = "camera_fps";
+  private static final String KEY_PROCESSED_FPS = "processed_fps";
+  private static final String KEY_ELAPSED_MS = "elapsed_ms";
+  private final PerformanceHud hud;
+  private long startMs;
+  private long startCpuMs;
+  private long startCameraFrames;
+  private long startProcessedFrames;
+
+  //---------------------------------------------------------------------------------------------------
+  //Método Construtor
+  /** @param hud de onde vêm as contagens de quadros da câmera e processados. */
+  public UsageMeter(final PerformanceHud hud) {
+    this.hud = hud;
+  }
+
+  //---------------------------------------------------------------------------------------------------
+  //Método start
+  public synchronized void start() {
+    startMs = SystemClock.elapsedRealtime();
+    startCpuMs = Process.getElapsedCpuTime();
+    startCameraFrames = hud.getCameraFrameCount();
+    startProcessedFrames = hud.getProcessedFrameCount();
+  }
+
+  //---------------------------------------------------------------------------------------------------
+  //Métodos de consulta
+  /** Duração da sessão, ou 0 se ela não começou. */
+  public synchronized long getElapsedMs() {
+    return startMs > 0 ? SystemClock.elapsedRealtime() - startMs : 0;
+  }
+
+  public synchronized double getCpuPercent() {
+    final long elapsedMs = getElapsedMs();
+    return elapsedMs > 0 ? 100.0 * (Process.getElapsedCpuTime() - startCpuMs) / elapsedMs : 0;
+  }
+
+  public synchronized double getCameraFps() {
+    return rate(hud.getCameraFrameCount() - startCameraFrames);
+  }
+
+  public synchronized double getProcessedFps() {
+    return rate(hud.getProcessedFrameCount() - startProcessedFrames);
+  }
+
+  private double rate(final long frames) {
+    final long elapsedMs = getElapsedMs();
+    return elapsedMs > 0 ? 1000.0 * frames / elapsedMs : 0;
+  }
+
+  //---------------------------------------------------------------------------------------------------
+  //Método format
+  public String format() {
+    return format(getCpuPercent(), getCameraFps(), getProcessedFps(), getElapsedMs());
+  }
+
+  private static String format(
+      final double cpuPercent,
+      final double cameraFps,
+      final double processedFps,
+      final long elapsedMs) {
+    return String.format(
+        Locale.US,
+        "cpu %.0f%%, camera %.1ffps, processed %.1ffps (%ds)",
+        cpuPercent,
+        cameraFps,
+        processedFps,
+        elapsedMs / 1000);
+  }
+
+  //---------------------------------------------------------------------------------------------------
+  //Método save
+  /** Guarda as médias da sessão com o prefixo dado, para {@link #formatComparison}. */
+  public void save(final SharedPreferences preferences, final String prefix) {
+    preferences
+        .edit()
+        .putFloat(prefix + KEY_CPU, (float) getCpuPercent())
+        .putFloat(prefix + KEY_CAMERA_FPS, (float) getCameraFps())
+        .putFloat(prefix + KEY_PROCESSED_FPS, (float) getProcessedFps())
+        .putLong(prefix + KEY_ELAPSED_MS, getElapsedMs())
+        .apply();
+  }
+
+  //---------------------------------------------------------------------------------------------------
+  //Método formatComparison
+  /**
+   * Esta sessão ao lado da sessão guardada com {@code prefix} e a diferença entre as duas (negativa
+   * quando esta gasta menos), ou só esta sessão se nada foi guardado.
+   */
+  public String formatComparison(
+      final String name,
+      final SharedPreferences preferences,
+      final String prefix,
+      final String otherName) {
+    final long otherElapsedMs = preferences.getLong(prefix + KEY_ELAPSED_MS, 0);
+    if (otherElapsedMs == 0) {
+      return name + ": " + format() + "\n" + otherName + ": no session recorded";
+    }
+    final double cpu = getCpuPercent();
+    final double cameraFps = getCameraFps();
+    final double processedFps = getProcessedFps();
+    final double otherCpu = preferences.getFloat(prefix + KEY_CPU, 0);
+    final double otherCameraFps = preferences.getFloat(prefix + KEY_CAMERA_FPS, 0);
+    final double otherProcessedFps = preferences.getFloat(prefix + KEY_PROCESSED_FPS, 0);
+    return name
+        + ": "
+        + format(cpu, cameraFps, processedFps, getElapsedMs())
+        + "\n"
+        + otherName
+        + ": "
+        + format(otherCpu, otherCameraFps, otherProcessedFps, otherElapsedMs)
+        + "\n"
+        + String.format(
+            Locale.US,
+            "difference: cpu %+.0f%% (%+.0f%% relative), camera %+.1ffps, processed %+.1ffps",
+            cpu - otherCpu,
+            otherCpu > 0 ? 100.0 * (cpu - otherCpu) / otherCpu : 0.0,
+            cameraFps - otherCameraFps,
+            processedFps - otherProcessedFps);
+  }
+
+}//Fim da classe
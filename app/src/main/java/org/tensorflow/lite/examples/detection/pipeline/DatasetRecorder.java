@@ -0,0 +1,306 @@
+package org.tensorflow.lite.examples.detection.pipeline;
+
+//Importações
+import android.graphics.Bitmap;
+import android.graphics.Bitmap.Config;
+import android.graphics.Canvas;
+import android.graphics.RectF;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.tensorflow.lite.examples.detection.env.Logger;
+import org.tensorflow.lite.examples.detection.tflite.Detector.Recognition;
+
+//---------------------------------------------------------------------------------------------------
+//Classe DatasetRecorder
+/**
+ * Grava em segundo plano as entradas do detector e as detecções de cada uma, para montar conjuntos
+ * de dados em campo. Cada amostra vira {@code 000001.jpg} (ou {@code .png}) com as detecções em
+ * {@code 000001_results.txt}, no formato do {@code table_results.txt} do DetectorTest e nas
+ * coordenadas da própria imagem, de modo que a pasta pode ser corrigida à mão e avaliada direto
+ * pelo DetectorEvaluation. O {@code manifest.txt} lista as amostras com o quadro e o número de
+ * detecções.
+ *
+ * <p>A thread que chama {@link #record} só copia o recorte para um buffer livre; a compressão e a
+ * escrita ficam num pool limitado de threads. Sem buffer livre (os workers não dão conta) a amostra
+ * é descartada e contada, sem segurar a inferência.
+ */
+public final class DatasetRecorder implements Closeable {
+
+  //---------------------------------------------------------------------------------------------------
+  //Atributos
+  private static final Logger LOGGER = new Logger();
+  public static final String MANIFEST_FILE = "manifest.txt";
+  private static final String RESULTS_SUFFIX = "_results.txt";
+  private static final int JPEG_QUALITY = 95;
+  // PNG é sem perdas; a qualidade é ignorada.
+  private static final int PNG_QUALITY = 100;
+  // Espera máxima, em close(), pelas amostras que ainda estão na fila.
+  private static final long CLOSE_TIMEOUT_MS = 5000;
+  private final File directory;
+  private final Format format;
+  private final ThreadPoolExecutor executor;
+  // Buffers livres; o tamanho do pool limita as amostras em trânsito.
+  private final ArrayBlockingQueue<Sample> freeSamples;
+  private final Writer manifest;
+  private final AtomicInteger nextIndex = new AtomicInteger();
+  private final AtomicLong written = new AtomicLong();
+  private final AtomicLong dropped = new AtomicLong();
+  private final AtomicLong failed = new AtomicLong();
+  // Localização da detecção em record(); só a thread de inferência chama, então um basta.
+  private final RectF location = new RectF();
+
+  //---------------------------------------------------------------------------------------------------
+  //Enum Format
+  public enum Format {
+    JPEG(Bitmap.CompressFormat.JPEG, ".jpg", JPEG_QUALITY),
+    PNG(Bitmap.CompressFormat.PNG, ".png", PNG_QUALITY);
+
+    final Bitmap.CompressFormat compressFormat;
+    final String extension;
+    final int quality;
+
+    Format(final Bitmap.CompressFormat compressFormat, final String extension, final int quality) {
+      this.compressFormat = compressFormat;
+      this.extension = extension;
+      this.quality = quality;
+    }
+  }
+
+  //---------------------------------------------------------------------------------------------------
+  //Método Construtor
+  /**
+   * @param workerCount threads que comprimem e gravam as amostras.
+   * @param queueCapacity amostras que podem esperar por um worker antes de haver descarte.
+   */
+  public DatasetRecorder(
+      final File directory, final Format format, final int workerCount, final int queueCapacity)
+      throws IOException {
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Cannot create " + directory);
+    }
+    this.directory = directory;
+    this.format = format;
+    manifest =
+        new OutputStreamWriter(
+            new FileOutputStream(new File(directory, MANIFEST_FILE), false), "UTF-8");
+    final int sampleCount = workerCount + queueCapacity;
+    freeSamples = new ArrayBlockingQueue<Sample>(sampleCount);
+    for (int i = 0; i < sampleCount; ++i) {
+      freeSamples.offer(new Sample());
+    }
+    // A fila do executor comporta todas as amostras, então a política de descarte só atua depois de
+    // close(); a amostra rejeitada volta para o pool como qualquer outra descartada.
+    executor =
+        new ThreadPoolExecutor(
+            workerCount,
+            workerCount,
+            0,
+            TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<Runnable>(sampleCount),
+            runnable -> {
+              final Thread thread = new Thread(runnable, "dataset");
+              thread.setPriority(Thread.MIN_PRIORITY);
+              return thread;
+            },
+            (runnable, pool) -> {
+              dropped.incrementAndGet();
+              freeSamples.offer((Sample) runnable);
+            });
+    LOGGER.i("Recording dataset to %s as %s", directory, format);
+  }
+
+  //---------------------------------------------------------------------------------------------------
+  //Método record
+  /**
+   * Copia o recorte e as detecções com confiança de pelo menos {@code minimumConfidence} e agenda a
+   * gravação. As localizações devem estar nas coordenadas do recorte. Retorna falso se a amostra
+   * foi descartada por falta de buffer livre.
+   */
+  public boolean record(
+      final long frameId,
+      final Bitmap crop,
+      final List<Recognition> results,
+      final float minimumConfidence) {
+    final Sample sample = freeSamples.poll();
+    if (sample == null) {
+      dropped.incrementAndGet();
+      return false;
+    }
+    sample.frameId = frameId;
+    sample.copyFrom(crop);
+    sample.count = 0;
+    for (int i = 0; i < results.size(); ++i) {
+      final Recognition result = results.get(i);
+      if (result.getConfidence() >= minimumConfidence && result.getLocation(location)) {
+        sample.add(result.getTitle(), location, result.getConfidence());
+      }
+    }
+    executor.execute(sample);
+    return true;
+  }
+
+  //---------------------------------------------------------------------------------------------------
+  //Método write
+  // Roda num worker: grava a imagem, o arquivo de resultados e a linha do manifesto.
+  private void write(final Sample sample) {
+    final String name = String.format(Locale.US, "%06d", nextIndex.incrementAndGet());
+    final String imageName = name + format.extension;
+    try {
+      final OutputStream image =
+          new BufferedOutputStream(new FileOutputStream(new File(directory, imageName)));
+      try {
+        sample.bitmap.compress(format.compressFormat, format.quality, image);
+      } finally {
+        image.close();
+      }
+
+      final StringBuilder builder = new StringBuilder();
+      for (int i = 0; i < sample.count; ++i) {
+        // O formato separa os campos por espaço; o DetectorTest troca '_' de volta por espaço.
+        builder.append(
+            String.format(
+                Locale.US,
+                "%s %f %f %f %f %f\n",
+                sample.titles[i].replace(' ', '_'),
+                sample.boxes[4 * i],
+                sample.boxes[4 * i + 1],
+                sample.boxes[4 * i + 2],
+                sample.boxes[4 * i + 3],
+                sample.confidences[i]));
+      }
+      final Writer results =
+          new OutputStreamWriter(
+              new FileOutputStream(new File(directory, name + RESULTS_SUFFIX), false), "UTF-8");
+      try {
+        results.write(builder.toString());
+      } finally {
+        results.close();
+      }
+
+      // A linha vai para o arquivo já, não só no close(): se o processo morrer, as amostras
+      // gravadas até aqui continuam listadas. Ao lado da imagem, uma escrita a mais é pouco.
+      synchronized (manifest) {
+        manifest.write(imageName + " " + sample.frameId + " " + sample.count + "\n");
+        manifest.flush();
+      }
+      written.incrementAndGet();
+    } catch (final IOException e) {
+      failed.incrementAndGet();
+      LOGGER.e(e, "Exception!");
+    }
+  }
+
+  //---------------------------------------------------------------------------------------------------
+  //Métodos de estatística
+  public File getDirectory() {
+    return directory;
+  }
+
+  public long getWritten() {
+    return written.get();
+  }
+
+  public long getDropped() {
+    return dropped.get();
+  }
+
+  public String getStatString() {
+    return String.format(
+        Locale.US,
+        "dataset: written %d dropped %d failed %d queued %d",
+        written.get(),
+        dropped.get(),
+        failed.get(),
+        executor.getQueue().size());
+  }
+
+  //---------------------------------------------------------------------------------------------------
+  //Método close
+  /** Espera as amostras na fila (até CLOSE_TIMEOUT_MS) e fecha o manifesto. */
+  @Override
+  public void close() throws IOException {
+    executor.shutdown();
+    try {
+      if (!executor.awaitTermination(CLOSE_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+        LOGGER.w("Dataset recorder did not finish; %d samples lost", executor.shutdownNow().size());
+      }
+    } catch (final InterruptedException e) {
+      LOGGER.e(e, "Exception!");
+      Thread.currentThread().interrupt();
+    }
+    synchronized (manifest) {
+      manifest.close();
+    }
+    LOGGER.i(getStatString());
+  }
+
+  //---------------------------------------------------------------------------------------------------
+  //Classe Sample
+  /**
+   * Buffer de uma amostra: a cópia do recorte e as detecções. Reaproveitado entre amostras; o
+   * bitmap só é recriado quando o tamanho do recorte muda.
+   */
+  private final class Sample implements Runnable {
+    long frameId;
+    Bitmap bitmap;
+    Canvas canvas;
+    int count;
+    String[] titles = new String[8];
+    float[] boxes = new float[4 * 8];
+    float[] confidences = new float[8];
+
+    void copyFrom(final Bitmap crop) {
+      if (bitmap == null
+          || bitmap.getWidth() != crop.getWidth()
+          || bitmap.getHeight() != crop.getHeight()) {
+        bitmap = Bitmap.createBitmap(crop.getWidth(), crop.getHeight(), Config.ARGB_8888);
+        canvas = new Canvas(bitmap);
+      }
+      canvas.drawBitmap(crop, 0, 0, null);
+    }
+
+    void add(final String title, final RectF location, final float confidence) {
+      if (count == titles.length) {
+        final String[] grownTitles = new String[2 * count];
+        final float[] grownBoxes = new float[4 * 2 * count];
+        final float[] grownConfidences = new float[2 * count];
+        System.arraycopy(titles, 0, grownTitles, 0, count);
+        System.arraycopy(boxes, 0, grownBoxes, 0, 4 * count);
+        System.arraycopy(confidences, 0, grownConfidences, 0, count);
+        titles = grownTitles;
+        boxes = grownBoxes;
+        confidences = grownConfidences;
+      }
+      titles[count] = title;
+      boxes[4 * count] = location.left;
+      boxes[4 * count + 1] = location.top;
+      boxes[4 * count + 2] = location.right;
+      boxes[4 * count + 3] = location.bottom;
+      confidences[count] = confidence;
+      count++;
+    }
+
+    @Override
+    public void run() {
+      try {
+        write(this);
+      } finally {
+        freeSamples.offer(this);
+      }
+    }
+  }
+
+}//Fim da classe
@@ -0,0 +1,175 @@
+package org.tensorflow.lite.examples.detection.pipeline;
+
+//Importações
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.RectF;
+import android.media.Image;
+import android.media.Image.Plane;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import org.tensorflow.lite.examples.detection.tflite.Detector.Recognition;
+import org.tensorflow.lite.examples.detection.vision.RecyclingList;
+
+//---------------------------------------------------------------------------------------------------
+//Classe Frame
+/**
+ * Um quadro em trânsito pelo {@link FramePipeline}. As instâncias são reaproveitadas por meio do pool
+ * do pipeline, então os buffers são alocados uma vez, na primeira vez em que são necessários, e
+ * apenas a etapa que detém o quadro no momento pode ler ou escrever nele.
+ */
+public final class Frame {
+
+  //---------------------------------------------------------------------------------------------------
+  //Atributos
+  /** Número sequencial do quadro, atribuído na captura. */
+  public long id;
+  /**
+   * Instante de captura no relógio {@link android.os.SystemClock#elapsedRealtimeNanos()}: o
+   * timestamp do sensor quando a câmera usa esse relógio, senão o horário de chegada do quadro.
+   */
+  public long sensorTimestampNs;
+  public int width;
+  public int height;
+  /** Planos Y, U e V (Camera2) ou o buffer NV21 inteiro em {@code yuvBytes[0]} (Camera legada). */
+  public final byte[][] yuvBytes = new byte[3][];
+  public boolean nv21;
+  public int yRowStride;
+  public int uvRowStride;
+  public int uvPixelStride;
+  /**
+   * Imagem da Camera2 emprestada ao quadro; os planos são lidos na etapa de conversão e a imagem é
+   * devolvida ao ImageReader logo em seguida.
+   */
+  public Image image;
+  // Dono do buffer NV21 emprestado em yuvBytes[0] (Camera legada), ou null se o buffer é do quadro.
+  private BufferOwner bufferOwner;
+  /**
+   * Entrada do detector, preenchida na etapa de conversão. {@code cropSize} é o lado do recorte
+   * quadrado, ou 0 quando a entrada é o quadro inteiro (modo em blocos).
+   */
+  public Bitmap croppedBitmap;
+  public int cropSize;
+  /** Transformação do recorte usado neste quadro, e sua inversa para mapear os resultados. */
+  public final Matrix frameToCropTransform = new Matrix();
+  public final Matrix cropToFrameTransform = new Matrix();
+  /** Região do quadro vista pelo detector, quando {@code hasRoi}; senão o quadro inteiro. */
+  public final RectF roi = new RectF();
+  public boolean hasRoi;
+  public Canvas cropCanvas;
+  /**
+   * Saída do detector, reaproveitada de um quadro para o outro, como os demais buffers. Fica com o
+   * quadro, e não com o detector, porque as etapas seguintes ainda a leem enquanto o detector já
+   * roda sobre o próximo quadro.
+   */
+  public final RecyclingList<Recognition> detections =
+      new RecyclingList<Recognition>(Recognition::new);
+  /** Resultados já mapeados para as coordenadas do quadro; apontam para itens de detections. */
+  public final List<Recognition> results = new ArrayList<Recognition>();
+
+  //---------------------------------------------------------------------------------------------------
+  //Método setNv21
+  /** Copia um quadro NV21 da Camera legada, reaproveitando o buffer se o tamanho for o mesmo. */
+  public void setNv21(final byte[] bytes, final int width, final int height) {
+    if (yuvBytes[0] == null || yuvBytes[0].length != bytes.length) {
+      yuvBytes[0] = new byte[bytes.length];
+    }
+    System.arraycopy(bytes, 0, yuvBytes[0], 0, bytes.length);
+    this.width = width;
+    this.height = height;
+    this.yRowStride = width;
+    this.nv21 = true;
+  }
+
+  //---------------------------------------------------------------------------------------------------
+  //Interface BufferOwner
+  /** Quem recebe de volta um buffer de captura emprestado, por exemplo a câmera legada. */
+  public interface BufferOwner {
+    void returnBuffer(byte[] buffer);
+  }
+
+  //---------------------------------------------------------------------------------------------------
+  //Método attachNv21
+  /**
+   * Empresta ao quadro um buffer NV21 da Camera legada, sem cópia. O buffer volta para {@code owner}
+   * em {@link #releaseCapture()}.
+   */
+  public void attachNv21(
+      final byte[] bytes, final int width, final int height, final BufferOwner owner) {
+    yuvBytes[0] = bytes;
+    bufferOwner = owner;
+    this.width = width;
+    this.height = height;
+    this.yRowStride = width;
+    this.nv21 = true;
+  }
+
+  //---------------------------------------------------------------------------------------------------
+  //Método attachImage
+  /** Empresta ao quadro uma imagem YUV_420_888 da Camera2, até {@link #releaseCapture()}. */
+  public void attachImage(final Image image, final int width, final int height) {
+    final Plane[] planes = image.getPlanes();
+    this.image = image;
+    this.width = width;
+    this.height = height;
+    this.nv21 = false;
+    this.yRowStride = planes[0].getRowStride();
+    this.uvRowStride = planes[1].getRowStride();
+    this.uvPixelStride = planes[1].getPixelStride();
+  }
+
+  //---------------------------------------------------------------------------------------------------
+  //Método readCapture
+  /**
+   * Copia os planos da imagem emprestada para {@link #yuvBytes} e a devolve ao ImageReader. Não faz
+   * nada se o quadro não tiver uma imagem (quadros NV21 já estão em {@link #yuvBytes}).
+   */
+  public void readCapture() {
+    if (image == null) {
+      return;
+    }
+    // Por causa do intervalo variável da linha, não é possível saber de antemão as dimensões
+    // reais necessárias dos planos yuv.
+    final Plane[] planes = image.getPlanes();
+    for (int i = 0; i < planes.length; ++i) {
+      final ByteBuffer buffer = planes[i].getBuffer();
+      if (yuvBytes[i] == null) {
+        yuvBytes[i] = new byte[buffer.capacity()];
+      }
+      buffer.get(yuvBytes[i]);
+    }
+    releaseCapture();
+  }
+
+  //---------------------------------------------------------------------------------------------------
+  //Método releaseCapture
+  /** Devolve à câmera o buffer ou a imagem emprestados, se houver. Pode ser chamado mais de uma vez. */
+  public void releaseCapture() {
+    if (image != null) {
+      image.close();
+      image = null;
+    }
+    if (bufferOwner != null) {
+      final BufferOwner owner = bufferOwner;
+      final byte[] buffer = yuvBytes[0];
+      bufferOwner = null;
+      yuvBytes[0] = null;
+      owner.returnBuffer(buffer);
+    }
+  }
+
+  //---------------------------------------------------------------------------------------------------
+  //Método reset
+  /**
+   * Limpa o estado por quadro antes de devolver a instância ao pool. Os buffers do quadro são
+   * mantidos; os emprestados pela câmera são devolvidos.
+   */
+  void reset() {
+    releaseCapture();
+    results.clear();
+    detections.clear();
+  }
+
+}//Fim da classe
@@ -0,0 +1,313 @@
+package org.tensorflow.lite.examples.detection.pipeline;
+
+//Importações
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import org.tensorflow.lite.examples.detection.env.Logger;
+import org.tensorflow.lite.examples.detection.tflite.LatencyHistogram;
+import org.tensorflow.lite.examples.detection.tflite.TraceRecorder;
+
+//---------------------------------------------------------------------------------------------------
+//Classe FramePipeline
+/**
+ * Pipeline de quadros em etapas (por exemplo conversão, inferência e rastreamento), cada uma com sua
+ * própria thread. As etapas são ligadas por "slots" de capacidade um em que o quadro mais novo
+ * substitui o que ainda não foi consumido: o quadro substituído é contado como descartado e volta
+ * para o pool. Assim a conversão do quadro N+1 acontece enquanto o quadro N está na inferência, e uma
+ * etapa lenta nunca acumula fila.
+ *
+ * <p>Os quadros circulam por um pool de tamanho fixo; se o pool estiver vazio na captura, o quadro da
+ * câmera é descartado ali mesmo, sem bloquear a câmera.
+ */
+public class FramePipeline {
+
+  //---------------------------------------------------------------------------------------------------
+  //Atributos
+  private static final Logger LOGGER = new Logger();
+  // Peso de cada quadro na média móvel do tempo de processamento das etapas.
+  private static final double STAGE_TIME_ALPHA = 0.1;
+  private final List<StageWorker> stages = new ArrayList<StageWorker>();
+  private final AtomicLong nextFrameId = new AtomicLong();
+  private final AtomicLong captureDrops = new AtomicLong();
+  private ArrayBlockingQueue<Frame> pool;
+  private int poolSize;
+  private volatile boolean running = false;
+
+  //---------------------------------------------------------------------------------------------------
+  /**Interface Stage
+   * Trabalho de uma etapa sobre um quadro. Retorna falso para encerrar o quadro ali (ele volta para o
+   * pool sem passar pelas etapas seguintes).
+   */
+  public interface Stage {
+    boolean process(Frame frame);
+  }
+
+  //---------------------------------------------------------------------------------------------------
+  //Método addStage
+  /** Adiciona uma etapa ao final do pipeline. Deve ser chamado antes de {@link #start()}. */
+  public void addStage(final String name, final Stage stage) {
+    if (running) {
+      throw new IllegalStateException("Stages must be added before the pipeline starts.");
+    }
+    final StageWorker worker = new StageWorker(name, stage);
+    if (!stages.isEmpty()) {
+      stages.get(stages.size() - 1).next = worker;
+    }
+    stages.add(worker);
+  }
+
+  //---------------------------------------------------------------------------------------------------
+  //Método start
+  public synchronized void start() {
+    // Cada etapa pode ter um quadro em processamento e outro esperando no slot; o quadro extra
+    // permite que a captura sempre encontre um buffer livre.
+    poolSize = 2 * stages.size() + 1;
+    pool = new ArrayBlockingQueue<Frame>(poolSize);
+    for (int i = 0; i < poolSize; ++i) {
+      pool.offer(new Frame());
+    }
+    for (final StageWorker worker : stages) {
+      worker.start();
+    }
+    running = true;
+  }
+
+  //---------------------------------------------------------------------------------------------------
+  //Método stop
+  public synchronized void stop() {
+    running = false;
+    for (final StageWorker worker : stages) {
+      worker.stop();
+    }
+  }
+
+  //---------------------------------------------------------------------------------------------------
+  //Método obtainFrame
+  /**
+   * Retira um quadro livre do pool para a captura preencher, ou null se todos estiverem em uso (o
+   * quadro da câmera deve então ser descartado).
+   */
+  public Frame obtainFrame() {
+    final Frame frame = running ? pool.poll() : null;
+    if (frame == null) {
+      captureDrops.incrementAndGet();
+      return null;
+    }
+    frame.id = nextFrameId.incrementAndGet();
+    return frame;
+  }
+
+  //---------------------------------------------------------------------------------------------------
+  //Método awaitFrame
+  /**
+   * Como {@link #obtainFrame()}, mas espera até {@code timeoutMs} por um quadro livre em vez de
+   * descartar. Para fontes que podem esperar, como a reprodução de uma gravação na vazão máxima.
+   */
+  public Frame awaitFrame(final long timeoutMs) throws InterruptedException {
+    final Frame frame = running ? pool.poll(timeoutMs, TimeUnit.MILLISECONDS) : null;
+    if (frame == null) {
+      return null;
+    }
+    frame.id = nextFrameId.incrementAndGet();
+    return frame;
+  }
+
+  //---------------------------------------------------------------------------------------------------
+  //Método submit
+  /** Entrega um quadro preenchido à primeira etapa. A partir daqui o pipeline é dono do quadro. */
+  public void submit(final Frame frame) {
+    stages.get(0).offer(frame);
+  }
+
+  //---------------------------------------------------------------------------------------------------
+  //Método recycle
+  public void recycle(final Frame frame) {
+    frame.reset();
+    pool.offer(frame);
+  }
+
+  //---------------------------------------------------------------------------------------------------
+  //Método post
+  /**
+   * Executa uma tarefa na thread de uma etapa, entre dois quadros. Útil para alterar o estado que só
+   * aquela etapa usa (por exemplo o interpretador, na etapa de inferência).
+   */
+  public boolean post(final int stageIndex, final Runnable runnable) {
+    final Handler handler = stages.get(stageIndex).handler;
+    return handler != null && handler.post(runnable);
+  }
+
+  //---------------------------------------------------------------------------------------------------
+  //Métodos de estatística
+  public long getCaptureDrops() {
+    return captureDrops.get();
+  }
+
+  public long getDrops(final int stageIndex) {
+    return stages.get(stageIndex).dropped.get();
+  }
+
+  public long getProcessed(final int stageIndex) {
+    return stages.get(stageIndex).processed.get();
+  }
+
+  public boolean isRunning() {
+    return running;
+  }
+
+  /** Se todos os quadros voltaram ao pool, isto é, nenhum está esperando ou em processamento. */
+  public boolean isIdle() {
+    return pool != null && pool.size() == poolSize;
+  }
+
+  /**
+   * Quadros por segundo que o pipeline consegue processar, limitado pela etapa mais lenta (pela
+   * média móvel do tempo de cada etapa), ou 0 se ainda não há medida.
+   */
+  public double getCapacityFps() {
+    double slowestNanos = 0;
+    for (final StageWorker worker : stages) {
+      slowestNanos = Math.max(slowestNanos, worker.averageNanos);
+    }
+    return slowestNanos > 0 ? 1e9 / slowestNanos : 0;
+  }
+
+  /** Quadros esperando no slot e em processamento na etapa (0 a 2). */
+  public int getDepth(final int stageIndex) {
+    final StageWorker worker = stages.get(stageIndex);
+    return (worker.slot.get() != null ? 1 : 0) + (worker.busy ? 1 : 0);
+  }
+
+  public String getStatString() {
+    final StringBuilder builder = new StringBuilder();
+    builder.append("capture drops ").append(captureDrops.get());
+    for (int i = 0; i < stages.size(); ++i) {
+      final StageWorker worker = stages.get(i);
+      builder
+          .append('\n')
+          .append(worker.name)
+          .append(": depth ")
+          .append(getDepth(i))
+          .append(" drops ")
+          .append(worker.dropped.get())
+          .append(" done ")
+          .append(worker.processed.get());
+    }
+    return builder.toString();
+  }
+
+  /** Distribuição do tempo de processamento de cada etapa desde o início do pipeline. */
+  public String getLatencyStatString() {
+    final StringBuilder builder = new StringBuilder();
+    for (final StageWorker worker : stages) {
+      if (builder.length() > 0) {
+        builder.append('\n');
+      }
+      builder.append(worker.name).append(": ").append(worker.latency.format());
+    }
+    return builder.toString();
+  }
+
+  //---------------------------------------------------------------------------------------------------
+  //Classe StageWorker
+  /**
+   * Uma etapa: o slot de entrada (mais novo vence) e a thread que o consome. O próprio worker é o
+   * Runnable postado na thread, de modo que nada é alocado por quadro.
+   */
+  private final class StageWorker implements Runnable {
+    final String name;
+    final Stage stage;
+    final AtomicReference<Frame> slot = new AtomicReference<Frame>();
+    final AtomicLong processed = new AtomicLong();
+    final AtomicLong dropped = new AtomicLong();
+    final LatencyHistogram latency = new LatencyHistogram();
+    StageWorker next;
+    volatile Handler handler;
+    volatile boolean busy;
+    volatile double averageNanos;
+    private HandlerThread thread;
+
+    StageWorker(final String name, final Stage stage) {
+      this.name = name;
+      this.stage = stage;
+    }
+
+    void start() {
+      thread = new HandlerThread(name);
+      thread.start();
+      handler = new Handler(thread.getLooper());
+    }
+
+    void stop() {
+      handler = null;
+      thread.quitSafely();
+      try {
+        thread.join();
+      } catch (final InterruptedException e) {
+        LOGGER.e(e, "Exception!");
+      }
+      thread = null;
+      final Frame pending = slot.getAndSet(null);
+      if (pending != null) {
+        recycle(pending);
+      }
+    }
+
+    /**
+     * Coloca o quadro no slot. Se já havia um quadro esperando, ele é descartado; caso contrário o
+     * slot estava vazio e nenhuma execução estava pendente, então uma é agendada.
+     */
+    void offer(final Frame frame) {
+      final Frame displaced = slot.getAndSet(frame);
+      if (displaced != null) {
+        dropped.incrementAndGet();
+        TraceRecorder.instant(TraceRecorder.STAGE_DROP, displaced.id);
+        recycle(displaced);
+        return;
+      }
+      final Handler h = handler;
+      if (h == null || !h.post(this)) {
+        final Frame orphan = slot.getAndSet(null);
+        if (orphan != null) {
+          recycle(orphan);
+        }
+      }
+    }
+
+    @Override
+    public void run() {
+      final Frame frame = slot.getAndSet(null);
+      if (frame == null) {
+        return;
+      }
+      busy = true;
+      boolean forward = false;
+      TraceRecorder.setCurrentFrame(frame.id);
+      final long startTime = SystemClock.elapsedRealtimeNanos();
+      try {
+        forward = stage.process(frame);
+      } catch (final RuntimeException e) {
+        LOGGER.e(e, "Exception in stage %s", name);
+      }
+      final long elapsed = SystemClock.elapsedRealtimeNanos() - startTime;
+      latency.record(elapsed);
+      averageNanos =
+          averageNanos == 0 ? elapsed : averageNanos + STAGE_TIME_ALPHA * (elapsed - averageNanos);
+      busy = false;
+      processed.incrementAndGet();
+      if (forward && next != null) {
+        next.offer(frame);
+      } else {
+        recycle(frame);
+      }
+    }
+  }
+
+}//Fim da classe
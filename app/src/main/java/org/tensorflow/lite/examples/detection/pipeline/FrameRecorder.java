@@ -0,0 +1,246 @@
+package org.tensorflow.lite.examples.detection.pipeline;
+
+//Importações
+import android.media.Image;
+import android.media.Image.Plane;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import org.tensorflow.lite.examples.detection.env.Logger;
+
+//---------------------------------------------------------------------------------------------------
+//Classe FrameRecorder
+/**
+ * Grava os quadros da câmera, como chegam nos callbacks, num arquivo mapeado em memória ao qual só se
+ * acrescenta. Cada registro traz os planos YUV crus, os strides, a rotação e o instante de captura,
+ * para que o {@link ReplayFrameSource} reproduza a sessão pelo mesmo pipeline.
+ *
+ * <p>Formato (little-endian): {@link #MAGIC} e {@link #VERSION}, seguidos dos registros. Cada
+ * registro começa com o próprio tamanho em bytes, escrito por último, de modo que uma gravação
+ * interrompida termina no último quadro completo (o arquivo mapeado é preenchido com zeros).
+ *
+ * <p>Gravar copia os planos para o cache de páginas do sistema, sem chamadas de escrita nem
+ * alocação por quadro; o sistema grava as páginas no disco quando quiser.
+ */
+public final class FrameRecorder implements Closeable {
+
+  //---------------------------------------------------------------------------------------------------
+  //Atributos
+  private static final Logger LOGGER = new Logger();
+  // "YUVR" lido como int little-endian.
+  static final int MAGIC = 0x52565559;
+  static final int VERSION = 1;
+  static final int FILE_HEADER_BYTES = 8;
+  // Posições dos campos dentro de um registro.
+  static final int OFFSET_LENGTH = 0;
+  static final int OFFSET_TIMESTAMP = 4;
+  static final int OFFSET_WIDTH = 12;
+  static final int OFFSET_HEIGHT = 16;
+  static final int OFFSET_ROTATION = 20;
+  static final int OFFSET_NV21 = 24;
+  static final int OFFSET_Y_ROW_STRIDE = 28;
+  static final int OFFSET_UV_ROW_STRIDE = 32;
+  static final int OFFSET_UV_PIXEL_STRIDE = 36;
+  static final int OFFSET_PLANE_LENGTHS = 40;
+  static final int RECORD_HEADER_BYTES = 52;
+  // O arquivo é mapeado em janelas deste tamanho, à medida que cresce.
+  private static final int REGION_BYTES = 32 * 1024 * 1024;
+  private final File file;
+  private final RandomAccessFile randomAccessFile;
+  private final FileChannel channel;
+  private final long maxBytes;
+  private MappedByteBuffer region;
+  private long regionStart;
+  private long position;
+  private int frameCount = 0;
+  private boolean full = false;
+
+  //---------------------------------------------------------------------------------------------------
+  //Método Construtor
+  private FrameRecorder(final File file, final long maxBytes) throws IOException {
+    this.file = file;
+    this.maxBytes = maxBytes;
+    randomAccessFile = new RandomAccessFile(file, "rw");
+    channel = randomAccessFile.getChannel();
+    // Uma nova gravação substitui a anterior.
+    channel.truncate(0);
+  }
+
+  //---------------------------------------------------------------------------------------------------
+  //Método open
+  /** Cria (ou substitui) a gravação em {@code file}, limitada a {@code maxBytes}. */
+  public static FrameRecorder open(final File file, final long maxBytes) throws IOException {
+    final FrameRecorder recorder = new FrameRecorder(file, maxBytes);
+    try {
+      recorder.reserve(FILE_HEADER_BYTES);
+    } catch (final IOException e) {
+      recorder.close();
+      throw e;
+    }
+    recorder.region.putInt(MAGIC);
+    recorder.region.putInt(VERSION);
+    recorder.position = FILE_HEADER_BYTES;
+    return recorder;
+  }
+
+  //---------------------------------------------------------------------------------------------------
+  //Método recordImage
+  /**
+   * Grava uma imagem YUV_420_888 da Camera2 sem alterar a posição dos buffers dos planos, que ainda
+   * serão lidos pelo pipeline. Retorna falso se a gravação está cheia ou falhou.
+   */
+  public synchronized boolean recordImage(
+      final Image image, final int rotation, final long timestampNs) {
+    final Plane[] planes = image.getPlanes();
+    int planeBytes = 0;
+    for (final Plane plane : planes) {
+      planeBytes += plane.getBuffer().remaining();
+    }
+    final int recordBytes = RECORD_HEADER_BYTES + planeBytes;
+    if (!beginRecord(recordBytes)) {
+      return false;
+    }
+    final int start = region.position();
+    writeHeader(
+        start,
+        timestampNs,
+        image.getWidth(),
+        image.getHeight(),
+        rotation,
+        false,
+        planes[0].getRowStride(),
+        planes[1].getRowStride(),
+        planes[1].getPixelStride());
+    region.position(start + RECORD_HEADER_BYTES);
+    for (int i = 0; i < planes.length; ++i) {
+      final ByteBuffer buffer = planes[i].getBuffer();
+      final int bufferPosition = buffer.position();
+      region.putInt(start + OFFSET_PLANE_LENGTHS + 4 * i, buffer.remaining());
+      region.put(buffer);
+      buffer.position(bufferPosition);
+    }
+    endRecord(start, recordBytes);
+    return true;
+  }
+
+  //---------------------------------------------------------------------------------------------------
+  //Método recordNv21
+  /** Grava um quadro NV21 da Camera legada. Retorna falso se a gravação está cheia ou falhou. */
+  public synchronized boolean recordNv21(
+      final byte[] bytes,
+      final int width,
+      final int height,
+      final int rotation,
+      final long timestampNs) {
+    final int recordBytes = RECORD_HEADER_BYTES + bytes.length;
+    if (!beginRecord(recordBytes)) {
+      return false;
+    }
+    final int start = region.position();
+    writeHeader(start, timestampNs, width, height, rotation, true, width, 0, 0);
+    region.putInt(start + OFFSET_PLANE_LENGTHS, bytes.length);
+    region.putInt(start + OFFSET_PLANE_LENGTHS + 4, 0);
+    region.putInt(start + OFFSET_PLANE_LENGTHS + 8, 0);
+    region.position(start + RECORD_HEADER_BYTES);
+    region.put(bytes);
+    endRecord(start, recordBytes);
+    return true;
+  }
+
+  //---------------------------------------------------------------------------------------------------
+  //Métodos beginRecord e endRecord
+  // Garante espaço mapeado para o registro e posiciona a janela no início dele.
+  private boolean beginRecord(final int recordBytes) {
+    if (full || !channel.isOpen()) {
+      return false;
+    }
+    if (position + recordBytes > maxBytes) {
+      full = true;
+      LOGGER.w("Recording %s full after %d frames", file.getName(), frameCount);
+      return false;
+    }
+    try {
+      reserve(recordBytes);
+    } catch (final IOException e) {
+      LOGGER.e(e, "Exception!");
+      full = true;
+      return false;
+    }
+    region.position((int) (position - regionStart));
+    return true;
+  }
+
+  private void endRecord(final int start, final int recordBytes) {
+    // O tamanho por último: só então o registro passa a fazer parte da gravação.
+    region.putInt(start + OFFSET_LENGTH, recordBytes);
+    position += recordBytes;
+    frameCount++;
+  }
+
+  //---------------------------------------------------------------------------------------------------
+  //Método reserve
+  // Mapeia uma nova janela a partir da posição atual quando a atual não comporta mais {@code bytes}.
+  private void reserve(final int bytes) throws IOException {
+    if (region != null && position + bytes <= regionStart + region.capacity()) {
+      return;
+    }
+    regionStart = position;
+    region = channel.map(FileChannel.MapMode.READ_WRITE, position, Math.max(REGION_BYTES, bytes));
+    region.order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  //---------------------------------------------------------------------------------------------------
+  //Método writeHeader
+  private void writeHeader(
+      final int start,
+      final long timestampNs,
+      final int width,
+      final int height,
+      final int rotation,
+      final boolean nv21,
+      final int yRowStride,
+      final int uvRowStride,
+      final int uvPixelStride) {
+    region.putLong(start + OFFSET_TIMESTAMP, timestampNs);
+    region.putInt(start + OFFSET_WIDTH, width);
+    region.putInt(start + OFFSET_HEIGHT, height);
+    region.putInt(start + OFFSET_ROTATION, rotation);
+    region.putInt(start + OFFSET_NV21, nv21 ? 1 : 0);
+    region.putInt(start + OFFSET_Y_ROW_STRIDE, yRowStride);
+    region.putInt(start + OFFSET_UV_ROW_STRIDE, uvRowStride);
+    region.putInt(start + OFFSET_UV_PIXEL_STRIDE, uvPixelStride);
+  }
+
+  //---------------------------------------------------------------------------------------------------
+  //Métodos de consulta
+  public synchronized int getFrameCount() {
+    return frameCount;
+  }
+
+  public File getFile() {
+    return file;
+  }
+
+  //---------------------------------------------------------------------------------------------------
+  //Método close
+  /** Descarta o espaço mapeado além do último registro e fecha o arquivo. */
+  @Override
+  public synchronized void close() throws IOException {
+    if (!channel.isOpen()) {
+      return;
+    }
+    region = null;
+    try {
+      channel.truncate(position);
+    } finally {
+      randomAccessFile.close();
+    }
+    LOGGER.i("Recorded %d frames (%d bytes) to %s", frameCount, position, file);
+  }
+
+}//Fim da classe
@@ -0,0 +1,278 @@
+package org.tensorflow.lite.examples.detection.pipeline;
+
+//Importações
+import android.os.SystemClock;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import org.tensorflow.lite.examples.detection.env.Logger;
+import org.tensorflow.lite.examples.detection.tflite.TraceRecorder;
+
+//---------------------------------------------------------------------------------------------------
+//Classe ReplayFrameSource
+/**
+ * Reproduz uma gravação do {@link FrameRecorder} no lugar da câmera, entregando os quadros ao mesmo
+ * {@link FramePipeline} (conversão, inferência e rastreamento), para medições que se repetem.
+ *
+ * <p>No ritmo gravado, cada quadro é entregue no mesmo intervalo em que foi capturado e, como com a
+ * câmera, é descartado na captura se o pipeline não tiver quadro livre. Na vazão máxima, cada quadro
+ * espera por um quadro livre do pool; os descartes ficam só entre as etapas.
+ */
+public final class ReplayFrameSource {
+
+  //---------------------------------------------------------------------------------------------------
+  //Atributos
+  private static final Logger LOGGER = new Logger();
+  // Espera máxima por um quadro livre, na vazão máxima, antes de verificar se a reprodução parou.
+  private static final long FRAME_WAIT_MS = 100;
+  // Espera máxima para o pipeline terminar os quadros em trânsito depois do último quadro.
+  private static final long DRAIN_TIMEOUT_MS = 5000;
+  private static final long DRAIN_POLL_MS = 5;
+  private final File file;
+  private final boolean maxRate;
+  private final MappedByteBuffer data;
+  // Início de cada registro completo em data.
+  private final int[] offsets;
+  private Thread thread;
+  private volatile boolean stopped;
+  private volatile long submitted;
+  private volatile long elapsedNanos;
+
+  //---------------------------------------------------------------------------------------------------
+  //Interface Listener
+  /** Avisos da reprodução, na thread da reprodução. */
+  public interface Listener {
+    /** Um quadro gravado foi lido, tenha ou não encontrado lugar no pipeline. */
+    void onReplayFrame(long timestampNs);
+
+    /** Todos os quadros foram entregues e o pipeline terminou de processá-los. */
+    void onReplayFinished(ReplayFrameSource source);
+  }
+
+  //---------------------------------------------------------------------------------------------------
+  //Método Construtor
+  private ReplayFrameSource(
+      final File file, final boolean maxRate, final MappedByteBuffer data, final int[] offsets) {
+    this.file = file;
+    this.maxRate = maxRate;
+    this.data = data;
+    this.offsets = offsets;
+  }
+
+  //---------------------------------------------------------------------------------------------------
+  //Método open
+  /**
+   * Mapeia a gravação e localiza os seus quadros. Lança IOException se o arquivo não for uma gravação
+   * ou não tiver nenhum quadro completo.
+   */
+  public static ReplayFrameSource open(final File file, final boolean maxRate) throws IOException {
+    final MappedByteBuffer data;
+    final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+    try {
+      // O mapeamento continua válido depois que o arquivo é fechado.
+      data =
+          randomAccessFile
+              .getChannel()
+              .map(FileChannel.MapMode.READ_ONLY, 0, randomAccessFile.length());
+    } finally {
+      randomAccessFile.close();
+    }
+    data.order(ByteOrder.LITTLE_ENDIAN);
+    if (data.limit() < FrameRecorder.FILE_HEADER_BYTES
+        || data.getInt(0) != FrameRecorder.MAGIC
+        || data.getInt(4) != FrameRecorder.VERSION) {
+      throw new IOException("Not a frame recording: " + file);
+    }
+
+    // Primeira passada conta os registros, a segunda guarda o início de cada um.
+    final int count = scan(data, null);
+    if (count == 0) {
+      throw new IOException("No frames in recording: " + file);
+    }
+    final int[] offsets = new int[count];
+    scan(data, offsets);
+    LOGGER.i("Opened recording %s with %d frames", file.getName(), count);
+    return new ReplayFrameSource(file, maxRate, data, offsets);
+  }
+
+  //---------------------------------------------------------------------------------------------------
+  //Método scan
+  // Percorre os registros completos; um tamanho zero (ou além do fim) marca o fim da gravação.
+  private static int scan(final MappedByteBuffer data, final int[] offsets) {
+    int count = 0;
+    int position = FrameRecorder.FILE_HEADER_BYTES;
+    while (position + FrameRecorder.RECORD_HEADER_BYTES <= data.limit()) {
+      final int length = data.getInt(position + FrameRecorder.OFFSET_LENGTH);
+      if (length < FrameRecorder.RECORD_HEADER_BYTES || position + length > data.limit()) {
+        break;
+      }
+      if (offsets != null) {
+        offsets[count] = position;
+      }
+      count++;
+      position += length;
+    }
+    return count;
+  }
+
+  //---------------------------------------------------------------------------------------------------
+  //Métodos de consulta
+  public File getFile() {
+    return file;
+  }
+
+  public boolean isMaxRate() {
+    return maxRate;
+  }
+
+  public int getFrameCount() {
+    return offsets.length;
+  }
+
+  /** Tamanho e rotação do primeiro quadro; a gravação é de uma única configuração da câmera. */
+  public int getWidth() {
+    return data.getInt(offsets[0] + FrameRecorder.OFFSET_WIDTH);
+  }
+
+  public int getHeight() {
+    return data.getInt(offsets[0] + FrameRecorder.OFFSET_HEIGHT);
+  }
+
+  public int getRotation() {
+    return data.getInt(offsets[0] + FrameRecorder.OFFSET_ROTATION);
+  }
+
+  /** Taxa média de quadros da sessão gravada, ou 0 se houver um único quadro. */
+  public double getRecordedFps() {
+    final long durationNs = getTimestamp(offsets.length - 1) - getTimestamp(0);
+    return durationNs > 0 ? (offsets.length - 1) * 1e9 / durationNs : 0;
+  }
+
+  /** Quadros entregues ao pipeline na última reprodução. */
+  public long getSubmitted() {
+    return submitted;
+  }
+
+  /** Duração da última reprodução, do primeiro quadro até o pipeline esvaziar. */
+  public long getElapsedNanos() {
+    return elapsedNanos;
+  }
+
+  private long getTimestamp(final int index) {
+    return data.getLong(offsets[index] + FrameRecorder.OFFSET_TIMESTAMP);
+  }
+
+  //---------------------------------------------------------------------------------------------------
+  //Método start
+  /** Começa a reprodução do início, numa thread própria. */
+  public synchronized void start(final FramePipeline pipeline, final Listener listener) {
+    stop();
+    stopped = false;
+    thread = new Thread(() -> replay(pipeline, listener), "replay");
+    thread.start();
+  }
+
+  //---------------------------------------------------------------------------------------------------
+  //Método stop
+  public synchronized void stop() {
+    if (thread == null) {
+      return;
+    }
+    stopped = true;
+    thread.interrupt();
+    try {
+      thread.join();
+    } catch (final InterruptedException e) {
+      LOGGER.e(e, "Exception!");
+    }
+    thread = null;
+  }
+
+  //---------------------------------------------------------------------------------------------------
+  //Método replay
+  // Roda na thread da reprodução.
+  private void replay(final FramePipeline pipeline, final Listener listener) {
+    submitted = 0;
+    elapsedNanos = 0;
+    final long startNs = SystemClock.elapsedRealtimeNanos();
+    final long firstTimestampNs = getTimestamp(0);
+    try {
+      for (int i = 0; i < offsets.length && !stopped; ++i) {
+        final long timestampNs = getTimestamp(i);
+        if (!maxRate) {
+          final long delayNs =
+              startNs + (timestampNs - firstTimestampNs) - SystemClock.elapsedRealtimeNanos();
+          if (delayNs > 0) {
+            Thread.sleep(delayNs / 1000000, (int) (delayNs % 1000000));
+          }
+        }
+        listener.onReplayFrame(timestampNs);
+
+        Frame frame = null;
+        if (maxRate) {
+          while (frame == null && !stopped && pipeline.isRunning()) {
+            frame = pipeline.awaitFrame(FRAME_WAIT_MS);
+          }
+        } else {
+          frame = pipeline.obtainFrame();
+        }
+        if (frame == null) {
+          TraceRecorder.instant(TraceRecorder.STAGE_DROP, -1);
+          continue;
+        }
+        TraceRecorder.setCurrentFrame(frame.id);
+        TraceRecorder.beginSection(TraceRecorder.STAGE_CAMERA_CALLBACK);
+        readFrame(offsets[i], frame);
+        frame.sensorTimestampNs = SystemClock.elapsedRealtimeNanos();
+        pipeline.submit(frame);
+        submitted++;
+        TraceRecorder.endSection();
+      }
+
+      final long drainDeadlineNs = SystemClock.elapsedRealtimeNanos() + DRAIN_TIMEOUT_MS * 1000000;
+      while (!pipeline.isIdle() && !stopped) {
+        if (SystemClock.elapsedRealtimeNanos() > drainDeadlineNs) {
+          LOGGER.w("Pipeline did not drain after replay");
+          break;
+        }
+        Thread.sleep(DRAIN_POLL_MS);
+      }
+    } catch (final InterruptedException e) {
+      // stop() durante a reprodução.
+      return;
+    }
+    elapsedNanos = SystemClock.elapsedRealtimeNanos() - startNs;
+    if (!stopped) {
+      listener.onReplayFinished(this);
+    }
+  }
+
+  //---------------------------------------------------------------------------------------------------
+  //Método readFrame
+  // Copia os planos do registro para os buffers do quadro, que são reaproveitados entre quadros.
+  private void readFrame(final int offset, final Frame frame) {
+    frame.width = data.getInt(offset + FrameRecorder.OFFSET_WIDTH);
+    frame.height = data.getInt(offset + FrameRecorder.OFFSET_HEIGHT);
+    frame.nv21 = data.getInt(offset + FrameRecorder.OFFSET_NV21) != 0;
+    frame.yRowStride = data.getInt(offset + FrameRecorder.OFFSET_Y_ROW_STRIDE);
+    frame.uvRowStride = data.getInt(offset + FrameRecorder.OFFSET_UV_ROW_STRIDE);
+    frame.uvPixelStride = data.getInt(offset + FrameRecorder.OFFSET_UV_PIXEL_STRIDE);
+    int position = offset + FrameRecorder.RECORD_HEADER_BYTES;
+    for (int i = 0; i < frame.yuvBytes.length; ++i) {
+      final int length = data.getInt(offset + FrameRecorder.OFFSET_PLANE_LENGTHS + 4 * i);
+      if (length == 0) {
+        continue;
+      }
+      if (frame.yuvBytes[i] == null || frame.yuvBytes[i].length < length) {
+        frame.yuvBytes[i] = new byte[length];
+      }
+      data.position(position);
+      data.get(frame.yuvBytes[i], 0, length);
+      position += length;
+    }
+  }
+
+}//Fim da classe
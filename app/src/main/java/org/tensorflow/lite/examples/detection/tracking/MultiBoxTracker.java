@@ -28,9 +28,8 @@ import android.graphics.Paint.Join;
 import android.graphics.Paint.Style;
 import android.graphics.RectF;
 import android.os.Build;
-import android.text.TextUtils;
+import android.os.SystemClock;
 import android.util.Log;
-import android.util.Pair;
 import android.util.TypedValue;
 import androidx.annotation.RequiresApi;
 import java.io.BufferedReader;
@@ -40,14 +39,25 @@ import java.io.FileReader;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
+import java.text.DecimalFormatSymbols;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import org.tensorflow.lite.examples.detection.Utilities;
 import org.tensorflow.lite.examples.detection.env.BorderedText;
 import org.tensorflow.lite.examples.detection.env.ImageUtils;
 import org.tensorflow.lite.examples.detection.env.Logger;
+import org.tensorflow.lite.examples.detection.env.SpeechLatencyTracker;
 import org.tensorflow.lite.examples.detection.tflite.Detector.Recognition;
+import org.tensorflow.lite.examples.detection.tflite.LatencyHistogram;
+import org.tensorflow.lite.examples.detection.tflite.TraceRecorder;
+import org.tensorflow.lite.examples.detection.vision.AffineTransform;
+import org.tensorflow.lite.examples.detection.vision.Boxes;
+import org.tensorflow.lite.examples.detection.vision.Labels;
+import org.tensorflow.lite.examples.detection.vision.Tracking;
 
 //--------------------------------------------------------------------------------------------------------
 /*Classe MultiBoxTracker
@@ -77,17 +87,51 @@ public class MultiBoxTracker extends Activity {
     Color.parseColor("#AA33AA"),
     Color.parseColor("#0D0068")
   };
-  final List<Pair<Float, RectF>> screenRects = new LinkedList<Pair<Float, RectF>>();
+  // No máximo um rastro por cor.
+  public static final int MAX_TRACKS = COLORS.length;
   private final Logger logger = new Logger();
   private final Queue<Integer> availableColors = new LinkedList<Integer>();
-  private final List<TrackedRecognition> trackedObjects = new LinkedList<TrackedRecognition>();
+  // Listas de acesso por índice e objetos reaproveitados: o rastreamento e o desenho rodam a cada
+  // quadro e não devem alocar.
+  private final List<TrackedRecognition> trackedObjects =
+      new ArrayList<TrackedRecognition>(MAX_TRACKS);
+  private final List<TrackedRecognition> freeTrackedObjects =
+      new ArrayList<TrackedRecognition>(MAX_TRACKS);
+  private final List<Recognition> rectsToTrack = new ArrayList<Recognition>();
+  // Detecções do último quadro em coordenadas da tela, para o drawDebug.
+  private float[] screenBoxes = new float[0];
+  private float[] screenConfidences = new float[0];
+  private int screenCount = 0;
   private final Paint boxPaint = new Paint();
   private final float textSizePx;
   private final BorderedText borderedText;
-  private Matrix frameToCanvasMatrix;
+  // Recalculada só quando o tamanho do canvas ou a configuração do quadro muda.
+  private final Matrix frameToCanvasMatrix = new Matrix();
+  private final AffineTransform frameToCanvasTransform = new AffineTransform();
+  private final float[] matrixValues = new float[9];
+  private int canvasWidth = -1;
+  private int canvasHeight = -1;
+  private final RectF trackedPos = new RectF();
+  private final RectF screenRect = new RectF();
+  private final RectF detectionFrameRect = new RectF();
   private int frameWidth;
   private int frameHeight;
   private int sensorOrientation;
+  private SpeechLatencyTracker speechLatencyTracker;
+  // Onde rodam a leitura dos arquivos e o anúncio (teste); null = na própria thread de desenho.
+  private Executor announcementExecutor;
+  // Há um anúncio na fila ou rodando; os desenhos seguintes não enfileiram outro até ele acabar.
+  private volatile boolean announcementPending = false;
+  // Quadro de origem dos objetos rastreados no momento.
+  private volatile long trackedTimestamp = -1;
+  // Instante de captura (relógio elapsedRealtimeNanos) desse quadro, ou 0 se desconhecido.
+  private long trackedSensorTimestampNs = 0;
+  // Último quadro cuja latência sensor-tela já foi medida; cada quadro conta uma vez só.
+  private long measuredTimestamp = -1;
+  // Caixas de trabalho para a geometria do rastreamento em lib_vision_core.
+  private final float[] box = new float[4];
+  private final float[] roiBox = new float[4];
+  private final LatencyHistogram glassToGlassHistogram = new LatencyHistogram();
 
   //---------------------------------------------------------------------------------------------------
   //Método Construtor
@@ -117,6 +161,28 @@ public class MultiBoxTracker extends Activity {
     frameWidth = width;
     frameHeight = height;
     this.sensorOrientation = sensorOrientation;
+    canvasWidth = -1;
+    canvasHeight = -1;
+  }
+
+  //--------------------------------------------------------------------------------------------------------
+  //Método setSpeechLatencyTracker
+  public void setSpeechLatencyTracker(final SpeechLatencyTracker speechLatencyTracker) {
+    this.speechLatencyTracker = speechLatencyTracker;
+  }
+
+  //--------------------------------------------------------------------------------------------------------
+  //Método setAnnouncementExecutor
+  /** Tira do desenho o trabalho de {@link #teste}: arquivos de vetores e criação da fala. */
+  public void setAnnouncementExecutor(final Executor announcementExecutor) {
+    this.announcementExecutor = announcementExecutor;
+  }
+
+  //--------------------------------------------------------------------------------------------------------
+  //Método getGlassToGlassStatString
+  /** Percentis da latência entre a captura no sensor e o desenho dos resultados na tela. */
+  public String getGlassToGlassStatString() {
+    return glassToGlassHistogram.format();
   }
 
   //--------------------------------------------------------------------------------------------------------
@@ -131,19 +197,58 @@ public class MultiBoxTracker extends Activity {
     boxPaint.setAlpha(200);
     boxPaint.setStyle(Style.STROKE);
 
-    for (final Pair<Float, RectF> detection : screenRects) {
-      final RectF rect = detection.second;
+    for (int i = 0; i < screenCount; ++i) {
+      final RectF rect = screenRect;
+      final int b = 4 * i;
+      rect.set(screenBoxes[b], screenBoxes[b + 1], screenBoxes[b + 2], screenBoxes[b + 3]);
       canvas.drawRect(rect, boxPaint);
-      canvas.drawText("" + detection.first, rect.left, rect.top, textPaint);
-      borderedText.drawText(canvas, rect.centerX(), rect.centerY(), "" + detection.first);
+      canvas.drawText("" + screenConfidences[i], rect.left, rect.top, textPaint);
+      borderedText.drawText(canvas, rect.centerX(), rect.centerY(), "" + screenConfidences[i]);
     }
   }
 
   //--------------------------------------------------------------------------------------------------------
   //Método trackResults
   public synchronized void trackResults(final List<Recognition> results, final long timestamp) {
-    logger.i("Processing %d results from %d", results.size(), timestamp);
-    processResults(results);
+    trackResults(results, timestamp, 0, null);
+  }
+
+  /**
+   * Variante para resultados de uma passada em uma região de interesse: os rastros fora de {@code
+   * roi} não foram vistos pelo detector e são mantidos. Com {@code roi} nulo, todos são substituídos.
+   *
+   * @param sensorTimestampNs instante de captura do quadro no relógio {@link
+   *     SystemClock#elapsedRealtimeNanos()}, ou 0 se desconhecido; usado para medir a latência
+   *     sensor-tela no próximo {@link #draw(Canvas)}.
+   */
+  public synchronized void trackResults(
+      final List<Recognition> results,
+      final long timestamp,
+      final long sensorTimestampNs,
+      final RectF roi) {
+    logger.v("Processing %d results from %d", results.size(), timestamp);
+    processResults(results, roi);
+    trackedTimestamp = timestamp;
+    trackedSensorTimestampNs = sensorTimestampNs;
+    if (speechLatencyTracker != null) {
+      speechLatencyTracker.mark(timestamp, SpeechLatencyTracker.STAGE_TRACKED);
+    }
+  }
+
+  //--------------------------------------------------------------------------------------------------------
+  //Método getTrackedBoxes
+  /**
+   * Copia a confiança e a posição (em coordenadas do quadro, no formato de {@link Boxes}) de cada
+   * objeto rastreado, até {@code confidences.length} deles. Retorna quantos foram copiados.
+   */
+  public synchronized int getTrackedBoxes(final float[] confidences, final float[] boxes) {
+    final int count = Math.min(trackedObjects.size(), confidences.length);
+    for (int i = 0; i < count; ++i) {
+      final TrackedRecognition recognition = trackedObjects.get(i);
+      confidences[i] = recognition.detectionConfidence;
+      setBox(boxes, i, recognition.location);
+    }
+    return count;
   }
 
   //--------------------------------------------------------------------------------------------------------
@@ -155,24 +260,39 @@ public class MultiBoxTracker extends Activity {
   //--------------------------------------------------------------------------------------------------------
   //Método draw
   public synchronized void draw(final Canvas canvas) {
-    final boolean rotated = sensorOrientation % 180 == 90;
-    final float multiplier =
-        Math.min(
-            canvas.getHeight() / (float) (rotated ? frameWidth : frameHeight),
-            canvas.getWidth() / (float) (rotated ? frameHeight : frameWidth));
-    frameToCanvasMatrix =
-        ImageUtils.getTransformationMatrix(
-            frameWidth,
-            frameHeight,
-            (int) (multiplier * (rotated ? frameHeight : frameWidth)),
-            (int) (multiplier * (rotated ? frameWidth : frameHeight)),
-            sensorOrientation,
-            false);
-    for (final TrackedRecognition recognition : trackedObjects) {
+    TraceRecorder.setCurrentFrame(trackedTimestamp);
+    TraceRecorder.beginSection(TraceRecorder.STAGE_DRAW);
+    // O primeiro desenho depois do rastreamento é o que leva os resultados do quadro para a tela.
+    if (trackedSensorTimestampNs > 0 && trackedTimestamp != measuredTimestamp) {
+      glassToGlassHistogram.record(SystemClock.elapsedRealtimeNanos() - trackedSensorTimestampNs);
+      measuredTimestamp = trackedTimestamp;
+    }
+    // Só a primeira marcação de cada quadro vale: é o desenho que leva os resultados para a tela.
+    if (speechLatencyTracker != null) {
+      speechLatencyTracker.mark(trackedTimestamp, SpeechLatencyTracker.STAGE_DRAWN);
+    }
+    if (canvas.getWidth() != canvasWidth || canvas.getHeight() != canvasHeight) {
+      canvasWidth = canvas.getWidth();
+      canvasHeight = canvas.getHeight();
+      final boolean rotated = sensorOrientation % 180 == 90;
+      final float multiplier =
+          Math.min(
+              canvasHeight / (float) (rotated ? frameWidth : frameHeight),
+              canvasWidth / (float) (rotated ? frameHeight : frameWidth));
+      frameToCanvasTransform.setTransformation(
+          frameWidth,
+          frameHeight,
+          (int) (multiplier * (rotated ? frameHeight : frameWidth)),
+          (int) (multiplier * (rotated ? frameWidth : frameHeight)),
+          sensorOrientation,
+          false);
+      ImageUtils.toMatrix(frameToCanvasTransform, matrixValues, frameToCanvasMatrix);
+    }
+    for (int i = 0; i < trackedObjects.size(); ++i) {
+      final TrackedRecognition recognition = trackedObjects.get(i);
 
       //Objeto para manipular retângulo
-      final RectF trackedPos = new RectF(recognition.location);
-
+      trackedPos.set(recognition.location);
 
       getFrameToCanvasMatrix().mapRect(trackedPos);
       boxPaint.setColor(recognition.color);
@@ -180,46 +300,72 @@ public class MultiBoxTracker extends Activity {
       float cornerSize = Math.min(trackedPos.width(), trackedPos.height()) / 8.0f;
       canvas.drawRoundRect(trackedPos, cornerSize, cornerSize, boxPaint);
 
-      final String labelString =
-          !TextUtils.isEmpty(recognition.title)
-              ? String.format("%s %.2f", recognition.title, (100 * recognition.detectionConfidence))
-              : String.format("%.2f", (100 * recognition.detectionConfidence));
-
       borderedText.drawText(
-          canvas, trackedPos.left + cornerSize, trackedPos.top, labelString + "%", boxPaint);
+          canvas, trackedPos.left + cornerSize, trackedPos.top, recognition.label, boxPaint);
     }
+    TraceRecorder.endSection();
   }
  //------------------------------------------------------------------------------------------------------
   //Método teste
   //Método que combina outros métodos para emitir a resposta auditiva
+  // Chamado a cada desenho, na thread de UI: só copia o título do primeiro rastro sob o lock, já
+  // que a thread de rastreamento altera e reaproveita os rastros. O resto vai para o
+  // announcementExecutor.
   @RequiresApi(api = Build.VERSION_CODES.O)
-  public void teste(Context context){
-
-    int cont = 0;
-    String texto = "nada";
-    for (final TrackedRecognition recognition : trackedObjects) {
-      final RectF trackedPos = new RectF(recognition.location);
-
-      leitura(context);
-      cont++;
-      texto=recognition.title;
-      addVetor(context,texto);
-
-      boolean b = verificacao(context,texto);
-      if(b == true){
-
-        String auxiliar = criaTranslate2(texto,context);
-        String t = auxiliar + " a frente";
-        new Utilities(context, t);
-        Log.d("o objeto pode ser","dito");
-
-      }else{
-
-        Log.d("o objeto não pode ser","dito");}
-      break;
-
+  public void teste(final Context context) {
+    final String texto;
+    final long frameId;
+    synchronized (this) {
+      if (trackedObjects.isEmpty() || announcementPending) {
+        return;
       }
+      texto = trackedObjects.get(0).title;
+      frameId = trackedTimestamp;
+      announcementPending = true;
+    }
+    final Runnable announcement =
+        () -> {
+          try {
+            anuncia(context, texto, frameId);
+          } finally {
+            announcementPending = false;
+          }
+        };
+    final Executor executor = announcementExecutor;
+    if (executor == null) {
+      announcement.run();
+      return;
+    }
+    try {
+      executor.execute(announcement);
+    } catch (final RejectedExecutionException e) {
+      // A activity já foi destruída.
+      announcementPending = false;
+    }
+  }
 
+  //---------------------------------------------------------------------------------------------------
+  //Método anuncia
+  // Atualiza vetores.txt e, se o objeto ainda pode ser dito, emite a mensagem auditiva.
+  @RequiresApi(api = Build.VERSION_CODES.O)
+  private void anuncia(final Context context, final String texto, final long frameId) {
+    leitura(context);
+    addVetor(context, texto);
+
+    if (verificacao(context, texto)) {
+      String auxiliar = criaTranslate2(texto, context);
+      String t = auxiliar + " a frente";
+      if (speechLatencyTracker != null) {
+        speechLatencyTracker.markAnnounced(frameId);
+      }
+      TraceRecorder.setCurrentFrame(frameId);
+      TraceRecorder.beginSection(TraceRecorder.STAGE_ANNOUNCE);
+      new Utilities(context, t, frameId, speechLatencyTracker);
+      TraceRecorder.endSection();
+      Log.d("o objeto pode ser", "dito");
+    } else {
+      Log.d("o objeto não pode ser", "dito");
+    }
   }
   //---------------------------------------------------------------------------------------------------
   //Método verificacao
@@ -563,61 +709,114 @@ public class MultiBoxTracker extends Activity {
   }
   //----------------------------------------------------------------------------------------------------
   //Método processResults
-  private void processResults(final List<Recognition> results) {
-    final List<Pair<Float, Recognition>> rectsToTrack = new LinkedList<Pair<Float, Recognition>>();
-
-    screenRects.clear();
-    final Matrix rgbFrameToScreen = new Matrix(getFrameToCanvasMatrix());
+  private void processResults(final List<Recognition> results, final RectF roi) {
+    rectsToTrack.clear();
+    if (screenConfidences.length < results.size()) {
+      screenConfidences = new float[results.size()];
+      screenBoxes = new float[4 * results.size()];
+    }
+    screenCount = 0;
 
-    for (final Recognition result : results) {
-      if (result.getLocation() == null) {
+    for (int i = 0; i < results.size(); ++i) {
+      final Recognition result = results.get(i);
+      if (!result.getLocation(detectionFrameRect)) {
         continue;
       }
-      final RectF detectionFrameRect = new RectF(result.getLocation());
 
-      final RectF detectionScreenRect = new RectF();
-      rgbFrameToScreen.mapRect(detectionScreenRect, detectionFrameRect);
+      getFrameToCanvasMatrix().mapRect(screenRect, detectionFrameRect);
 
-      logger.v(
-          "Result! Frame: " + result.getLocation() + " mapped to screen:" + detectionScreenRect);
+      logger.v("Result! Frame: %s mapped to screen: %s", detectionFrameRect, screenRect);
 
-      screenRects.add(new Pair<Float, RectF>(result.getConfidence(), detectionScreenRect));
+      screenConfidences[screenCount] = result.getConfidence();
+      setBox(screenBoxes, screenCount, screenRect);
+      screenCount++;
 
-      if (detectionFrameRect.width() < MIN_SIZE || detectionFrameRect.height() < MIN_SIZE) {
-        logger.w("Degenerate rectangle! " + detectionFrameRect);
+      setBox(box, 0, detectionFrameRect);
+      if (Tracking.isDegenerate(box, 0, MIN_SIZE)) {
+        logger.w("Degenerate rectangle! %s", detectionFrameRect);
         continue;
       }
 
-      rectsToTrack.add(new Pair<Float, Recognition>(result.getConfidence(), result));
+      rectsToTrack.add(result);
     }
 
-    trackedObjects.clear();
+    if (roi == null) {
+      for (int i = 0; i < trackedObjects.size(); ++i) {
+        freeTrackedObjects.add(trackedObjects.get(i));
+      }
+      trackedObjects.clear();
+    } else {
+      // Só os rastros dentro da ROI são substituídos pelas novas detecções.
+      setBox(roiBox, 0, roi);
+      for (int i = trackedObjects.size() - 1; i >= 0; --i) {
+        setBox(box, 0, trackedObjects.get(i).location);
+        if (Tracking.isCoveredByRoi(roiBox, 0, box, 0)) {
+          freeTrackedObjects.add(trackedObjects.remove(i));
+        }
+      }
+    }
     if (rectsToTrack.isEmpty()) {
       logger.v("Nothing to track, aborting.");
       return;
     }
 
-    for (final Pair<Float, Recognition> potential : rectsToTrack) {
-      final TrackedRecognition trackedRecognition = new TrackedRecognition();
-      trackedRecognition.detectionConfidence = potential.first;
-      trackedRecognition.location = new RectF(potential.second.getLocation());
-      trackedRecognition.title = potential.second.getTitle();
-      trackedRecognition.color = COLORS[trackedObjects.size()];
+    for (int i = 0; i < rectsToTrack.size(); ++i) {
+      if (trackedObjects.size() >= MAX_TRACKS) {
+        break;
+      }
+      final Recognition potential = rectsToTrack.get(i);
+      final TrackedRecognition trackedRecognition =
+          freeTrackedObjects.isEmpty()
+              ? new TrackedRecognition()
+              : freeTrackedObjects.remove(freeTrackedObjects.size() - 1);
+      trackedRecognition.set(potential, nextFreeColor());
       trackedObjects.add(trackedRecognition);
+    }
+  }
 
-      if (trackedObjects.size() >= COLORS.length) {
-        break;
+  //--------------------------------------------------------------------------------------------------------
+  //Método nextFreeColor
+  // Primeira cor que nenhum rastro atual usa. Depois de uma passada de ROI os rastros de fora dela
+  // continuam com as suas cores, então a posição na lista não basta. Há uma cor por rastro
+  // possível, então sempre sobra uma livre.
+  private int nextFreeColor() {
+    for (final int color : COLORS) {
+      boolean used = false;
+      for (int i = 0; i < trackedObjects.size() && !used; ++i) {
+        used = trackedObjects.get(i).color == color;
+      }
+      if (!used) {
+        return color;
       }
     }
+    return COLORS[0];
+  }
+
+  private static void setBox(final float[] boxes, final int i, final RectF rect) {
+    Boxes.set(boxes, i, rect.left, rect.top, rect.right, rect.bottom);
   }
 
   //--------------------------------------------------------------------------------------------------------
   //Método TrackedRecognition
+  // Reaproveitado entre quadros; o rótulo é montado uma vez por detecção, não a cada desenho, e
+  // no mesmo StringBuilder, sem String.format.
   private static class TrackedRecognition {
-    RectF location;
+    // Separador decimal do idioma do aparelho, como o String.format usava.
+    private static final char DECIMAL_SEPARATOR =
+        DecimalFormatSymbols.getInstance().getDecimalSeparator();
+    final RectF location = new RectF();
     float detectionConfidence;
     int color;
     String title;
+    final StringBuilder label = new StringBuilder();
+
+    void set(final Recognition recognition, final int color) {
+      recognition.getLocation(location);
+      detectionConfidence = recognition.getConfidence();
+      title = recognition.getTitle();
+      this.color = color;
+      Labels.format(label, title, detectionConfidence, DECIMAL_SEPARATOR);
+    }
   }
 
 }//Fim da classe
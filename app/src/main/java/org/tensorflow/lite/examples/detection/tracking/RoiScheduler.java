@@ -0,0 +1,117 @@
+package org.tensorflow.lite.examples.detection.tracking;
+
+//Importações
+import android.graphics.RectF;
+import org.tensorflow.lite.examples.detection.vision.Tracking;
+
+//---------------------------------------------------------------------------------------------------
+//Classe RoiScheduler
+/**
+ * Decide, a cada quadro, se o detector vê o quadro inteiro ou apenas uma região de interesse (ROI) em
+ * volta dos objetos já rastreados. Reduzir o quadro inteiro (640x480) para a entrada do modelo (300x300)
+ * desperdiça resolução no fundo vazio; recortando só a região dos objetos, eles chegam ao modelo em
+ * resolução próxima da nativa.
+ *
+ * <p>A ROI é um quadrado em volta dos {@code maxTracks} rastros de maior prioridade (confiança vezes
+ * a fração do quadro que o objeto não ocupa, de modo que objetos pequenos ganham mais com o recorte),
+ * aumentado por {@code padding} de cada lado e nunca menor que a entrada do modelo. Um quadro inteiro
+ * roda pelo menos a cada {@code fullFrameInterval} detecções, para encontrar objetos novos.
+ *
+ * <p>Não é thread-safe: deve ser usado pela etapa de conversão. As estatísticas podem ser lidas de
+ * qualquer thread.
+ */
+public class RoiScheduler {
+
+  //---------------------------------------------------------------------------------------------------
+  //Atributos
+  // Acima desta fração do menor lado do quadro a ROI não economiza nada; roda o quadro inteiro.
+  private static final float MAX_ROI_FRACTION = 0.9f;
+  private final int fullFrameInterval;
+  private final int maxTracks;
+  private final float padding;
+  private int sinceFullFrame = 0;
+  private volatile long roiFrames = 0;
+  private volatile long fullFrames = 0;
+  private volatile int lastRoiSide = 0;
+  // Rastros em arrays primitivos para Tracking.planRoi, alocados uma vez.
+  private final float[] confidences = new float[MultiBoxTracker.MAX_TRACKS];
+  private final float[] boxes = new float[4 * MultiBoxTracker.MAX_TRACKS];
+  private final float[] priorities = new float[MultiBoxTracker.MAX_TRACKS];
+  private final int[] order = new int[MultiBoxTracker.MAX_TRACKS];
+  private final float[] roiBox = new float[4];
+
+  //---------------------------------------------------------------------------------------------------
+  //Método Construtor
+  /**
+   * @param fullFrameInterval a cada quantas detecções o quadro inteiro é processado (2 alterna ROI e
+   *     quadro inteiro)
+   * @param maxTracks quantos rastros, no máximo, a ROI precisa cobrir
+   * @param padding margem em volta dos rastros, como fração do lado da região
+   */
+  public RoiScheduler(final int fullFrameInterval, final int maxTracks, final float padding) {
+    this.fullFrameInterval = Math.max(1, fullFrameInterval);
+    this.maxTracks = Math.max(1, maxTracks);
+    this.padding = padding;
+  }
+
+  //---------------------------------------------------------------------------------------------------
+  //Método nextRoi
+  /**
+   * Escolhe a região do próximo quadro. Retorna verdadeiro e preenche {@code roi} (em coordenadas do
+   * quadro) para uma passada na ROI, ou falso para uma passada no quadro inteiro.
+   *
+   * @param tracker de onde vêm a confiança e a posição (em coordenadas do quadro) dos rastros
+   * @param minSide lado mínimo da ROI, normalmente o lado da entrada do modelo
+   */
+  public boolean nextRoi(
+      final MultiBoxTracker tracker,
+      final int frameWidth,
+      final int frameHeight,
+      final int minSide,
+      final RectF roi) {
+    final int count = tracker.getTrackedBoxes(confidences, boxes);
+    if (count == 0 || ++sinceFullFrame >= fullFrameInterval) {
+      return fullFrame();
+    }
+
+    final float side =
+        Tracking.planRoi(
+            confidences,
+            boxes,
+            count,
+            frameWidth,
+            frameHeight,
+            minSide,
+            maxTracks,
+            padding,
+            MAX_ROI_FRACTION,
+            priorities,
+            order,
+            roiBox);
+    if (side == 0) {
+      return fullFrame();
+    }
+    roi.set(roiBox[0], roiBox[1], roiBox[2], roiBox[3]);
+
+    roiFrames++;
+    lastRoiSide = (int) side;
+    return true;
+  }
+
+  //---------------------------------------------------------------------------------------------------
+  //Método fullFrame
+  private boolean fullFrame() {
+    sinceFullFrame = 0;
+    fullFrames++;
+    return false;
+  }
+
+  //---------------------------------------------------------------------------------------------------
+  //Método getStatString
+  public String getStatString() {
+    return String.format(
+        "roi: %d roi / %d full (every %d), last side %dpx, top %d tracks, pad %.0f%%",
+        roiFrames, fullFrames, fullFrameInterval, lastRoiSide, maxTracks, padding * 100);
+  }
+
+}//Fim da classe
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2020 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tensorflow.lite.examples.detection;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.Test;
+
+/** Unit tests for the camera frame-rate selection. */
+public class FrameRateControllerTest {
+
+  // A typical Camera2 list of CONTROL_AE_AVAILABLE_TARGET_FPS_RANGES.
+  private static final int[][] RANGES = {
+    {15, 15}, {7, 30}, {15, 30}, {30, 30}, {24, 24}, {10, 10}
+  };
+  private static final double HEADROOM = 0.2;
+
+  @Test
+  public void noMeasurement_choosesFastestRange() {
+    assertThat(FrameRateController.chooseFpsRange(RANGES, 0, HEADROOM, -1)).isEqualTo(3);
+  }
+
+  @Test
+  public void choosesSmallestUpperBoundThatCoversTarget() {
+    // 11fps + 20% = 13.2fps -> {15, 15}.
+    assertThat(FrameRateController.chooseFpsRange(RANGES, 11, HEADROOM, -1)).isEqualTo(0);
+    // 8fps + 20% = 9.6fps -> {10, 10}.
+    assertThat(FrameRateController.chooseFpsRange(RANGES, 8, HEADROOM, -1)).isEqualTo(5);
+    // 18fps + 20% = 21.6fps -> {24, 24}.
+    assertThat(FrameRateController.chooseFpsRange(RANGES, 18, HEADROOM, -1)).isEqualTo(4);
+  }
+
+  @Test
+  public void tieOnUpperBound_prefersHigherMinimum() {
+    // 22fps + 20% = 26.4fps -> one of the 30fps ranges, the steadiest one.
+    assertThat(FrameRateController.chooseFpsRange(RANGES, 22, HEADROOM, -1)).isEqualTo(3);
+  }
+
+  @Test
+  public void targetAboveAllRanges_choosesFastestRange() {
+    assertThat(FrameRateController.chooseFpsRange(RANGES, 60, HEADROOM, -1)).isEqualTo(3);
+  }
+
+  @Test
+  public void keepsCurrentRangeWithinHysteresis() {
+    // {24, 24} is current; 15fps + 20% = 18fps, and 24 <= 18 * 1.5, so no change.
+    assertThat(FrameRateController.chooseFpsRange(RANGES, 15, HEADROOM, 4)).isEqualTo(4);
+    // 10fps + 20% = 12fps, and 24 > 12 * 1.5, so it steps down to {15, 15}.
+    assertThat(FrameRateController.chooseFpsRange(RANGES, 10, HEADROOM, 4)).isEqualTo(0);
+    // 25fps + 20% = 30fps is no longer covered by {24, 24}.
+    assertThat(FrameRateController.chooseFpsRange(RANGES, 25, HEADROOM, 4)).isEqualTo(3);
+  }
+
+  @Test
+  public void emptyRanges_returnsNoRange() {
+    assertThat(FrameRateController.chooseFpsRange(new int[0][], 10, HEADROOM, -1)).isEqualTo(-1);
+  }
+
+  @Test
+  public void update_reportsOnlyChanges() {
+    final FrameRateController controller = new FrameRateController(RANGES, HEADROOM);
+    assertThat(controller.update(0)).isEqualTo(3);
+    assertThat(controller.update(0)).isEqualTo(-1);
+    assertThat(controller.update(11)).isEqualTo(0);
+    assertThat(controller.update(11.5)).isEqualTo(-1);
+    assertThat(controller.getRange(0)).isEqualTo(new int[] {15, 15});
+  }
+}
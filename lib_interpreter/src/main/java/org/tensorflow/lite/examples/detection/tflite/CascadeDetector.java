@@ -0,0 +1,158 @@
+package org.tensorflow.lite.examples.detection.tflite;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.os.SystemClock;
+import android.os.Trace;
+import java.util.List;
+
+/**
+ * Two-stage detector. A small, low-resolution primary model runs on every frame and only answers
+ * "is there anything here?". The full secondary detector runs when the primary reports at least one
+ * candidate above {@code candidateThreshold}, and unconditionally every {@code refreshInterval}
+ * frames so that objects the primary misses are not lost for long.
+ *
+ * <p>Input bitmaps are in the secondary model's input size; they are scaled down for the primary
+ * into a pre-allocated bitmap. When the secondary does not run, {@link Detector#SKIPPED} is
+ * returned, so that callers keep tracking the objects the last secondary run found.
+ */
+public class CascadeDetector implements Detector {
+  private final Detector primary;
+  private final Detector secondary;
+  private final float candidateThreshold;
+  private final int refreshInterval;
+
+  // Pre-allocated primary input.
+  private final Bitmap primaryInput;
+  private final Canvas primaryCanvas;
+  private final Matrix toPrimary = new Matrix();
+  private int scaledFromWidth;
+  private int scaledFromHeight;
+
+  private int framesSinceSecondary;
+
+  // Stats.
+  private long frames;
+  private long hits;
+  private long misses;
+  private long refreshes;
+  private long totalNanos;
+  private long primaryNanos;
+  private long secondaryNanos;
+
+  /**
+   * @param primary the cheap objectness model; any detection it returns counts as a candidate.
+   * @param primaryInputSize input size of the primary model.
+   * @param secondary the full detector whose results are returned.
+   * @param candidateThreshold minimum primary confidence that triggers the secondary.
+   * @param refreshInterval run the secondary at least once every this many frames.
+   */
+  public CascadeDetector(
+      final Detector primary,
+      final int primaryInputSize,
+      final Detector secondary,
+      final float candidateThreshold,
+      final int refreshInterval) {
+    this.primary = primary;
+    this.secondary = secondary;
+    this.candidateThreshold = candidateThreshold;
+    this.refreshInterval = Math.max(1, refreshInterval);
+    this.primaryInput =
+        Bitmap.createBitmap(primaryInputSize, primaryInputSize, Bitmap.Config.ARGB_8888);
+    this.primaryCanvas = new Canvas(primaryInput);
+  }
+
+  @Override
+  public synchronized List<Recognition> recognizeImage(final Bitmap bitmap) {
+    Trace.beginSection("recognizeImageCascade");
+    final long startTime = SystemClock.elapsedRealtimeNanos();
+    frames++;
+
+    if (bitmap.getWidth() != scaledFromWidth || bitmap.getHeight() != scaledFromHeight) {
+      scaledFromWidth = bitmap.getWidth();
+      scaledFromHeight = bitmap.getHeight();
+      toPrimary.setScale(
+          (float) primaryInput.getWidth() / scaledFromWidth,
+          (float) primaryInput.getHeight() / scaledFromHeight);
+    }
+    primaryCanvas.drawBitmap(bitmap, toPrimary, null);
+    final List<Recognition> candidates = primary.recognizeImage(primaryInput);
+    final long primaryEnd = SystemClock.elapsedRealtimeNanos();
+    primaryNanos += primaryEnd - startTime;
+
+    boolean hasCandidate = false;
+    for (final Recognition candidate : candidates) {
+      if (candidate.getConfidence() >= candidateThreshold) {
+        hasCandidate = true;
+        break;
+      }
+    }
+
+    final List<Recognition> results;
+    if (hasCandidate || ++framesSinceSecondary >= refreshInterval) {
+      if (hasCandidate) {
+        hits++;
+      } else {
+        refreshes++;
+      }
+      framesSinceSecondary = 0;
+      results = secondary.recognizeImage(bitmap);
+      secondaryNanos += SystemClock.elapsedRealtimeNanos() - primaryEnd;
+    } else {
+      misses++;
+      results = SKIPPED;
+    }
+
+    totalNanos += SystemClock.elapsedRealtimeNanos() - startTime;
+    Trace.endSection();
+    return results;
+  }
+
+  @Override
+  public void enableStatLogging(final boolean logStats) {
+    primary.enableStatLogging(logStats);
+    secondary.enableStatLogging(logStats);
+  }
+
+  /** Hit (candidate found), miss (secondary skipped) and refresh rates, and average latency. */
+  @Override
+  public synchronized String getStatString() {
+    if (frames == 0) {
+      return "";
+    }
+    final long secondaryRuns = hits + refreshes;
+    return String.format(
+        "cascade: hit %.0f%% miss %.0f%% refresh %.0f%%, avg %.1fms"
+            + " (primary %.1fms, secondary %.1fms)",
+        100.0 * hits / frames,
+        100.0 * misses / frames,
+        100.0 * refreshes / frames,
+        totalNanos / 1e6 / frames,
+        primaryNanos / 1e6 / frames,
+        secondaryRuns == 0 ? 0.0 : secondaryNanos / 1e6 / secondaryRuns);
+  }
+
+  @Override
+  public synchronized void close() {
+    primary.close();
+    secondary.close();
+  }
+
+  @Override
+  public synchronized void setNumThreads(final int numThreads) {
+    primary.setNumThreads(numThreads);
+    secondary.setNumThreads(numThreads);
+  }
+
+  @Override
+  public synchronized void setUseNNAPI(final boolean isChecked) {
+    primary.setUseNNAPI(isChecked);
+    secondary.setUseNNAPI(isChecked);
+  }
+
+  @Override
+  public synchronized long warmUp(final int runs) {
+    return primary.warmUp(runs) + secondary.warmUp(runs);
+  }
+}
@@ -0,0 +1,152 @@
+package org.tensorflow.lite.examples.detection.tflite;
+
+import android.graphics.RectF;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Results of one batch of frames sent to {@link DetectionService}, in the compact binary form in
+ * which the service returns them.
+ *
+ * <p>Little-endian layout: the request id and frame count, then for each frame its buffer id,
+ * detection count, queueing and inference time in nanoseconds, followed by one record per detection
+ * of label index, score and box (left, top, right, bottom) in input pixels. A batch of ten
+ * detections per frame takes 264 bytes per frame, instead of a parcel of Recognition objects.
+ */
+public final class DetectionBatch {
+  static final int HEADER_BYTES = 8;
+  static final int FRAME_HEADER_BYTES = 24;
+  static final int DETECTION_BYTES = 24;
+
+  private final ByteBuffer data;
+  // Start of each frame's header in data.
+  private final int[] frameOffsets;
+
+  private DetectionBatch(final ByteBuffer data, final int[] frameOffsets) {
+    this.data = data;
+    this.frameOffsets = frameOffsets;
+  }
+
+  /** Wraps bytes received from the service; throws IllegalArgumentException if truncated. */
+  public static DetectionBatch parse(final byte[] bytes) {
+    final ByteBuffer data = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+    if (bytes.length < HEADER_BYTES) {
+      throw new IllegalArgumentException("Truncated detection batch");
+    }
+    final int frameCount = data.getInt(4);
+    final int[] frameOffsets = new int[frameCount];
+    int position = HEADER_BYTES;
+    for (int f = 0; f < frameCount; ++f) {
+      if (position + FRAME_HEADER_BYTES > bytes.length) {
+        throw new IllegalArgumentException("Truncated detection batch");
+      }
+      frameOffsets[f] = position;
+      position += FRAME_HEADER_BYTES + data.getInt(position + 4) * DETECTION_BYTES;
+    }
+    if (position > bytes.length) {
+      throw new IllegalArgumentException("Truncated detection batch");
+    }
+    return new DetectionBatch(data, frameOffsets);
+  }
+
+  public int getRequestId() {
+    return data.getInt(0);
+  }
+
+  public int getFrameCount() {
+    return frameOffsets.length;
+  }
+
+  /** The shared memory buffer, as registered by the client, that held frame {@code f}. */
+  public int getBufferId(final int f) {
+    return data.getInt(frameOffsets[f]);
+  }
+
+  public int getDetectionCount(final int f) {
+    return data.getInt(frameOffsets[f] + 4);
+  }
+
+  /** Time frame {@code f} waited in the service for a free interpreter. */
+  public long getQueueNanos(final int f) {
+    return data.getLong(frameOffsets[f] + 8);
+  }
+
+  public long getInferenceNanos(final int f) {
+    return data.getLong(frameOffsets[f] + 16);
+  }
+
+  /** Index into the labels the service reported when the buffer was registered. */
+  public int getLabel(final int f, final int i) {
+    return data.getInt(detectionOffset(f, i));
+  }
+
+  public float getScore(final int f, final int i) {
+    return data.getFloat(detectionOffset(f, i) + 4);
+  }
+
+  /** Copies the box of detection {@code i} of frame {@code f} into {@code location}. */
+  public void getLocation(final int f, final int i, final RectF location) {
+    final int offset = detectionOffset(f, i) + 8;
+    location.set(
+        data.getFloat(offset),
+        data.getFloat(offset + 4),
+        data.getFloat(offset + 8),
+        data.getFloat(offset + 12));
+  }
+
+  private int detectionOffset(final int f, final int i) {
+    return frameOffsets[f] + FRAME_HEADER_BYTES + i * DETECTION_BYTES;
+  }
+
+  /** What the service measured and found for one frame of a batch. */
+  static final class FrameResult {
+    int bufferId;
+    long queueNanos;
+    long inferenceNanos;
+    List<Detector.Recognition> recognitions;
+  }
+
+  /**
+   * Encodes a batch. Recognitions without a location, or whose title is not in {@code labelIndex},
+   * are left out.
+   */
+  static byte[] encode(
+      final int requestId, final FrameResult[] frames, final Map<String, Integer> labelIndex) {
+    int size = HEADER_BYTES;
+    for (final FrameResult frame : frames) {
+      size += FRAME_HEADER_BYTES + frame.recognitions.size() * DETECTION_BYTES;
+    }
+    final ByteBuffer data = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+    data.putInt(requestId);
+    data.putInt(frames.length);
+    for (final FrameResult frame : frames) {
+      final int frameOffset = data.position();
+      data.putInt(frame.bufferId);
+      data.putInt(0);
+      data.putLong(frame.queueNanos);
+      data.putLong(frame.inferenceNanos);
+      int count = 0;
+      for (final Detector.Recognition recognition : frame.recognitions) {
+        final RectF location = recognition.getLocation();
+        final Integer label = labelIndex.get(recognition.getTitle());
+        if (location == null || label == null) {
+          continue;
+        }
+        data.putInt(label);
+        data.putFloat(recognition.getConfidence());
+        data.putFloat(location.left);
+        data.putFloat(location.top);
+        data.putFloat(location.right);
+        data.putFloat(location.bottom);
+        count++;
+      }
+      data.putInt(frameOffset + 4, count);
+    }
+    // Skipped recognitions leave unused space at the end.
+    final byte[] bytes = new byte[data.position()];
+    System.arraycopy(data.array(), 0, bytes, 0, bytes.length);
+    return bytes;
+  }
+}
@@ -0,0 +1,262 @@
+package org.tensorflow.lite.examples.detection.tflite;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.ServiceConnection;
+import android.graphics.Bitmap;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.Looper;
+import android.os.Message;
+import android.os.Messenger;
+import android.os.RemoteException;
+import android.os.SharedMemory;
+import android.system.ErrnoException;
+import android.util.Log;
+import androidx.annotation.RequiresApi;
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Client side of {@link DetectionService}: binds to the service, sets up {@code bufferCount} shared
+ * frame buffers (ids 0 to bufferCount - 1) and sends detect requests naming them.
+ *
+ * <p>A typical client writes a frame into a free buffer with {@link #writeFrame}, and once it has
+ * filled as many buffers as it wants to batch, sends them with {@link #detect}. A buffer is free
+ * again once the results of the request that named it arrive.
+ *
+ * <p>All listener calls and all methods of this class belong on the looper passed in. The
+ * connection callbacks, which Android always delivers on the main thread, are posted there too.
+ */
+@RequiresApi(api = Build.VERSION_CODES.O_MR1)
+public final class DetectionClient implements Closeable {
+  private static final String TAG = "DetectionClient";
+
+  /** Receives the service's replies, on the client's looper. */
+  public interface Listener {
+    /** Every buffer is registered; frames must be {@code inputSize} square. */
+    void onConnected(int inputSize, List<String> labels);
+
+    void onResults(DetectionBatch batch);
+
+    void onStats(String stats);
+
+    /** Setting up the buffers, or request {@code id}, failed. The request's buffers are free. */
+    void onError(int id, String error);
+  }
+
+  private final Context context;
+  private final ComponentName serviceComponent;
+  private final int bufferCount;
+  private final Listener listener;
+  private final Handler handler;
+  private final Messenger replyTo;
+
+  private Messenger service;
+  private boolean bound;
+  private int inputSize;
+  private List<String> labels = Collections.emptyList();
+  private SharedMemory[] memories;
+  private ByteBuffer[] mappings;
+  private int registeredCount;
+
+  private final ServiceConnection connection =
+      new ServiceConnection() {
+        @Override
+        public void onServiceConnected(final ComponentName name, final IBinder binder) {
+          handler.post(() -> onConnected(binder));
+        }
+
+        @Override
+        public void onServiceDisconnected(final ComponentName name) {
+          // The service process died; it reconnects on its own and the buffers are set up again.
+          Log.w(TAG, "Disconnected from " + name);
+          handler.post(DetectionClient.this::onDisconnected);
+        }
+      };
+
+  public DetectionClient(
+      final Context context,
+      final ComponentName serviceComponent,
+      final int bufferCount,
+      final Looper looper,
+      final Listener listener) {
+    this.context = context;
+    this.serviceComponent = serviceComponent;
+    this.bufferCount = bufferCount;
+    this.listener = listener;
+    handler = new Handler(looper, this::handleReply);
+    replyTo = new Messenger(handler);
+  }
+
+  private void onConnected(final IBinder binder) {
+    if (!bound) {
+      // Closed before the connection arrived.
+      return;
+    }
+    service = new Messenger(binder);
+    send(DetectionService.MSG_GET_MODEL, 0, null);
+  }
+
+  private void onDisconnected() {
+    service = null;
+    releaseBuffers();
+  }
+
+  /** Binds to the service; returns false if it cannot be found or the caller lacks permission. */
+  public boolean bind() {
+    bound =
+        context.bindService(
+            new Intent().setComponent(serviceComponent), connection, Context.BIND_AUTO_CREATE);
+    return bound;
+  }
+
+  /** Whether every buffer is registered, so that {@link #detect} can be called. */
+  public boolean isConnected() {
+    return service != null && mappings != null && registeredCount == bufferCount;
+  }
+
+  public int getInputSize() {
+    return inputSize;
+  }
+
+  public List<String> getLabels() {
+    return labels;
+  }
+
+  /** Copies {@code frame}, which must be input size square and ARGB_8888, into a buffer. */
+  public void writeFrame(final int bufferId, final Bitmap frame) {
+    if (frame.getWidth() != inputSize || frame.getHeight() != inputSize) {
+      throw new IllegalArgumentException(
+          "Frame is " + frame.getWidth() + "x" + frame.getHeight() + ", expected " + inputSize);
+    }
+    final ByteBuffer mapping = mappings[bufferId];
+    mapping.putInt(0, frame.getWidth());
+    mapping.putInt(4, frame.getHeight());
+    mapping.position(DetectionService.FRAME_HEADER_BYTES);
+    frame.copyPixelsToBuffer(mapping);
+  }
+
+  /** Asks for detections on the given buffers; the results arrive as one batch for requestId. */
+  public boolean detect(final int requestId, final int... bufferIds) {
+    final Bundle data = new Bundle();
+    data.putIntArray(DetectionService.KEY_BUFFER_IDS, bufferIds);
+    return send(DetectionService.MSG_DETECT, requestId, data);
+  }
+
+  /** Asks for this client's queueing and inference latency, delivered to onStats. */
+  public boolean requestStats() {
+    return send(DetectionService.MSG_GET_STATS, 0, null);
+  }
+
+  @Override
+  public void close() {
+    if (service != null && mappings != null) {
+      for (int i = 0; i < bufferCount; ++i) {
+        send(DetectionService.MSG_UNREGISTER_BUFFER, i, null);
+      }
+    }
+    if (bound) {
+      context.unbindService(connection);
+      bound = false;
+    }
+    service = null;
+    releaseBuffers();
+  }
+
+  private boolean handleReply(final Message msg) {
+    final Bundle data = msg.getData();
+    switch (msg.what) {
+      case DetectionService.MSG_MODEL:
+        inputSize = data.getInt(DetectionService.KEY_INPUT_SIZE);
+        labels =
+            Collections.unmodifiableList(
+                Arrays.asList(data.getStringArray(DetectionService.KEY_LABELS)));
+        registerBuffers();
+        return true;
+      case DetectionService.MSG_BUFFER_REGISTERED:
+        if (++registeredCount == bufferCount) {
+          listener.onConnected(inputSize, labels);
+        }
+        return true;
+      case DetectionService.MSG_RESULTS:
+        listener.onResults(DetectionBatch.parse(data.getByteArray(DetectionService.KEY_RESULTS)));
+        return true;
+      case DetectionService.MSG_STATS:
+        listener.onStats(data.getString(DetectionService.KEY_STATS));
+        return true;
+      case DetectionService.MSG_ERROR:
+        listener.onError(msg.arg1, data.getString(DetectionService.KEY_ERROR));
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  private void registerBuffers() {
+    releaseBuffers();
+    memories = new SharedMemory[bufferCount];
+    mappings = new ByteBuffer[bufferCount];
+    try {
+      for (int i = 0; i < bufferCount; ++i) {
+        memories[i] =
+            SharedMemory.create(
+                "detection-frame-" + i, DetectionService.getFrameBytes(inputSize));
+        mappings[i] = memories[i].mapReadWrite().order(ByteOrder.nativeOrder());
+      }
+    } catch (final ErrnoException e) {
+      Log.e(TAG, "Cannot allocate frame buffers", e);
+      releaseBuffers();
+      listener.onError(0, "Cannot allocate frame buffers: " + e);
+      return;
+    }
+    for (int i = 0; i < bufferCount; ++i) {
+      // Parceling the region passes the service a duplicate of its file descriptor.
+      final Bundle data = new Bundle();
+      data.putParcelable(DetectionService.KEY_MEMORY, memories[i]);
+      send(DetectionService.MSG_REGISTER_BUFFER, i, data);
+    }
+  }
+
+  private void releaseBuffers() {
+    if (memories != null) {
+      for (int i = 0; i < memories.length; ++i) {
+        if (mappings[i] != null) {
+          SharedMemory.unmap(mappings[i]);
+        }
+        if (memories[i] != null) {
+          memories[i].close();
+        }
+      }
+    }
+    memories = null;
+    mappings = null;
+    registeredCount = 0;
+  }
+
+  private boolean send(final int what, final int arg1, final Bundle data) {
+    if (service == null) {
+      return false;
+    }
+    final Message msg = Message.obtain(null, what);
+    msg.arg1 = arg1;
+    msg.replyTo = replyTo;
+    if (data != null) {
+      msg.setData(data);
+    }
+    try {
+      service.send(msg);
+      return true;
+    } catch (final RemoteException e) {
+      Log.w(TAG, "Detection service is gone", e);
+      return false;
+    }
+  }
+}
@@ -0,0 +1,491 @@
+package org.tensorflow.lite.examples.detection.tflite;
+
+import android.app.Service;
+import android.content.Intent;
+import android.graphics.Bitmap;
+import android.graphics.Bitmap.Config;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.IBinder;
+import android.os.Message;
+import android.os.Messenger;
+import android.os.RemoteException;
+import android.os.SharedMemory;
+import android.os.SystemClock;
+import android.system.ErrnoException;
+import android.util.Log;
+import androidx.annotation.RequiresApi;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A bound service that owns the detection model and a small pool of interpreters, so that several
+ * apps on the device share one copy of the model instead of each loading its own.
+ *
+ * <p>Clients talk to it through a {@link Messenger}; {@link DetectionClient} wraps the protocol.
+ * Frames travel in {@link SharedMemory} regions that a client registers once and rewrites for every
+ * frame, so pixel data never goes through Binder: a detect request only names the buffers to read.
+ * A buffer holds the frame width and height as two native-order ints, followed by the pixels of an
+ * ARGB_8888 bitmap as written by {@link Bitmap#copyPixelsToBuffer}. Frames must already be at the
+ * model input size, which {@link #MSG_GET_MODEL} reports along with the labels. A client must not
+ * rewrite a buffer until the results of the request that names it have arrived.
+ *
+ * <p>A request may name several buffers. Their frames are spread over the interpreter pool and
+ * answered together as one {@link DetectionBatch}. For every client the service keeps how long its
+ * frames waited for a free interpreter and how long inference took; see {@link #MSG_GET_STATS}.
+ *
+ * <p>SharedMemory needs API 27, so the service is disabled in the manifest on older devices.
+ */
+@RequiresApi(api = Build.VERSION_CODES.O_MR1)
+public class DetectionService extends Service {
+  private static final String TAG = "DetectionService";
+
+  /** Asks for the model input size and labels, which a client needs to size its buffers. */
+  public static final int MSG_GET_MODEL = 1;
+  /** Registers the region in {@link #KEY_MEMORY} as buffer {@code arg1}. */
+  public static final int MSG_REGISTER_BUFFER = 2;
+  /** Releases buffer {@code arg1}. */
+  public static final int MSG_UNREGISTER_BUFFER = 3;
+  /** Detects on the buffers in {@link #KEY_BUFFER_IDS}, as request {@code arg1}. */
+  public static final int MSG_DETECT = 4;
+  /** Asks for the latency summary of the sending client. */
+  public static final int MSG_GET_STATS = 5;
+
+  /** The model's {@link #KEY_INPUT_SIZE} and {@link #KEY_LABELS}. */
+  public static final int MSG_MODEL = 101;
+  /** Buffer {@code arg1} was registered. */
+  public static final int MSG_BUFFER_REGISTERED = 102;
+  /** Results of request {@code arg1}, as a {@link DetectionBatch} in {@link #KEY_RESULTS}. */
+  public static final int MSG_RESULTS = 103;
+  /** The sending client's latency summary, in {@link #KEY_STATS}. */
+  public static final int MSG_STATS = 104;
+  /** The buffer or request {@code arg1} failed, for the reason in {@link #KEY_ERROR}. */
+  public static final int MSG_ERROR = 105;
+
+  public static final String KEY_MEMORY = "memory";
+  public static final String KEY_BUFFER_IDS = "buffer_ids";
+  public static final String KEY_INPUT_SIZE = "input_size";
+  public static final String KEY_LABELS = "labels";
+  public static final String KEY_RESULTS = "results";
+  public static final String KEY_STATS = "stats";
+  public static final String KEY_ERROR = "error";
+
+  /** Bytes before the pixels in a frame buffer: the frame width and height. */
+  public static final int FRAME_HEADER_BYTES = 8;
+
+  // The same model the app runs in-process.
+  private static final String MODEL_FILE = "detect.tflite";
+  private static final String LABELS_FILE = "labelmap.txt";
+  private static final int INPUT_SIZE = 300;
+  private static final boolean IS_QUANTIZED = true;
+  // Interpreters in the pool, and the threads each one uses. Two interpreters of two threads keep
+  // the big cores busy with frames from different clients without oversubscribing them.
+  private static final int POOL_SIZE = 2;
+  private static final int THREADS_PER_INTERPRETER = 2;
+
+  private HandlerThread handlerThread;
+  private Handler handler;
+  private Messenger messenger;
+  // Runs frames; one thread per interpreter, so a frame only waits for an interpreter in its queue.
+  private final ExecutorService executor = Executors.newFixedThreadPool(POOL_SIZE);
+  private final ArrayBlockingQueue<Slot> freeSlots = new ArrayBlockingQueue<>(POOL_SIZE);
+
+  // Written once by loadModel() on the handler thread, before any frame is queued.
+  private int slotCount;
+  private String[] labels;
+  private Map<String, Integer> labelIndex;
+  private String loadError;
+
+  // Only touched on the handler thread.
+  private final Map<IBinder, Client> clients = new HashMap<>();
+
+  /** Bytes a client must allocate for one frame buffer at the given input size. */
+  public static int getFrameBytes(final int inputSize) {
+    return FRAME_HEADER_BYTES + 4 * inputSize * inputSize;
+  }
+
+  @Override
+  public void onCreate() {
+    super.onCreate();
+    handlerThread = new HandlerThread("detection-service");
+    handlerThread.start();
+    handler = new Handler(handlerThread.getLooper(), this::handleMessage);
+    messenger = new Messenger(handler);
+    // Messages from clients queue behind this, so they never see a half-built pool.
+    handler.post(this::loadModel);
+  }
+
+  @Override
+  public IBinder onBind(final Intent intent) {
+    return messenger.getBinder();
+  }
+
+  @Override
+  public void onDestroy() {
+    // Posted so that it runs after loadModel() and any message already queued.
+    handler.post(
+        () -> {
+          for (final Client client : new ArrayList<>(clients.values())) {
+            removeClient(client);
+          }
+          // Queued behind every frame; takes each interpreter back as its frame finishes.
+          final int count = slotCount;
+          executor.execute(
+              () -> {
+                for (int i = 0; i < count; ++i) {
+                  try {
+                    freeSlots.take().detector.close();
+                  } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                  }
+                }
+              });
+          executor.shutdown();
+          handlerThread.quitSafely();
+        });
+    super.onDestroy();
+  }
+
+  private void loadModel() {
+    try {
+      final MappedByteBuffer model =
+          TFLiteObjectDetectionAPIModel.loadModelFile(getAssets(), MODEL_FILE);
+      for (int i = 0; i < POOL_SIZE; ++i) {
+        // Every interpreter reads the weights from the same mapping.
+        final TFLiteObjectDetectionAPIModel detector =
+            (TFLiteObjectDetectionAPIModel)
+                TFLiteObjectDetectionAPIModel.create(model, LABELS_FILE, INPUT_SIZE, IS_QUANTIZED);
+        detector.setNumThreads(THREADS_PER_INTERPRETER);
+        detector.warmUp(1);
+        freeSlots.add(new Slot(detector));
+        slotCount++;
+      }
+    } catch (final IOException | RuntimeException e) {
+      Log.e(TAG, "Failed to load " + MODEL_FILE, e);
+      loadError = e.toString();
+    }
+    if (slotCount == 0) {
+      return;
+    }
+    final List<String> modelLabels = freeSlots.peek().detector.getLabels();
+    labels = modelLabels.toArray(new String[0]);
+    final Map<String, Integer> index = new HashMap<>();
+    for (int i = 0; i < labels.length; ++i) {
+      // Label maps repeat "???" for unused ids; the first one stands for all of them.
+      if (!index.containsKey(labels[i])) {
+        index.put(labels[i], i);
+      }
+    }
+    labelIndex = Collections.unmodifiableMap(index);
+    Log.i(TAG, "Loaded " + MODEL_FILE + " into " + slotCount + " interpreters");
+  }
+
+  private boolean handleMessage(final Message msg) {
+    final long receivedNanos = SystemClock.elapsedRealtimeNanos();
+    if (msg.replyTo == null) {
+      Log.w(TAG, "Ignoring message " + msg.what + " without replyTo");
+      return true;
+    }
+    final Client client = clientFor(msg.replyTo, msg.sendingUid);
+    switch (msg.what) {
+      case MSG_GET_MODEL:
+        if (labels == null) {
+          sendError(client, 0, "Model not loaded: " + loadError);
+          return true;
+        }
+        final Bundle model = new Bundle();
+        model.putInt(KEY_INPUT_SIZE, INPUT_SIZE);
+        model.putStringArray(KEY_LABELS, labels);
+        send(client, MSG_MODEL, 0, model);
+        return true;
+      case MSG_REGISTER_BUFFER:
+        registerBuffer(client, msg.arg1, msg.getData());
+        return true;
+      case MSG_UNREGISTER_BUFFER:
+        final Buffer buffer = client.buffers.remove(msg.arg1);
+        if (buffer != null) {
+          buffer.release();
+        }
+        return true;
+      case MSG_DETECT:
+        detect(client, msg.arg1, msg.getData().getIntArray(KEY_BUFFER_IDS), receivedNanos);
+        return true;
+      case MSG_GET_STATS:
+        final Bundle data = new Bundle();
+        data.putString(KEY_STATS, client.getStatString());
+        send(client, MSG_STATS, 0, data);
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  private Client clientFor(final Messenger replyTo, final int uid) {
+    final IBinder binder = replyTo.getBinder();
+    Client client = clients.get(binder);
+    if (client == null) {
+      client = new Client(replyTo, uid);
+      clients.put(binder, client);
+      final Client newClient = client;
+      try {
+        // Frees the client's buffers if its process dies without unregistering them.
+        binder.linkToDeath(() -> handler.post(() -> removeClient(newClient)), 0);
+      } catch (final RemoteException e) {
+        handler.post(() -> removeClient(newClient));
+      }
+    }
+    return client;
+  }
+
+  private void removeClient(final Client client) {
+    if (clients.remove(client.replyTo.getBinder()) != client) {
+      return;
+    }
+    for (final Buffer buffer : client.buffers.values()) {
+      buffer.release();
+    }
+    client.buffers.clear();
+    Log.i(TAG, "Client gone: " + client.getStatString());
+  }
+
+  private void registerBuffer(final Client client, final int bufferId, final Bundle data) {
+    final SharedMemory memory = data.getParcelable(KEY_MEMORY);
+    if (memory == null) {
+      sendError(client, bufferId, "No shared memory");
+      return;
+    }
+    if (labels == null) {
+      memory.close();
+      sendError(client, bufferId, "Model not loaded: " + loadError);
+      return;
+    }
+    if (memory.getSize() < getFrameBytes(INPUT_SIZE)) {
+      memory.close();
+      sendError(client, bufferId, "Buffer smaller than " + getFrameBytes(INPUT_SIZE) + " bytes");
+      return;
+    }
+    final ByteBuffer mapping;
+    try {
+      mapping = memory.mapReadOnly();
+    } catch (final ErrnoException e) {
+      memory.close();
+      sendError(client, bufferId, "Cannot map buffer: " + e);
+      return;
+    }
+    final Buffer previous = client.buffers.put(bufferId, new Buffer(memory, mapping));
+    if (previous != null) {
+      previous.release();
+    }
+    send(client, MSG_BUFFER_REGISTERED, bufferId, new Bundle());
+  }
+
+  private void detect(
+      final Client client, final int requestId, final int[] bufferIds, final long receivedNanos) {
+    if (bufferIds == null || bufferIds.length == 0) {
+      sendError(client, requestId, "No buffers in request");
+      return;
+    }
+    final Buffer[] buffers = new Buffer[bufferIds.length];
+    for (int f = 0; f < bufferIds.length; ++f) {
+      buffers[f] = client.buffers.get(bufferIds[f]);
+      if (buffers[f] == null) {
+        sendError(client, requestId, "Unknown buffer " + bufferIds[f]);
+        return;
+      }
+    }
+    client.requests++;
+    final Batch batch = new Batch(client, requestId, bufferIds, buffers, receivedNanos);
+    for (int f = 0; f < buffers.length; ++f) {
+      buffers[f].acquire();
+      final int frame = f;
+      executor.execute(() -> batch.runFrame(frame));
+    }
+  }
+
+  private void sendError(final Client client, final int id, final String error) {
+    Log.w(TAG, "uid " + client.uid + ": " + error);
+    final Bundle data = new Bundle();
+    data.putString(KEY_ERROR, error);
+    send(client, MSG_ERROR, id, data);
+  }
+
+  // Called on the handler thread and on frame threads; Messenger.send() is thread-safe.
+  private void send(final Client client, final int what, final int arg1, final Bundle data) {
+    final Message msg = Message.obtain(null, what);
+    msg.arg1 = arg1;
+    msg.setData(data);
+    try {
+      client.replyTo.send(msg);
+    } catch (final RemoteException e) {
+      Log.w(TAG, "uid " + client.uid + " is gone", e);
+      handler.post(() -> removeClient(client));
+    }
+  }
+
+  /** An interpreter and the bitmap its frames are copied into. */
+  private static final class Slot {
+    final TFLiteObjectDetectionAPIModel detector;
+    final Bitmap bitmap = Bitmap.createBitmap(INPUT_SIZE, INPUT_SIZE, Config.ARGB_8888);
+
+    Slot(final TFLiteObjectDetectionAPIModel detector) {
+      this.detector = detector;
+    }
+  }
+
+  /** A client's mapped frame buffer, unmapped once released and no longer read by any frame. */
+  private static final class Buffer {
+    final SharedMemory memory;
+    final ByteBuffer mapping;
+    private int inFlight;
+    private boolean released;
+
+    Buffer(final SharedMemory memory, final ByteBuffer mapping) {
+      this.memory = memory;
+      this.mapping = mapping;
+    }
+
+    synchronized void acquire() {
+      inFlight++;
+    }
+
+    synchronized void releaseFrame() {
+      inFlight--;
+      if (released && inFlight == 0) {
+        close();
+      }
+    }
+
+    synchronized void release() {
+      released = true;
+      if (inFlight == 0) {
+        close();
+      }
+    }
+
+    private void close() {
+      SharedMemory.unmap(mapping);
+      memory.close();
+    }
+  }
+
+  /** One connected app, identified by the binder of its reply Messenger. */
+  private static final class Client {
+    final Messenger replyTo;
+    final int uid;
+    // Only touched on the handler thread.
+    final Map<Integer, Buffer> buffers = new HashMap<>();
+    long requests;
+    // From the request reaching the service to its frame getting an interpreter.
+    final LatencyHistogram queueHistogram = new LatencyHistogram();
+    final LatencyHistogram inferenceHistogram = new LatencyHistogram();
+
+    Client(final Messenger replyTo, final int uid) {
+      this.replyTo = replyTo;
+      this.uid = uid;
+    }
+
+    String getStatString() {
+      return "uid "
+          + uid
+          + ", "
+          + requests
+          + " requests\nqueue: "
+          + queueHistogram.format()
+          + "\ninference: "
+          + inferenceHistogram.format();
+    }
+  }
+
+  /** The frames of one detect request, answered together when the last one finishes. */
+  private final class Batch {
+    final Client client;
+    final int requestId;
+    final Buffer[] buffers;
+    final long receivedNanos;
+    final DetectionBatch.FrameResult[] results;
+    final AtomicInteger remaining;
+    volatile String error;
+
+    Batch(
+        final Client client,
+        final int requestId,
+        final int[] bufferIds,
+        final Buffer[] buffers,
+        final long receivedNanos) {
+      this.client = client;
+      this.requestId = requestId;
+      this.buffers = buffers;
+      this.receivedNanos = receivedNanos;
+      results = new DetectionBatch.FrameResult[buffers.length];
+      for (int f = 0; f < buffers.length; ++f) {
+        results[f] = new DetectionBatch.FrameResult();
+        results[f].bufferId = bufferIds[f];
+        results[f].recognitions = Collections.emptyList();
+      }
+      remaining = new AtomicInteger(buffers.length);
+    }
+
+    // Runs on a frame thread.
+    void runFrame(final int f) {
+      final DetectionBatch.FrameResult result = results[f];
+      Slot slot = null;
+      try {
+        slot = freeSlots.take();
+        final long startNanos = SystemClock.elapsedRealtimeNanos();
+        result.queueNanos = startNanos - receivedNanos;
+        // A duplicate, because frames of other batches may read the same mapping concurrently.
+        final ByteBuffer frame = buffers[f].mapping.duplicate().order(ByteOrder.nativeOrder());
+        final int width = frame.getInt(0);
+        final int height = frame.getInt(4);
+        if (width != INPUT_SIZE || height != INPUT_SIZE) {
+          error = "Frame is " + width + "x" + height + ", expected " + INPUT_SIZE + "px square";
+        } else {
+          frame.position(FRAME_HEADER_BYTES);
+          slot.bitmap.copyPixelsFromBuffer(frame);
+          result.recognitions = slot.detector.recognizeImage(slot.bitmap);
+        }
+        result.inferenceNanos = SystemClock.elapsedRealtimeNanos() - startNanos;
+        client.queueHistogram.record(result.queueNanos);
+        client.inferenceHistogram.record(result.inferenceNanos);
+      } catch (final InterruptedException e) {
+        error = "Service shutting down";
+        Thread.currentThread().interrupt();
+      } catch (final RuntimeException e) {
+        Log.e(TAG, "Detection failed", e);
+        error = e.toString();
+      } finally {
+        if (slot != null) {
+          freeSlots.add(slot);
+        }
+        buffers[f].releaseFrame();
+      }
+      if (remaining.decrementAndGet() == 0) {
+        finish();
+      }
+    }
+
+    private void finish() {
+      if (error != null) {
+        sendError(client, requestId, error);
+        return;
+      }
+      final Bundle data = new Bundle();
+      data.putByteArray(KEY_RESULTS, DetectionBatch.encode(requestId, results, labelIndex));
+      send(client, MSG_RESULTS, requestId, data);
+    }
+  }
+}
@@ -16,13 +16,45 @@ limitations under the License.
 package org.tensorflow.lite.examples.detection.tflite;
 
 import android.graphics.Bitmap;
+import android.graphics.Matrix;
 import android.graphics.RectF;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import org.tensorflow.lite.examples.detection.vision.RecyclingList;
 
 /** Generic interface for interacting with different recognition engines. */
 public interface Detector {
+  /**
+   * Returned by {@link #recognizeImage(Bitmap)}, compared by identity, when the detector chose not
+   * to look at the frame. Unlike an empty result it says nothing about the frame, so callers should
+   * keep what they knew from earlier frames.
+   */
+  List<Recognition> SKIPPED = Collections.unmodifiableList(new ArrayList<Recognition>(0));
+
+  /** Returns new Recognitions in a new list; the caller may keep them for as long as it wants. */
   List<Recognition> recognizeImage(Bitmap bitmap);
 
+  /**
+   * Same as {@link #recognizeImage(Bitmap)}, but refills {@code results}, reusing the Recognitions
+   * it already holds. A caller that keeps one list per frame in flight allocates nothing per frame
+   * with detectors that override this; the default copies the results of the other method.
+   *
+   * @return false if the detector skipped the frame (see {@link #SKIPPED}); {@code results} is then
+   *     empty.
+   */
+  default boolean recognizeImage(final Bitmap bitmap, final RecyclingList<Recognition> results) {
+    results.clear();
+    final List<Recognition> recognitions = recognizeImage(bitmap);
+    if (recognitions == SKIPPED) {
+      return false;
+    }
+    for (final Recognition recognition : recognitions) {
+      results.add().set(recognition);
+    }
+    return true;
+  }
+
   void enableStatLogging(final boolean debug);
 
   String getStatString();
@@ -33,33 +65,78 @@ public interface Detector {
 
   void setUseNNAPI(boolean isChecked);
 
-  /** An immutable result returned by a Detector describing what was recognized. */
+  /**
+   * Runs {@code runs} inferences on a synthetic input, so that tensor allocation, delegate
+   * preparation and cold caches are paid for before the first real frame. Implementations repeat it
+   * whenever they recreate their interpreters. Returns the time spent, in nanoseconds.
+   */
+  long warmUp(int runs);
+
+  /**
+   * A result returned by a Detector describing what was recognized. Instances in a {@link
+   * RecyclingList} are reused by {@link #recognizeImage(Bitmap, RecyclingList)}.
+   */
   public class Recognition {
     /**
      * A unique identifier for what has been recognized. Specific to the class, not the instance of
      * the object.
      */
-    private final String id;
+    private String id;
 
     /** Display name for the recognition. */
-    private final String title;
+    private String title;
 
     /**
      * A sortable score for how good the recognition is relative to others. Higher should be better.
      */
-    private final Float confidence;
+    private float confidence;
 
     /** Optional location within the source image for the location of the recognized object. */
     private RectF location;
 
+    /** An empty recognition, to be filled with {@link #set}; the {@link RecyclingList} factory. */
+    public Recognition() {}
+
     public Recognition(
-        final String id, final String title, final Float confidence, final RectF location) {
+        final String id, final String title, final float confidence, final RectF location) {
       this.id = id;
       this.title = title;
       this.confidence = confidence;
       this.location = location;
     }
 
+    /** Overwrites this recognition, reusing its location rectangle. */
+    public void set(
+        final String id,
+        final String title,
+        final float confidence,
+        final float left,
+        final float top,
+        final float right,
+        final float bottom) {
+      this.id = id;
+      this.title = title;
+      this.confidence = confidence;
+      if (location == null) {
+        location = new RectF();
+      }
+      location.set(left, top, right, bottom);
+    }
+
+    /** Overwrites this recognition with a copy of {@code other}. */
+    public void set(final Recognition other) {
+      id = other.id;
+      title = other.title;
+      confidence = other.confidence;
+      if (other.location == null) {
+        location = null;
+      } else if (location == null) {
+        location = new RectF(other.location);
+      } else {
+        location.set(other.location);
+      }
+    }
+
     public String getId() {
       return id;
     }
@@ -68,7 +145,7 @@ public interface Detector {
       return title;
     }
 
-    public Float getConfidence() {
+    public float getConfidence() {
       return confidence;
     }
 
@@ -76,6 +153,22 @@ public interface Detector {
       return new RectF(location);
     }
 
+    /** Copies the location into {@code out} without allocating; false if there is none. */
+    public boolean getLocation(final RectF out) {
+      if (location == null) {
+        return false;
+      }
+      out.set(location);
+      return true;
+    }
+
+    /** Maps the location in place, e.g. from crop to frame coordinates. */
+    public void mapLocation(final Matrix transform) {
+      if (location != null) {
+        transform.mapRect(location);
+      }
+    }
+
     public void setLocation(RectF location) {
       this.location = location;
     }
@@ -91,9 +184,7 @@ public interface Detector {
         resultString += title + " ";
       }
 
-      if (confidence != null) {
-        resultString += String.format("(%.1f%%) ", confidence * 100.0f);
-      }
+      resultString += String.format("(%.1f%%) ", confidence * 100.0f);
 
       if (location != null) {
         resultString += location + " ";
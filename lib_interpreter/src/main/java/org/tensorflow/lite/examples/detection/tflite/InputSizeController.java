@@ -0,0 +1,111 @@
+package org.tensorflow.lite.examples.detection.tflite;
+
+import java.util.Arrays;
+
+/**
+ * Chooses the detector input resolution from a fixed ladder of sizes so that the rolling p90 of the
+ * measured inference time stays under a latency budget.
+ *
+ * <p>Every size change clears the window, so a new decision is only made once a full window has been
+ * measured at the current size. Stepping up also requires the p90, scaled by the growth in pixel
+ * count, to fit under the budget with some headroom. Together these keep the controller from
+ * oscillating between two neighbouring sizes.
+ */
+public class InputSizeController {
+  // Number of inference times the p90 is computed over.
+  private static final int WINDOW_SIZE = 30;
+  // Only step up if the predicted p90 at the larger size uses at most this fraction of the budget.
+  private static final float STEP_UP_HEADROOM = 0.9f;
+
+  private final int[] sizes;
+  private final long budgetNanos;
+  private final long[] window = new long[WINDOW_SIZE];
+  private final long[] sorted = new long[WINDOW_SIZE];
+  private int windowCount;
+  private int windowNext;
+  private long lastP90Nanos;
+  private volatile int sizeIndex;
+
+  /**
+   * @param sizes input sizes in pixels, largest first. The controller starts at the largest one.
+   * @param budgetMs target p90 inference time in milliseconds.
+   */
+  public InputSizeController(final int[] sizes, final long budgetMs) {
+    if (sizes.length == 0) {
+      throw new IllegalArgumentException("At least one input size is required.");
+    }
+    this.sizes = sizes.clone();
+    this.budgetNanos = budgetMs * 1000000L;
+  }
+
+  /** Returns the index of the size the next frame should be prepared at. */
+  public int getSizeIndex() {
+    return sizeIndex;
+  }
+
+  public int getSize(final int index) {
+    return sizes[index];
+  }
+
+  public int getSizeCount() {
+    return sizes.length;
+  }
+
+  /** Whether this controller chooses from exactly {@code sizes}, in the same order. */
+  public boolean hasSizes(final int[] sizes) {
+    return Arrays.equals(this.sizes, sizes);
+  }
+
+  /** Returns the input size the next frame should be prepared at. */
+  public int getInputSize() {
+    return sizes[sizeIndex];
+  }
+
+  /**
+   * Records the inference time of a frame that was run at {@code size}. Returns the size the next
+   * frame should be prepared at.
+   */
+  public synchronized int record(final int size, final long inferenceNanos) {
+    // Frames prepared before the last change still carry the old size; their timing says nothing
+    // about the current one.
+    if (size != sizes[sizeIndex]) {
+      return sizes[sizeIndex];
+    }
+    window[windowNext] = inferenceNanos;
+    windowNext = (windowNext + 1) % WINDOW_SIZE;
+    if (windowCount < WINDOW_SIZE) {
+      windowCount++;
+    }
+    if (windowCount < WINDOW_SIZE) {
+      return sizes[sizeIndex];
+    }
+
+    System.arraycopy(window, 0, sorted, 0, WINDOW_SIZE);
+    Arrays.sort(sorted);
+    final long p90 = sorted[(int) Math.ceil(0.9 * WINDOW_SIZE) - 1];
+    lastP90Nanos = p90;
+
+    if (p90 > budgetNanos && sizeIndex < sizes.length - 1) {
+      setSizeIndex(sizeIndex + 1);
+    } else if (sizeIndex > 0) {
+      // Inference time grows roughly with the number of input pixels.
+      final float growth = (float) sizes[sizeIndex - 1] / sizes[sizeIndex];
+      if (p90 * growth * growth < budgetNanos * STEP_UP_HEADROOM) {
+        setSizeIndex(sizeIndex - 1);
+      }
+    }
+    return sizes[sizeIndex];
+  }
+
+  public synchronized String getStatString() {
+    return String.format(
+        "input %dpx p90 %.1fms budget %dms",
+        sizes[sizeIndex], lastP90Nanos / 1e6, budgetNanos / 1000000L);
+  }
+
+  private void setSizeIndex(final int index) {
+    sizeIndex = index;
+    windowCount = 0;
+    windowNext = 0;
+  }
+}
@@ -0,0 +1,104 @@
+package org.tensorflow.lite.examples.detection.tflite;
+
+/**
+ * Fixed-bucket latency histogram that does not allocate when recording.
+ *
+ * <p>Buckets are logarithmic: every power of two of microseconds is split into 8 linear
+ * sub-buckets, so a reported percentile is within about 6% of the true value, from 1us up to about
+ * 18 minutes. Count, mean and max are exact.
+ */
+public final class LatencyHistogram {
+  private static final int SUB_BUCKET_BITS = 3;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  // Values at or above 2^(MAX_EXPONENT + 1) us all land in the last bucket.
+  private static final int MAX_EXPONENT = 30;
+  private static final int NUM_BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+  private final long[] counts = new long[NUM_BUCKETS];
+  private long count;
+  private long sumNanos;
+  private long maxNanos;
+
+  public synchronized void record(final long nanos) {
+    final long clamped = Math.max(0, nanos);
+    counts[bucketFor(clamped / 1000)]++;
+    count++;
+    sumNanos += clamped;
+    if (clamped > maxNanos) {
+      maxNanos = clamped;
+    }
+  }
+
+  public synchronized void reset() {
+    for (int i = 0; i < counts.length; ++i) {
+      counts[i] = 0;
+    }
+    count = 0;
+    sumNanos = 0;
+    maxNanos = 0;
+  }
+
+  public synchronized long getCount() {
+    return count;
+  }
+
+  public synchronized long getMeanNanos() {
+    return count == 0 ? 0 : sumNanos / count;
+  }
+
+  public synchronized long getMaxNanos() {
+    return maxNanos;
+  }
+
+  /** Returns the given percentile (0-100) in nanoseconds, or 0 if nothing was recorded. */
+  public synchronized long getPercentileNanos(final double percentile) {
+    if (count == 0) {
+      return 0;
+    }
+    final long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+    long seen = 0;
+    for (int i = 0; i < counts.length; ++i) {
+      seen += counts[i];
+      if (seen >= rank) {
+        // Middle of the bucket, but never above the largest value actually seen.
+        final long midMicros = (bucketLowerMicros(i) + bucketLowerMicros(i + 1)) / 2;
+        return Math.min(midMicros * 1000, maxNanos);
+      }
+    }
+    return maxNanos;
+  }
+
+  /** "n=.. mean=..ms p50=..ms p90=..ms p99=..ms max=..ms" */
+  public synchronized String format() {
+    if (count == 0) {
+      return "n=0";
+    }
+    return String.format(
+        "n=%d mean=%.1fms p50=%.1fms p90=%.1fms p99=%.1fms max=%.1fms",
+        count,
+        getMeanNanos() / 1e6,
+        getPercentileNanos(50) / 1e6,
+        getPercentileNanos(90) / 1e6,
+        getPercentileNanos(99) / 1e6,
+        maxNanos / 1e6);
+  }
+
+  static int bucketFor(final long micros) {
+    if (micros < SUB_BUCKETS) {
+      return (int) micros;
+    }
+    final int exponent = 63 - Long.numberOfLeadingZeros(micros);
+    final int sub = (int) ((micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1));
+    final int index = (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    return Math.min(index, NUM_BUCKETS - 1);
+  }
+
+  static long bucketLowerMicros(final int index) {
+    if (index < SUB_BUCKETS) {
+      return index;
+    }
+    final int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+    final int sub = index % SUB_BUCKETS;
+    return (1L << exponent) + ((long) sub << (exponent - SUB_BUCKET_BITS));
+  }
+}
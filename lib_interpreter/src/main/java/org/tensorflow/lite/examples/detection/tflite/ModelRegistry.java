@@ -0,0 +1,475 @@
+package org.tensorflow.lite.examples.detection.tflite;
+
+import android.content.res.AssetManager;
+import android.os.SystemClock;
+import android.util.Log;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * The set of detection models the app can switch between at runtime.
+ *
+ * <p>Each registered model is memory-mapped once, on first use. Built detectors stay resident in an
+ * LRU bounded by an estimate of their native memory, so switching back to a recently used model is
+ * a map lookup rather than a reload. {@link #prefetch(String)} builds and warms up a model on a
+ * background thread ahead of a likely switch, and {@link #reloadIfChanged()} picks up a newer copy of
+ * a model file kept in app storage.
+ *
+ * <p>Interpreter options set with {@link #setNumThreads(int)} and {@link #setUseNNAPI(boolean)}
+ * hold for every model: they are applied to each detector when it is built, and again when a
+ * resident detector built under older options is acquired.
+ *
+ * <p>The registry closes the detectors it evicts. The last one returned by {@link #acquire(String)}
+ * is never evicted, so {@link #acquire(String)} and {@link #reloadIfChanged()} must be called from
+ * the thread that runs inference, which then always holds a live detector.
+ */
+public final class ModelRegistry {
+  private static final String TAG = "ModelRegistry";
+
+  // TFLite does not expose the size of an interpreter's tensor arena or of weights repacked by its
+  // kernels, so the native footprint is estimated as a multiple of the model file size.
+  private static final int NATIVE_BYTES_PER_MODEL_BYTE = 2;
+  private static final long BYTES_PER_MB = 1024 * 1024;
+
+  /** Where a model comes from and how to build a detector for it. */
+  public static final class ModelSpec {
+    public final String name;
+    // Exactly one of assetName and file is set.
+    final String assetName;
+    final File file;
+    final String labelFilename;
+    final int inputSize;
+    final boolean isQuantized;
+
+    private ModelSpec(
+        final String name,
+        final String assetName,
+        final File file,
+        final String labelFilename,
+        final int inputSize,
+        final boolean isQuantized) {
+      this.name = name;
+      this.assetName = assetName;
+      this.file = file;
+      this.labelFilename = labelFilename;
+      this.inputSize = inputSize;
+      this.isQuantized = isQuantized;
+    }
+
+    /** A model bundled in the APK assets. */
+    public static ModelSpec fromAsset(
+        final String name,
+        final String assetName,
+        final String labelFilename,
+        final int inputSize,
+        final boolean isQuantized) {
+      return new ModelSpec(name, assetName, null, labelFilename, inputSize, isQuantized);
+    }
+
+    /**
+     * A model file in app storage, which can be replaced while the app runs. The input size and
+     * quantization are read from the model.
+     */
+    public static ModelSpec fromFile(final String name, final File file, final String labelFilename) {
+      return new ModelSpec(name, null, file, labelFilename, 0, false);
+    }
+  }
+
+  /** A built detector and what it costs to keep it. */
+  private static final class Resident {
+    final Detector detector;
+    final long bytes;
+    final long warmUpNanos;
+    // Options the detector currently runs with; only changed on the inference thread.
+    int numThreads;
+    boolean useNNAPI;
+
+    Resident(
+        final Detector detector,
+        final long bytes,
+        final long warmUpNanos,
+        final int numThreads,
+        final boolean useNNAPI) {
+      this.detector = detector;
+      this.bytes = bytes;
+      this.warmUpNanos = warmUpNanos;
+      this.numThreads = numThreads;
+      this.useNNAPI = useNNAPI;
+    }
+  }
+
+  private final AssetManager assetManager;
+  private final long budgetBytes;
+  private final int warmUpRuns;
+  private final Map<String, ModelSpec> specs = new LinkedHashMap<>();
+  private final Map<String, MappedByteBuffer> mappedModels = new HashMap<>();
+  // Modification time of each file-backed model when it was mapped.
+  private final Map<String, Long> mappedVersions = new HashMap<>();
+  // In access order, so the first entry is the least recently used.
+  private final LinkedHashMap<String, Resident> residents = new LinkedHashMap<>(16, 0.75f, true);
+  private final Set<String> prefetching = new HashSet<>();
+  private final ExecutorService prefetchExecutor = Executors.newSingleThreadExecutor();
+  private long residentBytes;
+  private String current;
+  // -1 leaves the thread count of the built model alone.
+  private int numThreads = -1;
+  private boolean useNNAPI = false;
+  private boolean closed;
+
+  /**
+   * @param budgetBytes estimated native memory that resident detectors may use; the current one is
+   *     kept even if it alone exceeds the budget.
+   * @param warmUpRuns warm-up inferences run on every detector the registry builds.
+   */
+  public ModelRegistry(
+      final AssetManager assetManager, final long budgetBytes, final int warmUpRuns) {
+    this.assetManager = assetManager;
+    this.budgetBytes = budgetBytes;
+    this.warmUpRuns = warmUpRuns;
+  }
+
+  public synchronized void register(final ModelSpec spec) {
+    specs.put(spec.name, spec);
+  }
+
+  /** Registered model names, in registration order. */
+  public synchronized List<String> getModelNames() {
+    return new ArrayList<>(specs.keySet());
+  }
+
+  /** The model last returned by {@link #acquire(String)}, or null. */
+  public synchronized String getCurrent() {
+    return current;
+  }
+
+  /** Time spent warming up the resident detector for {@code name}, or 0 if it is not resident. */
+  public synchronized long getWarmUpNanos(final String name) {
+    final Resident resident = residents.get(name);
+    return resident != null ? resident.warmUpNanos : 0;
+  }
+
+  /**
+   * Sets the interpreter thread count of every model, starting with the current one. Must be called
+   * from the inference thread.
+   */
+  public void setNumThreads(final int numThreads) {
+    final Resident resident;
+    synchronized (this) {
+      this.numThreads = numThreads;
+      resident = current != null ? residents.get(current) : null;
+    }
+    if (resident != null) {
+      applyOptions(resident);
+    }
+  }
+
+  /**
+   * Turns NNAPI on or off for every model, starting with the current one. Must be called from the
+   * inference thread.
+   */
+  public void setUseNNAPI(final boolean useNNAPI) {
+    final Resident resident;
+    synchronized (this) {
+      this.useNNAPI = useNNAPI;
+      resident = current != null ? residents.get(current) : null;
+    }
+    if (resident != null) {
+      applyOptions(resident);
+    }
+  }
+
+  /**
+   * Returns the detector for {@code name}, building it if it is not resident, and makes it the
+   * current one. Must be called from the inference thread.
+   */
+  public Detector acquire(final String name) throws IOException {
+    Resident resident;
+    synchronized (this) {
+      resident = residents.get(name);
+      if (resident != null) {
+        current = name;
+      }
+    }
+    if (resident == null) {
+      final Resident built = build(name);
+      synchronized (this) {
+        if (closed) {
+          built.detector.close();
+          throw new IOException("Model registry is closed");
+        }
+        // A prefetch of the same model may have finished while this one was being built.
+        resident = residents.get(name);
+        if (resident != null) {
+          built.detector.close();
+        } else {
+          resident = built;
+          evictToFit(built.bytes);
+          insert(name, built);
+        }
+        current = name;
+      }
+    }
+    // The options may have changed since the detector was built.
+    applyOptions(resident);
+    return resident.detector;
+  }
+
+  /**
+   * Builds and warms up the detector for {@code name} on a background thread, if it is not resident
+   * yet. The result is kept only if it fits in the budget next to the current detector.
+   */
+  public synchronized void prefetch(final String name) {
+    if (!specs.containsKey(name) || residents.containsKey(name) || !prefetching.add(name)) {
+      return;
+    }
+    prefetchExecutor.execute(
+        () -> {
+          Resident built = null;
+          try {
+            built = build(name);
+          } catch (final IOException | RuntimeException e) {
+            Log.w(TAG, "Could not prefetch model " + name, e);
+          }
+          synchronized (ModelRegistry.this) {
+            prefetching.remove(name);
+            if (built == null) {
+              return;
+            }
+            // close() does not stop a build that is already running.
+            if (closed || residents.containsKey(name) || !evictToFit(built.bytes)) {
+              built.detector.close();
+              return;
+            }
+            insert(name, built);
+          }
+        });
+  }
+
+  /**
+   * Checks whether any model file in app storage changed since it was mapped. Changed models other
+   * than the current one are unmapped and evicted. If the current one changed, it is rebuilt from
+   * the new file; only once that succeeds does the new detector replace the old one, which is then
+   * closed, and the new detector is returned. Returns null when the current detector stays, which
+   * includes a file that is missing or still being replaced: those are checked again next time.
+   * Must be called from the inference thread.
+   */
+  public Detector reloadIfChanged() {
+    final ModelSpec changedCurrent;
+    synchronized (this) {
+      ModelSpec currentSpec = null;
+      for (final Iterator<Map.Entry<String, Long>> it = mappedVersions.entrySet().iterator();
+          it.hasNext(); ) {
+        final Map.Entry<String, Long> entry = it.next();
+        final String name = entry.getKey();
+        final File file = specs.get(name).file;
+        final long modified = file.lastModified();
+        // 0 means the file is gone, e.g. between the delete and the rename of a replacement.
+        if (modified == 0 || modified == entry.getValue() || !file.canRead()) {
+          continue;
+        }
+        Log.i(TAG, "Model file changed: " + name);
+        if (name.equals(current)) {
+          currentSpec = specs.get(name);
+          continue;
+        }
+        it.remove();
+        mappedModels.remove(name);
+        final Resident resident = residents.remove(name);
+        if (resident != null) {
+          residentBytes -= resident.bytes;
+          resident.detector.close();
+        }
+      }
+      changedCurrent = currentSpec;
+    }
+    if (changedCurrent == null) {
+      return null;
+    }
+
+    final String name = changedCurrent.name;
+    final long version = changedCurrent.file.lastModified();
+    final Resident built;
+    try {
+      final MappedByteBuffer modelFile = mapFile(changedCurrent.file);
+      built = build(changedCurrent, modelFile);
+      synchronized (this) {
+        mappedModels.put(name, modelFile);
+        mappedVersions.put(name, version);
+      }
+    } catch (final IOException | RuntimeException e) {
+      Log.w(TAG, "Could not reload model " + name + ", keeping the loaded one", e);
+      return null;
+    }
+    final Resident stale;
+    synchronized (this) {
+      if (closed) {
+        built.detector.close();
+        return null;
+      }
+      stale = residents.remove(name);
+      if (stale != null) {
+        residentBytes -= stale.bytes;
+      }
+      current = name;
+      evictToFit(built.bytes);
+      insert(name, built);
+    }
+    if (stale != null) {
+      stale.detector.close();
+    }
+    return built.detector;
+  }
+
+  /** Resident models, most recently used last, and their estimated memory against the budget. */
+  public synchronized String getStatString() {
+    final StringBuilder builder = new StringBuilder();
+    for (final String name : residents.keySet()) {
+      builder.append(builder.length() == 0 ? "resident: " : ", ").append(name);
+    }
+    if (!prefetching.isEmpty()) {
+      builder.append(builder.length() == 0 ? "" : "\n").append("prefetching: ").append(prefetching);
+    }
+    return builder
+        .append(builder.length() == 0 ? "" : "\n")
+        .append(
+            String.format(
+                "memory %d/%dMB", residentBytes / BYTES_PER_MB, budgetBytes / BYTES_PER_MB))
+        .toString();
+  }
+
+  /** Closes every resident detector. The registry must not be used afterwards. */
+  public synchronized void close() {
+    closed = true;
+    prefetchExecutor.shutdownNow();
+    for (final Resident resident : residents.values()) {
+      resident.detector.close();
+    }
+    residents.clear();
+    residentBytes = 0;
+  }
+
+  private Resident build(final String name) throws IOException {
+    final ModelSpec spec;
+    synchronized (this) {
+      spec = specs.get(name);
+    }
+    if (spec == null) {
+      throw new IOException("Unknown model " + name);
+    }
+    return build(spec, map(spec));
+  }
+
+  private Resident build(final ModelSpec spec, final MappedByteBuffer modelFile)
+      throws IOException {
+    final String name = spec.name;
+    final int threads;
+    final boolean nnapi;
+    synchronized (this) {
+      threads = numThreads;
+      nnapi = useNNAPI;
+    }
+    final long startTime = SystemClock.elapsedRealtimeNanos();
+    final Detector detector =
+        TFLiteObjectDetectionAPIModel.create(
+            modelFile, spec.labelFilename, spec.inputSize, spec.isQuantized);
+    // Before the warm-up, so that it runs on the interpreter that will be used.
+    if (threads > 0) {
+      detector.setNumThreads(threads);
+    }
+    if (nnapi) {
+      detector.setUseNNAPI(true);
+    }
+    final long warmUpNanos = detector.warmUp(warmUpRuns);
+    Log.i(
+        TAG,
+        String.format(
+            "Built %s in %.1fms (warm-up %.1fms)",
+            name,
+            (SystemClock.elapsedRealtimeNanos() - startTime) / 1e6,
+            warmUpNanos / 1e6));
+    return new Resident(
+        detector,
+        (long) modelFile.capacity() * NATIVE_BYTES_PER_MODEL_BYTE,
+        warmUpNanos,
+        threads,
+        nnapi);
+  }
+
+  /** Brings a detector up to the current options. Runs on the inference thread. */
+  private void applyOptions(final Resident resident) {
+    final int threads;
+    final boolean nnapi;
+    synchronized (this) {
+      threads = numThreads;
+      nnapi = useNNAPI;
+    }
+    if (threads > 0 && threads != resident.numThreads) {
+      resident.detector.setNumThreads(threads);
+      resident.numThreads = threads;
+    }
+    if (nnapi != resident.useNNAPI) {
+      resident.detector.setUseNNAPI(nnapi);
+      resident.useNNAPI = nnapi;
+    }
+  }
+
+  /** Maps the model file on first use; later builds share the mapping. */
+  private synchronized MappedByteBuffer map(final ModelSpec spec) throws IOException {
+    MappedByteBuffer modelFile = mappedModels.get(spec.name);
+    if (modelFile != null) {
+      return modelFile;
+    }
+    if (spec.file != null) {
+      final long version = spec.file.lastModified();
+      modelFile = mapFile(spec.file);
+      mappedVersions.put(spec.name, version);
+    } else {
+      modelFile = TFLiteObjectDetectionAPIModel.loadModelFile(assetManager, spec.assetName);
+    }
+    mappedModels.put(spec.name, modelFile);
+    return modelFile;
+  }
+
+  private static MappedByteBuffer mapFile(final File file) throws IOException {
+    try (FileInputStream inputStream = new FileInputStream(file)) {
+      return inputStream.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+    }
+  }
+
+  /**
+   * Evicts least recently used detectors, never the current one, until {@code bytes} more fit in the
+   * budget. Returns whether they fit.
+   */
+  private boolean evictToFit(final long bytes) {
+    final Iterator<Map.Entry<String, Resident>> it = residents.entrySet().iterator();
+    while (residentBytes + bytes > budgetBytes && it.hasNext()) {
+      final Map.Entry<String, Resident> entry = it.next();
+      if (entry.getKey().equals(current)) {
+        continue;
+      }
+      Log.i(TAG, "Evicting model " + entry.getKey());
+      it.remove();
+      residentBytes -= entry.getValue().bytes;
+      entry.getValue().detector.close();
+    }
+    return residentBytes + bytes <= budgetBytes;
+  }
+
+  private void insert(final String name, final Resident resident) {
+    residents.put(name, resident);
+    residentBytes += resident.bytes;
+  }
+}
@@ -0,0 +1,65 @@
+package org.tensorflow.lite.examples.detection.tflite;
+
+import android.graphics.RectF;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.tensorflow.lite.examples.detection.tflite.Detector.Recognition;
+import org.tensorflow.lite.examples.detection.vision.Boxes;
+import org.tensorflow.lite.examples.detection.vision.Nms;
+
+/**
+ * Greedy per-class non-maximum suppression for merging detections from overlapping inputs. Adapts
+ * lists of recognitions to the packed-array implementation in {@link Nms}.
+ */
+public final class NonMaxSuppression {
+  private NonMaxSuppression() {}
+
+  /**
+   * Keeps the most confident detection of each group of same-class detections that overlap.
+   *
+   * <p>Two boxes overlap if their intersection-over-union exceeds {@code iouThreshold}, or if the
+   * intersection covers more than {@code containmentThreshold} of the smaller box. The second test
+   * catches an object cut by a tile seam, whose partial box has a low IoU with the full one.
+   */
+  public static List<Recognition> apply(
+      final List<Recognition> detections,
+      final float iouThreshold,
+      final float containmentThreshold) {
+    final int count = detections.size();
+    final float[] boxes = new float[4 * count];
+    final float[] scores = new float[count];
+    final int[] classes = new int[count];
+    final Map<String, Integer> classIds = new HashMap<>();
+    for (int i = 0; i < count; ++i) {
+      final Recognition detection = detections.get(i);
+      final RectF box = detection.getLocation();
+      Boxes.set(boxes, i, box.left, box.top, box.right, box.bottom);
+      scores[i] = detection.getConfidence();
+      Integer classId = classIds.get(detection.getTitle());
+      if (classId == null) {
+        classId = classIds.size();
+        classIds.put(detection.getTitle(), classId);
+      }
+      classes[i] = classId;
+    }
+
+    final int[] kept = new int[count];
+    final int keptCount =
+        Nms.suppress(
+            boxes,
+            scores,
+            classes,
+            count,
+            iouThreshold,
+            containmentThreshold,
+            new int[count],
+            kept);
+    final List<Recognition> result = new ArrayList<>(keptCount);
+    for (int i = 0; i < keptCount; ++i) {
+      result.add(detections.get(kept[i]));
+    }
+    return result;
+  }
+}
@@ -0,0 +1,92 @@
+package org.tensorflow.lite.examples.detection.tflite;
+
+import android.graphics.Bitmap;
+import android.graphics.RectF;
+import android.os.SystemClock;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Deterministic detector for reproducible pipeline measurements, in place of a TFLite model.
+ *
+ * <p>The input is divided into a {@code GRID_SIZE} x {@code GRID_SIZE} grid, and every cell whose
+ * center pixel is brighter than {@code BRIGHTNESS_THRESHOLD} is reported as an object with the
+ * brightness as its confidence. The same frame therefore always gives the same results, whichever
+ * frames before it were dropped, and bright objects moving through a recording give moving boxes
+ * for the tracker. Each call then busy-waits until the configured latency has passed, standing in
+ * for the CPU time of a real model.
+ */
+public class StandInDetector implements Detector {
+  private static final int GRID_SIZE = 4;
+  private static final int BRIGHTNESS_THRESHOLD = 160;
+  private static final String TITLE = "object";
+
+  private final long latencyNanos;
+  private final LatencyHistogram totalHistogram = new LatencyHistogram();
+  private boolean logStats = false;
+
+  /** @param latencyMs simulated inference time per frame; 0 returns as soon as possible. */
+  public StandInDetector(final long latencyMs) {
+    this.latencyNanos = latencyMs * 1000000;
+  }
+
+  @Override
+  public List<Recognition> recognizeImage(final Bitmap bitmap) {
+    final long startTime = SystemClock.elapsedRealtimeNanos();
+    final List<Recognition> recognitions = new ArrayList<>();
+    final float cellWidth = bitmap.getWidth() / (float) GRID_SIZE;
+    final float cellHeight = bitmap.getHeight() / (float) GRID_SIZE;
+    for (int row = 0; row < GRID_SIZE; ++row) {
+      for (int col = 0; col < GRID_SIZE; ++col) {
+        final int pixel =
+            bitmap.getPixel((int) ((col + 0.5f) * cellWidth), (int) ((row + 0.5f) * cellHeight));
+        final int brightness =
+            (((pixel >> 16) & 0xFF) + ((pixel >> 8) & 0xFF) + (pixel & 0xFF)) / 3;
+        if (brightness > BRIGHTNESS_THRESHOLD) {
+          recognitions.add(
+              new Recognition(
+                  "" + recognitions.size(),
+                  TITLE,
+                  brightness / 255f,
+                  new RectF(
+                      col * cellWidth,
+                      row * cellHeight,
+                      (col + 1) * cellWidth,
+                      (row + 1) * cellHeight)));
+        }
+      }
+    }
+    while (SystemClock.elapsedRealtimeNanos() - startTime < latencyNanos) {
+      // Busy-wait rather than sleep, so the inference thread keeps a core busy like a model.
+    }
+    if (logStats) {
+      totalHistogram.record(SystemClock.elapsedRealtimeNanos() - startTime);
+    }
+    return recognitions;
+  }
+
+  @Override
+  public void enableStatLogging(final boolean logStats) {
+    this.logStats = logStats;
+  }
+
+  @Override
+  public String getStatString() {
+    return String.format(
+        "stand-in detector (%dms)\ntotal: %s", latencyNanos / 1000000, totalHistogram.format());
+  }
+
+  @Override
+  public void close() {}
+
+  @Override
+  public void setNumThreads(final int numThreads) {}
+
+  @Override
+  public void setUseNNAPI(final boolean isChecked) {}
+
+  @Override
+  public long warmUp(final int runs) {
+    return 0;
+  }
+}
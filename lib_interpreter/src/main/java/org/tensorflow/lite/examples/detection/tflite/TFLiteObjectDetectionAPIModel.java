@@ -15,14 +15,11 @@ limitations under the License.
 
 package org.tensorflow.lite.examples.detection.tflite;
 
-import static java.lang.Math.min;
-
 import android.content.res.AssetFileDescriptor;
 import android.content.res.AssetManager;
 import android.graphics.Bitmap;
-import android.graphics.RectF;
+import android.os.SystemClock;
 import android.os.Trace;
-import android.util.Log;
 import java.io.BufferedReader;
 import java.io.FileInputStream;
 import java.io.IOException;
@@ -33,10 +30,16 @@ import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import org.tensorflow.lite.DataType;
 import org.tensorflow.lite.Interpreter;
+import org.tensorflow.lite.Tensor;
+import org.tensorflow.lite.examples.detection.vision.Preprocess;
+import org.tensorflow.lite.examples.detection.vision.RecyclingList;
+import org.tensorflow.lite.examples.detection.vision.SsdDecoder;
 import org.tensorflow.lite.support.metadata.MetadataExtractor;
 
 /**
@@ -51,10 +54,18 @@ import org.tensorflow.lite.support.metadata.MetadataExtractor;
  * https://github.com/tensorflow/models/blob/master/research/object_detection/g3doc/running_on_mobile_tensorflowlite.md#running-our-model-on-android
  */
 public class TFLiteObjectDetectionAPIModel implements Detector {
-  private static final String TAG = "TFLiteObjectDetectionAPIModel";
 
   // Only return this many results.
   private static final int NUM_DETECTIONS = 10;
+  // Recognition ids, built once rather than per detection per frame.
+  private static final String[] DETECTION_IDS = new String[NUM_DETECTIONS];
+
+  static {
+    for (int i = 0; i < NUM_DETECTIONS; ++i) {
+      DETECTION_IDS[i] = Integer.toString(i);
+    }
+  }
+
   // Float model
   private static final float IMAGE_MEAN = 127.5f;
   private static final float IMAGE_STD = 127.5f;
@@ -63,6 +74,9 @@ public class TFLiteObjectDetectionAPIModel implements Detector {
   private boolean isModelQuantized;
   // Config values.
   private int inputSize;
+  // Input size the model was built with; the current inputSize differs after resizeInput().
+  private int defaultInputSize;
+  private boolean isInputResizable;
   // Pre-allocated buffers.
   private final List<String> labels = new ArrayList<>();
   private int[] intValues;
@@ -78,17 +92,35 @@ public class TFLiteObjectDetectionAPIModel implements Detector {
   // numDetections: array of shape [Batchsize]
   // contains the number of detected boxes
   private float[] numDetections;
+  // Detections unpacked from the outputs above, before they are copied into Recognitions.
+  private final float[] decodedBoxes = new float[4 * NUM_DETECTIONS];
+  private final float[] decodedScores = new float[NUM_DETECTIONS];
+  private final int[] decodedClasses = new int[NUM_DETECTIONS];
 
   private ByteBuffer imgData;
+  // Interpreter arguments, filled once so that each frame reuses them.
+  private final Object[] inputArray = new Object[1];
+  private final Map<Integer, Object> outputMap = new HashMap<>();
 
   private MappedByteBuffer tfLiteModel;
   private Interpreter.Options tfLiteOptions;
   private Interpreter tfLite;
 
+  // Per-stage timings, recorded only while stat logging is enabled.
+  private volatile boolean logStats = false;
+  private final LatencyHistogram preprocessHistogram = new LatencyHistogram();
+  private final LatencyHistogram runHistogram = new LatencyHistogram();
+  private final LatencyHistogram postprocessHistogram = new LatencyHistogram();
+  private final LatencyHistogram totalHistogram = new LatencyHistogram();
+  // Warm-up runs requested by the last warmUp() call, repeated after recreateInterpreter(). Kept
+  // out of the histograms above so that they only describe steady state.
+  private int warmUpRuns;
+  private long warmUpNanos;
+
   private TFLiteObjectDetectionAPIModel() {}
 
   /** Memory-map the model file in Assets. */
-  private static MappedByteBuffer loadModelFile(AssetManager assets, String modelFilename)
+  static MappedByteBuffer loadModelFile(AssetManager assets, String modelFilename)
       throws IOException {
     AssetFileDescriptor fileDescriptor = assets.openFd(modelFilename);
     FileInputStream inputStream = new FileInputStream(fileDescriptor.getFileDescriptor());
@@ -114,9 +146,27 @@ public class TFLiteObjectDetectionAPIModel implements Detector {
       final int inputSize,
       final boolean isQuantized)
       throws IOException {
+    return create(loadModelFile(assetManager, modelFilename), labelFilename, inputSize, isQuantized);
+  }
+
+  /**
+   * Initializes a native TensorFlow session from a model that is already memory-mapped, such as one
+   * shared through {@link ModelRegistry}.
+   *
+   * @param modelFile The memory-mapped model, with the label file in its metadata.
+   * @param labelFilename The filepath of label file for classes.
+   * @param inputSize The size of image input, or 0 to read it and the quantization from the model's
+   *     input tensor.
+   * @param isQuantized Boolean representing model is quantized or not; ignored if inputSize is 0.
+   */
+  public static Detector create(
+      final MappedByteBuffer modelFile,
+      final String labelFilename,
+      final int inputSize,
+      final boolean isQuantized)
+      throws IOException {
     final TFLiteObjectDetectionAPIModel d = new TFLiteObjectDetectionAPIModel();
 
-    MappedByteBuffer modelFile = loadModelFile(assetManager, modelFilename);
     MetadataExtractor metadata = new MetadataExtractor(modelFile);
     try (BufferedReader br =
         new BufferedReader(
@@ -124,13 +174,10 @@ public class TFLiteObjectDetectionAPIModel implements Detector {
                 metadata.getAssociatedFile(labelFilename), Charset.defaultCharset()))) {
       String line;
       while ((line = br.readLine()) != null) {
-        Log.w(TAG, line);
         d.labels.add(line);
       }
     }
 
-    d.inputSize = inputSize;
-
     try {
       Interpreter.Options options = new Interpreter.Options();
       options.setNumThreads(NUM_THREADS);
@@ -141,108 +188,215 @@ public class TFLiteObjectDetectionAPIModel implements Detector {
       throw new RuntimeException(e);
     }
 
-    d.isModelQuantized = isQuantized;
-    // Pre-allocate buffers.
-    int numBytesPerChannel;
-    if (isQuantized) {
-      numBytesPerChannel = 1; // Quantized
+    final Tensor inputTensor = d.tfLite.getInputTensor(0);
+    if (inputSize > 0) {
+      d.inputSize = inputSize;
+      d.isModelQuantized = isQuantized;
     } else {
-      numBytesPerChannel = 4; // Floating point
+      // Input shape is [1, height, width, 3].
+      d.inputSize = inputTensor.shape()[1];
+      d.isModelQuantized = inputTensor.dataType() == DataType.UINT8;
     }
-    d.imgData = ByteBuffer.allocateDirect(1 * d.inputSize * d.inputSize * 3 * numBytesPerChannel);
-    d.imgData.order(ByteOrder.nativeOrder());
-    d.intValues = new int[d.inputSize * d.inputSize];
+    d.defaultInputSize = d.inputSize;
+    d.isInputResizable = hasDynamicSpatialDims(inputTensor);
+    // Pre-allocate buffers.
+    d.allocateInputBuffers();
 
     d.outputLocations = new float[1][NUM_DETECTIONS][4];
     d.outputClasses = new float[1][NUM_DETECTIONS];
     d.outputScores = new float[1][NUM_DETECTIONS];
     d.numDetections = new float[1];
+    d.outputMap.put(0, d.outputLocations);
+    d.outputMap.put(1, d.outputClasses);
+    d.outputMap.put(2, d.outputScores);
+    d.outputMap.put(3, d.numDetections);
     return d;
   }
 
+  /**
+   * Returns true if the model declares its input height and width as dynamic (-1 in the shape
+   * signature), so that {@link #resizeInput(int)} can be used.
+   */
+  private static boolean hasDynamicSpatialDims(final Tensor inputTensor) {
+    final int[] signature = inputTensor != null ? inputTensor.shapeSignature() : null;
+    return signature != null && signature.length == 4 && signature[1] == -1 && signature[2] == -1;
+  }
+
+  private void allocateInputBuffers() {
+    int numBytesPerChannel;
+    if (isModelQuantized) {
+      numBytesPerChannel = 1; // Quantized
+    } else {
+      numBytesPerChannel = 4; // Floating point
+    }
+    imgData = ByteBuffer.allocateDirect(1 * inputSize * inputSize * 3 * numBytesPerChannel);
+    imgData.order(ByteOrder.nativeOrder());
+    inputArray[0] = imgData;
+    intValues = new int[inputSize * inputSize];
+  }
+
+  /** Whether the model accepts input sizes other than the one it was created with. */
+  public boolean isInputResizable() {
+    return isInputResizable;
+  }
+
+  public int getInputSize() {
+    return inputSize;
+  }
+
+  /** The model's labels, indexed by class id. Recognition titles are taken from this list. */
+  public List<String> getLabels() {
+    return Collections.unmodifiableList(labels);
+  }
+
+  /**
+   * Resizes the interpreter input to {@code size} x {@code size}. Only valid for models with dynamic
+   * spatial dimensions; see {@link #isInputResizable()}.
+   */
+  public void resizeInput(final int size) {
+    if (size == inputSize) {
+      return;
+    }
+    if (!isInputResizable) {
+      throw new IllegalStateException(
+          "Model input is fixed at " + defaultInputSize + "px and cannot be resized to " + size);
+    }
+    inputSize = size;
+    applyInputSize();
+    allocateInputBuffers();
+  }
+
+  private void applyInputSize() {
+    if (inputSize != defaultInputSize) {
+      tfLite.resizeInput(0, new int[] {1, inputSize, inputSize, 3});
+      tfLite.allocateTensors();
+    }
+  }
+
   @Override
   public List<Recognition> recognizeImage(final Bitmap bitmap) {
+    final RecyclingList<Recognition> results = new RecyclingList<>(Recognition::new);
+    recognizeImage(bitmap, results);
+    return results;
+  }
+
+  @Override
+  public boolean recognizeImage(final Bitmap bitmap, final RecyclingList<Recognition> results) {
     // Log this method so that it can be analyzed with systrace.
     Trace.beginSection("recognizeImage");
+    final boolean timed = logStats;
+    final long startTime = timed ? SystemClock.elapsedRealtimeNanos() : 0;
+
+    // Follow the size of the incoming bitmap when the model allows it.
+    if (bitmap.getWidth() != inputSize && isInputResizable) {
+      resizeInput(bitmap.getWidth());
+    }
 
     Trace.beginSection("preprocessBitmap");
+    TraceRecorder.beginSection(TraceRecorder.STAGE_PREPROCESS);
     // Preprocess the image data from 0-255 int to normalized float based
     // on the provided parameters.
     bitmap.getPixels(intValues, 0, bitmap.getWidth(), 0, 0, bitmap.getWidth(), bitmap.getHeight());
 
     imgData.rewind();
-    for (int i = 0; i < inputSize; ++i) {
-      for (int j = 0; j < inputSize; ++j) {
-        int pixelValue = intValues[i * inputSize + j];
-        if (isModelQuantized) {
-          // Quantized model
-          imgData.put((byte) ((pixelValue >> 16) & 0xFF));
-          imgData.put((byte) ((pixelValue >> 8) & 0xFF));
-          imgData.put((byte) (pixelValue & 0xFF));
-        } else { // Float model
-          imgData.putFloat((((pixelValue >> 16) & 0xFF) - IMAGE_MEAN) / IMAGE_STD);
-          imgData.putFloat((((pixelValue >> 8) & 0xFF) - IMAGE_MEAN) / IMAGE_STD);
-          imgData.putFloat(((pixelValue & 0xFF) - IMAGE_MEAN) / IMAGE_STD);
-        }
-      }
+    if (isModelQuantized) {
+      Preprocess.packQuantized(intValues, inputSize * inputSize, imgData);
+    } else {
+      Preprocess.packFloat(intValues, inputSize * inputSize, IMAGE_MEAN, IMAGE_STD, imgData);
     }
+    TraceRecorder.endSection();
     Trace.endSection(); // preprocessBitmap
+    final long preprocessEnd = timed ? SystemClock.elapsedRealtimeNanos() : 0;
 
-    // Copy the input data into TensorFlow.
-    Trace.beginSection("feed");
-    outputLocations = new float[1][NUM_DETECTIONS][4];
-    outputClasses = new float[1][NUM_DETECTIONS];
-    outputScores = new float[1][NUM_DETECTIONS];
-    numDetections = new float[1];
-
-    Object[] inputArray = {imgData};
-    Map<Integer, Object> outputMap = new HashMap<>();
-    outputMap.put(0, outputLocations);
-    outputMap.put(1, outputClasses);
-    outputMap.put(2, outputScores);
-    outputMap.put(3, numDetections);
-    Trace.endSection();
-
-    // Run the inference call.
+    // Run the inference call. The input and output arrays are bound once, when the buffers are
+    // allocated, so there is no separate feed step; the outputs are copied out below before the
+    // next call can overwrite them.
     Trace.beginSection("run");
+    TraceRecorder.beginSection(TraceRecorder.STAGE_RUN);
     tfLite.runForMultipleInputsOutputs(inputArray, outputMap);
+    TraceRecorder.endSection();
     Trace.endSection();
-
-    // Show the best detections.
-    // after scaling them back to the input size.
-    // You need to use the number of detections from the output and not the NUM_DETECTONS variable
-    // declared on top
-    // because on some models, they don't always output the same total number of detections
-    // For example, your model's NUM_DETECTIONS = 20, but sometimes it only outputs 16 predictions
-    // If you don't use the output's numDetections, you'll get nonsensical data
-    int numDetectionsOutput =
-        min(
-            NUM_DETECTIONS,
-            (int) numDetections[0]); // cast from float to integer, use min for safety
-
-    final ArrayList<Recognition> recognitions = new ArrayList<>(numDetectionsOutput);
-    for (int i = 0; i < numDetectionsOutput; ++i) {
-      final RectF detection =
-          new RectF(
-              outputLocations[0][i][1] * inputSize,
-              outputLocations[0][i][0] * inputSize,
-              outputLocations[0][i][3] * inputSize,
-              outputLocations[0][i][2] * inputSize);
-
-      recognitions.add(
-          new Recognition(
-              "" + i, labels.get((int) outputClasses[0][i]), outputScores[0][i], detection));
+    final long runEnd = timed ? SystemClock.elapsedRealtimeNanos() : 0;
+
+    TraceRecorder.beginSection(TraceRecorder.STAGE_POSTPROCESS);
+    // Show the best detections, after scaling them back to the input size. The decoder only reads
+    // as many rows as the model reports in numDetections; the rest hold nonsensical data.
+    final int count =
+        SsdDecoder.decode(
+            outputLocations,
+            outputClasses,
+            outputScores,
+            numDetections,
+            inputSize,
+            decodedBoxes,
+            decodedScores,
+            decodedClasses);
+    results.clear();
+    for (int i = 0; i < count; ++i) {
+      results
+          .add()
+          .set(
+              DETECTION_IDS[i],
+              labels.get(decodedClasses[i]),
+              decodedScores[i],
+              decodedBoxes[4 * i],
+              decodedBoxes[4 * i + 1],
+              decodedBoxes[4 * i + 2],
+              decodedBoxes[4 * i + 3]);
     }
+    TraceRecorder.endSection();
     Trace.endSection(); // "recognizeImage"
-    return recognitions;
+    if (timed) {
+      final long endTime = SystemClock.elapsedRealtimeNanos();
+      preprocessHistogram.record(preprocessEnd - startTime);
+      runHistogram.record(runEnd - preprocessEnd);
+      postprocessHistogram.record(endTime - runEnd);
+      totalHistogram.record(endTime - startTime);
+    }
+    return true;
   }
 
   @Override
-  public void enableStatLogging(final boolean logStats) {}
+  public long warmUp(final int runs) {
+    warmUpRuns = runs;
+    if (tfLite == null || runs <= 0) {
+      return 0;
+    }
+    final long startTime = SystemClock.elapsedRealtimeNanos();
+    // Mid-grey image: 128 in a quantized input, 0.0f once normalized in a float input.
+    imgData.rewind();
+    final byte fill = isModelQuantized ? (byte) 128 : 0;
+    while (imgData.hasRemaining()) {
+      imgData.put(fill);
+    }
+    for (int i = 0; i < runs; ++i) {
+      tfLite.runForMultipleInputsOutputs(inputArray, outputMap);
+    }
+    warmUpNanos = SystemClock.elapsedRealtimeNanos() - startTime;
+    return warmUpNanos;
+  }
+
+  @Override
+  public void enableStatLogging(final boolean logStats) {
+    this.logStats = logStats;
+  }
 
   @Override
   public String getStatString() {
-    return "";
+    if (!logStats) {
+      return "";
+    }
+    return "preprocess: "
+        + preprocessHistogram.format()
+        + "\nrun: "
+        + runHistogram.format()
+        + "\npostprocess: "
+        + postprocessHistogram.format()
+        + "\ntotal: "
+        + totalHistogram.format()
+        + (warmUpRuns > 0
+            ? String.format("\nwarm-up: %.1fms (%d runs)", warmUpNanos / 1e6, warmUpRuns)
+            : "");
   }
 
   @Override
@@ -272,5 +426,7 @@ public class TFLiteObjectDetectionAPIModel implements Detector {
   private void recreateInterpreter() {
     tfLite.close();
     tfLite = new Interpreter(tfLiteModel, tfLiteOptions);
+    applyInputSize();
+    warmUp(warmUpRuns);
   }
 }
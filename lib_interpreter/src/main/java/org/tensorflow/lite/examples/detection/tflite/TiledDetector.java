@@ -0,0 +1,272 @@
+package org.tensorflow.lite.examples.detection.tflite;
+
+import android.content.res.AssetManager;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Matrix;
+import android.graphics.RectF;
+import android.os.SystemClock;
+import android.os.Trace;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Runs a fixed-size detector over overlapping tiles of a full-resolution frame, so that small
+ * objects are not lost when the whole frame is squashed into the model input.
+ *
+ * <p>Tiles are run in parallel on a fork-join pool. Each tile borrows one interpreter from a pool of
+ * {@code numInterpreters} detectors, since a single interpreter is not thread-safe. One extra task
+ * runs the whole frame scaled down to the model input, so that objects larger than a tile are still
+ * found. Boxes are translated back to frame coordinates and duplicates across tile seams are merged
+ * with {@link NonMaxSuppression}.
+ */
+public class TiledDetector implements Detector {
+  // Minimum overlap between neighbouring tiles, in frame pixels.
+  private static final int MIN_TILE_OVERLAP = 48;
+  private static final float NMS_IOU_THRESHOLD = 0.5f;
+  private static final float NMS_CONTAINMENT_THRESHOLD = 0.7f;
+
+  private final int tileSize;
+  private final ArrayBlockingQueue<Detector> interpreters;
+  private final List<Detector> allInterpreters = new ArrayList<>();
+  private final ForkJoinPool forkJoinPool;
+
+  // Layout for the current frame size; rebuilt when the frame size changes.
+  private int frameWidth;
+  private int frameHeight;
+  private final List<TileTask> tasks = new ArrayList<>();
+
+  // Latency of the last call, per task (tiles first, then the full-frame pass) and in total.
+  private long[] taskNanos = new long[0];
+  private long totalNanos;
+
+  private TiledDetector(final int tileSize, final int numInterpreters) {
+    this.tileSize = tileSize;
+    this.interpreters = new ArrayBlockingQueue<>(numInterpreters);
+    this.forkJoinPool = new ForkJoinPool(numInterpreters);
+  }
+
+  /**
+   * Creates a tiled detector backed by {@code numInterpreters} copies of the given model.
+   *
+   * @param inputSize the model input size, which is also the tile size in frame pixels.
+   * @param numInterpreters how many tiles can run at the same time.
+   */
+  public static TiledDetector create(
+      final AssetManager assetManager,
+      final String modelFilename,
+      final String labelFilename,
+      final int inputSize,
+      final boolean isQuantized,
+      final int numInterpreters)
+      throws IOException {
+    final TiledDetector d = new TiledDetector(inputSize, numInterpreters);
+    for (int i = 0; i < numInterpreters; ++i) {
+      final Detector detector =
+          TFLiteObjectDetectionAPIModel.create(
+              assetManager, modelFilename, labelFilename, inputSize, isQuantized);
+      d.interpreters.add(detector);
+      d.allInterpreters.add(detector);
+    }
+    return d;
+  }
+
+  /**
+   * Detects objects in an upright, full-resolution frame. Locations are returned in the coordinates
+   * of {@code bitmap}.
+   */
+  @Override
+  public synchronized List<Recognition> recognizeImage(final Bitmap bitmap) {
+    Trace.beginSection("recognizeImageTiled");
+    final long startTime = SystemClock.elapsedRealtimeNanos();
+    if (bitmap.getWidth() != frameWidth || bitmap.getHeight() != frameHeight) {
+      layoutTiles(bitmap.getWidth(), bitmap.getHeight());
+    }
+
+    final long frameId = TraceRecorder.getCurrentFrame();
+    for (final TileTask task : tasks) {
+      task.reinitialize();
+      task.source = bitmap;
+      task.frameId = frameId;
+    }
+    forkJoinPool.invoke(
+        new RecursiveAction() {
+          @Override
+          protected void compute() {
+            ForkJoinTask.invokeAll(tasks);
+          }
+        });
+
+    final List<Recognition> all = new ArrayList<>();
+    for (int i = 0; i < tasks.size(); ++i) {
+      final TileTask task = tasks.get(i);
+      all.addAll(task.results);
+      taskNanos[i] = task.elapsedNanos;
+      task.source = null;
+    }
+    final List<Recognition> merged =
+        NonMaxSuppression.apply(all, NMS_IOU_THRESHOLD, NMS_CONTAINMENT_THRESHOLD);
+    totalNanos = SystemClock.elapsedRealtimeNanos() - startTime;
+    Trace.endSection();
+    return merged;
+  }
+
+  /** Splits the frame into evenly spaced tiles that overlap by at least MIN_TILE_OVERLAP. */
+  private void layoutTiles(final int width, final int height) {
+    frameWidth = width;
+    frameHeight = height;
+    tasks.clear();
+
+    final int[] xs = tileOffsets(width);
+    final int[] ys = tileOffsets(height);
+    for (final int y : ys) {
+      for (final int x : xs) {
+        final Matrix toTile = new Matrix();
+        toTile.setTranslate(-x, -y);
+        tasks.add(new TileTask(toTile));
+      }
+    }
+    // Full-frame pass for objects that do not fit in a single tile.
+    final Matrix toInput = new Matrix();
+    toInput.setScale((float) tileSize / width, (float) tileSize / height);
+    tasks.add(new TileTask(toInput));
+
+    taskNanos = new long[tasks.size()];
+  }
+
+  private int[] tileOffsets(final int length) {
+    if (length <= tileSize) {
+      return new int[] {0};
+    }
+    final int count =
+        (int) Math.ceil((double) (length - MIN_TILE_OVERLAP) / (tileSize - MIN_TILE_OVERLAP));
+    final int[] offsets = new int[count];
+    for (int i = 0; i < count; ++i) {
+      offsets[i] = Math.round((float) i * (length - tileSize) / (count - 1));
+    }
+    return offsets;
+  }
+
+  public int getTileCount() {
+    return tasks.isEmpty() ? 0 : tasks.size() - 1;
+  }
+
+  @Override
+  public synchronized void enableStatLogging(final boolean logStats) {
+    for (final Detector detector : allInterpreters) {
+      detector.enableStatLogging(logStats);
+    }
+  }
+
+  /** Per-tile and total latency of the last call. */
+  @Override
+  public synchronized String getStatString() {
+    if (tasks.isEmpty()) {
+      return "";
+    }
+    long tileSum = 0;
+    long tileMax = 0;
+    final int tileCount = getTileCount();
+    for (int i = 0; i < tileCount; ++i) {
+      tileSum += taskNanos[i];
+      tileMax = Math.max(tileMax, taskNanos[i]);
+    }
+    return String.format(
+        "%d tiles: total %.1fms, tile avg %.1fms max %.1fms, full frame %.1fms",
+        tileCount,
+        totalNanos / 1e6,
+        tileSum / 1e6 / Math.max(1, tileCount),
+        tileMax / 1e6,
+        taskNanos[tileCount] / 1e6);
+  }
+
+  @Override
+  public synchronized void close() {
+    forkJoinPool.shutdown();
+    for (final Detector detector : allInterpreters) {
+      detector.close();
+    }
+  }
+
+  @Override
+  public synchronized void setNumThreads(final int numThreads) {
+    for (final Detector detector : allInterpreters) {
+      detector.setNumThreads(numThreads);
+    }
+  }
+
+  @Override
+  public synchronized void setUseNNAPI(final boolean isChecked) {
+    for (final Detector detector : allInterpreters) {
+      detector.setUseNNAPI(isChecked);
+    }
+  }
+
+  @Override
+  public synchronized long warmUp(final int runs) {
+    long nanos = 0;
+    for (final Detector detector : allInterpreters) {
+      nanos += detector.warmUp(runs);
+    }
+    return nanos;
+  }
+
+  /** Crops (or scales) one region of the frame into its own input bitmap and runs a detector. */
+  private final class TileTask extends RecursiveAction {
+    private final Matrix frameToInput;
+    private final Matrix inputToFrame = new Matrix();
+    // Pre-allocated input for this tile.
+    private final Bitmap input = Bitmap.createBitmap(tileSize, tileSize, Bitmap.Config.ARGB_8888);
+    private final Canvas canvas = new Canvas(input);
+    private final List<Recognition> results = new ArrayList<>();
+    Bitmap source;
+    // Frame the tile belongs to, for the trace of the pool thread that runs it.
+    long frameId;
+    long elapsedNanos;
+
+    TileTask(final Matrix frameToInput) {
+      this.frameToInput = frameToInput;
+      frameToInput.invert(inputToFrame);
+    }
+
+    @Override
+    protected void compute() {
+      final long startTime = SystemClock.elapsedRealtimeNanos();
+      TraceRecorder.setCurrentFrame(frameId);
+      results.clear();
+      // A frame narrower than a tile does not cover the whole input.
+      if (source.getWidth() < tileSize || source.getHeight() < tileSize) {
+        canvas.drawColor(Color.BLACK);
+      }
+      canvas.drawBitmap(source, frameToInput, null);
+
+      final Detector detector;
+      try {
+        detector = interpreters.take();
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+      final List<Recognition> detections;
+      try {
+        detections = detector.recognizeImage(input);
+      } finally {
+        interpreters.add(detector);
+      }
+
+      for (final Recognition detection : detections) {
+        final RectF location = detection.getLocation();
+        inputToFrame.mapRect(location);
+        detection.setLocation(location);
+        results.add(detection);
+      }
+      elapsedNanos = SystemClock.elapsedRealtimeNanos() - startTime;
+    }
+  }
+}
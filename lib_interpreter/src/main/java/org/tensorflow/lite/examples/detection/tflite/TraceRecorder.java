@@ -0,0 +1,230 @@
+package org.tensorflow.lite.examples.detection.tflite;
+
+import android.os.SystemClock;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * In-app frame lifecycle trace, for pulling timelines from devices without a systrace setup.
+ *
+ * <p>Events are kept in a fixed-size ring buffer of primitive arrays (stage, frame, thread, start
+ * and end), so recording does not allocate. Sections nest per thread like {@link
+ * android.os.Trace#beginSection(String)}, and each section is attributed to the frame set with
+ * {@link #setCurrentFrame(long)} on that thread. {@link #exportTo(File)} writes the buffer as Chrome
+ * trace-event JSON, which chrome://tracing and ui.perfetto.dev can open.
+ */
+public final class TraceRecorder {
+  public static final int STAGE_CAMERA_CALLBACK = 0;
+  public static final int STAGE_FILL = 1;
+  public static final int STAGE_CONVERT = 2;
+  public static final int STAGE_CROP = 3;
+  public static final int STAGE_PREPROCESS = 4;
+  public static final int STAGE_RUN = 5;
+  public static final int STAGE_POSTPROCESS = 6;
+  public static final int STAGE_TRACK = 7;
+  public static final int STAGE_DRAW = 8;
+  public static final int STAGE_ANNOUNCE = 9;
+  /** Instant event: a frame was dropped. */
+  public static final int STAGE_DROP = 10;
+
+  private static final String[] STAGE_NAMES = {
+    "camera_callback",
+    "fill",
+    "convert",
+    "crop",
+    "preprocess",
+    "run",
+    "postprocess",
+    "track",
+    "draw",
+    "announce",
+    "drop"
+  };
+
+  private static final int CAPACITY = 8192;
+  // Deepest nesting of sections on one thread.
+  private static final int MAX_DEPTH = 8;
+
+  private static final Object lock = new Object();
+  private static final int[] stages = new int[CAPACITY];
+  private static final long[] frames = new long[CAPACITY];
+  private static final long[] threads = new long[CAPACITY];
+  private static final long[] starts = new long[CAPACITY];
+  private static final long[] ends = new long[CAPACITY];
+  private static int next;
+  private static long recorded;
+  private static volatile boolean enabled = true;
+
+  /** Per-thread current frame and stack of open sections. */
+  private static final class ThreadState {
+    long frameId = -1;
+    final long threadId = Thread.currentThread().getId();
+    final int[] openStages = new int[MAX_DEPTH];
+    final long[] openStarts = new long[MAX_DEPTH];
+    int depth;
+  }
+
+  private static final ThreadLocal<ThreadState> threadState =
+      new ThreadLocal<ThreadState>() {
+        @Override
+        protected ThreadState initialValue() {
+          return new ThreadState();
+        }
+      };
+
+  private TraceRecorder() {}
+
+  public static void setEnabled(final boolean enabled) {
+    TraceRecorder.enabled = enabled;
+  }
+
+  /** Attributes the sections recorded from now on by this thread to {@code frameId}. */
+  public static void setCurrentFrame(final long frameId) {
+    threadState.get().frameId = frameId;
+  }
+
+  /** The frame this thread is attributing sections to, so it can be handed to worker threads. */
+  public static long getCurrentFrame() {
+    return threadState.get().frameId;
+  }
+
+  public static void beginSection(final int stage) {
+    if (!enabled) {
+      return;
+    }
+    final ThreadState state = threadState.get();
+    if (state.depth < MAX_DEPTH) {
+      state.openStages[state.depth] = stage;
+      state.openStarts[state.depth] = SystemClock.elapsedRealtimeNanos();
+    }
+    state.depth++;
+  }
+
+  public static void endSection() {
+    if (!enabled) {
+      return;
+    }
+    final ThreadState state = threadState.get();
+    if (state.depth == 0) {
+      return;
+    }
+    state.depth--;
+    if (state.depth < MAX_DEPTH) {
+      record(
+          state.openStages[state.depth],
+          state.frameId,
+          state.threadId,
+          state.openStarts[state.depth],
+          SystemClock.elapsedRealtimeNanos());
+    }
+  }
+
+  /**
+   * Records a zero-length event, such as a dropped frame, for {@code frameId} (-1 if the frame never
+   * got an id).
+   */
+  public static void instant(final int stage, final long frameId) {
+    if (!enabled) {
+      return;
+    }
+    final long now = SystemClock.elapsedRealtimeNanos();
+    record(stage, frameId, threadState.get().threadId, now, now);
+  }
+
+  private static void record(
+      final int stage, final long frameId, final long threadId, final long start, final long end) {
+    synchronized (lock) {
+      stages[next] = stage;
+      frames[next] = frameId;
+      threads[next] = threadId;
+      starts[next] = start;
+      ends[next] = end;
+      next = (next + 1) % CAPACITY;
+      recorded++;
+    }
+  }
+
+  public static void clear() {
+    synchronized (lock) {
+      next = 0;
+      recorded = 0;
+    }
+  }
+
+  /** Writes the buffered events, oldest first, as Chrome trace-event JSON. */
+  public static void exportTo(final File file) throws IOException {
+    final Writer writer =
+        new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, false), "UTF-8"));
+    try {
+      writeJson(writer);
+    } finally {
+      writer.close();
+    }
+  }
+
+  public static void writeJson(final Writer writer) throws IOException {
+    // Copy under the lock so that recording threads are not held up by the file I/O.
+    final int count;
+    final int first;
+    final int[] stageCopy = new int[CAPACITY];
+    final long[] frameCopy = new long[CAPACITY];
+    final long[] threadCopy = new long[CAPACITY];
+    final long[] startCopy = new long[CAPACITY];
+    final long[] endCopy = new long[CAPACITY];
+    synchronized (lock) {
+      count = (int) Math.min(recorded, CAPACITY);
+      first = recorded > CAPACITY ? next : 0;
+      System.arraycopy(stages, 0, stageCopy, 0, CAPACITY);
+      System.arraycopy(frames, 0, frameCopy, 0, CAPACITY);
+      System.arraycopy(threads, 0, threadCopy, 0, CAPACITY);
+      System.arraycopy(starts, 0, startCopy, 0, CAPACITY);
+      System.arraycopy(ends, 0, endCopy, 0, CAPACITY);
+    }
+
+    writer.write("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[");
+    boolean firstEvent = true;
+    // Thread names are only known for threads that are still alive.
+    final Map<Long, String> threadNames = new HashMap<>();
+    for (final Thread thread : Thread.getAllStackTraces().keySet()) {
+      threadNames.put(thread.getId(), thread.getName());
+    }
+    for (final Map.Entry<Long, String> entry : threadNames.entrySet()) {
+      writer.write(firstEvent ? "\n" : ",\n");
+      firstEvent = false;
+      writer.write(
+          "{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":"
+              + entry.getKey()
+              + ",\"args\":{\"name\":\""
+              + escape(entry.getValue())
+              + "\"}}");
+    }
+    for (int i = 0; i < count; ++i) {
+      final int index = (first + i) % CAPACITY;
+      final int stage = stageCopy[index];
+      final String name = stage >= 0 && stage < STAGE_NAMES.length ? STAGE_NAMES[stage] : "?";
+      final boolean isInstant = stage == STAGE_DROP;
+      writer.write(firstEvent ? "\n" : ",\n");
+      firstEvent = false;
+      writer.write("{\"name\":\"" + name + "\",\"cat\":\"frame\",\"pid\":1");
+      writer.write(",\"tid\":" + threadCopy[index]);
+      writer.write(",\"ts\":" + startCopy[index] / 1000.0);
+      if (isInstant) {
+        writer.write(",\"ph\":\"i\",\"s\":\"t\"");
+      } else {
+        writer.write(",\"ph\":\"X\",\"dur\":" + (endCopy[index] - startCopy[index]) / 1000.0);
+      }
+      writer.write(",\"args\":{\"frame\":" + frameCopy[index] + "}}");
+    }
+    writer.write("\n]}\n");
+  }
+
+  private static String escape(final String value) {
+    return value.replace("\\", "\\\\").replace("\"", "\\\"");
+  }
+}
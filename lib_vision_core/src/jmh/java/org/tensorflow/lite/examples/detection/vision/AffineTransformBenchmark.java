@@ -0,0 +1,66 @@
+/*
+ * Copyright 2020 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tensorflow.lite.examples.detection.vision;
+
+import java.util.Random;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks building the frame-to-crop transform and mapping one frame's detections back through
+ * its inverse, as the detector does for every frame.
+ */
+@State(Scope.Thread)
+public class AffineTransformBenchmark {
+  @Param({"640x480", "1280x720"})
+  public String size;
+
+  private int width;
+  private int height;
+  private final AffineTransform frameToCrop = new AffineTransform();
+  private final AffineTransform cropToFrame = new AffineTransform();
+  private final float[] boxes = new float[4 * Frames.DETECTIONS];
+  private final float[] mapped = new float[4 * Frames.DETECTIONS];
+
+  @Setup
+  public void setUp() {
+    width = Frames.width(size);
+    height = Frames.height(size);
+    Frames.randomBoxes(
+        new Random(0), boxes, Frames.DETECTIONS, Frames.INPUT_SIZE, Frames.INPUT_SIZE);
+  }
+
+  @Benchmark
+  public void setTransformation(final Blackhole blackhole) {
+    frameToCrop.setTransformation(width, height, Frames.INPUT_SIZE, Frames.INPUT_SIZE, 90, false);
+    blackhole.consume(frameToCrop.invert(cropToFrame));
+  }
+
+  @Benchmark
+  public float[] mapDetections() {
+    frameToCrop.setTransformation(width, height, Frames.INPUT_SIZE, Frames.INPUT_SIZE, 90, false);
+    frameToCrop.invert(cropToFrame);
+    for (int i = 0; i < Frames.DETECTIONS; ++i) {
+      cropToFrame.mapRect(boxes, i, mapped, i);
+    }
+    return mapped;
+  }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2020 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tensorflow.lite.examples.detection.vision;
+
+import java.util.Random;
+
+/** Frame sizes shared by the benchmarks, given as {@code "<width>x<height>"} parameters. */
+final class Frames {
+  /** Detections per frame in the box benchmarks, about what a busy street scene produces. */
+  static final int DETECTIONS = 100;
+
+  /** Side of the square model input the frames are cropped to. */
+  static final int INPUT_SIZE = 300;
+
+  private Frames() {}
+
+  static int width(final String size) {
+    return Integer.parseInt(size.substring(0, size.indexOf('x')));
+  }
+
+  static int height(final String size) {
+    return Integer.parseInt(size.substring(size.indexOf('x') + 1));
+  }
+
+  /**
+   * Fills {@code boxes} with {@code count} random boxes inside the frame, sized between 2% and 40%
+   * of its shorter side.
+   */
+  static void randomBoxes(
+      final Random random,
+      final float[] boxes,
+      final int count,
+      final int width,
+      final int height) {
+    final int shorter = Math.min(width, height);
+    for (int i = 0; i < count; ++i) {
+      final float side = shorter * (0.02f + 0.38f * random.nextFloat());
+      final float left = random.nextFloat() * (width - side);
+      final float top = random.nextFloat() * (height - side);
+      Boxes.set(boxes, i, left, top, left + side, top + side * (0.5f + random.nextFloat()));
+    }
+  }
+}
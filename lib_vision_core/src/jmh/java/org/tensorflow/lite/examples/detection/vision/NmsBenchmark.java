@@ -0,0 +1,55 @@
+/*
+ * Copyright 2020 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tensorflow.lite.examples.detection.vision;
+
+import java.util.Random;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Benchmarks non-maximum suppression over one frame's worth of detections. */
+@State(Scope.Thread)
+public class NmsBenchmark {
+  private static final int CLASSES = 4;
+
+  @Param({"640x480", "1280x720"})
+  public String size;
+
+  private final float[] boxes = new float[4 * Frames.DETECTIONS];
+  private final float[] scores = new float[Frames.DETECTIONS];
+  private final int[] classes = new int[Frames.DETECTIONS];
+  private final int[] order = new int[Frames.DETECTIONS];
+  private final int[] kept = new int[Frames.DETECTIONS];
+
+  @Setup
+  public void setUp() {
+    final Random random = new Random(0);
+    Frames.randomBoxes(
+        random, boxes, Frames.DETECTIONS, Frames.width(size), Frames.height(size));
+    for (int i = 0; i < Frames.DETECTIONS; ++i) {
+      scores[i] = random.nextFloat();
+      classes[i] = random.nextInt(CLASSES);
+    }
+  }
+
+  @Benchmark
+  public int suppress() {
+    return Nms.suppress(boxes, scores, classes, Frames.DETECTIONS, 0.5f, 0.7f, order, kept);
+  }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2020 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tensorflow.lite.examples.detection.vision;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmarks packing pixels into the model input. The crop is always the model input size; the
+ * frame size parameter packs a full frame instead, for models run without cropping.
+ */
+@State(Scope.Thread)
+public class PreprocessBenchmark {
+  @Param({"640x480", "1280x720"})
+  public String size;
+
+  private int count;
+  private int[] pixels;
+  private ByteBuffer quantized;
+  private ByteBuffer floats;
+
+  @Setup
+  public void setUp() {
+    count = Frames.width(size) * Frames.height(size);
+    pixels = new int[count];
+    final Random random = new Random(0);
+    for (int i = 0; i < count; ++i) {
+      pixels[i] = random.nextInt();
+    }
+    quantized = ByteBuffer.allocateDirect(3 * count).order(ByteOrder.nativeOrder());
+    floats = ByteBuffer.allocateDirect(12 * count).order(ByteOrder.nativeOrder());
+  }
+
+  @Benchmark
+  public ByteBuffer packQuantized() {
+    quantized.rewind();
+    Preprocess.packQuantized(pixels, count, quantized);
+    return quantized;
+  }
+
+  @Benchmark
+  public ByteBuffer packFloat() {
+    floats.rewind();
+    Preprocess.packFloat(pixels, count, 127.5f, 127.5f, floats);
+    return floats;
+  }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2020 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tensorflow.lite.examples.detection.vision;
+
+import java.util.Random;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmarks the per-frame tracking geometry: filtering degenerate detections, replacing the tracks
+ * a region-of-interest pass covered, and planning the next region.
+ */
+@State(Scope.Thread)
+public class TrackingBenchmark {
+  private static final int MAX_TRACKS = 10;
+  private static final int MIN_SIZE = 16;
+
+  @Param({"640x480", "1280x720"})
+  public String size;
+
+  private int width;
+  private int height;
+  private final float[] detections = new float[4 * Frames.DETECTIONS];
+  private final float[] tracks = new float[4 * MAX_TRACKS];
+  private final float[] confidences = new float[MAX_TRACKS];
+  private final float[] priorities = new float[MAX_TRACKS];
+  private final int[] order = new int[MAX_TRACKS];
+  private final float[] roi = new float[4];
+
+  @Setup
+  public void setUp() {
+    width = Frames.width(size);
+    height = Frames.height(size);
+    final Random random = new Random(0);
+    Frames.randomBoxes(random, detections, Frames.DETECTIONS, width, height);
+    Frames.randomBoxes(random, tracks, MAX_TRACKS, width, height);
+    for (int i = 0; i < MAX_TRACKS; ++i) {
+      confidences[i] = random.nextFloat();
+    }
+  }
+
+  @Benchmark
+  public int filterAndReplace() {
+    int kept = 0;
+    for (int i = 0; i < Frames.DETECTIONS; ++i) {
+      if (!Tracking.isDegenerate(detections, i, MIN_SIZE)) {
+        kept++;
+      }
+    }
+    for (int j = 0; j < MAX_TRACKS; ++j) {
+      if (!Tracking.isCoveredByRoi(roi, 0, tracks, j)) {
+        kept++;
+      }
+    }
+    return kept;
+  }
+
+  @Benchmark
+  public float planRoi() {
+    return Tracking.planRoi(
+        confidences,
+        tracks,
+        MAX_TRACKS,
+        width,
+        height,
+        Frames.INPUT_SIZE,
+        3,
+        0.25f,
+        0.9f,
+        priorities,
+        order,
+        roi);
+  }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2020 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tensorflow.lite.examples.detection.vision;
+
+import java.util.Random;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Benchmarks the YUV to ARGB conversion of one camera frame. */
+@State(Scope.Thread)
+public class YuvConverterBenchmark {
+  @Param({"640x480", "1280x720"})
+  public String size;
+
+  private int width;
+  private int height;
+  private byte[] nv21;
+  private byte[] yPlane;
+  private byte[] uPlane;
+  private byte[] vPlane;
+  private int[] argb;
+
+  @Setup
+  public void setUp() {
+    width = Frames.width(size);
+    height = Frames.height(size);
+    nv21 = new byte[YuvConverter.getYUVByteSize(width, height)];
+    new Random(0).nextBytes(nv21);
+    final int frameSize = width * height;
+    yPlane = new byte[frameSize];
+    System.arraycopy(nv21, 0, yPlane, 0, frameSize);
+    vPlane = new byte[nv21.length - frameSize];
+    System.arraycopy(nv21, frameSize, vPlane, 0, vPlane.length);
+    uPlane = new byte[vPlane.length];
+    System.arraycopy(nv21, frameSize + 1, uPlane, 0, uPlane.length - 1);
+    argb = new int[frameSize];
+  }
+
+  @Benchmark
+  public int[] semiPlanar() {
+    YuvConverter.convertYUV420SPToARGB8888(nv21, width, height, argb);
+    return argb;
+  }
+
+  @Benchmark
+  public int[] planar() {
+    YuvConverter.convertYUV420ToARGB8888(
+        yPlane, uPlane, vPlane, width, height, width, width, 2, argb);
+    return argb;
+  }
+}
@@ -0,0 +1,234 @@
+package org.tensorflow.lite.examples.detection.vision;
+
+/**
+ * A mutable 2D affine transform in single precision, with the same post-multiplication semantics as
+ * {@code android.graphics.Matrix}.
+ *
+ * <p>Maps (x, y) to (scaleX * x + skewX * y + transX, skewY * x + scaleY * y + transY). Boxes are
+ * packed as four floats (left, top, right, bottom) in an array, so mapping them does not allocate.
+ */
+public final class AffineTransform {
+  // Matches Skia, which snaps the sine and cosine of a rotation to zero below this value so that
+  // multiples of 90 degrees give exact results.
+  private static final float NEARLY_ZERO = 1f / (1 << 12);
+
+  private float scaleX = 1;
+  private float skewX;
+  private float transX;
+  private float skewY;
+  private float scaleY = 1;
+  private float transY;
+
+  public void reset() {
+    scaleX = 1;
+    skewX = 0;
+    transX = 0;
+    skewY = 0;
+    scaleY = 1;
+    transY = 0;
+  }
+
+  public void set(final AffineTransform other) {
+    scaleX = other.scaleX;
+    skewX = other.skewX;
+    transX = other.transX;
+    skewY = other.skewY;
+    scaleY = other.scaleY;
+    transY = other.transY;
+  }
+
+  public void setTranslate(final float dx, final float dy) {
+    reset();
+    transX = dx;
+    transY = dy;
+  }
+
+  /** Applies a translation after this transform. */
+  public void postTranslate(final float dx, final float dy) {
+    transX += dx;
+    transY += dy;
+  }
+
+  /** Applies a scale about the origin after this transform. */
+  public void postScale(final float sx, final float sy) {
+    scaleX *= sx;
+    skewX *= sx;
+    transX *= sx;
+    skewY *= sy;
+    scaleY *= sy;
+    transY *= sy;
+  }
+
+  /** Applies a rotation about the origin after this transform; positive is clockwise on screen. */
+  public void postRotate(final float degrees) {
+    final double radians = Math.toRadians(degrees);
+    float sin = (float) Math.sin(radians);
+    float cos = (float) Math.cos(radians);
+    if (Math.abs(sin) <= NEARLY_ZERO) {
+      sin = 0;
+    }
+    if (Math.abs(cos) <= NEARLY_ZERO) {
+      cos = 0;
+    }
+    postConcat(cos, -sin, 0, sin, cos, 0);
+  }
+
+  /** Applies {@code other} after this transform. */
+  public void postConcat(final AffineTransform other) {
+    postConcat(
+        other.scaleX, other.skewX, other.transX, other.skewY, other.scaleY, other.transY);
+  }
+
+  private void postConcat(
+      final float a, final float b, final float c, final float d, final float e, final float f) {
+    final float newScaleX = a * scaleX + b * skewY;
+    final float newSkewX = a * skewX + b * scaleY;
+    final float newTransX = a * transX + b * transY + c;
+    final float newSkewY = d * scaleX + e * skewY;
+    final float newScaleY = d * skewX + e * scaleY;
+    final float newTransY = d * transX + e * transY + f;
+    scaleX = newScaleX;
+    skewX = newSkewX;
+    transX = newTransX;
+    skewY = newSkewY;
+    scaleY = newScaleY;
+    transY = newTransY;
+  }
+
+  /**
+   * Stores the inverse of this transform in {@code inverse}, which may be this transform. Returns
+   * false, leaving {@code inverse} unchanged, if this transform is not invertible.
+   */
+  public boolean invert(final AffineTransform inverse) {
+    final float det = scaleX * scaleY - skewX * skewY;
+    if (det == 0 || Float.isNaN(det) || Float.isInfinite(det)) {
+      return false;
+    }
+    final float invDet = 1 / det;
+    final float a = scaleY * invDet;
+    final float b = -skewX * invDet;
+    final float d = -skewY * invDet;
+    final float e = scaleX * invDet;
+    final float c = -(a * transX + b * transY);
+    final float f = -(d * transX + e * transY);
+    inverse.scaleX = a;
+    inverse.skewX = b;
+    inverse.transX = c;
+    inverse.skewY = d;
+    inverse.scaleY = e;
+    inverse.transY = f;
+    return true;
+  }
+
+  /**
+   * Maps the box at index {@code src} of {@code srcBoxes} and stores the bounds of the result at
+   * index {@code dst} of {@code dstBoxes}, which may be the same box.
+   */
+  public void mapRect(
+      final float[] srcBoxes, final int src, final float[] dstBoxes, final int dst) {
+    final int s = src * 4;
+    final float left = srcBoxes[s];
+    final float top = srcBoxes[s + 1];
+    final float right = srcBoxes[s + 2];
+    final float bottom = srcBoxes[s + 3];
+    // Bounds of the four mapped corners; each coordinate is linear in x and y separately.
+    final float x0 = scaleX * left;
+    final float x1 = scaleX * right;
+    final float xy0 = skewX * top;
+    final float xy1 = skewX * bottom;
+    final float y0 = skewY * left;
+    final float y1 = skewY * right;
+    final float yy0 = scaleY * top;
+    final float yy1 = scaleY * bottom;
+    final int d = dst * 4;
+    dstBoxes[d] = Math.min(x0, x1) + Math.min(xy0, xy1) + transX;
+    dstBoxes[d + 1] = Math.min(y0, y1) + Math.min(yy0, yy1) + transY;
+    dstBoxes[d + 2] = Math.max(x0, x1) + Math.max(xy0, xy1) + transX;
+    dstBoxes[d + 3] = Math.max(y0, y1) + Math.max(yy0, yy1) + transY;
+  }
+
+  /** Maps {@code count} (x, y) pairs of {@code points} in place. */
+  public void mapPoints(final float[] points, final int count) {
+    for (int i = 0; i < count * 2; i += 2) {
+      final float x = points[i];
+      final float y = points[i + 1];
+      points[i] = scaleX * x + skewX * y + transX;
+      points[i + 1] = skewY * x + scaleY * y + transY;
+    }
+  }
+
+  /**
+   * Copies the transform into the first six of nine values in the layout of {@code
+   * android.graphics.Matrix#getValues}, and sets the perspective row to identity.
+   */
+  public void getValues(final float[] values) {
+    values[0] = scaleX;
+    values[1] = skewX;
+    values[2] = transX;
+    values[3] = skewY;
+    values[4] = scaleY;
+    values[5] = transY;
+    values[6] = 0;
+    values[7] = 0;
+    values[8] = 1;
+  }
+
+  /**
+   * Sets this to the transform from one frame of reference to another, handling cropping (if
+   * maintaining aspect ratio is desired) and rotation.
+   *
+   * @param srcWidth Width of source frame.
+   * @param srcHeight Height of source frame.
+   * @param dstWidth Width of destination frame.
+   * @param dstHeight Height of destination frame.
+   * @param applyRotation Amount of rotation to apply from one frame to another. Must be a multiple
+   *     of 90.
+   * @param maintainAspectRatio If true, will ensure that scaling in x and y remains constant,
+   *     cropping the image if necessary.
+   */
+  public void setTransformation(
+      final int srcWidth,
+      final int srcHeight,
+      final int dstWidth,
+      final int dstHeight,
+      final int applyRotation,
+      final boolean maintainAspectRatio) {
+    reset();
+
+    if (applyRotation != 0) {
+      // Translate so center of image is at origin.
+      postTranslate(-srcWidth / 2.0f, -srcHeight / 2.0f);
+
+      // Rotate around origin.
+      postRotate(applyRotation);
+    }
+
+    // Account for the already applied rotation, if any, and then determine how
+    // much scaling is needed for each axis.
+    final boolean transpose = (Math.abs(applyRotation) + 90) % 180 == 0;
+
+    final int inWidth = transpose ? srcHeight : srcWidth;
+    final int inHeight = transpose ? srcWidth : srcHeight;
+
+    // Apply scaling if necessary.
+    if (inWidth != dstWidth || inHeight != dstHeight) {
+      final float scaleFactorX = dstWidth / (float) inWidth;
+      final float scaleFactorY = dstHeight / (float) inHeight;
+
+      if (maintainAspectRatio) {
+        // Scale by minimum factor so that dst is filled completely while
+        // maintaining the aspect ratio. Some image may fall off the edge.
+        final float scaleFactor = Math.max(scaleFactorX, scaleFactorY);
+        postScale(scaleFactor, scaleFactor);
+      } else {
+        // Scale exactly to fill dst from src.
+        postScale(scaleFactorX, scaleFactorY);
+      }
+    }
+
+    if (applyRotation != 0) {
+      // Translate back from origin centered reference to destination frame.
+      postTranslate(dstWidth / 2.0f, dstHeight / 2.0f);
+    }
+  }
+}
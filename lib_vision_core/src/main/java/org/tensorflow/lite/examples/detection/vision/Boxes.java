@@ -0,0 +1,92 @@
+package org.tensorflow.lite.examples.detection.vision;
+
+/**
+ * Axis-aligned box math on packed arrays.
+ *
+ * <p>Box {@code i} of an array occupies indices {@code 4 * i} to {@code 4 * i + 3}, as left, top,
+ * right and bottom. Keeping boxes in primitive arrays lets the per-frame code work without
+ * allocating an object per box.
+ */
+public final class Boxes {
+  private Boxes() {}
+
+  public static void set(
+      final float[] boxes,
+      final int i,
+      final float left,
+      final float top,
+      final float right,
+      final float bottom) {
+    boxes[4 * i] = left;
+    boxes[4 * i + 1] = top;
+    boxes[4 * i + 2] = right;
+    boxes[4 * i + 3] = bottom;
+  }
+
+  public static void copy(final float[] src, final int s, final float[] dst, final int d) {
+    System.arraycopy(src, 4 * s, dst, 4 * d, 4);
+  }
+
+  public static float width(final float[] boxes, final int i) {
+    return boxes[4 * i + 2] - boxes[4 * i];
+  }
+
+  public static float height(final float[] boxes, final int i) {
+    return boxes[4 * i + 3] - boxes[4 * i + 1];
+  }
+
+  public static float centerX(final float[] boxes, final int i) {
+    return (boxes[4 * i] + boxes[4 * i + 2]) * 0.5f;
+  }
+
+  public static float centerY(final float[] boxes, final int i) {
+    return (boxes[4 * i + 1] + boxes[4 * i + 3]) * 0.5f;
+  }
+
+  /** Area of the box, or 0 if it is empty or inverted. */
+  public static float area(final float[] boxes, final int i) {
+    return Math.max(0, width(boxes, i)) * Math.max(0, height(boxes, i));
+  }
+
+  public static float intersectionArea(
+      final float[] a, final int i, final float[] b, final int j) {
+    final float width = Math.min(a[4 * i + 2], b[4 * j + 2]) - Math.max(a[4 * i], b[4 * j]);
+    final float height =
+        Math.min(a[4 * i + 3], b[4 * j + 3]) - Math.max(a[4 * i + 1], b[4 * j + 1]);
+    return width > 0 && height > 0 ? width * height : 0;
+  }
+
+  /** Intersection over union, or 0 if the boxes do not overlap. */
+  public static float iou(final float[] a, final int i, final float[] b, final int j) {
+    final float intersection = intersectionArea(a, i, b, j);
+    return intersection > 0 ? intersection / (area(a, i) + area(b, j) - intersection) : 0;
+  }
+
+  /** Fraction of the smaller box covered by the intersection, or 0 if the boxes do not overlap. */
+  public static float containment(final float[] a, final int i, final float[] b, final int j) {
+    final float intersection = intersectionArea(a, i, b, j);
+    return intersection > 0 ? intersection / Math.min(area(a, i), area(b, j)) : 0;
+  }
+
+  /** Whether the center of box {@code j} lies inside box {@code i} of {@code outer}. */
+  public static boolean containsCenter(
+      final float[] outer, final int i, final float[] boxes, final int j) {
+    final float x = centerX(boxes, j);
+    final float y = centerY(boxes, j);
+    // Same half-open test as android.graphics.RectF#contains(float, float).
+    return outer[4 * i] < outer[4 * i + 2]
+        && outer[4 * i + 1] < outer[4 * i + 3]
+        && x >= outer[4 * i]
+        && x < outer[4 * i + 2]
+        && y >= outer[4 * i + 1]
+        && y < outer[4 * i + 3];
+  }
+
+  /** Grows box {@code d} of {@code dst} to also cover box {@code s} of {@code src}. */
+  public static void union(final float[] dst, final int d, final float[] src, final int s) {
+    dst[4 * d] = Math.min(dst[4 * d], src[4 * s]);
+    dst[4 * d + 1] = Math.min(dst[4 * d + 1], src[4 * s + 1]);
+    dst[4 * d + 2] = Math.max(dst[4 * d + 2], src[4 * s + 2]);
+    dst[4 * d + 3] = Math.max(dst[4 * d + 3], src[4 * s + 3]);
+  }
+}
@@ -0,0 +1,226 @@
+package org.tensorflow.lite.examples.detection.vision;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Detection accuracy over a labeled image set: per-class precision, recall and average precision,
+ * and their mean over classes (mAP).
+ *
+ * <p>Detections are matched to ground truth per image and class as in the PASCAL VOC evaluation:
+ * in order of decreasing score, each detection is compared with the ground-truth box it overlaps
+ * most, and is a true positive if that IoU reaches {@code iouThreshold} and the box was not already
+ * matched. Average precision is the area under the interpolated precision-recall curve over all
+ * detections; precision and recall are reported for the detections scoring at least {@code
+ * scoreThreshold}, as the app would show them.
+ *
+ * <p>Boxes are packed as in {@link Boxes}. Images may be added from several threads.
+ */
+public final class DetectionMetrics {
+  private final float iouThreshold;
+  private final float scoreThreshold;
+  private final Map<String, ClassStats> classes = new TreeMap<>();
+  private int imageCount;
+
+  public DetectionMetrics(final float iouThreshold, final float scoreThreshold) {
+    this.iouThreshold = iouThreshold;
+    this.scoreThreshold = scoreThreshold;
+  }
+
+  /**
+   * Matches the detections of one image against its ground truth.
+   *
+   * @param truthLabels class of each of the {@code truthCount} ground-truth boxes.
+   * @param truthBoxes packed ground-truth boxes.
+   * @param labels class of each of the {@code count} detections.
+   * @param boxes packed detection boxes, in the same coordinates as the ground truth.
+   * @param scores confidence of each detection.
+   */
+  public synchronized void addImage(
+      final String[] truthLabels,
+      final float[] truthBoxes,
+      final int truthCount,
+      final String[] labels,
+      final float[] boxes,
+      final float[] scores,
+      final int count) {
+    imageCount++;
+    for (int t = 0; t < truthCount; ++t) {
+      statsFor(truthLabels[t]).groundTruth++;
+    }
+
+    final int[] order = new int[count];
+    Nms.sortByScoreDescending(scores, count, order);
+    final boolean[] matched = new boolean[truthCount];
+    for (int n = 0; n < count; ++n) {
+      final int d = order[n];
+      int best = -1;
+      float bestIou = 0;
+      for (int t = 0; t < truthCount; ++t) {
+        if (!truthLabels[t].equals(labels[d])) {
+          continue;
+        }
+        final float iou = Boxes.iou(boxes, d, truthBoxes, t);
+        if (iou > bestIou) {
+          bestIou = iou;
+          best = t;
+        }
+      }
+      // A second detection of an already matched object is a false positive.
+      final boolean truePositive = best >= 0 && bestIou >= iouThreshold && !matched[best];
+      if (truePositive) {
+        matched[best] = true;
+      }
+      statsFor(labels[d]).add(scores[d], truePositive);
+    }
+  }
+
+  private ClassStats statsFor(final String label) {
+    ClassStats stats = classes.get(label);
+    if (stats == null) {
+      stats = new ClassStats();
+      classes.put(label, stats);
+    }
+    return stats;
+  }
+
+  public synchronized int getImageCount() {
+    return imageCount;
+  }
+
+  /** Every class seen in the ground truth or the detections, in alphabetical order. */
+  public synchronized List<String> getClassNames() {
+    return new ArrayList<>(classes.keySet());
+  }
+
+  public synchronized int getGroundTruthCount(final String label) {
+    final ClassStats stats = classes.get(label);
+    return stats != null ? stats.groundTruth : 0;
+  }
+
+  /** Detections of the class scoring at least the score threshold. */
+  public synchronized int getDetectionCount(final String label) {
+    final ClassStats stats = classes.get(label);
+    return stats != null ? stats.countAboveThreshold(false) : 0;
+  }
+
+  /** Precision at the score threshold, or NaN if the class has no detections above it. */
+  public synchronized float getPrecision(final String label) {
+    final int detections = getDetectionCount(label);
+    return detections > 0
+        ? classes.get(label).countAboveThreshold(true) / (float) detections
+        : Float.NaN;
+  }
+
+  /** Recall at the score threshold, or NaN if the class has no ground truth. */
+  public synchronized float getRecall(final String label) {
+    final int groundTruth = getGroundTruthCount(label);
+    return groundTruth > 0
+        ? classes.get(label).countAboveThreshold(true) / (float) groundTruth
+        : Float.NaN;
+  }
+
+  /** Average precision over all detections, or NaN if the class has no ground truth. */
+  public synchronized float getAveragePrecision(final String label) {
+    final ClassStats stats = classes.get(label);
+    return stats != null && stats.groundTruth > 0 ? stats.averagePrecision() : Float.NaN;
+  }
+
+  /** Mean of the average precision of the classes that have ground truth, or NaN if none does. */
+  public synchronized float getMeanAveragePrecision() {
+    float sum = 0;
+    int count = 0;
+    for (final ClassStats stats : classes.values()) {
+      if (stats.groundTruth > 0) {
+        sum += stats.averagePrecision();
+        count++;
+      }
+    }
+    return count > 0 ? sum / count : Float.NaN;
+  }
+
+  /** A table of the per-class figures, under a line with the image count and mAP. */
+  public synchronized String format() {
+    final StringBuilder builder = new StringBuilder();
+    builder.append(
+        String.format(
+            "images %d, IoU %.2f, score %.2f: mAP %.3f\n",
+            imageCount, iouThreshold, scoreThreshold, getMeanAveragePrecision()));
+    builder.append(
+        String.format(
+            "%-20s %5s %5s %9s %7s %6s\n", "class", "gt", "det", "precision", "recall", "AP"));
+    for (final String label : classes.keySet()) {
+      builder.append(
+          String.format(
+              "%-20s %5d %5d %9.3f %7.3f %6.3f\n",
+              label,
+              getGroundTruthCount(label),
+              getDetectionCount(label),
+              getPrecision(label),
+              getRecall(label),
+              getAveragePrecision(label)));
+    }
+    return builder.toString();
+  }
+
+  /** Ground-truth count and every detection's score and outcome, for one class. */
+  private final class ClassStats {
+    int groundTruth;
+    int detections;
+    float[] scores = new float[16];
+    boolean[] truePositives = new boolean[16];
+
+    void add(final float score, final boolean truePositive) {
+      if (detections == scores.length) {
+        final float[] grownScores = new float[2 * detections];
+        final boolean[] grownTruePositives = new boolean[2 * detections];
+        System.arraycopy(scores, 0, grownScores, 0, detections);
+        System.arraycopy(truePositives, 0, grownTruePositives, 0, detections);
+        scores = grownScores;
+        truePositives = grownTruePositives;
+      }
+      scores[detections] = score;
+      truePositives[detections] = truePositive;
+      detections++;
+    }
+
+    int countAboveThreshold(final boolean truePositivesOnly) {
+      int count = 0;
+      for (int i = 0; i < detections; ++i) {
+        if (scores[i] >= scoreThreshold && (!truePositivesOnly || truePositives[i])) {
+          count++;
+        }
+      }
+      return count;
+    }
+
+    /** All-point interpolated average precision, as in PASCAL VOC 2010 and later. */
+    float averagePrecision() {
+      final int[] order = new int[detections];
+      Nms.sortByScoreDescending(scores, detections, order);
+      final float[] precision = new float[detections];
+      final float[] recall = new float[detections];
+      int truePositiveCount = 0;
+      for (int n = 0; n < detections; ++n) {
+        if (truePositives[order[n]]) {
+          truePositiveCount++;
+        }
+        precision[n] = truePositiveCount / (float) (n + 1);
+        recall[n] = truePositiveCount / (float) groundTruth;
+      }
+      // Precision envelope: the best precision at this recall or any higher one.
+      for (int n = detections - 2; n >= 0; --n) {
+        precision[n] = Math.max(precision[n], precision[n + 1]);
+      }
+      float area = 0;
+      float previousRecall = 0;
+      for (int n = 0; n < detections; ++n) {
+        area += (recall[n] - previousRecall) * precision[n];
+        previousRecall = recall[n];
+      }
+      return area;
+    }
+  }
+}
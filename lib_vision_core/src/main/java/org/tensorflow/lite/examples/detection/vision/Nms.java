@@ -0,0 +1,74 @@
+package org.tensorflow.lite.examples.detection.vision;
+
+/** Greedy per-class non-maximum suppression on packed boxes, without allocation. */
+public final class Nms {
+  private Nms() {}
+
+  /**
+   * Keeps the most confident detection of each group of same-class detections that overlap.
+   *
+   * <p>Two boxes overlap if their intersection-over-union exceeds {@code iouThreshold}, or if the
+   * intersection covers more than {@code containmentThreshold} of the smaller box. The second test
+   * catches an object cut by a tile seam, whose partial box has a low IoU with the full one.
+   *
+   * @param boxes {@code count} packed boxes; see {@link Boxes}.
+   * @param scores confidence of each box.
+   * @param classes class of each box; boxes of different classes never suppress each other.
+   * @param order scratch space for at least {@code count} indices.
+   * @param kept receives the indices of the kept boxes, most confident first; at least {@code
+   *     count} long.
+   * @return the number of kept boxes.
+   */
+  public static int suppress(
+      final float[] boxes,
+      final float[] scores,
+      final int[] classes,
+      final int count,
+      final float iouThreshold,
+      final float containmentThreshold,
+      final int[] order,
+      final int[] kept) {
+    sortByScoreDescending(scores, count, order);
+
+    int keptCount = 0;
+    for (int n = 0; n < count; ++n) {
+      final int candidate = order[n];
+      boolean suppressed = false;
+      for (int k = 0; k < keptCount && !suppressed; ++k) {
+        final int other = kept[k];
+        if (classes[candidate] != classes[other]) {
+          continue;
+        }
+        final float intersection = Boxes.intersectionArea(boxes, candidate, boxes, other);
+        if (intersection <= 0) {
+          continue;
+        }
+        final float areaA = Boxes.area(boxes, candidate);
+        final float areaB = Boxes.area(boxes, other);
+        final float iou = intersection / (areaA + areaB - intersection);
+        final float containment = intersection / Math.min(areaA, areaB);
+        suppressed = iou > iouThreshold || containment > containmentThreshold;
+      }
+      if (!suppressed) {
+        kept[keptCount++] = candidate;
+      }
+    }
+    return keptCount;
+  }
+
+  /**
+   * Fills {@code order} with 0 to {@code count - 1} sorted by descending score. The sort is stable,
+   * so equal scores keep their input order. Insertion sort, since detection counts are small.
+   */
+  static void sortByScoreDescending(final float[] scores, final int count, final int[] order) {
+    for (int i = 0; i < count; ++i) {
+      final float score = scores[i];
+      int j = i;
+      while (j > 0 && Float.compare(scores[order[j - 1]], score) < 0) {
+        order[j] = order[j - 1];
+        j--;
+      }
+      order[j] = i;
+    }
+  }
+}
@@ -0,0 +1,39 @@
+package org.tensorflow.lite.examples.detection.vision;
+
+import java.nio.ByteBuffer;
+
+/** Packs ARGB pixels into the interleaved RGB input tensor of an image model. */
+public final class Preprocess {
+  private Preprocess() {}
+
+  /**
+   * Writes {@code count} pixels as RGB bytes at the buffer's position, for quantized models.
+   * Advances the position by {@code 3 * count}.
+   */
+  public static void packQuantized(final int[] pixels, final int count, final ByteBuffer out) {
+    for (int i = 0; i < count; ++i) {
+      final int pixelValue = pixels[i];
+      out.put((byte) ((pixelValue >> 16) & 0xFF));
+      out.put((byte) ((pixelValue >> 8) & 0xFF));
+      out.put((byte) (pixelValue & 0xFF));
+    }
+  }
+
+  /**
+   * Writes {@code count} pixels as RGB floats normalized to {@code (value - mean) / std} at the
+   * buffer's position, for float models. Advances the position by {@code 12 * count}.
+   */
+  public static void packFloat(
+      final int[] pixels,
+      final int count,
+      final float mean,
+      final float std,
+      final ByteBuffer out) {
+    for (int i = 0; i < count; ++i) {
+      final int pixelValue = pixels[i];
+      out.putFloat((((pixelValue >> 16) & 0xFF) - mean) / std);
+      out.putFloat((((pixelValue >> 8) & 0xFF) - mean) / std);
+      out.putFloat(((pixelValue & 0xFF) - mean) / std);
+    }
+  }
+}
@@ -0,0 +1,52 @@
+package org.tensorflow.lite.examples.detection.vision;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+
+/**
+ * A list whose elements are recycled: {@link #clear()} keeps them, and {@link #add()} hands back
+ * the next one instead of allocating, so refilling the list every frame allocates nothing once it
+ * has reached its largest size. Elements past {@link #size()} belong to the list and must not be
+ * kept.
+ */
+public final class RecyclingList<T> extends AbstractList<T> {
+  /** Creates the elements the first time the list grows past them. */
+  public interface Factory<T> {
+    T create();
+  }
+
+  private final Factory<T> factory;
+  private final ArrayList<T> elements = new ArrayList<T>();
+  private int size;
+
+  public RecyclingList(final Factory<T> factory) {
+    this.factory = factory;
+  }
+
+  /** Appends the next recycled element, creating it only if the list has never been this long. */
+  public T add() {
+    if (size == elements.size()) {
+      elements.add(factory.create());
+    }
+    return elements.get(size++);
+  }
+
+  @Override
+  public T get(final int index) {
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException("Index " + index + ", size " + size);
+    }
+    return elements.get(index);
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  /** Empties the list, keeping the elements for the next {@link #add()}. */
+  @Override
+  public void clear() {
+    size = 0;
+  }
+}
@@ -0,0 +1,50 @@
+package org.tensorflow.lite.examples.detection.vision;
+
+/**
+ * Reads the outputs of an SSD detection model with the TFLite detection postprocess op into packed
+ * boxes, without allocation.
+ */
+public final class SsdDecoder {
+  private SsdDecoder() {}
+
+  /**
+   * Unpacks the detections of the first image in the batch.
+   *
+   * <p>The model reports how many of its output rows are valid in {@code numDetections}; some
+   * models output fewer detections than they have rows, and the rows past that count hold garbage.
+   *
+   * @param locations {@code [1][rows][4]} boxes as normalized top, left, bottom, right.
+   * @param classes {@code [1][rows]} class indices, as floats.
+   * @param scores {@code [1][rows]} confidences.
+   * @param numDetections {@code [1]} number of valid rows.
+   * @param scale multiplies the normalized coordinates, usually the model input size.
+   * @param boxes receives the boxes as packed left, top, right, bottom; see {@link Boxes}.
+   * @param outScores receives the confidence of each box.
+   * @param outClasses receives the class of each box.
+   * @return the number of detections written, at most the number of rows.
+   */
+  public static int decode(
+      final float[][][] locations,
+      final float[][] classes,
+      final float[][] scores,
+      final float[] numDetections,
+      final float scale,
+      final float[] boxes,
+      final float[] outScores,
+      final int[] outClasses) {
+    final int count = Math.max(0, Math.min(locations[0].length, (int) numDetections[0]));
+    for (int i = 0; i < count; ++i) {
+      final float[] location = locations[0][i];
+      Boxes.set(
+          boxes,
+          i,
+          location[1] * scale,
+          location[0] * scale,
+          location[3] * scale,
+          location[2] * scale);
+      outScores[i] = scores[0][i];
+      outClasses[i] = (int) classes[0][i];
+    }
+    return count;
+  }
+}
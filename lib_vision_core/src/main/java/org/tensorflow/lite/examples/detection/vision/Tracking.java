@@ -0,0 +1,92 @@
+package org.tensorflow.lite.examples.detection.vision;
+
+/**
+ * Geometry of the tracking stage: which detections become tracks, which tracks a region-of-interest
+ * pass replaces, and where the next region of interest goes. Boxes are packed as in {@link Boxes}.
+ */
+public final class Tracking {
+  private Tracking() {}
+
+  /** Whether a detection is too small to track in either dimension. */
+  public static boolean isDegenerate(final float[] boxes, final int i, final float minSize) {
+    return Boxes.width(boxes, i) < minSize || Boxes.height(boxes, i) < minSize;
+  }
+
+  /**
+   * Whether track {@code j} was seen by a detector pass over {@code roi} (box {@code r}), and is
+   * therefore replaced by that pass's detections rather than kept.
+   */
+  public static boolean isCoveredByRoi(
+      final float[] roi, final int r, final float[] tracks, final int j) {
+    return Boxes.containsCenter(roi, r, tracks, j);
+  }
+
+  /**
+   * Priority of a track for the region of interest: its confidence times the fraction of the frame
+   * it leaves uncovered, so that small objects, which gain the most from the crop, come first.
+   */
+  public static float roiPriority(
+      final float confidence, final float[] boxes, final int i, final float frameArea) {
+    final float areaFraction =
+        Math.min(1f, Boxes.width(boxes, i) * Boxes.height(boxes, i) / frameArea);
+    return confidence * (1f - areaFraction);
+  }
+
+  /**
+   * Computes a square region of interest around the highest-priority tracks.
+   *
+   * <p>The region covers the {@code maxTracks} tracks of highest {@link #roiPriority}, grown by
+   * {@code padding} on each side, is never smaller than {@code minSide} and stays inside the frame.
+   *
+   * @param confidences confidence of each of the {@code count} tracks.
+   * @param tracks packed track boxes, in frame coordinates.
+   * @param priorities scratch space for at least {@code count} floats.
+   * @param order scratch space for at least {@code count} indices.
+   * @param maxFraction largest useful side, as a fraction of the shorter frame side.
+   * @param roi receives the region as its box 0.
+   * @return the side of the region, or 0 if there are no tracks or the region would be too large to
+   *     save anything over the full frame.
+   */
+  public static float planRoi(
+      final float[] confidences,
+      final float[] tracks,
+      final int count,
+      final int frameWidth,
+      final int frameHeight,
+      final int minSide,
+      final int maxTracks,
+      final float padding,
+      final float maxFraction,
+      final float[] priorities,
+      final int[] order,
+      final float[] roi) {
+    if (count == 0) {
+      return 0;
+    }
+    final float frameArea = (float) frameWidth * frameHeight;
+    for (int i = 0; i < count; ++i) {
+      priorities[i] = roiPriority(confidences[i], tracks, i, frameArea);
+    }
+    Nms.sortByScoreDescending(priorities, count, order);
+
+    Boxes.copy(tracks, order[0], roi, 0);
+    for (int i = 1; i < Math.min(maxTracks, count); ++i) {
+      Boxes.union(roi, 0, tracks, order[i]);
+    }
+
+    // Square (the model input is square) with padding, centered on the tracks.
+    final float side =
+        Math.max(minSide, Math.max(Boxes.width(roi, 0), Boxes.height(roi, 0)) * (1 + 2 * padding));
+    if (side >= maxFraction * Math.min(frameWidth, frameHeight)) {
+      return 0;
+    }
+    final float left = clamp(Boxes.centerX(roi, 0) - side / 2, 0, frameWidth - side);
+    final float top = clamp(Boxes.centerY(roi, 0) - side / 2, 0, frameHeight - side);
+    Boxes.set(roi, 0, left, top, left + side, top + side);
+    return side;
+  }
+
+  private static float clamp(final float value, final float min, final float max) {
+    return Math.max(min, Math.min(max, value));
+  }
+}
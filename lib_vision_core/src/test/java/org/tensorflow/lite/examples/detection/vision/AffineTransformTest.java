@@ -0,0 +1,109 @@
+/*
+ * Copyright 2020 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tensorflow.lite.examples.detection.vision;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.Test;
+
+/** Unit tests for the affine transform and the frame-to-crop transformation. */
+public class AffineTransformTest {
+  private static final float TOLERANCE = 1e-3f;
+
+  private static float[] map(final AffineTransform transform, final float... box) {
+    final float[] mapped = new float[4];
+    transform.mapRect(box, 0, mapped, 0);
+    return mapped;
+  }
+
+  @Test
+  public void setTransformation_sameSize_isIdentity() {
+    final AffineTransform transform = new AffineTransform();
+    transform.setTransformation(640, 480, 640, 480, 0, false);
+    assertThat(map(transform, 10, 20, 30, 40))
+        .usingTolerance(TOLERANCE)
+        .containsExactly(10f, 20f, 30f, 40f)
+        .inOrder();
+  }
+
+  @Test
+  public void setTransformation_scalesToCrop() {
+    final AffineTransform transform = new AffineTransform();
+    transform.setTransformation(640, 480, 300, 300, 0, false);
+    assertThat(map(transform, 0, 0, 640, 480))
+        .usingTolerance(TOLERANCE)
+        .containsExactly(0f, 0f, 300f, 300f)
+        .inOrder();
+  }
+
+  @Test
+  public void setTransformation_maintainAspectRatio_cropsTheLongerSide() {
+    final AffineTransform transform = new AffineTransform();
+    transform.setTransformation(640, 480, 300, 300, 0, true);
+    assertThat(map(transform, 0, 0, 640, 480))
+        .usingTolerance(TOLERANCE)
+        .containsExactly(0f, 0f, 400f, 300f)
+        .inOrder();
+  }
+
+  @Test
+  public void setTransformation_rotation90_movesTopLeftToTopRight() {
+    final AffineTransform transform = new AffineTransform();
+    transform.setTransformation(640, 480, 480, 640, 90, false);
+    final float[] corner = {0, 0};
+    transform.mapPoints(corner, 1);
+    assertThat(corner).usingTolerance(TOLERANCE).containsExactly(480f, 0f).inOrder();
+    assertThat(map(transform, 0, 0, 640, 480))
+        .usingTolerance(TOLERANCE)
+        .containsExactly(0f, 0f, 480f, 640f)
+        .inOrder();
+  }
+
+  @Test
+  public void invert_roundTrips() {
+    final AffineTransform transform = new AffineTransform();
+    transform.setTransformation(640, 480, 300, 300, 270, false);
+    final AffineTransform inverse = new AffineTransform();
+    assertThat(transform.invert(inverse)).isTrue();
+
+    final float[] box = {100, 50, 220, 190};
+    final float[] mapped = new float[4];
+    transform.mapRect(box, 0, mapped, 0);
+    inverse.mapRect(mapped, 0, mapped, 0);
+    assertThat(mapped).usingTolerance(TOLERANCE).containsExactly(100f, 50f, 220f, 190f).inOrder();
+  }
+
+  @Test
+  public void invert_singular_returnsFalse() {
+    final AffineTransform transform = new AffineTransform();
+    transform.postScale(0, 1);
+    assertThat(transform.invert(new AffineTransform())).isFalse();
+  }
+
+  @Test
+  public void postConcat_appliesOtherAfterThis() {
+    final AffineTransform transform = new AffineTransform();
+    transform.setTranslate(10, 0);
+    final AffineTransform scale = new AffineTransform();
+    scale.postScale(2, 3);
+    transform.postConcat(scale);
+    assertThat(map(transform, 0, 0, 1, 1))
+        .usingTolerance(TOLERANCE)
+        .containsExactly(20f, 0f, 22f, 3f)
+        .inOrder();
+  }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2020 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tensorflow.lite.examples.detection.vision;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.Test;
+
+/** Unit tests for detection precision, recall and average precision. */
+public class DetectionMetricsTest {
+  private static final float TOLERANCE = 1e-4f;
+
+  private static final String[] TWO_CUPS = {"cup", "cup"};
+  private static final float[] TWO_CUP_BOXES = {
+    0, 0, 100, 100,
+    200, 200, 300, 300
+  };
+
+  @Test
+  public void perfectDetections() {
+    final DetectionMetrics metrics = new DetectionMetrics(0.5f, 0.5f);
+    metrics.addImage(
+        TWO_CUPS, TWO_CUP_BOXES, 2, TWO_CUPS, TWO_CUP_BOXES, new float[] {0.9f, 0.8f}, 2);
+
+    assertThat(metrics.getPrecision("cup")).isWithin(TOLERANCE).of(1f);
+    assertThat(metrics.getRecall("cup")).isWithin(TOLERANCE).of(1f);
+    assertThat(metrics.getAveragePrecision("cup")).isWithin(TOLERANCE).of(1f);
+    assertThat(metrics.getMeanAveragePrecision()).isWithin(TOLERANCE).of(1f);
+  }
+
+  @Test
+  public void duplicateDetection_isFalsePositive() {
+    final DetectionMetrics metrics = new DetectionMetrics(0.5f, 0.5f);
+    metrics.addImage(
+        new String[] {"cup"},
+        new float[] {0, 0, 100, 100},
+        1,
+        TWO_CUPS,
+        new float[] {0, 0, 100, 100, 5, 5, 100, 100},
+        new float[] {0.9f, 0.8f},
+        2);
+
+    assertThat(metrics.getDetectionCount("cup")).isEqualTo(2);
+    assertThat(metrics.getPrecision("cup")).isWithin(TOLERANCE).of(0.5f);
+    assertThat(metrics.getRecall("cup")).isWithin(TOLERANCE).of(1f);
+    // The true positive ranks first, so the false positive does not lower the curve.
+    assertThat(metrics.getAveragePrecision("cup")).isWithin(TOLERANCE).of(1f);
+  }
+
+  @Test
+  public void averagePrecision_interpolatesPrecision() {
+    final DetectionMetrics metrics = new DetectionMetrics(0.5f, 0f);
+    // Ranked true, false, true: precision 1, 1/2, 2/3 at recall 1/2, 1/2, 1.
+    metrics.addImage(
+        TWO_CUPS,
+        TWO_CUP_BOXES,
+        2,
+        new String[] {"cup", "cup", "cup"},
+        new float[] {0, 0, 100, 100, 500, 500, 600, 600, 200, 200, 300, 300},
+        new float[] {0.9f, 0.8f, 0.7f},
+        3);
+
+    assertThat(metrics.getAveragePrecision("cup")).isWithin(TOLERANCE).of(0.5f + 0.5f * 2 / 3);
+  }
+
+  @Test
+  public void wrongClassOrLowOverlap_doesNotMatch() {
+    final DetectionMetrics metrics = new DetectionMetrics(0.5f, 0.5f);
+    metrics.addImage(
+        TWO_CUPS,
+        TWO_CUP_BOXES,
+        2,
+        new String[] {"knife", "cup"},
+        new float[] {0, 0, 100, 100, 250, 250, 350, 350},
+        new float[] {0.9f, 0.8f},
+        2);
+
+    assertThat(metrics.getRecall("cup")).isWithin(TOLERANCE).of(0f);
+    assertThat(metrics.getPrecision("knife")).isWithin(TOLERANCE).of(0f);
+    // Only classes with ground truth count towards the mean.
+    assertThat(metrics.getAveragePrecision("knife")).isNaN();
+    assertThat(metrics.getMeanAveragePrecision()).isWithin(TOLERANCE).of(0f);
+  }
+
+  @Test
+  public void scoreThreshold_onlyAffectsPrecisionAndRecall() {
+    final DetectionMetrics metrics = new DetectionMetrics(0.5f, 0.85f);
+    metrics.addImage(
+        TWO_CUPS, TWO_CUP_BOXES, 2, TWO_CUPS, TWO_CUP_BOXES, new float[] {0.9f, 0.8f}, 2);
+
+    assertThat(metrics.getDetectionCount("cup")).isEqualTo(1);
+    assertThat(metrics.getRecall("cup")).isWithin(TOLERANCE).of(0.5f);
+    assertThat(metrics.getAveragePrecision("cup")).isWithin(TOLERANCE).of(1f);
+  }
+
+  @Test
+  public void imagesAccumulate() {
+    final DetectionMetrics metrics = new DetectionMetrics(0.5f, 0.5f);
+    metrics.addImage(
+        TWO_CUPS, TWO_CUP_BOXES, 2, TWO_CUPS, TWO_CUP_BOXES, new float[] {0.9f, 0.8f}, 2);
+    metrics.addImage(TWO_CUPS, TWO_CUP_BOXES, 2, new String[0], new float[0], new float[0], 0);
+
+    assertThat(metrics.getImageCount()).isEqualTo(2);
+    assertThat(metrics.getGroundTruthCount("cup")).isEqualTo(4);
+    assertThat(metrics.getRecall("cup")).isWithin(TOLERANCE).of(0.5f);
+    assertThat(metrics.getAveragePrecision("cup")).isWithin(TOLERANCE).of(0.5f);
+  }
+}
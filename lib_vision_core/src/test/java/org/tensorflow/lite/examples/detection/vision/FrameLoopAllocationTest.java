@@ -0,0 +1,88 @@
+package org.tensorflow.lite.examples.detection.vision;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import org.junit.Assume;
+import org.junit.Test;
+
+/**
+ * Guards the frame loop against per-frame garbage, which on the device turns into GC pauses in the
+ * middle of the camera stream. Runs {@link SyntheticFrameLoop} until the JIT has settled, then
+ * measures the bytes the thread allocates per frame with the HotSpot {@code ThreadMXBean}.
+ *
+ * <p>The Android classes cannot run here, but every step of the loop is a call into the same
+ * kernels they use: {@link YuvConverter}, {@link AffineTransform}, {@link Preprocess}, {@link
+ * SsdDecoder} and the {@link RecyclingList} of results in the detector, {@link Nms}, {@link
+ * Tracking} and {@link Labels} in the tracker. An allocation added to any of them fails this test.
+ */
+public class FrameLoopAllocationTest {
+  private static final int WARM_UP_FRAMES = 500;
+  private static final int MEASURED_FRAMES = 200;
+  // The loop itself allocates nothing; the budget only absorbs the cost of the measurement.
+  private static final long BYTES_PER_FRAME_BUDGET = 64;
+
+  // Keeps the allocations of allocatingLoop_exceedsBudget reachable, so that escape analysis
+  // cannot remove them.
+  private static Object sink;
+
+  private static com.sun.management.ThreadMXBean threadBean() {
+    final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    Assume.assumeTrue(
+        "ThreadMXBean does not report allocations on this JVM",
+        bean instanceof com.sun.management.ThreadMXBean
+            && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported());
+    final com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) bean;
+    threadBean.setThreadAllocatedMemoryEnabled(true);
+    return threadBean;
+  }
+
+  /** Average bytes allocated by the current thread per call of {@code frame}. */
+  private static long bytesPerFrame(final Runnable frame) {
+    final com.sun.management.ThreadMXBean bean = threadBean();
+    final long threadId = Thread.currentThread().getId();
+    for (int i = 0; i < WARM_UP_FRAMES; ++i) {
+      frame.run();
+    }
+    final long before = bean.getThreadAllocatedBytes(threadId);
+    for (int i = 0; i < MEASURED_FRAMES; ++i) {
+      frame.run();
+    }
+    final long after = bean.getThreadAllocatedBytes(threadId);
+    return (after - before) / MEASURED_FRAMES;
+  }
+
+  @Test
+  public void frameLoop_staysWithinAllocationBudget() {
+    final SyntheticFrameLoop loop = new SyntheticFrameLoop();
+    final long bytes = bytesPerFrame(loop::step);
+    assertThat(bytes).isAtMost(BYTES_PER_FRAME_BUDGET);
+  }
+
+  @Test
+  public void frameLoop_detectsTracksAndZoomsOnObjects() {
+    final SyntheticFrameLoop loop = new SyntheticFrameLoop();
+    int tracks = 0;
+    for (int i = 0; i < 10; ++i) {
+      tracks = loop.step();
+    }
+    assertThat(loop.getDetectionCount() > 0).isTrue();
+    assertThat(tracks > 0).isTrue();
+    // Both crops of the app are exercised: the full frame and the region around the tracks.
+    assertThat(loop.getRoiFrameCount() > 0).isTrue();
+    assertThat(loop.getLabel(0).toString()).startsWith("object ");
+  }
+
+  @Test
+  public void allocatingLoop_exceedsBudget() {
+    final SyntheticFrameLoop loop = new SyntheticFrameLoop();
+    final long bytes =
+        bytesPerFrame(
+            () -> {
+              loop.step();
+              sink = new float[4 * 16];
+            });
+    assertThat(bytes > BYTES_PER_FRAME_BUDGET).isTrue();
+  }
+}
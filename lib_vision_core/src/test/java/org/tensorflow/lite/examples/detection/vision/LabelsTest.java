@@ -0,0 +1,37 @@
+package org.tensorflow.lite.examples.detection.vision;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.Locale;
+import org.junit.Test;
+
+/** Unit tests for the detection label formatting. */
+public class LabelsTest {
+
+  @Test
+  public void format_matchesStringFormat() {
+    final StringBuilder out = new StringBuilder();
+    final float[] confidences = {0f, 0.005f, 0.0999f, 0.5f, 0.87654f, 0.99999f, 1f};
+    for (final float confidence : confidences) {
+      Labels.format(out, "person", confidence, '.');
+      assertThat(out.toString())
+          .isEqualTo(String.format(Locale.US, "%s %.2f%%", "person", 100 * confidence));
+    }
+  }
+
+  @Test
+  public void format_withoutTitle_onlyConfidence() {
+    final StringBuilder out = new StringBuilder();
+    Labels.format(out, "", 0.5f, ',');
+    assertThat(out.toString()).isEqualTo("50,00%");
+    Labels.format(out, null, 0.031f, '.');
+    assertThat(out.toString()).isEqualTo("3.10%");
+  }
+
+  @Test
+  public void format_replacesPreviousContents() {
+    final StringBuilder out = new StringBuilder("stale label");
+    Labels.format(out, "cup", 0.25f, '.');
+    assertThat(out.toString()).isEqualTo("cup 25.00%");
+  }
+}
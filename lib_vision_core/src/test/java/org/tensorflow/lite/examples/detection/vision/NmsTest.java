@@ -0,0 +1,75 @@
+/*
+ * Copyright 2020 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tensorflow.lite.examples.detection.vision;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.Arrays;
+import org.junit.Test;
+
+/** Unit tests for non-maximum suppression. */
+public class NmsTest {
+  private static final float IOU = 0.5f;
+  private static final float CONTAINMENT = 0.7f;
+
+  private static int[] suppress(final float[] boxes, final float[] scores, final int[] classes) {
+    final int count = scores.length;
+    final int[] kept = new int[count];
+    final int keptCount =
+        Nms.suppress(boxes, scores, classes, count, IOU, CONTAINMENT, new int[count], kept);
+    return Arrays.copyOf(kept, keptCount);
+  }
+
+  @Test
+  public void suppress_keepsMostConfidentOfOverlappingSameClass() {
+    final float[] boxes = {
+      0, 0, 100, 100,
+      5, 5, 105, 105,
+      200, 200, 300, 300
+    };
+    assertThat(suppress(boxes, new float[] {0.6f, 0.9f, 0.5f}, new int[] {0, 0, 0}))
+        .isEqualTo(new int[] {1, 2});
+  }
+
+  @Test
+  public void suppress_neverAcrossClasses() {
+    final float[] boxes = {
+      0, 0, 100, 100,
+      5, 5, 105, 105
+    };
+    assertThat(suppress(boxes, new float[] {0.6f, 0.9f}, new int[] {0, 1}))
+        .isEqualTo(new int[] {1, 0});
+  }
+
+  @Test
+  public void suppress_containedPartialBox() {
+    // A box cut by a tile seam: low IoU with the full box, but fully inside it.
+    final float[] boxes = {
+      0, 0, 100, 100,
+      0, 0, 30, 100
+    };
+    assertThat(suppress(boxes, new float[] {0.9f, 0.8f}, new int[] {0, 0}))
+        .isEqualTo(new int[] {0});
+  }
+
+  @Test
+  public void sortByScoreDescending_isStable() {
+    final int[] order = new int[4];
+    Nms.sortByScoreDescending(new float[] {0.5f, 0.9f, 0.5f, 0.1f}, 4, order);
+    assertThat(order).isEqualTo(new int[] {1, 0, 2, 3});
+  }
+}
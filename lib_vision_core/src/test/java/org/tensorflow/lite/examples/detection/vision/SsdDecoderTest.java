@@ -0,0 +1,67 @@
+package org.tensorflow.lite.examples.detection.vision;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.Test;
+
+/** Unit tests for the SSD output decoder and the recycled result list. */
+public class SsdDecoderTest {
+  private static final int ROWS = 3;
+
+  private final float[][][] locations = new float[1][ROWS][4];
+  private final float[][] classes = new float[1][ROWS];
+  private final float[][] scores = new float[1][ROWS];
+  private final float[] numDetections = new float[1];
+  private final float[] boxes = new float[4 * ROWS];
+  private final float[] outScores = new float[ROWS];
+  private final int[] outClasses = new int[ROWS];
+
+  private int decode() {
+    return SsdDecoder.decode(
+        locations, classes, scores, numDetections, 300, boxes, outScores, outClasses);
+  }
+
+  @Test
+  public void decode_reordersAndScalesBoxes() {
+    locations[0][0] = new float[] {0.1f, 0.2f, 0.5f, 0.6f};
+    classes[0][0] = 3;
+    scores[0][0] = 0.8f;
+    numDetections[0] = 1;
+
+    assertThat(decode()).isEqualTo(1);
+    assertThat(boxes[0]).isWithin(1e-3f).of(60);
+    assertThat(boxes[1]).isWithin(1e-3f).of(30);
+    assertThat(boxes[2]).isWithin(1e-3f).of(180);
+    assertThat(boxes[3]).isWithin(1e-3f).of(150);
+    assertThat(outClasses[0]).isEqualTo(3);
+    assertThat(outScores[0]).isEqualTo(0.8f);
+  }
+
+  @Test
+  public void decode_readsOnlyValidRows() {
+    numDetections[0] = 2;
+    assertThat(decode()).isEqualTo(2);
+  }
+
+  @Test
+  public void decode_clampsCountToRows() {
+    numDetections[0] = ROWS + 5;
+    assertThat(decode()).isEqualTo(ROWS);
+    numDetections[0] = -1;
+    assertThat(decode()).isEqualTo(0);
+  }
+
+  @Test
+  public void recyclingList_reusesElementsAfterClear() {
+    final RecyclingList<float[]> list = new RecyclingList<>(() -> new float[4]);
+    final float[] first = list.add();
+    final float[] second = list.add();
+    list.clear();
+
+    assertThat(list).isEmpty();
+    assertThat(list.add()).isSameInstanceAs(first);
+    assertThat(list.add()).isSameInstanceAs(second);
+    assertThat(list.add()).isNotSameInstanceAs(first);
+    assertThat(list).hasSize(3);
+  }
+}
@@ -0,0 +1,262 @@
+package org.tensorflow.lite.examples.detection.vision;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * The per-frame work of the app's frame loop, on the JVM: NV21 conversion, crop to the model input
+ * (of the full frame or of a region of interest around the tracks), input packing, a stand-in
+ * detector, non-maximum suppression, mapping back to the frame, track bookkeeping and the label
+ * drawn over each track.
+ *
+ * <p>The frames are synthetic: a dark background with a bright square that moves a few pixels per
+ * frame. The detector works like the app's {@code StandInDetector}: each cell of a grid over the
+ * crop whose center pixel is bright becomes a detection. It fills model-shaped output arrays, which
+ * go through the same {@link SsdDecoder} and {@link RecyclingList} of results as {@code
+ * TFLiteObjectDetectionAPIModel}. Every step calls the same {@code vision} code as the app; only
+ * the glue around it (the Canvas crop, the track list) is rewritten here, since the Android classes
+ * cannot run on the JVM. Everything is allocated in the constructor or, for the results, on the
+ * first frames, so {@link #step()} must not allocate once warmed up.
+ */
+final class SyntheticFrameLoop {
+  static final int WIDTH = 640;
+  static final int HEIGHT = 480;
+  static final int ROTATION = 90;
+  static final int INPUT_SIZE = 300;
+
+  private static final int FRAME_COUNT = 8;
+  private static final int OBJECT_SIZE = 96;
+  private static final int OBJECT_STEP = 4;
+  // Small enough that the region of interest around it is worth a pass of its own.
+  private static final int OBJECT_LEFT = 200;
+  private static final int OBJECT_TOP = 140;
+  private static final int GRID_SIZE = 4;
+  private static final int BRIGHTNESS_THRESHOLD = 160;
+  private static final int MAX_DETECTIONS = GRID_SIZE * GRID_SIZE;
+  private static final int MAX_TRACKS = 10;
+  private static final float NMS_IOU = 0.5f;
+  private static final float NMS_CONTAINMENT = 0.7f;
+  private static final float MIN_TRACK_SIZE = 16;
+  private static final String TITLE = "object";
+  // As in DetectorActivity: a region of interest every other frame, around up to three tracks, at
+  // least as large as the model input.
+  private static final int ROI_FULL_FRAME_INTERVAL = 2;
+  private static final int ROI_MAX_TRACKS = 3;
+  private static final float ROI_PADDING = 0.25f;
+  private static final float ROI_MAX_FRACTION = 0.9f;
+
+  private final byte[][] frames = new byte[FRAME_COUNT][];
+  private final int[] rgb = new int[WIDTH * HEIGHT];
+  private final int[] crop = new int[INPUT_SIZE * INPUT_SIZE];
+  private final ByteBuffer input =
+      ByteBuffer.allocateDirect(3 * INPUT_SIZE * INPUT_SIZE).order(ByteOrder.nativeOrder());
+
+  private final AffineTransform fullFrameToCrop = new AffineTransform();
+  private final AffineTransform roiToCrop = new AffineTransform();
+  private final AffineTransform frameToCrop = new AffineTransform();
+  private final AffineTransform cropToFrame = new AffineTransform();
+  private final float[] point = new float[2];
+
+  // Model outputs, as the TFLite detection postprocess op lays them out.
+  private final float[][][] outputLocations = new float[1][MAX_DETECTIONS][4];
+  private final float[][] outputClasses = new float[1][MAX_DETECTIONS];
+  private final float[][] outputScores = new float[1][MAX_DETECTIONS];
+  private final float[] numDetections = new float[1];
+
+  private final float[] boxes = new float[4 * MAX_DETECTIONS];
+  private final float[] scores = new float[MAX_DETECTIONS];
+  private final int[] classes = new int[MAX_DETECTIONS];
+  private final int[] order = new int[Math.max(MAX_DETECTIONS, MAX_TRACKS)];
+  private final int[] kept = new int[MAX_DETECTIONS];
+  // Kept detections in frame coordinates, as the app's per-frame Recognitions.
+  private final RecyclingList<Detection> results = new RecyclingList<>(Detection::new);
+
+  private final float[] tracks = new float[4 * MAX_TRACKS];
+  private final float[] trackConfidences = new float[MAX_TRACKS];
+  private final float[] priorities = new float[MAX_TRACKS];
+  // Label of each track, formatted as MultiBoxTracker does into builders that are reused.
+  private final StringBuilder[] labels = new StringBuilder[MAX_TRACKS];
+  private final float[] roi = new float[4];
+  private int trackCount;
+  private long frameIndex;
+  private long detectionCount;
+  private long roiFrameCount;
+
+  SyntheticFrameLoop() {
+    for (int i = 0; i < FRAME_COUNT; ++i) {
+      frames[i] = createFrame(i * OBJECT_STEP);
+    }
+    for (int i = 0; i < MAX_TRACKS; ++i) {
+      labels[i] = new StringBuilder();
+    }
+    fullFrameToCrop.setTransformation(WIDTH, HEIGHT, INPUT_SIZE, INPUT_SIZE, ROTATION, false);
+  }
+
+  /** NV21 frame with the bright square shifted right by {@code offset} pixels. */
+  private static byte[] createFrame(final int offset) {
+    final byte[] frame = new byte[YuvConverter.getYUVByteSize(WIDTH, HEIGHT)];
+    for (int y = 0; y < HEIGHT; ++y) {
+      for (int x = 0; x < WIDTH; ++x) {
+        final boolean bright =
+            x >= OBJECT_LEFT + offset
+                && x < OBJECT_LEFT + offset + OBJECT_SIZE
+                && y >= OBJECT_TOP
+                && y < OBJECT_TOP + OBJECT_SIZE;
+        frame[y * WIDTH + x] = (byte) (bright ? 235 : 40);
+      }
+    }
+    for (int i = WIDTH * HEIGHT; i < frame.length; ++i) {
+      frame[i] = (byte) 128;
+    }
+    return frame;
+  }
+
+  /** Runs one frame through the loop; returns the number of tracks afterwards. */
+  int step() {
+    final byte[] frame = frames[(int) (frameIndex % FRAME_COUNT)];
+    YuvConverter.convertYUV420SPToARGB8888(frame, WIDTH, HEIGHT, rgb);
+
+    final boolean useRoi = frameIndex % ROI_FULL_FRAME_INTERVAL != 0 && planRoi() > 0;
+    if (useRoi) {
+      roiFrameCount++;
+      // Crop of the region: move it to the origin, then rotate and scale as the full frame.
+      final int side = (int) Boxes.width(roi, 0);
+      frameToCrop.setTranslate(-roi[0], -roi[1]);
+      roiToCrop.setTransformation(side, side, INPUT_SIZE, INPUT_SIZE, ROTATION, false);
+      frameToCrop.postConcat(roiToCrop);
+    } else {
+      frameToCrop.set(fullFrameToCrop);
+    }
+    frameToCrop.invert(cropToFrame);
+    cropFrame();
+    input.rewind();
+    Preprocess.packQuantized(crop, crop.length, input);
+
+    detect();
+    final int count =
+        SsdDecoder.decode(
+            outputLocations,
+            outputClasses,
+            outputScores,
+            numDetections,
+            INPUT_SIZE,
+            boxes,
+            scores,
+            classes);
+    detectionCount += count;
+    final int keptCount =
+        Nms.suppress(boxes, scores, classes, count, NMS_IOU, NMS_CONTAINMENT, order, kept);
+    results.clear();
+    for (int k = 0; k < keptCount; ++k) {
+      final Detection result = results.add();
+      cropToFrame.mapRect(boxes, kept[k], result.box, 0);
+      result.score = scores[kept[k]];
+    }
+    track(useRoi);
+    frameIndex++;
+    return trackCount;
+  }
+
+  long getDetectionCount() {
+    return detectionCount;
+  }
+
+  long getRoiFrameCount() {
+    return roiFrameCount;
+  }
+
+  /** Label of track {@code i}, valid until the next {@link #step()}. */
+  CharSequence getLabel(final int i) {
+    return labels[i];
+  }
+
+  private float planRoi() {
+    return Tracking.planRoi(
+        trackConfidences,
+        tracks,
+        trackCount,
+        WIDTH,
+        HEIGHT,
+        INPUT_SIZE,
+        ROI_MAX_TRACKS,
+        ROI_PADDING,
+        ROI_MAX_FRACTION,
+        priorities,
+        order,
+        roi);
+  }
+
+  /** Nearest-neighbor crop through {@code cropToFrame}, standing in for the app's Canvas draw. */
+  private void cropFrame() {
+    for (int y = 0; y < INPUT_SIZE; ++y) {
+      for (int x = 0; x < INPUT_SIZE; ++x) {
+        point[0] = x + 0.5f;
+        point[1] = y + 0.5f;
+        cropToFrame.mapPoints(point, 1);
+        final int fx = Math.min(WIDTH - 1, Math.max(0, (int) point[0]));
+        final int fy = Math.min(HEIGHT - 1, Math.max(0, (int) point[1]));
+        crop[y * INPUT_SIZE + x] = rgb[fy * WIDTH + fx];
+      }
+    }
+  }
+
+  /** Writes the outputs a model would, with boxes as normalized top, left, bottom, right. */
+  private void detect() {
+    final float cell = 1f / GRID_SIZE;
+    int count = 0;
+    for (int row = 0; row < GRID_SIZE; ++row) {
+      for (int col = 0; col < GRID_SIZE; ++col) {
+        final int x = (int) ((col + 0.5f) * cell * INPUT_SIZE);
+        final int y = (int) ((row + 0.5f) * cell * INPUT_SIZE);
+        final int pixel = crop[y * INPUT_SIZE + x];
+        final int brightness =
+            (((pixel >> 16) & 0xFF) + ((pixel >> 8) & 0xFF) + (pixel & 0xFF)) / 3;
+        if (brightness > BRIGHTNESS_THRESHOLD) {
+          final float[] location = outputLocations[0][count];
+          location[0] = row * cell;
+          location[1] = col * cell;
+          location[2] = (row + 1) * cell;
+          location[3] = (col + 1) * cell;
+          outputScores[0][count] = brightness / 255f;
+          outputClasses[0][count] = 0;
+          count++;
+        }
+      }
+    }
+    numDetections[0] = count;
+  }
+
+  /** Replaces all tracks, or after a region-of-interest pass only those the region covered. */
+  private void track(final boolean useRoi) {
+    int remaining = 0;
+    if (useRoi) {
+      for (int j = 0; j < trackCount; ++j) {
+        if (!Tracking.isCoveredByRoi(roi, 0, tracks, j)) {
+          Boxes.copy(tracks, j, tracks, remaining);
+          trackConfidences[remaining] = trackConfidences[j];
+          final StringBuilder label = labels[remaining];
+          labels[remaining] = labels[j];
+          labels[j] = label;
+          remaining++;
+        }
+      }
+    }
+    trackCount = remaining;
+    for (int k = 0; k < results.size() && trackCount < MAX_TRACKS; ++k) {
+      final Detection result = results.get(k);
+      if (Tracking.isDegenerate(result.box, 0, MIN_TRACK_SIZE)) {
+        continue;
+      }
+      Boxes.copy(result.box, 0, tracks, trackCount);
+      trackConfidences[trackCount] = result.score;
+      Labels.format(labels[trackCount], TITLE, result.score, '.');
+      trackCount++;
+    }
+  }
+
+  /** A kept detection in frame coordinates. */
+  private static final class Detection {
+    final float[] box = new float[4];
+    float score;
+  }
+}
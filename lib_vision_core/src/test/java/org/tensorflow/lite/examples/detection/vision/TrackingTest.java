@@ -0,0 +1,91 @@
+/*
+ * Copyright 2020 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tensorflow.lite.examples.detection.vision;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.Test;
+
+/** Unit tests for the region-of-interest geometry of the tracking stage. */
+public class TrackingTest {
+
+  @Test
+  public void planRoi_squareAroundSmallTrack() {
+    final float[] roi = new float[4];
+    final float side =
+        Tracking.planRoi(
+            new float[] {0.8f},
+            new float[] {300, 200, 340, 240},
+            1,
+            640,
+            480,
+            100,
+            3,
+            0.25f,
+            0.9f,
+            new float[1],
+            new int[1],
+            roi);
+    // 40px track with 25% padding is 60px, below the 100px minimum.
+    assertThat(side).isEqualTo(100f);
+    assertThat(roi).isEqualTo(new float[] {270, 170, 370, 270});
+  }
+
+  @Test
+  public void planRoi_clampsToFrameAndRejectsLargeRegions() {
+    final float[] roi = new float[4];
+    final float side =
+        Tracking.planRoi(
+            new float[] {0.8f},
+            new float[] {0, 0, 20, 20},
+            1,
+            640,
+            480,
+            100,
+            3,
+            0.25f,
+            0.9f,
+            new float[1],
+            new int[1],
+            roi);
+    assertThat(side).isEqualTo(100f);
+    assertThat(roi).isEqualTo(new float[] {0, 0, 100, 100});
+
+    final float largeSide =
+        Tracking.planRoi(
+            new float[] {0.8f},
+            new float[] {100, 50, 500, 450},
+            1,
+            640,
+            480,
+            100,
+            3,
+            0.25f,
+            0.9f,
+            new float[1],
+            new int[1],
+            roi);
+    assertThat(largeSide).isEqualTo(0f);
+  }
+
+  @Test
+  public void isCoveredByRoi_usesTrackCenter() {
+    final float[] roi = {0, 0, 100, 100};
+    assertThat(Tracking.isCoveredByRoi(roi, 0, new float[] {80, 80, 140, 140}, 0)).isFalse();
+    assertThat(Tracking.isCoveredByRoi(roi, 0, new float[] {60, 60, 120, 120}, 0)).isTrue();
+  }
+}
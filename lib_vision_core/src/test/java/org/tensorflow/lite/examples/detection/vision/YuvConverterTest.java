@@ -0,0 +1,71 @@
+/*
+ * Copyright 2020 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tensorflow.lite.examples.detection.vision;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.Random;
+import org.junit.Test;
+
+/** Unit tests for the YUV to ARGB kernels. */
+public class YuvConverterTest {
+
+  @Test
+  public void yuvToRgb_videoRangeBlackAndWhite() {
+    assertThat(YuvConverter.yuvToRgb(16, 128, 128)).isEqualTo(0xff000000);
+    assertThat(YuvConverter.yuvToRgb(0, 128, 128)).isEqualTo(0xff000000);
+    assertThat(YuvConverter.yuvToRgb(235, 128, 128)).isEqualTo(0xfffefefe);
+  }
+
+  @Test
+  public void yuvToRgb_clampsSaturatedChroma() {
+    // Full-scale V with no luma: red clamps at the top, green and blue at zero.
+    assertThat(YuvConverter.yuvToRgb(255, 128, 255) & 0xff0000).isEqualTo(0xff0000);
+    assertThat(YuvConverter.yuvToRgb(16, 0, 255) & 0xff00).isEqualTo(0);
+  }
+
+  @Test
+  public void getYUVByteSize_roundsChromaUp() {
+    assertThat(YuvConverter.getYUVByteSize(640, 480)).isEqualTo(640 * 480 * 3 / 2);
+    assertThat(YuvConverter.getYUVByteSize(3, 3)).isEqualTo(9 + 2 * 2 * 2);
+  }
+
+  @Test
+  public void planarAndSemiPlanar_agree() {
+    final int width = 64;
+    final int height = 48;
+    final byte[] nv21 = new byte[YuvConverter.getYUVByteSize(width, height)];
+    new Random(42).nextBytes(nv21);
+
+    // The same frame as YUV_420_888 planes: V and U interleaved with a pixel stride of 2, as many
+    // camera HALs deliver it.
+    final int frameSize = width * height;
+    final byte[] y = new byte[frameSize];
+    System.arraycopy(nv21, 0, y, 0, frameSize);
+    final byte[] v = new byte[nv21.length - frameSize];
+    System.arraycopy(nv21, frameSize, v, 0, v.length);
+    final byte[] u = new byte[v.length];
+    System.arraycopy(nv21, frameSize + 1, u, 0, v.length - 1);
+
+    final int[] fromSemiPlanar = new int[frameSize];
+    final int[] fromPlanar = new int[frameSize];
+    YuvConverter.convertYUV420SPToARGB8888(nv21, width, height, fromSemiPlanar);
+    YuvConverter.convertYUV420ToARGB8888(y, u, v, width, height, width, width, 2, fromPlanar);
+
+    assertThat(fromPlanar).isEqualTo(fromSemiPlanar);
+  }
+}